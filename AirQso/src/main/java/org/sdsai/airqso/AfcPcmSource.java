@@ -0,0 +1,130 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.CarrierTracker;
+import org.sdsai.airqso.dsp.FrequencyShifter;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that finds the carrier nearest a nominal frequency and
+ * moves it onto the nominal frequency, so a fixed frequency detector can decode
+ * stations that are off frequency or drifting.
+ *
+ * The carrier is found by a {@link CarrierTracker} and moved by a
+ * {@link FrequencyShifter}, which also filters out everything outside the
+ * signal's bandwidth. While the tracker is not locked, the last offset is kept.
+ * While disabled, samples are neither tracked, shifted nor filtered.
+ */
+public class AfcPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    private final CarrierTracker tracker;
+
+    private final FrequencyShifter shifter;
+
+    private volatile boolean enabled;
+
+    /**
+     * @param source The source to read from.
+     * @param hz The nominal carrier frequency.
+     * @param symbolRate The number of symbols per second, which sets the signal bandwidth.
+     * @param searchHz How far from hz to look for a carrier.
+     * @param thresholdDb How far above the noise a carrier must be to lock onto it.
+     */
+    public AfcPcmSource(
+        final PcmSource source,
+        final double hz,
+        final double symbolRate,
+        final double searchHz,
+        final double thresholdDb
+    )
+    {
+        final int sampleRate = source.getSampleRate();
+
+        this.source = source;
+        this.tracker = new CarrierTracker(sampleRate, hz, searchHz, thresholdDb);
+        this.shifter = new FrequencyShifter(sampleRate, hz, symbolRate * 4);
+        this.enabled = true;
+    }
+
+    /**
+     * @param enabled If false, stop tracking and pass samples through untouched.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return True if tracking is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return How far above the nominal frequency the received carrier is, in hertz.
+     */
+    public double getFrequencyOffset() {
+        return enabled ? tracker.getOffset() : 0;
+    }
+
+    /**
+     * @return True while a carrier is being followed.
+     */
+    public boolean isLocked() {
+        return enabled && tracker.isLocked();
+    }
+
+    /**
+     * @return The carrier's height above the noise in the last estimate, in decibels.
+     */
+    public double getSnrDb() {
+        return tracker.getSnrDb();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        final int rc = source.read(buffer, off, len);
+
+        if (rc > 0) {
+            if (enabled) {
+                tracker.add(buffer, off, rc);
+
+                if (tracker.isLocked()) {
+                    shifter.setOffset(tracker.getOffset());
+                }
+            }
+            else if (shifter.getOffset() != 0) {
+                tracker.reset();
+                shifter.setOffset(0);
+            }
+
+            if (enabled) {
+                shifter.process(buffer, off, rc);
+            }
+        }
+
+        return rc;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,65 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A {@link PcmTransfer} that moves samples through a {@code short[]} frame.
+ *
+ * Samples are copied in bulk through a big-endian {@link ShortBuffer} view of
+ * the byte frame, so no per-sample byte swapping is done in Java.
+ */
+public class ArrayPcmTransfer implements PcmTransfer {
+
+    /**
+     * Native-order samples exchanged with the source or sink.
+     */
+    private final short[] frame;
+
+    private final byte[] bytes;
+
+    /**
+     * A big-endian view over {@link #bytes}.
+     */
+    private final ShortBuffer byteView;
+
+    /**
+     * @param frameSize The most samples moved at a time.
+     */
+    public ArrayPcmTransfer(final int frameSize) {
+        this.frame = new short[frameSize];
+        this.bytes = new byte[frameSize * 2];
+        this.byteView = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+    }
+
+    @Override
+    public int getFrameSize() {
+        return frame.length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int read(final PcmSource source) throws IOException {
+        final int rc = source.read(frame, 0, frame.length);
+
+        if (rc > 0) {
+            byteView.clear();
+            byteView.put(frame, 0, rc);
+        }
+
+        return rc;
+    }
+
+    @Override
+    public void write(final PcmSink sink, final int samples) throws IOException {
+        byteView.clear();
+        byteView.get(frame, 0, samples);
+        sink.write(frame, 0, samples);
+    }
+}
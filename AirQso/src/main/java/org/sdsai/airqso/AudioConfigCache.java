@@ -0,0 +1,233 @@
+package org.sdsai.airqso;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which audio configurations worked on this device, so that opening
+ * a recorder or player does not try every combination again.
+ *
+ * For each direction and sample rate the cache holds either the configuration
+ * that worked, with the minimum buffer size the platform reported for it, or
+ * a note that no configuration at that rate worked. Nothing is checked ahead
+ * of time. A configuration is trusted until opening it fails, and then the
+ * caller forgets it and scans again.
+ *
+ * Given {@link SharedPreferences}, what is learned is kept across runs of the app.
+ */
+public class AudioConfigCache {
+
+    /**
+     * The direction of {@link android.media.AudioRecord} configurations.
+     */
+    public static final String RECORD = "record";
+
+    /**
+     * The direction of {@link android.media.AudioTrack} configurations.
+     */
+    public static final String PLAY = "play";
+
+    /**
+     * Stored as the source of a rate where nothing worked.
+     */
+    private static final int UNSUPPORTED = -1;
+
+    /**
+     * Where entries are kept across runs, or null.
+     */
+    private final SharedPreferences preferences;
+
+    /**
+     * Entries by key. Guarded by this.
+     */
+    private final Map<String, Integer> values;
+
+    /**
+     * A configuration that opened successfully.
+     */
+    public static class Config {
+        private final int rate;
+        private final int source;
+        private final int encoding;
+        private final int channel;
+        private final int minBufferSize;
+
+        /**
+         * @param rate The sample rate.
+         * @param source The audio source, or the stream type for playback.
+         * @param encoding The sample encoding.
+         * @param channel The channel configuration.
+         * @param minBufferSize The minimum buffer size the platform reported, in bytes.
+         */
+        public Config(
+            final int rate,
+            final int source,
+            final int encoding,
+            final int channel,
+            final int minBufferSize
+        )
+        {
+            this.rate = rate;
+            this.source = source;
+            this.encoding = encoding;
+            this.channel = channel;
+            this.minBufferSize = minBufferSize;
+        }
+
+        public int getRate() {
+            return rate;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getEncoding() {
+            return encoding;
+        }
+
+        public int getChannel() {
+            return channel;
+        }
+
+        public int getMinBufferSize() {
+            return minBufferSize;
+        }
+    }
+
+    /**
+     * A cache kept only in memory.
+     */
+    public AudioConfigCache() {
+        this(null);
+    }
+
+    /**
+     * @param preferences Where to keep entries across runs, or null to keep them only in memory.
+     */
+    public AudioConfigCache(final SharedPreferences preferences) {
+        this.preferences = preferences;
+        this.values = new HashMap<String, Integer>();
+    }
+
+    /**
+     * @param direction {@link #RECORD} or {@link #PLAY}.
+     * @param rate The sample rate.
+     *
+     * @return The configuration that worked at rate, or null if there is none.
+     */
+    public synchronized Config get(final String direction, final int rate) {
+        final String key = key(direction, rate);
+        final int source = getInt(key + ".source");
+
+        if (source == Integer.MIN_VALUE || source == UNSUPPORTED) {
+            return null;
+        }
+
+        return new Config(
+            rate,
+            source,
+            getInt(key + ".encoding"),
+            getInt(key + ".channel"),
+            getInt(key + ".buffer"));
+    }
+
+    /**
+     * @param direction {@link #RECORD} or {@link #PLAY}.
+     * @param rate The sample rate.
+     *
+     * @return True if nothing worked at rate when it was last tried.
+     */
+    public synchronized boolean isUnsupported(final String direction, final int rate) {
+        return getInt(key(direction, rate) + ".source") == UNSUPPORTED;
+    }
+
+    /**
+     * Remember a configuration that worked.
+     *
+     * @param direction {@link #RECORD} or {@link #PLAY}.
+     * @param config The configuration.
+     */
+    public synchronized void put(final String direction, final Config config) {
+        final String key = key(direction, config.getRate());
+        final Map<String, Integer> entry = new HashMap<String, Integer>();
+
+        entry.put(key + ".source", config.getSource());
+        entry.put(key + ".encoding", config.getEncoding());
+        entry.put(key + ".channel", config.getChannel());
+        entry.put(key + ".buffer", config.getMinBufferSize());
+
+        store(entry);
+    }
+
+    /**
+     * Remember that nothing worked at a rate.
+     *
+     * @param direction {@link #RECORD} or {@link #PLAY}.
+     * @param rate The sample rate.
+     */
+    public synchronized void putUnsupported(final String direction, final int rate) {
+        final Map<String, Integer> entry = new HashMap<String, Integer>();
+        entry.put(key(direction, rate) + ".source", UNSUPPORTED);
+        store(entry);
+    }
+
+    /**
+     * Forget what is known about a rate, such as a configuration that no longer opens.
+     *
+     * @param direction {@link #RECORD} or {@link #PLAY}.
+     * @param rate The sample rate.
+     */
+    public synchronized void remove(final String direction, final int rate) {
+        final String key = key(direction, rate);
+        final String[] names = new String[]{".source", ".encoding", ".channel", ".buffer"};
+
+        for (final String name : names) {
+            values.remove(key + name);
+        }
+
+        if (preferences != null) {
+            final SharedPreferences.Editor editor = preferences.edit();
+            for (final String name : names) {
+                editor.remove(key + name);
+            }
+            editor.commit();
+        }
+    }
+
+    private static String key(final String direction, final int rate) {
+        return direction + "." + rate;
+    }
+
+    /**
+     * @return The value of key, or {@link Integer#MIN_VALUE} if there is none.
+     */
+    private int getInt(final String key) {
+        final Integer value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        if (preferences != null && preferences.contains(key)) {
+            final int stored = preferences.getInt(key, Integer.MIN_VALUE);
+            values.put(key, stored);
+            return stored;
+        }
+
+        return Integer.MIN_VALUE;
+    }
+
+    private void store(final Map<String, Integer> entry) {
+        values.putAll(entry);
+
+        if (preferences != null) {
+            final SharedPreferences.Editor editor = preferences.edit();
+            for (final Map.Entry<String, Integer> e : entry.entrySet()) {
+                editor.putInt(e.getKey(), e.getValue());
+            }
+            editor.commit();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package org.sdsai.airqso;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps a recorder and a player open between uses, so that starting and
+ * stopping the modem only starts and stops streaming.
+ *
+ * Opening an {@link android.media.AudioRecord} or {@link android.media.AudioTrack}
+ * takes far longer than anything else a start does. The pool opens each once,
+ * ahead of time if {@link #prepare(int, Mode)} is called, and lends it out
+ * wrapped so that releasing the loan only stops streaming. A device is opened
+ * again only when a mode or frequency needs different sample rates or buffers.
+ *
+ * Only one loan per direction is out at a time. Taking another ends the first,
+ * waiting for the thread using it to finish any read or write in progress, so
+ * a device is never reopened or lent again while a thread is still using it.
+ * For the same reason {@link #prepare(int, Mode)} leaves a device that is lent
+ * out as it is; the next take reopens it if need be.
+ */
+public class AudioPool {
+
+    /**
+     * Chooses hardware rates the same way as {@link Bpsk}.
+     */
+    private static final SampleRatePolicy SAMPLE_RATE_POLICY = new SampleRatePolicy();
+
+    private AudioTrackPcmSink play;
+
+    private Key playKey;
+
+    private PlayLoan playLoan;
+
+    private AudioRecordPcmSource record;
+
+    private Key recordKey;
+
+    private RecordLoan recordLoan;
+
+    /**
+     * Set by {@link #close()}, after which {@link #prepare(int, Mode)} opens nothing.
+     */
+    private boolean closed;
+
+    /**
+     * What a device was opened for. Devices opened for equal keys are interchangeable.
+     */
+    private static class Key {
+        private final int[] rates;
+        private final double symbolRate;
+
+        Key(final int hz, final Mode mode) {
+            this.symbolRate = mode.getSymbolRate();
+            this.rates = SAMPLE_RATE_POLICY.hardwareRates(hz, symbolRate);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key k = (Key) o;
+            return symbolRate == k.symbolRate && Arrays.equals(rates, k.rates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(rates) * 31 + (int) Double.doubleToLongBits(symbolRate);
+        }
+    }
+
+    /**
+     * Open both devices for a mode now, so the first start is as quick as later ones.
+     * This does nothing once the pool is closed, so a late call does not leave devices open.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode.
+     *
+     * @throws RuntimeException If no working configuration is found, as by {@link Bpsk#findAudioRecord(double, int[])}.
+     */
+    public synchronized void prepare(final int hz, final Mode mode) {
+        if (closed) {
+            return;
+        }
+
+        if (playLoan == null || playLoan.isReleased()) {
+            preparePlay(new Key(hz, mode));
+        }
+
+        if (recordLoan == null || recordLoan.isReleased()) {
+            prepareRecord(new Key(hz, mode));
+        }
+    }
+
+    /**
+     * Lend the player. Releasing the loan stops playback at once and keeps the player open.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode.
+     *
+     * @return A sink that is stopped, not released, by {@link PcmSink#release()}.
+     */
+    public synchronized PcmSink takePlay(final int hz, final Mode mode) {
+        if (playLoan != null) {
+            playLoan.release();
+            playLoan = null;
+        }
+
+        preparePlay(new Key(hz, mode));
+        playLoan = new PlayLoan(play);
+
+        return playLoan;
+    }
+
+    /**
+     * Lend the recorder. Releasing the loan stops recording and keeps the recorder open.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode.
+     *
+     * @return A source that is stopped, not released, by {@link PcmSource#release()}.
+     */
+    public synchronized PcmSource takeRecord(final int hz, final Mode mode) {
+        if (recordLoan != null) {
+            recordLoan.release();
+            recordLoan = null;
+        }
+
+        prepareRecord(new Key(hz, mode));
+        recordLoan = new RecordLoan(record);
+
+        return recordLoan;
+    }
+
+    /**
+     * Release both devices, ending any loans.
+     */
+    public synchronized void close() {
+        closed = true;
+
+        if (playLoan != null) {
+            playLoan.release();
+            playLoan = null;
+        }
+
+        if (recordLoan != null) {
+            recordLoan.release();
+            recordLoan = null;
+        }
+
+        if (play != null) {
+            play.release();
+            play = null;
+            playKey = null;
+        }
+
+        if (record != null) {
+            record.release();
+            record = null;
+            recordKey = null;
+        }
+    }
+
+    /**
+     * Open the player for key unless it already is. Only call this while no loan of it is out.
+     */
+    private synchronized void preparePlay(final Key key) {
+        if (play != null && key.equals(playKey)) {
+            return;
+        }
+
+        if (play != null) {
+            Log.i("AudioPool", "Reopening player for a new mode.");
+            play.release();
+            play = null;
+        }
+
+        play = new AudioTrackPcmSink(Bpsk.findAudioPlay(key.symbolRate, key.rates));
+        playKey = key;
+    }
+
+    /**
+     * Open the recorder for key unless it already is. Only call this while no loan of it is out.
+     */
+    private synchronized void prepareRecord(final Key key) {
+        if (record != null && key.equals(recordKey)) {
+            return;
+        }
+
+        if (record != null) {
+            Log.i("AudioPool", "Reopening recorder for a new mode.");
+            record.release();
+            record = null;
+        }
+
+        record = new AudioRecordPcmSource(Bpsk.findAudioRecord(key.symbolRate, key.rates));
+        recordKey = key;
+    }
+
+    /**
+     * A device as lent out. Ending a loan waits for its thread to finish any
+     * call into the device, so the pool may reopen the device or lend it again
+     * without a thread still using it.
+     */
+    private abstract static class Loan {
+
+        /**
+         * How often a blocked call is woken again while ending the loan.
+         */
+        private static final long WAKE_MILLIS = 10;
+
+        protected volatile boolean released;
+
+        /**
+         * Calls into the device in progress. Guarded by this.
+         */
+        private int busy;
+
+        /**
+         * Call before using the device.
+         *
+         * @return False if the loan has ended and the device must not be used.
+         */
+        protected synchronized boolean enter() {
+            if (released) {
+                return false;
+            }
+
+            ++busy;
+            return true;
+        }
+
+        /**
+         * Call after using the device, if {@link #enter()} returned true.
+         */
+        protected synchronized void exit() {
+            --busy;
+            notifyAll();
+        }
+
+        /**
+         * Wake a call blocked in the device, such as by stopping it.
+         */
+        protected abstract void wake();
+
+        public boolean isReleased() {
+            return released;
+        }
+
+        /**
+         * End the loan, returning once no call through it is using the device.
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+
+            released = true;
+
+            boolean interrupted = false;
+            while (busy > 0) {
+                wake();
+                try {
+                    wait(WAKE_MILLIS);
+                }
+                catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            wake();
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The player as lent out.
+     */
+    private static class PlayLoan extends Loan implements QueuedPcmSink {
+        private final AudioTrackPcmSink sink;
+
+        PlayLoan(final AudioTrackPcmSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sink.getSampleRate();
+        }
+
+        @Override
+        public void start() throws IOException {
+            if (!enter()) {
+                throw new IOException("Released.");
+            }
+
+            try {
+                sink.start();
+            }
+            finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void write(final short[] buffer, final int off, final int len) throws IOException {
+            if (!enter()) {
+                throw new IOException("Released.");
+            }
+
+            try {
+                sink.write(buffer, off, len);
+            }
+            finally {
+                exit();
+            }
+        }
+
+        @Override
+        public int getQueuedSamples() {
+            return released ? 0 : sink.getQueuedSamples();
+        }
+
+        @Override
+        public void stop() {
+            if (enter()) {
+                try {
+                    sink.stop();
+                }
+                finally {
+                    exit();
+                }
+            }
+        }
+
+        @Override
+        protected void wake() {
+            sink.discard();
+        }
+    }
+
+    /**
+     * The recorder as lent out.
+     */
+    private static class RecordLoan extends Loan implements PcmSource {
+        private final AudioRecordPcmSource source;
+
+        RecordLoan(final AudioRecordPcmSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return source.getSampleRate();
+        }
+
+        @Override
+        public void start() throws IOException {
+            if (!enter()) {
+                throw new IOException("Released.");
+            }
+
+            try {
+                source.start();
+            }
+            finally {
+                exit();
+            }
+        }
+
+        @Override
+        public int read(final short[] buffer, final int off, final int len) throws IOException {
+            if (!enter()) {
+                return -1;
+            }
+
+            try {
+                return source.read(buffer, off, len);
+            }
+            catch (final IOException e) {
+                /* A read woken by the loan ending fails. The loan is simply over. */
+                if (released) {
+                    return -1;
+                }
+                throw e;
+            }
+            finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (enter()) {
+                try {
+                    source.stop();
+                }
+                finally {
+                    exit();
+                }
+            }
+        }
+
+        @Override
+        protected void wake() {
+            source.stop();
+        }
+    }
+}
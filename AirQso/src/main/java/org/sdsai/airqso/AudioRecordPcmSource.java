@@ -0,0 +1,59 @@
+package org.sdsai.airqso;
+
+import android.media.AudioRecord;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} backed by an {@link AudioRecord}.
+ */
+public class AudioRecordPcmSource implements PcmSource {
+
+    private final AudioRecord audioRecord;
+
+    /**
+     * @param audioRecord An initialized record object, such as one returned by {@link Bpsk#findAudioRecord(double)}.
+     */
+    public AudioRecordPcmSource(final AudioRecord audioRecord) {
+        this.audioRecord = audioRecord;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return audioRecord.getSampleRate();
+    }
+
+    @Override
+    public void start() {
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        final int rc = audioRecord.read(buffer, off, len);
+        switch(rc) {
+            case AudioRecord.ERROR_INVALID_OPERATION:
+                throw new IOException("Invalid operation.");
+            case AudioRecord.ERROR_BAD_VALUE:
+                throw new IOException("Bad value.");
+        }
+
+        return rc;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            audioRecord.stop();
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        stop();
+
+        if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.sdsai.airqso;
+
+import android.media.AudioTrack;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSink} backed by an {@link AudioTrack}.
+ */
+public class AudioTrackPcmSink implements QueuedPcmSink {
+
+    private final AudioTrack audioTrack;
+
+    /**
+     * Frames written since the track was last flushed. Like the track's
+     * playback head position, this wraps, so only differences are used.
+     */
+    private volatile int written;
+
+    /**
+     * @param audioTrack An initialized track object, such as one returned by {@link Bpsk#findAudioPlay(double)}.
+     */
+    public AudioTrackPcmSink(final AudioTrack audioTrack) {
+        this.audioTrack = audioTrack;
+        this.written = 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return audioTrack.getSampleRate();
+    }
+
+    @Override
+    public void start() {
+        /* Anything left from before a stop has played out by now or is about to. */
+        written = audioTrack.getPlaybackHeadPosition();
+        audioTrack.play();
+    }
+
+    @Override
+    public void write(final short[] buffer, final int off, final int len) throws IOException {
+        final int rc = audioTrack.write(buffer, off, len);
+        switch(rc) {
+            case AudioTrack.ERROR_INVALID_OPERATION:
+                throw new IOException("Invalid operation.");
+            case AudioTrack.ERROR_BAD_VALUE:
+                throw new IOException("Bad value.");
+        }
+
+        if (rc > 0) {
+            written += rc;
+        }
+    }
+
+    @Override
+    public int getQueuedSamples() {
+        return Math.max(0, written - audioTrack.getPlaybackHeadPosition());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+            audioTrack.stop();
+        }
+    }
+
+    /**
+     * Stop at once, dropping anything written but not yet played, and wake a
+     * blocked {@link #write(short[], int, int)}. The track may be started again.
+     */
+    public synchronized void discard() {
+        if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
+            audioTrack.stop();
+            audioTrack.flush();
+        }
+
+        written = 0;
+    }
+
+    @Override
+    public synchronized void release() {
+        stop();
+
+        if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
+            audioTrack.release();
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package org.sdsai.airqso;
 
-import org.sdsai.dsp.BpskOutputStream;
-import org.sdsai.dsp.BpskInputStream;
-import org.sdsai.dsp.BpskDetector;
 import org.sdsai.dsp.BpskGenerator;
+import org.sdsai.airqso.compress.TextCodec;
+import org.sdsai.airqso.metrics.Counter;
+import org.sdsai.airqso.metrics.Gauge;
+import org.sdsai.airqso.metrics.MetricRegistry;
+import org.sdsai.airqso.metrics.Rate;
+import org.sdsai.airqso.metrics.Timer;
+import org.sdsai.airqso.util.TextQueue;
 
 import android.media.AudioFormat;
 import android.media.AudioManager;
@@ -15,11 +19,15 @@ import android.os.Process;
 import android.provider.MediaStore;
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The interface between Android Hardware and the BPSK classes.
@@ -27,9 +35,14 @@ import java.io.OutputStream;
 public class Bpsk {
 
     /**
-     * We can use almost any sample rate.
+     * Chooses hardware rates to try and the rate to demodulate at.
      */
-    private static int[] SAMPLE_RATES = new int[]{44100, 22050, 11025, 8000};
+    private static final SampleRatePolicy SAMPLE_RATE_POLICY = new SampleRatePolicy();
+
+    /**
+     * The audio configurations known to work, consulted before scanning for one.
+     */
+    private static volatile AudioConfigCache audioConfigCache = new AudioConfigCache();
 
     /**
      * Currently we require 16 bit audio. That is our only choice.
@@ -55,6 +68,36 @@ public class Bpsk {
         MediaRecorder.AudioSource.CAMCORDER,
     };
 
+    /**
+     * The number of samples handed to a {@link PcmSink} at a time.
+     */
+    private static final int FRAME_SIZE = 1024;
+
+    /**
+     * Seconds of audio buffered between capture and demodulation.
+     */
+    private static final int CAPTURE_SECONDS = 2;
+
+    /**
+     * Symbols of audio the record and play devices are asked to buffer, at least.
+     */
+    private static final int BUFFER_SYMBOLS = 10;
+
+    /**
+     * Lowest carrier frequency decoded by {@link #startMultiReceive(double, MultiChannelReceiver.ChannelListener)}.
+     */
+    private static final double MULTI_MIN_HZ = 200;
+
+    /**
+     * Highest carrier frequency decoded by {@link #startMultiReceive(double, MultiChannelReceiver.ChannelListener)}.
+     */
+    private static final double MULTI_MAX_HZ = 3000;
+
+    /**
+     * How far above the noise a carrier must be for {@link #startMultiReceive(double, MultiChannelReceiver.ChannelListener)}.
+     */
+    private static final double MULTI_THRESHOLD_DB = 10;
+
     /**
      * How data is delivered to the user.
      */
@@ -63,15 +106,115 @@ public class Bpsk {
     /**
      * How data is delivered to the transmitter from the user.
      */
-    private InputStream in;
+    private TextQueue in;
+
+    /**
+     * How text is compressed on the air, or null to send it as typed.
+     */
+    private volatile TextCodec codec;
+
+    /**
+     * Where threads started by this object report how they are doing.
+     */
+    private final MetricRegistry metrics;
+
+    /**
+     * Where the speaker and microphone are borrowed from, or null to open them for each thread.
+     */
+    private volatile AudioPool audioPool;
+
+    /**
+     * The squelch threshold given to new receive threads, or NaN for no squelch.
+     */
+    private volatile double squelchThresholdDb;
 
     /**
      * @param out The output stream that handles writes from the thread that will be started.
-     * @param in The input stream that handles transmitting the user's data.
+     * @param in The queue of the user's data to transmit.
      */
-    public Bpsk(final OutputStream out, final InputStream in) {
+    public Bpsk(final OutputStream out, final TextQueue in) {
         this.out = out;
         this.in = in;
+        this.codec = null;
+        this.metrics = new MetricRegistry();
+        this.audioPool = null;
+        this.squelchThresholdDb = SquelchPcmSource.DEFAULT_THRESHOLD_DB;
+    }
+
+    /**
+     * @return The metrics of the threads started by this object. Names start with "rx." or "tx.".
+     */
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set how text is compressed by threads started after this call. Both ends must agree.
+     *
+     * @param codec The codec or null to send text as typed.
+     */
+    public void setCodec(final TextCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return The codec given to new threads, or null.
+     */
+    public TextCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Borrow the speaker and microphone for threads started after this call
+     * from a pool that keeps them open, rather than opening and releasing them
+     * for every thread. The pool is not closed by this object.
+     *
+     * @param audioPool The pool or null.
+     */
+    public void setAudioPool(final AudioPool audioPool) {
+        this.audioPool = audioPool;
+    }
+
+    /**
+     * Set how strong a signal must be for receive threads started after this call to decode it.
+     *
+     * @param thresholdDb How far the signal must stand above the bands beside it,
+     *                    in decibels, or NaN to decode everything.
+     * @see SquelchPcmSource
+     */
+    public void setSquelchThresholdDb(final double thresholdDb) {
+        this.squelchThresholdDb = thresholdDb;
+    }
+
+    /**
+     * @return The squelch threshold given to new receive threads, or NaN if they have none.
+     */
+    public double getSquelchThresholdDb() {
+        return squelchThresholdDb;
+    }
+
+    /**
+     * @return The pool audio is borrowed from, or null.
+     */
+    public AudioPool getAudioPool() {
+        return audioPool;
+    }
+
+    /**
+     * Use a cache that keeps what works across runs, such as one backed by
+     * {@link android.content.SharedPreferences}. By default it is kept in memory.
+     *
+     * @param cache The cache {@link #findAudioRecord(double, int[])} and {@link #findAudioPlay(double, int[])} use.
+     */
+    public static void setAudioConfigCache(final AudioConfigCache cache) {
+        audioConfigCache = cache;
+    }
+
+    /**
+     * @return The cache of audio configurations known to work.
+     */
+    public static AudioConfigCache getAudioConfigCache() {
+        return audioConfigCache;
     }
 
     /**
@@ -86,9 +229,77 @@ public class Bpsk {
     }
 
     public TransmitThread startTransmit(final int hz, final double symbolRate) {
+        return startTransmit(hz, ModeRegistry.bpsk(symbolRate));
+    }
+
+    /**
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode to transmit in.
+     *
+     * @return A started {@link TransmitThread}. The user should call {@link TransmitThread#stopTransmit()}.
+     */
+    public TransmitThread startTransmit(final int hz, final Mode mode) {
+        return startTransmit(hz, mode, false);
+    }
+
+    /**
+     * Start a transmit thread that sends what is queued and then stops, as
+     * {@link TransmitThread#setBurst(boolean)} describes.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode to transmit in.
+     *
+     * @return A started {@link TransmitThread}. It ends by itself once the queue empties.
+     */
+    public TransmitThread startBurst(final int hz, final Mode mode) {
+        return startTransmit(hz, mode, true);
+    }
+
+    private TransmitThread startTransmit(final int hz, final Mode mode, final boolean burst) {
+        final long requested = System.nanoTime();
+
+        final AudioPool pool = audioPool;
+        final TransmitThread transmitThread = pool == null ?
+            new TransmitThread(hz, mode, in) :
+            new TransmitThread(hz, mode, in, pool.takePlay(hz, mode));
+
+        transmitThread.setRequestNanos(requested);
+        transmitThread.setBurst(burst);
+        transmitThread.setCodec(codec);
+        transmitThread.setMetrics(metrics);
+        transmitThread.start();
+
+        return transmitThread;
+    }
+
+    /**
+     * Start a transmit thread that writes to the given {@link PcmSink} instead of the speaker.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param symbolRate The number of symbols per second.
+     * @param pcmSink Where generated audio is written.
+     *
+     * @return A started {@link TransmitThread}. The user should call {@link TransmitThread#stopTransmit()}.
+     */
+    public TransmitThread startTransmit(final int hz, final double symbolRate, final PcmSink pcmSink) {
+        return startTransmit(hz, ModeRegistry.bpsk(symbolRate), pcmSink);
+    }
+
+    /**
+     * Start a transmit thread that writes to the given {@link PcmSink} instead of the speaker.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode to transmit in.
+     * @param pcmSink Where generated audio is written.
+     *
+     * @return A started {@link TransmitThread}. The user should call {@link TransmitThread#stopTransmit()}.
+     */
+    public TransmitThread startTransmit(final int hz, final Mode mode, final PcmSink pcmSink) {
 
-        final TransmitThread transmitThread = new TransmitThread(hz, symbolRate, in);
+        final TransmitThread transmitThread = new TransmitThread(hz, mode, in, pcmSink);
 
+        transmitThread.setCodec(codec);
+        transmitThread.setMetrics(metrics);
         transmitThread.start();
 
         return transmitThread;
@@ -116,14 +327,119 @@ public class Bpsk {
     public ReceiveThread startReceive(
             final int hz,
             final double symbolRate) {
+        return startReceive(hz, ModeRegistry.bpsk(symbolRate));
+    }
+
+    /**
+     * Start a receive thread that receives from an {@link AudioRecord} object and writes to out.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode to receive.
+     *
+     * @return A started {@link ReceiveThread}. The user should call {@link ReceiveThread#stopReceive()}
+     */
+    public ReceiveThread startReceive(
+            final int hz,
+            final Mode mode) {
+        final long requested = System.nanoTime();
+
+        final AudioPool pool = audioPool;
+        final ReceiveThread r = pool == null ?
+            new ReceiveThread(hz, mode, out) :
+            new ReceiveThread(hz, mode, out, pool.takeRecord(hz, mode), true);
+
+        r.setRequestNanos(requested);
+        r.setCodec(codec);
+        r.setSquelchThresholdDb(squelchThresholdDb);
+        r.setMetrics(metrics);
+        r.start();
+
+        return r;
+    }
+
+    /**
+     * Start a receive thread that reads from the given {@link PcmSource} instead of the microphone.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param symbolRate The number of symbols per second.
+     * @param pcmSource Where audio is read from.
+     *
+     * @return A started {@link ReceiveThread}. The user should call {@link ReceiveThread#stopReceive()}
+     */
+    public ReceiveThread startReceive(
+            final int hz,
+            final double symbolRate,
+            final PcmSource pcmSource) {
+        return startReceive(hz, ModeRegistry.bpsk(symbolRate), pcmSource);
+    }
+
+    /**
+     * Start a receive thread that reads from the given {@link PcmSource} instead of the microphone.
+     *
+     * @param hz The audio frequency in hertz.
+     * @param mode The mode to receive.
+     * @param pcmSource Where audio is read from.
+     *
+     * @return A started {@link ReceiveThread}. The user should call {@link ReceiveThread#stopReceive()}
+     */
+    public ReceiveThread startReceive(
+            final int hz,
+            final Mode mode,
+            final PcmSource pcmSource) {
+
+        final ReceiveThread r = new ReceiveThread(hz, mode, out, pcmSource);
+
+        r.setCodec(codec);
+        r.setSquelchThresholdDb(squelchThresholdDb);
+        r.setMetrics(metrics);
+        r.start();
 
-        final ReceiveThread r = new ReceiveThread(hz, symbolRate, out);
+        return r;
+    }
+
+    /**
+     * Decode every signal between {@link #MULTI_MIN_HZ} and {@link #MULTI_MAX_HZ} heard by the microphone.
+     *
+     * @param symbolRate The number of symbols per second.
+     * @param listener Told as channels are found and lost.
+     *
+     * @return A started {@link MultiChannelReceiver}. The user should call {@link MultiChannelReceiver#stopReceive()}.
+     */
+    public static MultiChannelReceiver startMultiReceive(
+            final double symbolRate,
+            final MultiChannelReceiver.ChannelListener listener) {
+
+        final MultiChannelReceiver r = new MultiChannelReceiver(
+                bufferedSource(findAudioRecord(symbolRate), symbolRate),
+                symbolRate,
+                MULTI_MIN_HZ,
+                MULTI_MAX_HZ,
+                MULTI_THRESHOLD_DB,
+                Runtime.getRuntime().availableProcessors() * 2,
+                listener);
 
         r.start();
 
         return r;
     }
 
+    /**
+     * Capture from the given record object on its own thread.
+     *
+     * @param audioRecord The record object to capture from.
+     * @param symbolRate The number of symbols per second, used to size reads.
+     *
+     * @return A source buffering {@link #CAPTURE_SECONDS} of audio.
+     */
+    private static BufferedPcmSource bufferedSource(final AudioRecord audioRecord, final double symbolRate) {
+        final int sampleRate = audioRecord.getSampleRate();
+
+        return new BufferedPcmSource(
+            new AudioRecordPcmSource(audioRecord),
+            (int)(sampleRate / symbolRate),
+            sampleRate * CAPTURE_SECONDS);
+    }
+
     /**
      * Attempt to find a combination of record parameters that works on a particular device.
      *
@@ -133,8 +449,48 @@ public class Bpsk {
      * @throws RuntimeException on no {@link AudioRecord} option found.
      */
     public static AudioRecord findAudioRecord(final double symbolRate) {
+        return findAudioRecord(symbolRate, SampleRatePolicy.RATES);
+    }
+
+    /**
+     * Attempt to find a combination of record parameters that works on a particular device.
+     *
+     * The first rate in rates that the {@link AudioConfigCache} does not know to
+     * be unsupported is opened as the cache describes. If the cache knows nothing
+     * of that rate, or what it describes no longer opens, every combination of
+     * the rates not known to be unsupported is tried and the cache is told what worked.
+     *
+     * @param symbolRate The PSK symbol rate, used to allocate a suitable buffer.
+     * @param rates The sample rates to try, in order.
+     *
+     * @return A valid {@link AudioRecord}. If none is found, a {@link RuntimeException} is thrown.
+     * @throws RuntimeException on no {@link AudioRecord} option found.
+     */
+    public static AudioRecord findAudioRecord(final double symbolRate, final int[] rates) {
         final String TAG = "findAudioRecord";
-        for (int rate : SAMPLE_RATES) {
+        final AudioConfigCache cache = audioConfigCache;
+
+        for (int rate : rates) {
+            if (cache.isUnsupported(AudioConfigCache.RECORD, rate)) {
+                continue;
+            }
+
+            final AudioConfigCache.Config config = cache.get(AudioConfigCache.RECORD, rate);
+            if (config != null) {
+                final AudioRecord recorder = openAudioRecord(config, symbolRate);
+                if (recorder != null) {
+                    Log.d(TAG, "Cached rate " + rate + "Hz, source: " + config.getSource());
+                    return recorder;
+                }
+
+                Log.i(TAG, "Cached rate " + rate + "Hz no longer opens. Scanning.");
+                cache.remove(AudioConfigCache.RECORD, rate);
+            }
+            break;
+        }
+
+        final List<Integer> failed = new ArrayList<Integer>();
+        for (int rate : scanRates(cache, AudioConfigCache.RECORD, rates)) {
             for (short audioFormat : ENCODINGS) {
                 for (short channelConfig : IN_CHANNELS) {
                     for (short audioSource : SOURCES) {
@@ -143,21 +499,18 @@ public class Bpsk {
                             final int bufferSize = AudioRecord.getMinBufferSize(rate, channelConfig, audioFormat);
 
                             if (bufferSize != AudioRecord.ERROR_BAD_VALUE) {
+                                final AudioConfigCache.Config config = new AudioConfigCache.Config(
+                                    rate,
+                                    audioSource,
+                                    audioFormat,
+                                    channelConfig,
+                                    bufferSize);
 
-                                /* This is the only real custom code. Wait for about 10 symbols to
-                                 * come by at the typical PSK 32 speed. */
-                                final int otherBufferSize = (int)(rate / symbolRate * 10);
-
-                                // check if we can instantiate and have a success
-                                final AudioRecord recorder = new AudioRecord(
-                                        audioSource,
-                                        rate,
-                                        channelConfig,
-                                        audioFormat,
-                                        Math.max(bufferSize, otherBufferSize));
+                                final AudioRecord recorder = openAudioRecord(config, symbolRate);
 
-                                if (recorder.getState() == AudioRecord.STATE_INITIALIZED) {
+                                if (recorder != null) {
                                     Log.d(TAG, "Chose rate " + rate + "Hz, bits: " + audioFormat + ", channel: " + channelConfig);
+                                    remember(cache, AudioConfigCache.RECORD, config, failed);
                                     return recorder;
                                 }
                             }
@@ -167,10 +520,41 @@ public class Bpsk {
                     }
                 }
             }
+            failed.add(rate);
         }
         throw new RuntimeException("Failed to find recording resource.");
     }
 
+    /**
+     * @param config The configuration to open.
+     * @param symbolRate The PSK symbol rate, used to allocate a suitable buffer.
+     *
+     * @return An initialized {@link AudioRecord}, or null if config did not open.
+     */
+    private static AudioRecord openAudioRecord(final AudioConfigCache.Config config, final double symbolRate) {
+        final int rate = config.getRate();
+
+        try {
+            final AudioRecord recorder = new AudioRecord(
+                    config.getSource(),
+                    rate,
+                    config.getChannel(),
+                    config.getEncoding(),
+                    bufferSize(config.getMinBufferSize(), rate, symbolRate));
+
+            if (recorder.getState() == AudioRecord.STATE_INITIALIZED) {
+                return recorder;
+            }
+
+            recorder.release();
+        }
+        catch (final Exception e) {
+            Log.e("openAudioRecord", rate + "Exception.", e);
+        }
+
+        return null;
+    }
+
     /**
      * Attempt to find a combination of record parameters that works on a particular device.
      *
@@ -180,8 +564,44 @@ public class Bpsk {
      * @throws RuntimeException on no {@link AudioTrack} option found.
      */
     public static AudioTrack findAudioPlay(final double symbolRate) {
+        return findAudioPlay(symbolRate, SampleRatePolicy.RATES);
+    }
+
+    /**
+     * Attempt to find a combination of playback parameters that works on a particular device.
+     * The {@link AudioConfigCache} is used as by {@link #findAudioRecord(double, int[])}.
+     *
+     * @param symbolRate The PSK symbol rate, used to allocate a suitable buffer.
+     * @param rates The sample rates to try, in order.
+     *
+     * @return A valid {@link AudioTrack}. If none is found, a {@link RuntimeException} is thrown.
+     * @throws RuntimeException on no {@link AudioTrack} option found.
+     */
+    public static AudioTrack findAudioPlay(final double symbolRate, final int[] rates) {
         final String TAG = "findAudioPlay";
-        for (int rate : SAMPLE_RATES) {
+        final AudioConfigCache cache = audioConfigCache;
+
+        for (int rate : rates) {
+            if (cache.isUnsupported(AudioConfigCache.PLAY, rate)) {
+                continue;
+            }
+
+            final AudioConfigCache.Config config = cache.get(AudioConfigCache.PLAY, rate);
+            if (config != null) {
+                final AudioTrack play = openAudioPlay(config, symbolRate);
+                if (play != null) {
+                    Log.d(TAG, "Cached rate " + rate + "Hz");
+                    return play;
+                }
+
+                Log.i(TAG, "Cached rate " + rate + "Hz no longer opens. Scanning.");
+                cache.remove(AudioConfigCache.PLAY, rate);
+            }
+            break;
+        }
+
+        final List<Integer> failed = new ArrayList<Integer>();
+        for (int rate : scanRates(cache, AudioConfigCache.PLAY, rates)) {
             for (short audioFormat : ENCODINGS) {
                 for (short channelConfig : OUT_CHANNELS) {
                     try {
@@ -189,22 +609,18 @@ public class Bpsk {
                         final int bufferSize = AudioTrack.getMinBufferSize(rate, channelConfig, audioFormat);
 
                         if (bufferSize != AudioTrack.ERROR_BAD_VALUE) {
+                            final AudioConfigCache.Config config = new AudioConfigCache.Config(
+                                rate,
+                                AudioManager.STREAM_MUSIC,
+                                audioFormat,
+                                channelConfig,
+                                bufferSize);
 
-                            /* This is the only real custom code. Wait for about 10 symbols to
-                             * come by at the typical PSK 32 speed. */
-                            final int otherBufferSize = (int)(rate / symbolRate * 2 * 10);
-
-                            // check if we can instantiate and have a success
-                            final AudioTrack play = new AudioTrack(
-                                    AudioManager.STREAM_MUSIC,
-                                    rate,
-                                    channelConfig,
-                                    audioFormat,
-                                    bufferSize,
-                                    AudioTrack.MODE_STREAM);
+                            final AudioTrack play = openAudioPlay(config, symbolRate);
 
-                            if (play.getState() == AudioTrack.STATE_INITIALIZED) {
+                            if (play != null) {
                                 Log.d(TAG, "Chose rate " + rate + "Hz, bits: " + audioFormat + ", channel: " + channelConfig);
+                                remember(cache, AudioConfigCache.PLAY, config, failed);
                                 return play;
                             }
                         }
@@ -213,93 +629,452 @@ public class Bpsk {
                     }
                 }
             }
+            failed.add(rate);
         }
 
         throw new RuntimeException("Failed to find playback resource.");
     }
 
-    public static class TransmitThread extends Thread {
-        private BpskGenerator bpskGenerator;
-        private InputStream   in;
-        private AudioTrack audioTrack;
-        private boolean running;
-
-        public TransmitThread(final int hz, final double symbolRate, final InputStream in)
-        {
-            this.running = false;
-            this.audioTrack = findAudioPlay(symbolRate);
-            this.bpskGenerator = new BpskGenerator(hz, audioTrack.getSampleRate(), symbolRate);
-            this.in = in;
-        }
-
-        @Override
-        public void run() {
-            try {
-                final BpskOutputStream bpskOutputStream = new BpskOutputStream(new OutputStream(){
-                    @Override
-                    public void write(int i) throws IOException {
-                        throw new UnsupportedOperationException(
-                            "Cannot write single byte to audio output stream.");
-                    }
-                    @Override
-                    public void write(byte[] b, int off, int len) throws IOException {
-                        /* For raw-writing, swap the byte order. */
-                        for (int i = off; i < off+len; i+=2){
-                            final byte tmp = b[i];
-                            b[i] = b[i+1];
-                            b[i+1] = tmp;
-                        }
-                        audioTrack.write(b, off, len);
-                    }
-                    @Override
-                    public void write(byte[] b) throws IOException {
-                        write(b, 0, b.length);
-                    }
-                }, bpskGenerator);
-
-                running = true;
-                audioTrack.play();
-                while (running) {
-                    final byte[] buffer = new byte[100];
-
-                    if (in.available() == 0) {
-                        bpskOutputStream.preamble(20);
-                    }
-                    else {
-                        final int len = in.read(buffer);
-
-                        bpskOutputStream.write(buffer, 0, len);
-                   }
-                }
-
-                bpskOutputStream.postamble(20);
+    /**
+     * @param config The configuration to open.
+     * @param symbolRate The PSK symbol rate, used to allocate a suitable buffer.
+     *
+     * @return An initialized {@link AudioTrack}, or null if config did not open.
+     */
+    private static AudioTrack openAudioPlay(final AudioConfigCache.Config config, final double symbolRate) {
+        final int rate = config.getRate();
+
+        try {
+            final AudioTrack play = new AudioTrack(
+                    config.getSource(),
+                    rate,
+                    config.getChannel(),
+                    config.getEncoding(),
+                    bufferSize(config.getMinBufferSize(), rate, symbolRate),
+                    AudioTrack.MODE_STREAM);
+
+            if (play.getState() == AudioTrack.STATE_INITIALIZED) {
+                return play;
             }
-            catch (final IOException e) {
 
-            }
-            finally {
-                cleanup();
-            }
+            play.release();
+        }
+        catch (final Exception e) {
+            Log.e("openAudioPlay", rate + "Exception.", e);
         }
 
-        /**
-         * Release all audio resources to the OS quickly.
-         */
-        public synchronized void cleanup() {
-            if (audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
-                audioTrack.stop();
-            }
+        return null;
+    }
 
-            if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
-                audioTrack.release();
+    /**
+     * @param cache The cache.
+     * @param direction {@link AudioConfigCache#RECORD} or {@link AudioConfigCache#PLAY}.
+     * @param rates The sample rates asked for, in order.
+     *
+     * @return The rates to probe: those the cache does not know to be unsupported,
+     *         or all of them if it knows every one to be, as after the device has changed.
+     */
+    static int[] scanRates(final AudioConfigCache cache, final String direction, final int[] rates) {
+        final int[] scan = new int[rates.length];
+        int n = 0;
+        for (final int rate : rates) {
+            if (!cache.isUnsupported(direction, rate)) {
+                scan[n++] = rate;
             }
         }
 
-        public void stopTransmit() {
+        if (n == 0) {
+            return rates;
+        }
 
-            cleanup();
+        final int[] result = new int[n];
+        System.arraycopy(scan, 0, result, 0, n);
 
-            running = false;
+        return result;
+    }
+
+    /**
+     * This is the only real custom code. Buffer about {@link #BUFFER_SYMBOLS}
+     * symbols so that audio keeps flowing while the other thread is busy.
+     *
+     * @param minBufferSize The smallest buffer the device accepts, in bytes.
+     * @param rate The sample rate.
+     * @param symbolRate The PSK symbol rate.
+     *
+     * @return The buffer size to ask for, in bytes of 16 bit mono audio.
+     */
+    static int bufferSize(final int minBufferSize, final int rate, final double symbolRate) {
+        return Math.max(minBufferSize, (int) Math.ceil(rate / symbolRate * BUFFER_SYMBOLS) * 2);
+    }
+
+    /**
+     * Record the outcome of a scan. Rates that failed before one worked are
+     * noted as unsupported. Had nothing worked, the device may only have been
+     * busy, so nothing is noted then.
+     */
+    private static void remember(
+        final AudioConfigCache cache,
+        final String direction,
+        final AudioConfigCache.Config config,
+        final List<Integer> failed
+    )
+    {
+        for (final int rate : failed) {
+            cache.putUnsupported(direction, rate);
+        }
+
+        cache.put(direction, config);
+    }
+
+    public static class TransmitThread extends Thread {
+
+        /**
+         * Idle symbols sent before the text of a burst, for the receiver to lock on.
+         */
+        private static final int BURST_PREAMBLE = 32;
+
+        /**
+         * Idle symbols a burst waits for more text before ending.
+         */
+        private static final int BURST_HANG = 16;
+
+        /**
+         * Symbols that end a transmission.
+         */
+        private static final int POSTAMBLE = 20;
+
+        /**
+         * How often waiting for playback to finish checks for {@link #stopTransmit()}.
+         */
+        private static final long DRAIN_STEP_MILLIS = 20;
+
+        /**
+         * The least audio kept queued while idle, however short a symbol is, so the sink does not run dry.
+         */
+        private static final long MIN_LEAD_NANOS = 40000000L;
+
+        private final int hz;
+        private final Mode mode;
+        private TextQueue     in;
+        private PcmSink pcmSink;
+
+        /**
+         * The sink as given, if it can tell how much audio it holds, or null.
+         */
+        private final QueuedPcmSink queued;
+        private volatile boolean running;
+        private TextCodec codec;
+        private final MeteredPcmSink meter;
+
+        /**
+         * The time spent modulating each character or idle symbol, not counting waiting on the sink.
+         */
+        private final Timer work;
+
+        private final Counter characters;
+
+        /**
+         * Keypress to air latency of the most recent character sent after idling.
+         */
+        private volatile long lastLatencyNanos;
+
+        /**
+         * The largest value {@link #lastLatencyNanos} has had.
+         */
+        private volatile long maxLatencyNanos;
+
+        /**
+         * When transmitting was asked for, which time to first audio is measured from.
+         */
+        private long requestNanos;
+
+        /**
+         * If true, stop once the queue has emptied.
+         */
+        private boolean burst;
+
+        public TransmitThread(final int hz, final double symbolRate, final TextQueue in)
+        {
+            this(hz, ModeRegistry.bpsk(symbolRate), in);
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param mode The mode to transmit in.
+         * @param in The user's data to transmit.
+         */
+        public TransmitThread(final int hz, final Mode mode, final TextQueue in)
+        {
+            this(
+                hz,
+                mode,
+                in,
+                new AudioTrackPcmSink(findAudioPlay(
+                    mode.getSymbolRate(),
+                    SAMPLE_RATE_POLICY.hardwareRates(hz, mode.getSymbolRate()))));
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param symbolRate The number of symbols per second.
+         * @param in The user's data to transmit.
+         * @param pcmSink Where generated audio is written. This is released when the thread ends.
+         */
+        public TransmitThread(final int hz, final double symbolRate, final TextQueue in, final PcmSink pcmSink)
+        {
+            this(hz, ModeRegistry.bpsk(symbolRate), in, pcmSink);
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param mode The mode to transmit in.
+         * @param in The user's data to transmit.
+         * @param pcmSink Where generated audio is written. This is released when the thread ends.
+         */
+        public TransmitThread(final int hz, final Mode mode, final TextQueue in, final PcmSink pcmSink)
+        {
+            this.running = false;
+            this.meter = new MeteredPcmSink(pcmSink);
+            this.pcmSink = meter;
+            this.queued = pcmSink instanceof QueuedPcmSink ? (QueuedPcmSink) pcmSink : null;
+            this.work = new Timer();
+            this.characters = new Counter();
+            this.hz = hz;
+            this.mode = mode;
+            this.in = in;
+            this.codec = null;
+            this.lastLatencyNanos = 0;
+            this.maxLatencyNanos = 0;
+            this.requestNanos = System.nanoTime();
+            this.burst = false;
+        }
+
+        /**
+         * Send in bursts, as with push to talk. A burst starts with a preamble,
+         * sends until the queue has stayed empty for {@link #BURST_HANG} symbols,
+         * then sends the postamble, waits for it to be played, and ends the thread.
+         *
+         * @param burst If true, end after the queue empties. Call this before {@link #start()}.
+         */
+        public void setBurst(final boolean burst) {
+            this.burst = burst;
+        }
+
+        /**
+         * @param nanos When transmitting was asked for, by {@link System#nanoTime()}, if that was
+         *              before this thread was constructed and its audio opened. Call this before {@link #start()}.
+         */
+        public void setRequestNanos(final long nanos) {
+            this.requestNanos = nanos;
+        }
+
+        /**
+         * @return Nanoseconds from transmitting being asked for to the first audio
+         *         being handed to the sink, or -1 if none has been yet.
+         */
+        public long getTimeToFirstAudioNanos() {
+            final long first = meter.getFirstWriteNanos();
+            return first == 0 ? -1 : first - requestNanos;
+        }
+
+        /**
+         * @param codec How to compress text, or null to send it as typed. Call this before {@link #start()}.
+         */
+        public void setCodec(final TextCodec codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Report this thread's metrics to registry under names starting with "tx.".
+         *
+         * @param registry The registry.
+         */
+        public void setMetrics(final MetricRegistry registry) {
+            registry.register("tx.samples", meter.getSamples());
+            registry.register("tx.dsp", work);
+            registry.register("tx.characters", characters);
+            registry.register("tx.characters_per_second", new Rate(characters));
+            registry.register("tx.queued", new Gauge() {
+                @Override
+                public double get() {
+                    return in.size();
+                }
+            });
+            registry.register("tx.latency_ms", new Gauge() {
+                @Override
+                public double get() {
+                    return lastLatencyNanos / 1e6;
+                }
+            });
+            registry.register("tx.first_audio_ms", new Gauge() {
+                @Override
+                public double get() {
+                    return getTimeToFirstAudioNanos() / 1e6;
+                }
+            });
+        }
+
+        /**
+         * Send characters as they arrive and fill the time between them with idle symbols.
+         *
+         * Idle is generated one symbol at a time and the sink blocks once its buffer is full,
+         * so the queue is checked about once per symbol period without spinning. Characters
+         * are taken one at a time so that text not yet sent may still be edited.
+         *
+         * A character is heard only after all the audio queued ahead of it, which with a
+         * full {@link AudioTrack} buffer is ten symbols or more. If the sink is a
+         * {@link QueuedPcmSink}, idle waits for text instead until no more than a symbol,
+         * or {@link #MIN_LEAD_NANOS}, is left queued, and only then adds another symbol.
+         */
+        @Override
+        public void run() {
+            try {
+                final ModemOutputStream modulator = mode.newOutputStream(
+                    new PcmOutputStream(pcmSink, FRAME_SIZE),
+                    hz,
+                    pcmSink.getSampleRate());
+
+                final ModemOutputStream modemOutputStream = codec == null ? modulator : codec.compress(modulator);
+
+                final byte[] buffer = new byte[1];
+                final long symbolNanos = (long) (1e9 / mode.getSymbolRate());
+                final long leadNanos = Math.max(symbolNanos, MIN_LEAD_NANOS);
+                boolean idle = true;
+                int hang = 0;
+
+                running = true;
+                pcmSink.start();
+
+                if (burst) {
+                    modemOutputStream.preamble(BURST_PREAMBLE);
+                }
+
+                while (running) {
+                    int len = in.drainTo(buffer, 0, buffer.length);
+
+                    if (len == 0 && queued != null) {
+                        final long wait = queuedNanos() - leadNanos;
+                        if (wait > 0) {
+                            final int c = in.poll(wait, TimeUnit.NANOSECONDS);
+                            if (c != -1) {
+                                buffer[0] = (byte) (c < 256 ? c : '?');
+                                len = 1;
+                            }
+                        }
+                    }
+
+                    final long start = System.nanoTime();
+                    final long waited = meter.getWriteNanos();
+
+                    if (len == 0) {
+                        if (burst && ++hang > BURST_HANG) {
+                            break;
+                        }
+
+                        modemOutputStream.preamble(1);
+                        idle = true;
+                    }
+                    else {
+                        hang = 0;
+
+                        if (idle) {
+                            recordLatency(start - in.getPendingSince() + queuedNanos());
+                            idle = false;
+                        }
+
+                        modemOutputStream.write(buffer, 0, len);
+                        characters.add(len);
+                    }
+
+                    work.record(System.nanoTime() - start - (meter.getWriteNanos() - waited));
+                }
+
+                modemOutputStream.postamble(POSTAMBLE);
+
+                if (running) {
+                    drain();
+                }
+            }
+            catch (final IOException e) {
+
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                cleanup();
+            }
+        }
+
+        /**
+         * @return How long the audio written but not yet played will take to play, or 0 if the sink cannot tell.
+         */
+        private long queuedNanos() {
+            return queued == null ? 0 : queued.getQueuedSamples() * 1000000000L / pcmSink.getSampleRate();
+        }
+
+        /**
+         * Wait, while running, until everything written should have been played.
+         * Playback is taken to have started with the first write and kept pace since.
+         */
+        private void drain() {
+            final long first = meter.getFirstWriteNanos();
+            if (first == 0) {
+                return;
+            }
+
+            final long end = first + meter.getSamples().get() * 1000000000L / pcmSink.getSampleRate();
+
+            try {
+                while (running) {
+                    final long wait = end - System.nanoTime();
+                    if (wait <= 0) {
+                        return;
+                    }
+
+                    Thread.sleep(Math.min(wait / 1000000 + 1, DRAIN_STEP_MILLIS));
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void recordLatency(final long latency) {
+            lastLatencyNanos = latency;
+            if (latency > maxLatencyNanos) {
+                maxLatencyNanos = latency;
+            }
+        }
+
+        /**
+         * @return Nanoseconds from the most recent character queued after an idle period
+         *         to the sink starting to play it. If the sink is not a {@link QueuedPcmSink},
+         *         this is only until the modulator started sending it.
+         */
+        public long getLastLatencyNanos() {
+            return lastLatencyNanos;
+        }
+
+        /**
+         * @return The largest value {@link #getLastLatencyNanos()} has returned.
+         */
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        /**
+         * Release all audio resources to the OS quickly.
+         */
+        public synchronized void cleanup() {
+            pcmSink.release();
+        }
+
+        public void stopTransmit() {
+
+            cleanup();
+
+            running = false;
 
             try {
                 this.join();
@@ -311,32 +1086,420 @@ public class Bpsk {
     }
 
     public static class ReceiveThread extends Thread {
-        private boolean running;
+        private volatile boolean running;
         final private OutputStream out;
-        final private AudioRecord audioRecord;
-        final private BpskDetector bpskDetector;
+        final private PcmSource pcmSource;
+        final private TappedPcmSource tap;
+        final private AfcPcmSource afc;
+        final private int hz;
+        final private Mode mode;
+        private TextCodec codec;
+        final private MeteredPcmSource meter;
+        final private GatedPcmSource gate;
+        final private SquelchPcmSource squelch;
+        final private Counter characters;
+
+        /**
+         * The recording in progress, or null. Guarded by this.
+         */
+        private WavRecorder recorder;
+
+        /**
+         * When receiving was asked for, which time to first sample is measured from.
+         */
+        private long requestNanos;
+
+        /**
+         * The number of samples read from the source at a time.
+         */
+        final private int frameSize;
 
+        /**
+         * The most decoded characters held before they are handed to the user.
+         */
+        private static final int BATCH_SIZE = 64;
+
+        /**
+         * How far from the requested frequency to look for a carrier.
+         */
+        private static final double AFC_SEARCH_HZ = 50;
+
+        /**
+         * How far above the noise a carrier must be to lock onto it.
+         */
+        private static final double AFC_THRESHOLD_DB = 10;
+
+        /**
+         * Receive from the microphone.
+         *
+         * Capture runs on its own thread and is buffered for {@link Bpsk#CAPTURE_SECONDS}
+         * so that it never waits on demodulation.
+         */
         public ReceiveThread(final int hz, final double symbolRate, final OutputStream out) {
+            this(hz, ModeRegistry.bpsk(symbolRate), out);
+        }
+
+        /**
+         * Receive from the microphone.
+         *
+         * @param hz The audio frequency in hertz.
+         * @param mode The mode to receive.
+         * @param out Where decoded data is written.
+         */
+        public ReceiveThread(final int hz, final Mode mode, final OutputStream out) {
+            this(
+                hz,
+                mode,
+                out,
+                new TappedPcmSource(new AudioRecordPcmSource(findAudioRecord(
+                    mode.getSymbolRate(),
+                    SAMPLE_RATE_POLICY.hardwareRates(hz, mode.getSymbolRate())))),
+                true);
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param symbolRate The number of symbols per second.
+         * @param out Where decoded data is written.
+         * @param pcmSource Where audio is read from. This is released when the thread ends.
+         */
+        public ReceiveThread(final int hz, final double symbolRate, final OutputStream out, final PcmSource pcmSource) {
+            this(hz, ModeRegistry.bpsk(symbolRate), out, pcmSource);
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param mode The mode to receive.
+         * @param out Where decoded data is written.
+         * @param pcmSource Where audio is read from. This is released when the thread ends.
+         */
+        public ReceiveThread(final int hz, final Mode mode, final OutputStream out, final PcmSource pcmSource) {
+            this(hz, mode, out, pcmSource, false);
+        }
+
+        /**
+         * @param hz The audio frequency in hertz.
+         * @param mode The mode to receive.
+         * @param out Where decoded data is written.
+         * @param pcmSource Where audio is read from. This is released when the thread ends.
+         * @param capture If true, read pcmSource on its own capture thread, as is done for the microphone.
+         */
+        public ReceiveThread(
+            final int hz,
+            final Mode mode,
+            final OutputStream out,
+            final PcmSource pcmSource,
+            final boolean capture
+        ) {
+            this(hz, mode, out, new TappedPcmSource(pcmSource), capture);
+        }
+
+        /**
+         * @param tap The source, which listeners are attached to.
+         * @param capture If true, read tap on its own capture thread.
+         */
+        private ReceiveThread(
+            final int hz,
+            final Mode mode,
+            final OutputStream out,
+            final TappedPcmSource tap,
+            final boolean capture
+        ) {
+            final double symbolRate = mode.getSymbolRate();
+            final int captureRate = tap.getSampleRate();
+            final int sampleRate = SAMPLE_RATE_POLICY.processingRate(captureRate, hz, symbolRate);
+
             this.running = false;
+            this.requestNanos = System.nanoTime();
             this.out = out;
-            this.audioRecord = findAudioRecord(symbolRate);
-            this.bpskDetector = new BpskDetector(hz, audioRecord.getSampleRate(), symbolRate);
+            this.tap = tap;
+            this.hz = hz;
+            this.mode = mode;
+            this.codec = null;
+
+            /* About one symbol's worth of audio per read. */
+            this.frameSize = (int)(sampleRate / symbolRate);
+
+            final int captureFrameSize = (int)(captureRate / symbolRate);
+
+            this.pcmSource = capture?
+                new BufferedPcmSource(tap, captureFrameSize, captureRate * CAPTURE_SECONDS) :
+                tap;
+
+            this.meter = new MeteredPcmSource(pcmSource);
+            this.characters = new Counter();
+
+            /* Muting here leaves capture and its metrics running and skips all of the DSP. */
+            this.gate = new GatedPcmSource(meter);
+
+            /* Demodulate at the lowest rate that carries the signal, whatever the hardware captured at. */
+            final PcmSource dspSource = sampleRate < captureRate ?
+                new ResamplingPcmSource(
+                    gate,
+                    sampleRate,
+                    SampleRatePolicy.passband(hz, symbolRate),
+                    captureFrameSize) :
+                gate;
+
+            /* The carrier tracker squares away BPSK modulation, which leaves QPSK still modulated. */
+            final boolean track = mode instanceof BpskMode;
 
+            /* Nothing from here on runs while the band is quiet. */
+            this.squelch = new SquelchPcmSource(dspSource, hz, symbolRate, track ? AFC_SEARCH_HZ : 0);
+
+            this.afc = new AfcPcmSource(squelch, hz, symbolRate, AFC_SEARCH_HZ, AFC_THRESHOLD_DB);
+            afc.setEnabled(track);
         }
 
         /**
-         * Release all the audio resources back to the OS quickly.
+         * @param nanos When receiving was asked for, by {@link System#nanoTime()}, if that was
+         *              before this thread was constructed and its audio opened. Call this before {@link #start()}.
          */
-        private synchronized void cleanup() {
-            if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-                audioRecord.stop();
+        public void setRequestNanos(final long nanos) {
+            this.requestNanos = nanos;
+        }
+
+        /**
+         * @return Nanoseconds from receiving being asked for to the first audio
+         *         reaching the demodulator, or -1 if none has been yet.
+         */
+        public long getTimeToFirstSampleNanos() {
+            final long first = meter.getFirstSampleNanos();
+            return first == 0 ? -1 : first - requestNanos;
+        }
+
+        /**
+         * @param codec How received text was compressed, or null if it was not. Call this before {@link #start()}.
+         */
+        public void setCodec(final TextCodec codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Report this thread's metrics to registry under names starting with "rx.".
+         *
+         * The DSP time is everything done with each buffer of captured audio,
+         * from resampling to handing decoded text over.
+         *
+         * @param registry The registry.
+         */
+        public void setMetrics(final MetricRegistry registry) {
+            registry.register("rx.samples", meter.getSamples());
+            registry.register("rx.dsp", meter.getWork());
+            registry.register("rx.characters", characters);
+            registry.register("rx.characters_per_second", new Rate(characters));
+            registry.register("rx.buffer_fill", new Gauge() {
+                @Override
+                public double get() {
+                    return pcmSource instanceof BufferedPcmSource ?
+                        ((BufferedPcmSource) pcmSource).getFill() :
+                        0;
+                }
+            });
+            registry.register("rx.overruns", new Gauge() {
+                @Override
+                public double get() {
+                    return getOverruns();
+                }
+            });
+            registry.register("rx.underruns", new Gauge() {
+                @Override
+                public double get() {
+                    return getUnderruns();
+                }
+            });
+            registry.register("rx.snr_db", new Gauge() {
+                @Override
+                public double get() {
+                    return afc.getSnrDb();
+                }
+            });
+            registry.register("rx.frequency_offset_hz", new Gauge() {
+                @Override
+                public double get() {
+                    return afc.getFrequencyOffset();
+                }
+            });
+            registry.register("rx.muted_samples", gate.getMutedSamples());
+            registry.register("rx.squelched_samples", squelch.getSquelchedSamples());
+            registry.register("rx.squelch_open", new Gauge() {
+                @Override
+                public double get() {
+                    return squelch.isOpen() ? 1 : 0;
+                }
+            });
+            registry.register("rx.squelch_ratio_db", new Gauge() {
+                @Override
+                public double get() {
+                    return squelch.getRatioDb();
+                }
+            });
+            registry.register("rx.resume_ms", new Gauge() {
+                @Override
+                public double get() {
+                    return gate.getLastResumeNanos() / 1e6;
+                }
+            });
+            registry.register("rx.first_sample_ms", new Gauge() {
+                @Override
+                public double get() {
+                    return getTimeToFirstSampleNanos() / 1e6;
+                }
+            });
+            registry.register("rx.symbol_rate_error_ppm", new Gauge() {
+                @Override
+                public double get() {
+                    return meter.getRateErrorPpm();
+                }
+            });
+        }
+
+        /**
+         * Stop decoding, such as while this station transmits, without stopping capture.
+         * Decoding resumes within about a symbol of unmuting.
+         *
+         * @param muted If true, throw received audio away.
+         */
+        public void setMuted(final boolean muted) {
+            gate.setMuted(muted);
+        }
+
+        /**
+         * @return True while received audio is thrown away.
+         */
+        public boolean isMuted() {
+            return gate.isMuted();
+        }
+
+        /**
+         * @param thresholdDb How far a signal must stand above the bands beside it,
+         *                    in decibels, to be decoded, or NaN to decode everything.
+         * @see SquelchPcmSource
+         */
+        public void setSquelchThresholdDb(final double thresholdDb) {
+            if (Double.isNaN(thresholdDb)) {
+                squelch.setEnabled(false);
+            }
+            else {
+                squelch.setThresholdDb(thresholdDb);
+                squelch.setEnabled(true);
             }
+        }
+
+        /**
+         * @return True while a signal is being decoded, or always if there is no squelch.
+         */
+        public boolean isSquelchOpen() {
+            return squelch.isOpen();
+        }
+
+        /**
+         * @param enabled If false, stop following the carrier and decode exactly at the requested frequency.
+         */
+        public void setAfcEnabled(final boolean enabled) {
+            afc.setEnabled(enabled);
+        }
+
+        /**
+         * @return How far above the requested frequency the received carrier is, in hertz.
+         */
+        public double getFrequencyOffset() {
+            return afc.getFrequencyOffset();
+        }
+
+        /**
+         * @return True while a carrier near the requested frequency is being followed.
+         */
+        public boolean isLocked() {
+            return afc.isLocked();
+        }
+
+        /**
+         * Show every buffer of audio read to a listener, such as a {@link SpectrumAnalyzer}.
+         * For microphone audio this is called on the capture thread.
+         *
+         * @param listener The listener.
+         */
+        public void addPcmListener(final PcmListener listener) {
+            tap.addListener(listener);
+        }
+
+        /**
+         * @param listener A listener previously added.
+         */
+        public void removePcmListener(final PcmListener listener) {
+            tap.removeListener(listener);
+        }
+
+        /**
+         * Record received audio, as captured and before any processing, to a WAV
+         * file until {@link #stopRecording()} or the thread ends. The file is written
+         * on a thread of its own. A recording already in progress is finished first.
+         *
+         * @param file The file to create or overwrite.
+         *
+         * @return The recorder, which counts samples it had to drop.
+         * @throws IOException If the file cannot be created.
+         */
+        public synchronized WavRecorder startRecording(final File file) throws IOException {
+            stopRecording();
+
+            recorder = new WavRecorder(file, tap.getSampleRate());
+            recorder.start();
+            tap.addListener(recorder);
 
-            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                audioRecord.release();
+            return recorder;
+        }
+
+        /**
+         * Finish the recording in progress, if there is one.
+         */
+        public synchronized void stopRecording() {
+            if (recorder != null) {
+                tap.removeListener(recorder);
+                recorder.stop();
+                recorder = null;
             }
         }
 
+        /**
+         * @return The sample rate audio is received at.
+         */
+        public int getSampleRate() {
+            return tap.getSampleRate();
+        }
+
+        /**
+         * @return The sample rate audio is demodulated at. This may be lower than {@link #getSampleRate()}.
+         */
+        public int getProcessingRate() {
+            return afc.getSampleRate();
+        }
+
+        /**
+         * Release all the audio resources back to the OS quickly.
+         */
+        private synchronized void cleanup() {
+            pcmSource.release();
+            stopRecording();
+        }
+
+        /**
+         * @return Samples dropped because demodulation fell behind capture.
+         *         Always 0 if the source is not a {@link BufferedPcmSource}.
+         */
+        public long getOverruns() {
+            return pcmSource instanceof BufferedPcmSource ? ((BufferedPcmSource) pcmSource).getOverruns() : 0;
+        }
+
+        /**
+         * @return Times demodulation waited on capture.
+         *         Always 0 if the source is not a {@link BufferedPcmSource}.
+         */
+        public long getUnderruns() {
+            return pcmSource instanceof BufferedPcmSource ? ((BufferedPcmSource) pcmSource).getUnderruns() : 0;
+        }
+
         public void stopReceive() {
             cleanup();
 
@@ -352,66 +1515,39 @@ public class Bpsk {
 
         @Override
         public void run() {
-            final BpskInputStream bpskInputStream = new BpskInputStream(
-                    new InputStream() {
-                        @Override
-                        public int read(byte[] b, int off, int len) throws IOException {
-                            final int rc = audioRecord.read(b, off, len);
-                            switch(rc) {
-                                case AudioRecord.ERROR_INVALID_OPERATION:
-                                    throw new IOException("Invalid operation.");
-                                case AudioRecord.ERROR_BAD_VALUE:
-                                    throw new IOException("Bad value.");
-                            }
-
-                            /* If rc == -1, just exit. If rc == 0, we received nothing. */
-                            if (rc > 0) {
-                                for (int i = off; i < off+rc; i+=2) {
-                                    final byte tmp = b[i];
-                                    b[i] = b[i+1];
-                                    b[i+1] = tmp;
-                                }
-                            }
+            /* Decoded characters are collected here and handed to the user once per audio frame. */
+            final BufferedOutputStream batchOut = new BufferedOutputStream(out, BATCH_SIZE);
 
-                            /* Debug code used to examine the raw waveform. */
-                            // FileOutputStream fos = new FileOutputStream("/data/data/org.sdsai.airqso/b", true);
-                            // fos.write(b, off, rc);
-                            // fos.close();
+            final PcmInputStream pcmInputStream = new PcmInputStream(
+                    afc,
+                    frameSize,
+                    batchOut);
 
-                            return rc;
-                        }
+            final InputStream modemInputStream = mode.newInputStream(pcmInputStream, hz, afc.getSampleRate());
 
-                        @Override
-                        public int read(byte[] b) throws IOException {
-                            return read(b, 0, b.length);
-                        }
-
-                        @Override
-                        public int read() throws IOException {
-                            throw new UnsupportedOperationException(
-                                "Cannot read single value from audio input stream.");
-                        }
-                    },
-                    bpskDetector
-            );
+            final OutputStream decoded = codec == null ? batchOut : codec.decompress(batchOut);
 
             try {
                 out.write("[Receive started]\n".getBytes());
                 final byte[] b = new byte[1];
-                audioRecord.startRecording();
+                afc.start();
                 running = true;
                 while (running) {
 
                     /* Receive from the user. */
-                    final int len = bpskInputStream.read(b);
+                    final int len = modemInputStream.read(b);
 
                     if (len > 0) {
-                        out.write(b, 0, len);
+                        decoded.write(b, 0, len);
+                        characters.add(len);
                     }
                     else if (len == -1) {
                         break;
                     }
                 }
+
+                /* Through the codec, so that nothing it holds back is lost. */
+                decoded.flush();
             }
             catch (final IOException e){
                 /* Nothing we can really do. */
@@ -0,0 +1,111 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.BpskModulator;
+import org.sdsai.dsp.BpskDetector;
+import org.sdsai.dsp.BpskGenerator;
+import org.sdsai.dsp.BpskInputStream;
+import org.sdsai.dsp.BpskOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Uncoded BPSK with varicode, as in PSK31.
+ */
+public class BpskMode implements Mode {
+
+    private final String name;
+
+    private final double symbolRate;
+
+    /**
+     * True to modulate with {@link BpskModulator}'s tables, false for sdsai's {@link BpskGenerator}.
+     */
+    private final boolean tables;
+
+    /**
+     * A mode that modulates with sdsai's {@link BpskGenerator}.
+     *
+     * @param name The name shown to users.
+     * @param symbolRate The number of symbols per second.
+     */
+    public BpskMode(final String name, final double symbolRate) {
+        this(name, symbolRate, false);
+    }
+
+    /**
+     * @param name The name shown to users.
+     * @param symbolRate The number of symbols per second.
+     * @param tables True to modulate with {@link BpskModulator}'s precomputed
+     *               tables, which is much cheaper than sdsai's {@link BpskGenerator}.
+     */
+    public BpskMode(final String name, final double symbolRate, final boolean tables) {
+        this.name = name;
+        this.symbolRate = symbolRate;
+        this.tables = tables;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public double getSymbolRate() {
+        return symbolRate;
+    }
+
+    @Override
+    public ModemOutputStream newOutputStream(final OutputStream out, final int hz, final int sampleRate) {
+        if (tables) {
+            return new BpskTableOutputStream(out, new BpskModulator(hz, sampleRate, symbolRate));
+        }
+
+        final BpskOutputStream bpskOutputStream = new BpskOutputStream(
+            out,
+            new BpskGenerator(hz, sampleRate, symbolRate));
+
+        return new ModemOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                bpskOutputStream.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                bpskOutputStream.write(b, off, len);
+            }
+
+            @Override
+            public void preamble(final int symbols) throws IOException {
+                bpskOutputStream.preamble(symbols);
+            }
+
+            @Override
+            public void postamble(final int symbols) throws IOException {
+                bpskOutputStream.postamble(symbols);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                bpskOutputStream.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                bpskOutputStream.close();
+            }
+        };
+    }
+
+    @Override
+    public InputStream newInputStream(final InputStream in, final int hz, final int sampleRate) {
+        return new BpskInputStream(in, new BpskDetector(hz, sampleRate, symbolRate));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,115 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.BpskModulator;
+import org.sdsai.airqso.dsp.Varicode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Sends characters as varicode over BPSK, as in PSK31, using a {@link BpskModulator}.
+ *
+ * Idle is a run of phase reversals and the end of a transmission is a steady
+ * carrier. When writing to a {@link PcmOutputStream} each symbol is handed
+ * over as samples, skipping the conversion to bytes and back.
+ */
+public class BpskTableOutputStream extends ModemOutputStream {
+
+    private final OutputStream out;
+
+    /**
+     * {@link #out} if it takes samples, otherwise null.
+     */
+    private final PcmOutputStream pcmOut;
+
+    private final BpskModulator modulator;
+
+    /**
+     * One symbol of samples, reused for every symbol.
+     */
+    private final short[] frame;
+
+    /**
+     * {@link #frame} as big-endian bytes, if {@link #out} needs them.
+     */
+    private final byte[] bytes;
+
+    /**
+     * A big-endian view over {@link #bytes}.
+     */
+    private final ShortBuffer byteView;
+
+    /**
+     * @param out Where big-endian 16 bit PCM is written.
+     * @param modulator The modulator.
+     */
+    public BpskTableOutputStream(final OutputStream out, final BpskModulator modulator) {
+        this.out = out;
+        this.pcmOut = out instanceof PcmOutputStream ? (PcmOutputStream) out : null;
+        this.modulator = modulator;
+        this.frame = new short[modulator.getMaxSamplesPerSymbol()];
+
+        if (pcmOut == null) {
+            this.bytes = new byte[frame.length * 2];
+            this.byteView = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+        }
+        else {
+            this.bytes = null;
+            this.byteView = null;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        final int c = b & 0xff;
+        final int code = Varicode.bits(c);
+
+        for (int i = Varicode.length(c) - 1; i >= 0; --i) {
+            send((code >> i) & 1);
+        }
+
+        send(0);
+        send(0);
+    }
+
+    @Override
+    public void preamble(final int symbols) throws IOException {
+        for (int i = 0; i < symbols; ++i) {
+            send(0);
+        }
+    }
+
+    @Override
+    public void postamble(final int symbols) throws IOException {
+        for (int i = 0; i < symbols; ++i) {
+            send(1);
+        }
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void send(final int bit) throws IOException {
+        final int n = modulator.symbol(bit, frame, 0);
+
+        if (pcmOut != null) {
+            pcmOut.write(frame, 0, n);
+        }
+        else {
+            byteView.clear();
+            byteView.put(frame, 0, n);
+            out.write(bytes, 0, n * 2);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.util.ShortRingBuffer;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that reads another source on its own capture thread.
+ *
+ * Captured samples are handed to the reader through a {@link ShortRingBuffer},
+ * so capture never waits on whatever processing the reader does. If the reader
+ * falls behind, samples are dropped and counted in {@link #getOverruns()}
+ * rather than being lost silently inside the audio hardware.
+ */
+public class BufferedPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    private final ShortRingBuffer ring;
+
+    private final CaptureThread captureThread;
+
+    /**
+     * Set by the capture thread if the wrapped source fails.
+     */
+    private volatile IOException error;
+
+    /**
+     * @param source The source to capture from. It is started and released by this object.
+     * @param frameSize The most samples read from source at a time.
+     * @param capacity The minimum number of samples buffered between capture and the reader.
+     */
+    public BufferedPcmSource(final PcmSource source, final int frameSize, final int capacity) {
+        this.source = source;
+        this.ring = new ShortRingBuffer(capacity);
+        this.captureThread = new CaptureThread(frameSize);
+        this.error = null;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+        captureThread.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        final int rc;
+        try {
+            rc = ring.take(buffer, off, len);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+
+        if (rc == -1 && error != null) {
+            throw error;
+        }
+
+        return rc;
+    }
+
+    @Override
+    public void stop() {
+        captureThread.running = false;
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        stop();
+        source.release();
+        ring.close();
+    }
+
+    /**
+     * @return The total number of samples dropped because the reader fell behind.
+     */
+    public long getOverruns() {
+        return ring.getOverruns();
+    }
+
+    /**
+     * @return The total number of times the reader had to wait for capture.
+     */
+    public long getUnderruns() {
+        return ring.getUnderruns();
+    }
+
+    /**
+     * @return The number of captured samples waiting to be read.
+     */
+    public int getBuffered() {
+        return ring.size();
+    }
+
+    /**
+     * @return The fraction of the buffer holding samples waiting to be read, from 0 to 1.
+     */
+    public double getFill() {
+        return (double) ring.size() / ring.capacity();
+    }
+
+    private class CaptureThread extends Thread {
+        private final short[] frame;
+        private volatile boolean running;
+
+        public CaptureThread(final int frameSize) {
+            super("PcmCapture");
+            this.frame = new short[frameSize];
+            this.running = true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    final int rc = source.read(frame, 0, frame.length);
+
+                    if (rc > 0) {
+                        ring.write(frame, 0, rc);
+                    }
+                    else if (rc == -1) {
+                        break;
+                    }
+                }
+            }
+            catch (final IOException e) {
+                error = e;
+            }
+            finally {
+                ring.close();
+            }
+        }
+    }
+}
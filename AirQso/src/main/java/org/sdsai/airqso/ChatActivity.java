@@ -2,17 +2,26 @@ package org.sdsai.airqso;
 
 import org.sdsai.airqso.util.EditTextInputStream;
 import org.sdsai.airqso.util.SystemUiHider;
+import org.sdsai.airqso.util.TextViewOutputStream;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.ToggleButton;
 
@@ -36,10 +45,59 @@ public class ChatActivity extends Activity {
      */
     private static final boolean TOGGLE_ON_CLICK = true;
 
-    private Bpsk bpsk;
+    /**
+     * Received characters that are shown without waiting for the next frame.
+     */
+    private static final int RX_FLUSH_CHARS = 32;
+
+    /**
+     * The most received lines kept on screen.
+     */
+    private static final int RX_MAX_LINES = 500;
+
+    /**
+     * The most received characters kept on screen.
+     */
+    private static final int RX_MAX_CHARS = 32 * 1024;
 
-    private Bpsk.ReceiveThread receiveThread;
-    private Bpsk.TransmitThread transmitThread;
+    /**
+     * The modem, while bound.
+     */
+    private ModemService modem;
+
+    /**
+     * Created once the modem's queue is known.
+     */
+    private EditTextInputStream txInput;
+
+    private TextViewOutputStream rxOutput;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(final ComponentName name, final IBinder binder) {
+            modem = ((ModemService.LocalBinder) binder).getService();
+
+            if (txInput == null) {
+                txInput = new EditTextInputStream(
+                    (EditText) findViewById(R.id.chat_tx),
+                    modem.getTextQueue());
+            }
+
+            /* Show what was received while this screen was away. */
+            rxOutput.clear();
+            modem.attach(rxOutput);
+
+            ((ToggleButton) findViewById(R.id.tx_button)).setChecked(modem.isTransmitting());
+            ((ToggleButton) findViewById(R.id.rx_button)).setChecked(modem.isReceiving());
+
+            modem.prepare(getHz(), getMode());
+        }
+
+        @Override
+        public void onServiceDisconnected(final ComponentName name) {
+            modem = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,53 +115,43 @@ public class ChatActivity extends Activity {
         final ToggleButton rxButton = (ToggleButton) findViewById(R.id.rx_button);
         final Button       clrButton = (Button) findViewById(R.id.clr_button);
         final EditText     hzField  = (EditText) findViewById(R.id.hz_text);
-        final EditText     txText   = (EditText) findViewById(R.id.chat_tx);
+        final Spinner      modeSpinner = (Spinner) findViewById(R.id.mode_spinner);
         final TextView     rxText   = (TextView) findViewById(R.id.chat_rx);
+        rxOutput = new TextViewOutputStream(
+            rxText,
+            RX_FLUSH_CHARS,
+            RX_MAX_LINES,
+            RX_MAX_CHARS);
 
         clrButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                txText.setText("");
-                rxText.setText("");
+                if (txInput != null) {
+                    txInput.clearText();
+                }
+                if (modem != null) {
+                    modem.clearReceived();
+                }
+                rxOutput.clear();
             }
         });
 
-        bpsk = new Bpsk(new OutputStream(){
-            @Override
-            public void write(final int i) throws IOException {
-                ChatActivity.this.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run(){
-                        final TextView chatRx = (TextView) findViewById(R.id.chat_rx);
-                        chatRx.append(new String(new byte[] { (byte) i }));
-                    }
-                });
-            }
-            @Override
-            public void write(final byte[] bytes) throws IOError {
-                final String s = new String(bytes);
-                ChatActivity.this.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run(){
-                        final TextView chatRx = (TextView) findViewById(R.id.chat_rx);
-                        chatRx.append(s);
-                    }
-                });
-            }
-            @Override
-            public void write(final byte[] bytes, final int off, final int len) throws IOException {
-                final String s = new String(bytes, off, len);
-                ChatActivity.this.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run(){
-                        final TextView chatRx = (TextView) findViewById(R.id.chat_rx);
-                        chatRx.append(s);
-                    }
-                });
-            }
-        },
-        new EditTextInputStream(txText));
+        final ArrayAdapter<Mode> modes = new ArrayAdapter<Mode>(
+            this,
+            android.R.layout.simple_spinner_item,
+            ModeRegistry.getModes());
+        modes.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        modeSpinner.setAdapter(modes);
+
+        /* Started as well as bound, so the modem keeps running while this screen is stopped. */
+        startService(new Intent(this, ModemService.class));
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        bindService(new Intent(this, ModemService.class), connection, BIND_AUTO_CREATE);
     }
 
     public int getHz() {
@@ -121,17 +169,25 @@ public class ChatActivity extends Activity {
         return i;
     }
 
+    public Mode getMode() {
+        final Spinner modeSpinner = (Spinner) findViewById(R.id.mode_spinner);
+        final Mode mode = (Mode) modeSpinner.getSelectedItem();
+
+        return mode == null ? ModeRegistry.PSK31 : mode;
+    }
+
     public void onTxClicked(final View view) {
         // Is the toggle on?
         boolean on = ((ToggleButton) view).isChecked();
 
-        if (transmitThread != null) {
-            transmitThread.stopTransmit();
-            transmitThread = null;
+        if (modem == null) {
+            ((ToggleButton) view).setChecked(false);
         }
-
-        if (on) {
-            transmitThread = bpsk.startTransmit(getHz());
+        else if (on) {
+            modem.startTransmit(getHz(), getMode());
+        }
+        else {
+            modem.stopTransmit();
         }
     }
 
@@ -139,16 +195,56 @@ public class ChatActivity extends Activity {
         // Is the toggle on?
         boolean on = ((ToggleButton) view).isChecked();
 
-        if (receiveThread != null) {
-            receiveThread.stopReceive();
-            receiveThread = null;
+        if (modem == null) {
+            ((ToggleButton) view).setChecked(false);
+        }
+        else if (on) {
+            modem.startReceive(getHz(), getMode());
         }
+        else {
+            modem.stopReceive();
+        }
+    }
 
-        if (on) {
-            receiveThread = bpsk.startReceive(getHz());
+    public void onTestClicked(final View view) {
+        if (modem != null) {
+            modem.startSelfTest(getHz(), getMode());
+
+            /* The test needs the speaker and microphone to itself. */
+            ((ToggleButton) findViewById(R.id.tx_button)).setChecked(false);
+            ((ToggleButton) findViewById(R.id.rx_button)).setChecked(false);
         }
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(final Menu menu) {
+        getMenuInflater().inflate(R.menu.chat_activity, menu);
+
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(final Menu menu) {
+        final MenuItem metricsItem = menu.findItem(R.id.metrics_item);
+
+        metricsItem.setEnabled(modem != null);
+        metricsItem.setChecked(modem != null && modem.isMetricsLogging());
+
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(final MenuItem item) {
+        if (item.getItemId() == R.id.metrics_item && modem != null) {
+            modem.setMetricsLogging(!item.isChecked());
+            item.setChecked(modem.isMetricsLogging());
+
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
         super.onPostCreate(savedInstanceState);
@@ -156,14 +252,24 @@ public class ChatActivity extends Activity {
 
     @Override
     protected void onStop() {
-        if (transmitThread != null) {
-            transmitThread.stopTransmit();
-            transmitThread = null;
+        /* The modem keeps running. Only the view lets go of it. */
+        if (modem != null) {
+            modem.detach();
+            modem = null;
         }
 
-        if (receiveThread != null) {
-            receiveThread.stopReceive();
-            receiveThread = null;
+        unbindService(connection);
+
+        super.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        /* Leaving for good ends the modem too. Being recreated does not. */
+        if (isFinishing()) {
+            stopService(new Intent(this, ModemService.class));
         }
+
+        super.onDestroy();
     }
 }
@@ -0,0 +1,133 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.Counter;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that can be muted, so that a receiver does no work on
+ * audio it should not decode, such as its own station's transmission.
+ *
+ * While muted, reads keep draining the source, so capture neither stalls nor
+ * overruns, but the samples are thrown away and the read does not return.
+ * Unmuting lets the read in progress return what it reads, so decoding
+ * resumes within one read, which for a receiver is about one symbol.
+ */
+public class GatedPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    private volatile boolean muted;
+
+    /**
+     * Set on unmuting and cleared by the first read after it. Only used to time the resume.
+     */
+    private volatile long unmutedNanos;
+
+    private volatile long lastResumeNanos;
+
+    private final Counter mutedSamples;
+
+    /**
+     * Where samples are read to while muted. Only used by the reader.
+     */
+    private short[] scratch;
+
+    /**
+     * @param source The source to read from.
+     */
+    public GatedPcmSource(final PcmSource source) {
+        this.source = source;
+        this.muted = false;
+        this.unmutedNanos = 0;
+        this.lastResumeNanos = 0;
+        this.mutedSamples = new Counter();
+        this.scratch = new short[0];
+    }
+
+    /**
+     * @param muted If true, throw audio away until this is called with false.
+     */
+    public void setMuted(final boolean muted) {
+        if (this.muted && !muted) {
+            unmutedNanos = System.nanoTime();
+        }
+
+        this.muted = muted;
+    }
+
+    /**
+     * @return True while audio is being thrown away.
+     */
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * @return The samples thrown away while muted.
+     */
+    public Counter getMutedSamples() {
+        return mutedSamples;
+    }
+
+    /**
+     * @return Nanoseconds from the most recent unmuting to audio being returned again, or 0 if not yet unmuted.
+     */
+    public long getLastResumeNanos() {
+        return lastResumeNanos;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        if (scratch.length < len) {
+            scratch = new short[len];
+        }
+
+        while (true) {
+            final boolean gated = muted;
+            final int rc = gated ? source.read(scratch, 0, len) : source.read(buffer, off, len);
+
+            if (rc == -1) {
+                return -1;
+            }
+
+            if (muted) {
+                mutedSamples.add(rc);
+                continue;
+            }
+
+            /* Unmuted while reading. The end of what was read is already fresh. */
+            if (gated && rc > 0) {
+                System.arraycopy(scratch, 0, buffer, off, rc);
+            }
+
+            final long unmuted = unmutedNanos;
+            if (unmuted != 0 && rc > 0) {
+                lastResumeNanos = System.nanoTime() - unmuted;
+                unmutedNanos = 0;
+            }
+
+            return rc;
+        }
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,249 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.util.TextQueue;
+
+import android.util.Log;
+
+/**
+ * Takes turns between transmitting and receiving on one audio device.
+ *
+ * While this station transmits, the receiver is muted, so it neither decodes
+ * our own signal nor spends time trying to. It is unmuted as soon as
+ * transmitting ends.
+ *
+ * Transmitting is either keyed by hand, like VOX, from
+ * {@link #startTransmit(int, Mode)} to {@link #stopTransmit()}, or scheduled
+ * in bursts, like push to talk, by {@link #startBursts(int, Mode)}. A burst
+ * keys up once text has waited on the queue for the hold time, sends it, and
+ * keys down when the queue has emptied, so text typed in the meantime goes
+ * out together and the receiver is listening the rest of the time.
+ */
+public class HalfDuplexController {
+
+    /**
+     * How often the burst scheduler checks the queue.
+     */
+    private static final long PUMP_MILLIS = 50;
+
+    /**
+     * The default time text waits before a burst is keyed up.
+     */
+    public static final long DEFAULT_HOLD_MILLIS = 1000;
+
+    private final Bpsk bpsk;
+
+    private final TextQueue in;
+
+    /**
+     * The receiver to mute, or null.
+     */
+    private volatile Bpsk.ReceiveThread receiver;
+
+    /**
+     * The running transmitter or null. Written while holding this, and read
+     * without, so asking whether we are transmitting never waits on a
+     * transmitter being started.
+     */
+    private volatile Bpsk.TransmitThread transmitter;
+
+    private volatile Thread scheduler;
+
+    private volatile long holdMillis;
+
+    /**
+     * @param bpsk Starts the transmit threads.
+     * @param in The queue bpsk transmits from, which bursts are scheduled by.
+     */
+    public HalfDuplexController(final Bpsk bpsk, final TextQueue in) {
+        this.bpsk = bpsk;
+        this.in = in;
+        this.receiver = null;
+        this.transmitter = null;
+        this.scheduler = null;
+        this.holdMillis = DEFAULT_HOLD_MILLIS;
+    }
+
+    /**
+     * @param receiver The receiver to mute while transmitting, or null. It is muted now if transmitting.
+     */
+    public synchronized void setReceiver(final Bpsk.ReceiveThread receiver) {
+        this.receiver = receiver;
+
+        if (receiver != null) {
+            receiver.setMuted(isTransmitting());
+        }
+    }
+
+    /**
+     * @param holdMillis How long text waits on the queue before a burst is keyed up to send it.
+     */
+    public void setHoldMillis(final long holdMillis) {
+        this.holdMillis = holdMillis;
+    }
+
+    public long getHoldMillis() {
+        return holdMillis;
+    }
+
+    /**
+     * Key up until {@link #stopTransmit()}, ending any burst schedule.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode to send in.
+     */
+    public void startTransmit(final int hz, final Mode mode) {
+        stopTransmit();
+
+        synchronized (this) {
+            mute(true);
+            try {
+                transmitter = bpsk.startTransmit(hz, mode);
+            }
+            catch (final RuntimeException e) {
+                mute(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Send queued text in bursts until {@link #stopTransmit()}, ending any keyed transmission.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode to send in.
+     */
+    public void startBursts(final int hz, final Mode mode) {
+        stopTransmit();
+
+        final Thread t = new Thread("HalfDuplexController") {
+            @Override
+            public void run() {
+                while (scheduler == this) {
+                    try {
+                        if (in.size() > 0 && (System.nanoTime() - in.getPendingSince()) / 1000000 >= holdMillis) {
+                            if (!burst(hz, mode)) {
+                                scheduler = null;
+                            }
+                        }
+                        else {
+                            Thread.sleep(PUMP_MILLIS);
+                        }
+                    }
+                    catch (final InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+
+        t.setDaemon(true);
+        scheduler = t;
+        t.start();
+    }
+
+    /**
+     * Send one burst and wait for it to end.
+     *
+     * @return False if the transmitter could not be started.
+     */
+    private boolean burst(final int hz, final Mode mode) throws InterruptedException {
+        final Bpsk.TransmitThread t;
+
+        synchronized (this) {
+            if (scheduler != Thread.currentThread()) {
+                return true;
+            }
+
+            mute(true);
+            try {
+                t = bpsk.startBurst(hz, mode);
+            }
+            catch (final RuntimeException e) {
+                Log.e("HalfDuplexController", "Could not key up. Bursts stopped.", e);
+                mute(false);
+                return false;
+            }
+            transmitter = t;
+        }
+
+        t.join();
+
+        synchronized (this) {
+            if (transmitter == t) {
+                transmitter = null;
+                mute(false);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop transmitting, or stop scheduling bursts and end any burst in progress, and unmute the receiver.
+     */
+    public void stopTransmit() {
+        final Thread s = scheduler;
+        scheduler = null;
+        if (s != null) {
+            s.interrupt();
+        }
+
+        final Bpsk.TransmitThread t;
+        synchronized (this) {
+            t = transmitter;
+            transmitter = null;
+        }
+
+        if (t != null) {
+            t.stopTransmit();
+        }
+
+        if (s != null) {
+            try {
+                s.join();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            mute(false);
+        }
+    }
+
+    /**
+     * @return True while keyed up, by hand or for a burst.
+     */
+    public boolean isTransmitting() {
+        final Bpsk.TransmitThread t = transmitter;
+
+        return t != null && t.isAlive();
+    }
+
+    /**
+     * @return True while bursts are being scheduled.
+     */
+    public boolean isScheduling() {
+        return scheduler != null;
+    }
+
+    /**
+     * @return The transmitter keyed up now, or null.
+     */
+    public Bpsk.TransmitThread getTransmitThread() {
+        final Bpsk.TransmitThread t = transmitter;
+
+        return t != null && t.isAlive() ? t : null;
+    }
+
+    /**
+     * Called while holding this object's lock.
+     */
+    private void mute(final boolean muted) {
+        final Bpsk.ReceiveThread r = receiver;
+        if (r != null) {
+            r.setMuted(muted);
+        }
+    }
+}
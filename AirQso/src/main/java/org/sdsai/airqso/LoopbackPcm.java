@@ -0,0 +1,173 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+
+/**
+ * An in-memory pipe that connects a {@link PcmSink} to a {@link PcmSource}.
+ *
+ * Samples written to {@link #getSink()} are read back from {@link #getSource()}
+ * with no real-time pacing, so a {@link Bpsk.TransmitThread} and a
+ * {@link Bpsk.ReceiveThread} may be run against each other as fast as the CPU allows.
+ */
+public class LoopbackPcm {
+
+    private final int sampleRate;
+
+    private final short[] buffer;
+
+    /**
+     * Index of the next sample to read.
+     */
+    private int head;
+
+    /**
+     * Number of samples buffered.
+     */
+    private int size;
+
+    /**
+     * Once closed, writes fail and reads drain what remains and then return -1.
+     */
+    private boolean closed;
+
+    private final PcmSource source;
+
+    private final PcmSink sink;
+
+    /**
+     * @param sampleRate The sample rate reported by both ends.
+     * @param capacity The most samples held before the sink blocks.
+     */
+    public LoopbackPcm(final int sampleRate, final int capacity) {
+        this.sampleRate = sampleRate;
+        this.buffer = new short[capacity];
+        this.head = 0;
+        this.size = 0;
+        this.closed = false;
+        this.source = new Source();
+        this.sink = new Sink();
+    }
+
+    /**
+     * @return The reading end of this pipe.
+     */
+    public PcmSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return The writing end of this pipe.
+     */
+    public PcmSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Close the pipe. Pending samples may still be read.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private synchronized int read(final short[] b, final int off, final int len) throws IOException {
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                wait();
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+
+        final int n = Math.min(len, size);
+        final int first = Math.min(n, buffer.length - head);
+        System.arraycopy(buffer, head, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        head = (head + n) % buffer.length;
+        size -= n;
+        notifyAll();
+
+        return n;
+    }
+
+    private synchronized void write(final short[] b, final int off, final int len) throws IOException {
+        int written = 0;
+        try {
+            while (written < len) {
+                while (size == buffer.length && !closed) {
+                    wait();
+                }
+
+                if (closed) {
+                    throw new IOException("Loopback closed.");
+                }
+
+                final int tail = (head + size) % buffer.length;
+                final int n = Math.min(len - written, Math.min(buffer.length - size, buffer.length - tail));
+                System.arraycopy(b, off + written, buffer, tail, n);
+                size += n;
+                written += n;
+                notifyAll();
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+    }
+
+    private class Source implements PcmSource {
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(final short[] b, final int off, final int len) throws IOException {
+            return LoopbackPcm.this.read(b, off, len);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            close();
+        }
+    }
+
+    private class Sink implements PcmSink {
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void write(final short[] b, final int off, final int len) throws IOException {
+            LoopbackPcm.this.write(b, off, len);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            close();
+        }
+    }
+}
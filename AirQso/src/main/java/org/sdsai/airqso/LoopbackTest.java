@@ -0,0 +1,740 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.Fft;
+import org.sdsai.airqso.dsp.Prbs;
+import org.sdsai.airqso.dsp.Window;
+import org.sdsai.airqso.util.TextQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends a known pseudo-random sequence through a {@link Bpsk.TransmitThread}
+ * while a {@link Bpsk.ReceiveThread} decodes it, and measures the link.
+ *
+ * The sequence is {@link Prbs} sent four bits to a character from
+ * {@link #ALPHABET}, after a line break that marks its start. It follows
+ * {@link #LEAD_SYMBOLS} of idle, as a receiver on the air has heard idle
+ * before any text arrives. The checker works as a bit error rate tester does: it
+ * loads the first bits it receives to synchronize, then counts each received
+ * bit that differs from the one predicted. A character outside of the alphabet
+ * counts as four errors. If errors come too thick for the checker to still be
+ * in step, as after a lost character, it synchronizes again.
+ *
+ * The SNR is the power within a symbol rate of the carrier over the noise
+ * measured beside it, so it does not depend on the mode.
+ *
+ * {@link #runAcoustic(AudioPool, long)} plays through the speaker into the microphone,
+ * {@link #run(PcmSink, PcmSource, long)} uses any pair of audio ends such as a
+ * {@link LoopbackPcm}, and {@link #runFile(File, long)} writes the signal to a
+ * WAV file and then decodes the file.
+ */
+public class LoopbackTest {
+
+    /**
+     * Sixteen characters with short varicodes, one for each four bits.
+     */
+    private static final String ALPHABET = " etoainrslhdcumf";
+
+    /**
+     * Bits in each character.
+     */
+    private static final int CHAR_BITS = 4;
+
+    /**
+     * Recent bits looked at to decide that the checker is out of step.
+     */
+    private static final int WINDOW = 64;
+
+    /**
+     * Errors in {@link #WINDOW} bits that mean the checker is out of step.
+     */
+    private static final int MAX_WINDOW_ERRORS = 16;
+
+    /**
+     * Idle sent before the sequence so the receiver has found the symbol timing, in symbols.
+     */
+    private static final int LEAD_SYMBOLS = 32;
+
+    /**
+     * Idle sent after the sequence so decoders and interleavers empty, in seconds.
+     */
+    private static final int TAIL_SECONDS = 3;
+
+    /**
+     * The most samples buffered between the ends of a {@link LoopbackPcm}.
+     */
+    private static final int LOOPBACK_CAPACITY = 4096;
+
+    /**
+     * Spectra taken by the SNR meter each second.
+     */
+    private static final int SNR_FRAMES_PER_SECOND = 4;
+
+    private final int hz;
+
+    private final Mode mode;
+
+    private final int characters;
+
+    /**
+     * @param hz The carrier frequency.
+     * @param mode The mode to test.
+     * @param characters The number of characters of the sequence to send.
+     */
+    public LoopbackTest(final int hz, final Mode mode, final int characters) {
+        this.hz = hz;
+        this.mode = mode;
+        this.characters = characters;
+    }
+
+    /**
+     * Test the speaker and microphone together.
+     *
+     * @param timeoutMillis The longest to wait for the sequence to be received.
+     *
+     * @return The measurements.
+     * @throws IOException If the test is interrupted.
+     */
+    public Result runAcoustic(final long timeoutMillis) throws IOException {
+        return runAcoustic(null, timeoutMillis);
+    }
+
+    /**
+     * Test the speaker and microphone together.
+     *
+     * @param pool If not null, borrow the speaker and microphone from this
+     *             pool, ending any loans already out, instead of opening them.
+     * @param timeoutMillis The longest to wait for the sequence to be received.
+     *
+     * @return The measurements.
+     * @throws IOException If the test is interrupted.
+     */
+    public Result runAcoustic(final AudioPool pool, final long timeoutMillis) throws IOException {
+        final Checker checker = new Checker(characters, new SnrMeter(hz, mode.getSymbolRate()));
+
+        if (pool != null) {
+            final CountingPcmSink sink = new CountingPcmSink(pool.takePlay(hz, mode));
+            final Bpsk.ReceiveThread receiveThread =
+                new Bpsk.ReceiveThread(hz, mode, checker, pool.takeRecord(hz, mode), true);
+
+            return run(sink, receiveThread, checker, timeoutMillis);
+        }
+
+        final Bpsk.ReceiveThread receiveThread = new Bpsk.ReceiveThread(hz, mode, checker);
+        final CountingPcmSink sink = new CountingPcmSink(new AudioTrackPcmSink(Bpsk.findAudioPlay(
+            mode.getSymbolRate(),
+            new SampleRatePolicy().hardwareRates(hz, mode.getSymbolRate()))));
+
+        return run(sink, receiveThread, checker, timeoutMillis);
+    }
+
+    /**
+     * Test with any pair of audio ends, transmitting and receiving at once.
+     *
+     * @param sink Where the signal is played.
+     * @param source Where the signal is heard.
+     * @param timeoutMillis The longest to wait for the sequence to be received.
+     *
+     * @return The measurements.
+     * @throws IOException If the test is interrupted.
+     */
+    public Result run(final PcmSink sink, final PcmSource source, final long timeoutMillis) throws IOException {
+        final Checker checker = new Checker(characters, new SnrMeter(hz, mode.getSymbolRate()));
+        final Bpsk.ReceiveThread receiveThread = new Bpsk.ReceiveThread(hz, mode, checker, source);
+
+        return run(new CountingPcmSink(sink), receiveThread, checker, timeoutMillis);
+    }
+
+    /**
+     * Test in memory through a {@link LoopbackPcm}.
+     *
+     * @param sampleRate The sample rate.
+     * @param timeoutMillis The longest to wait for the sequence to be received.
+     *
+     * @return The measurements.
+     * @throws IOException If the test is interrupted.
+     */
+    public Result runLoopback(final int sampleRate, final long timeoutMillis) throws IOException {
+        final LoopbackPcm loopback = new LoopbackPcm(sampleRate, LOOPBACK_CAPACITY);
+
+        return run(loopback.getSink(), loopback.getSource(), timeoutMillis);
+    }
+
+    /**
+     * Write the signal to a WAV file, then decode the file.
+     *
+     * @param file The file to write. It is kept so that it may be examined or decoded again.
+     * @param timeoutMillis The longest to spend on each half of the test.
+     *
+     * @return The measurements. Latency is processing time, since the file is not played in real time.
+     * @throws IOException If the file cannot be written or read, or the test is interrupted.
+     */
+    public Result runFile(final File file, final long timeoutMillis) throws IOException {
+        final SampleRatePolicy policy = new SampleRatePolicy();
+        final int sampleRate = policy.hardwareRates(hz, mode.getSymbolRate())[0];
+        final CountingPcmSink sink = new CountingPcmSink(new WavPcmSink(file, sampleRate));
+        final TextQueue queue = new TextQueue(characters + 1);
+        final Bpsk.TransmitThread transmitThread = new Bpsk.TransmitThread(hz, mode, queue, sink);
+
+        transmitThread.start();
+        awaitLead(sink, System.nanoTime(), timeoutMillis);
+
+        final long start = System.nanoTime();
+        sendSequence(queue);
+        awaitTail(queue, sink, start, timeoutMillis);
+        transmitThread.stopTransmit();
+
+        final Checker checker = new Checker(characters, new SnrMeter(hz, mode.getSymbolRate()));
+        final Bpsk.ReceiveThread receiveThread =
+            new Bpsk.ReceiveThread(hz, mode, checker, new WavPcmSource(file));
+        checker.attach(receiveThread, System.nanoTime());
+
+        receiveThread.start();
+        try {
+            receiveThread.join(timeoutMillis);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+        finally {
+            receiveThread.stopReceive();
+        }
+
+        return checker.result(receiveThread, sink.getSamples());
+    }
+
+    private Result run(
+        final CountingPcmSink sink,
+        final Bpsk.ReceiveThread receiveThread,
+        final Checker checker,
+        final long timeoutMillis
+    )
+        throws IOException
+    {
+        final TextQueue queue = new TextQueue(characters + 1);
+        final Bpsk.TransmitThread transmitThread = new Bpsk.TransmitThread(hz, mode, queue, sink);
+
+        try {
+            receiveThread.start();
+            transmitThread.start();
+            awaitLead(sink, System.nanoTime(), timeoutMillis);
+
+            final long start = System.nanoTime();
+            checker.attach(receiveThread, start);
+            sendSequence(queue);
+            checker.await(characters, start, timeoutMillis);
+        }
+        finally {
+            transmitThread.stopTransmit();
+            receiveThread.stopReceive();
+        }
+
+        return checker.result(receiveThread, sink.getSamples());
+    }
+
+    private void sendSequence(final TextQueue queue) {
+        final Prbs prbs = new Prbs();
+
+        queue.offer('\n');
+        for (int i = 0; i < characters; ++i) {
+            int nibble = 0;
+            for (int b = 0; b < CHAR_BITS; ++b) {
+                nibble = (nibble << 1) | prbs.next();
+            }
+            queue.offer(ALPHABET.charAt(nibble));
+        }
+    }
+
+    /**
+     * Wait for {@link #LEAD_SYMBOLS} of idle to be sent.
+     */
+    private void awaitLead(final CountingPcmSink sink, final long start, final long timeoutMillis)
+        throws IOException
+    {
+        final long lead = (long) (LEAD_SYMBOLS * sink.getSampleRate() / mode.getSymbolRate());
+        final long deadline = start + timeoutMillis * 1000000L;
+
+        try {
+            while (sink.getSamples() < lead && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+    }
+
+    /**
+     * Wait for the sequence to be sent and followed by {@link #TAIL_SECONDS} of idle.
+     */
+    private static void awaitTail(
+        final TextQueue queue,
+        final CountingPcmSink sink,
+        final long start,
+        final long timeoutMillis
+    )
+        throws IOException
+    {
+        final long deadline = start + timeoutMillis * 1000000L;
+        long tailEnd = -1;
+
+        try {
+            while (System.nanoTime() < deadline) {
+                if (tailEnd < 0 && queue.size() == 0) {
+                    tailEnd = sink.getSamples() + (long) sink.getSampleRate() * TAIL_SECONDS;
+                }
+                else if (tailEnd >= 0 && sink.getSamples() >= tailEnd) {
+                    return;
+                }
+
+                Thread.sleep(1);
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+    }
+
+    /**
+     * What a test measured.
+     */
+    public static class Result {
+        private final long bits;
+        private final long bitErrors;
+        private final long resyncs;
+        private final double snrDb;
+        private final long latencyNanos;
+        private final long samplesSent;
+        private final long overruns;
+        private final long underruns;
+
+        private Result(
+            final long bits,
+            final long bitErrors,
+            final long resyncs,
+            final double snrDb,
+            final long latencyNanos,
+            final long samplesSent,
+            final long overruns,
+            final long underruns
+        )
+        {
+            this.bits = bits;
+            this.bitErrors = bitErrors;
+            this.resyncs = resyncs;
+            this.snrDb = snrDb;
+            this.latencyNanos = latencyNanos;
+            this.samplesSent = samplesSent;
+            this.overruns = overruns;
+            this.underruns = underruns;
+        }
+
+        /**
+         * @return The number of bits checked. Fewer than were sent if the test timed out.
+         */
+        public long getBits() {
+            return bits;
+        }
+
+        /**
+         * @return The number of bits received in error.
+         */
+        public long getBitErrors() {
+            return bitErrors;
+        }
+
+        /**
+         * @return Errors over bits checked, or 1 if nothing was received.
+         */
+        public double getBitErrorRate() {
+            return bits == 0 ? 1 : (double) bitErrors / bits;
+        }
+
+        /**
+         * @return The number of times the checker lost step and synchronized again.
+         */
+        public long getResyncs() {
+            return resyncs;
+        }
+
+        /**
+         * @return The mean carrier to noise estimate while the sequence was received, in decibels.
+         */
+        public double getSnrDb() {
+            return snrDb;
+        }
+
+        /**
+         * @return Nanoseconds from queueing the sequence to receiving its first character, or -1 if none arrived.
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return The number of samples played.
+         */
+        public long getSamplesSent() {
+            return samplesSent;
+        }
+
+        /**
+         * @return Samples dropped because demodulation fell behind capture.
+         */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /**
+         * @return Times demodulation waited on capture.
+         */
+        public long getUnderruns() {
+            return underruns;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "BER %.2e (%d/%d bits, %d resyncs), SNR %.1f dB, latency %d ms, overruns %d, underruns %d",
+                getBitErrorRate(),
+                bitErrors,
+                bits,
+                resyncs,
+                snrDb,
+                latencyNanos < 0 ? -1 : latencyNanos / 1000000,
+                overruns,
+                underruns);
+        }
+    }
+
+    /**
+     * Checks decoded characters against the sequence.
+     */
+    private static class Checker extends OutputStream {
+
+        private final Prbs prbs;
+
+        private final SnrMeter snrMeter;
+
+        /**
+         * The number of characters in the sequence.
+         */
+        private final int characters;
+
+        /**
+         * True once the line break before the sequence has been seen.
+         */
+        private boolean started;
+
+        /**
+         * Characters of the sequence received, right or wrong.
+         */
+        private int received;
+
+        /**
+         * Bits loaded since synchronization was lost.
+         */
+        private int loaded;
+
+        /**
+         * One bit for each of the last {@link #WINDOW} bits checked, set if it was in error.
+         */
+        private long window;
+
+        private long bits;
+        private long bitErrors;
+        private long resyncs;
+        private double snrSum;
+        private long snrCount;
+        private long latencyNanos;
+
+        private Bpsk.ReceiveThread receiveThread;
+        private long start;
+
+        private Checker(final int characters, final SnrMeter snrMeter) {
+            this.prbs = new Prbs();
+            this.snrMeter = snrMeter;
+            this.characters = characters;
+            this.started = false;
+            this.received = 0;
+            this.loaded = 0;
+            this.window = 0;
+            this.latencyNanos = -1;
+        }
+
+        /**
+         * @param receiveThread Where the SNR is measured.
+         * @param start When the sequence was queued, by {@link System#nanoTime()}.
+         */
+        private synchronized void attach(final Bpsk.ReceiveThread receiveThread, final long start) {
+            this.receiveThread = receiveThread;
+            this.start = start;
+            receiveThread.addPcmListener(snrMeter);
+        }
+
+        @Override
+        public synchronized void write(final int b) {
+            if (receiveThread == null) {
+                return;
+            }
+
+            final char c = (char) (b & 0xff);
+
+            /* Until the checker is in step, a line break may be the start of the
+             * sequence rather than the end of a status message or noise. */
+            if (c == '\n' && bits == 0 && loaded < Prbs.BITS) {
+                started = true;
+                received = 0;
+                loaded = 0;
+                latencyNanos = -1;
+                return;
+            }
+
+            if (!started || received == characters) {
+                return;
+            }
+
+            final int nibble = ALPHABET.indexOf(c);
+
+            if (nibble < 0) {
+                if (loaded == Prbs.BITS) {
+                    ++received;
+                    for (int i = 0; i < CHAR_BITS; ++i) {
+                        check(-1);
+                    }
+                    notifyAll();
+                }
+                return;
+            }
+
+            if (latencyNanos < 0) {
+                latencyNanos = System.nanoTime() - start;
+            }
+
+            ++received;
+            for (int i = CHAR_BITS - 1; i >= 0; --i) {
+                check((nibble >> i) & 1);
+            }
+
+            if (loaded == Prbs.BITS) {
+                snrSum += snrMeter.getSnrDb();
+                snrCount++;
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * @param bit The received bit, or -1 for one known to be wrong.
+         */
+        private void check(final int bit) {
+            if (loaded < Prbs.BITS) {
+                if (bit >= 0) {
+                    prbs.load(bit);
+                    ++loaded;
+                }
+                return;
+            }
+
+            final boolean error = prbs.next() != bit;
+
+            bits++;
+            window = (window << 1) | (error ? 1 : 0);
+            if (error) {
+                bitErrors++;
+
+                if (Long.bitCount(window) > MAX_WINDOW_ERRORS) {
+                    resyncs++;
+                    loaded = 0;
+                    window = 0;
+                }
+            }
+        }
+
+        /**
+         * Wait for the given number of characters to be received.
+         */
+        private synchronized void await(final int target, final long start, final long timeoutMillis)
+            throws IOException
+        {
+            final long deadline = start + timeoutMillis * 1000000L;
+
+            try {
+                for (;;) {
+                    final long remaining = (deadline - System.nanoTime()) / 1000000L;
+                    if (received >= target || remaining <= 0) {
+                        return;
+                    }
+                    wait(remaining);
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted.");
+            }
+        }
+
+        private synchronized Result result(final Bpsk.ReceiveThread receiveThread, final long samplesSent) {
+            return new Result(
+                bits,
+                bitErrors,
+                resyncs,
+                snrCount == 0 ? 0 : snrSum / snrCount,
+                latencyNanos,
+                samplesSent,
+                receiveThread.getOverruns(),
+                receiveThread.getUnderruns());
+        }
+    }
+
+    /**
+     * Estimates the SNR of a signal around a carrier from spectra of the received audio.
+     */
+    private static class SnrMeter implements PcmListener {
+
+        private final double hz;
+
+        private final double symbolRate;
+
+        private Fft fft;
+        private float[] window;
+        private float[] re;
+        private float[] im;
+        private float[] power;
+        private int fill;
+
+        private volatile double snrDb;
+
+        private SnrMeter(final double hz, final double symbolRate) {
+            this.hz = hz;
+            this.symbolRate = symbolRate;
+            this.snrDb = 0;
+        }
+
+        /**
+         * @return The estimate from the most recent spectrum, in decibels.
+         */
+        private double getSnrDb() {
+            return snrDb;
+        }
+
+        @Override
+        public void onPcm(final short[] samples, final int off, final int len, final int sampleRate) {
+            if (fft == null) {
+                fft = new Fft(Fft.nextPowerOfTwo(sampleRate / SNR_FRAMES_PER_SECOND));
+                window = Window.hann(fft.size());
+                re = new float[fft.size()];
+                im = new float[fft.size()];
+                power = new float[fft.size() / 2];
+                fill = 0;
+            }
+
+            for (int i = off; i < off + len; ++i) {
+                re[fill] = samples[i] / 32768f * window[fill];
+                if (++fill == re.length) {
+                    estimate(sampleRate);
+                    fill = 0;
+                }
+            }
+        }
+
+        /**
+         * Compare the band within a symbol rate of the carrier with the bands
+         * from three to five symbol rates away on either side.
+         */
+        private void estimate(final int sampleRate) {
+            for (int i = 0; i < im.length; ++i) {
+                im[i] = 0;
+            }
+
+            fft.transform(re, im);
+            fft.power(re, im, power);
+
+            final double hzPerBin = (double) sampleRate / fft.size();
+
+            double signal = 0;
+            int signalBins = 0;
+            double noise = 0;
+            int noiseBins = 0;
+
+            for (int bin = 1; bin < power.length; ++bin) {
+                final double distance = Math.abs(bin * hzPerBin - hz) / symbolRate;
+
+                if (distance <= 1) {
+                    signal += power[bin];
+                    ++signalBins;
+                }
+                else if (distance >= 3 && distance <= 5) {
+                    noise += power[bin];
+                    ++noiseBins;
+                }
+            }
+
+            if (signalBins > 0 && noiseBins > 0 && noise > 0) {
+                final double inBand = noise / noiseBins * signalBins;
+                snrDb = 10.0 * Math.log10(Math.max(signal - inBand, inBand * 1e-3) / inBand);
+            }
+        }
+    }
+
+    /**
+     * Counts the samples played.
+     *
+     * Writes and release are serialized, so a sink such as a {@link WavPcmSink}
+     * is never closed in the middle of a write by {@link Bpsk.TransmitThread#stopTransmit()}.
+     */
+    private static class CountingPcmSink implements PcmSink {
+
+        private final PcmSink sink;
+
+        private volatile long samples;
+
+        private boolean released;
+
+        private CountingPcmSink(final PcmSink sink) {
+            this.sink = sink;
+            this.samples = 0;
+            this.released = false;
+        }
+
+        private long getSamples() {
+            return samples;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sink.getSampleRate();
+        }
+
+        @Override
+        public void start() throws IOException {
+            sink.start();
+        }
+
+        @Override
+        public synchronized void write(final short[] buffer, final int off, final int len) throws IOException {
+            if (released) {
+                throw new IOException("Sink released.");
+            }
+
+            sink.write(buffer, off, len);
+            samples += len;
+        }
+
+        @Override
+        public void stop() {
+            sink.stop();
+        }
+
+        @Override
+        public synchronized void release() {
+            released = true;
+            sink.release();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.Counter;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSink} that counts the samples written through it and the time
+ * spent waiting on the sink, so that a writer may tell its own work apart
+ * from waiting for playback.
+ */
+public class MeteredPcmSink implements PcmSink {
+
+    private final PcmSink sink;
+
+    private final Counter samples;
+
+    /**
+     * Nanoseconds spent in the wrapped sink's write.
+     */
+    private volatile long writeNanos;
+
+    /**
+     * When the first write returned, or 0 before then.
+     */
+    private volatile long firstWriteNanos;
+
+    /**
+     * @param sink The sink to write to.
+     */
+    public MeteredPcmSink(final PcmSink sink) {
+        this.sink = sink;
+        this.samples = new Counter();
+        this.writeNanos = 0;
+        this.firstWriteNanos = 0;
+    }
+
+    /**
+     * @return The samples written.
+     */
+    public Counter getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return The total nanoseconds spent in the wrapped sink's write.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return When the first samples were handed to the wrapped sink, by {@link System#nanoTime()}, or 0 before then.
+     */
+    public long getFirstWriteNanos() {
+        return firstWriteNanos;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sink.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        sink.start();
+    }
+
+    @Override
+    public void write(final short[] buffer, final int off, final int len) throws IOException {
+        final long start = System.nanoTime();
+        sink.write(buffer, off, len);
+
+        final long end = System.nanoTime();
+        writeNanos += end - start;
+        if (firstWriteNanos == 0 && len > 0) {
+            firstWriteNanos = end;
+        }
+        samples.add(len);
+    }
+
+    @Override
+    public void stop() {
+        sink.stop();
+    }
+
+    @Override
+    public void release() {
+        sink.release();
+    }
+}
@@ -0,0 +1,127 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.Counter;
+import org.sdsai.airqso.metrics.Timer;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that counts the samples read through it and times the
+ * work its reader does with each buffer, which is the time between one read
+ * returning and the next being made.
+ *
+ * Placed above a {@link BufferedPcmSource}, the time spent waiting for capture
+ * is left out and what is timed is the processing of each buffer.
+ */
+public class MeteredPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    private final Counter samples;
+
+    private final Timer work;
+
+    /**
+     * When the last read returned, or 0 before the first. Only used by the reader.
+     */
+    private long lastReturn;
+
+    /**
+     * When the first samples were read, and how many.
+     */
+    private volatile long firstNanos;
+    private volatile long firstSamples;
+
+    /**
+     * @param source The source to read from.
+     */
+    public MeteredPcmSource(final PcmSource source) {
+        this.source = source;
+        this.samples = new Counter();
+        this.work = new Timer();
+        this.lastReturn = 0;
+        this.firstNanos = 0;
+        this.firstSamples = 0;
+    }
+
+    /**
+     * @return The samples read.
+     */
+    public Counter getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return The time the reader spent on each buffer.
+     */
+    public Timer getWork() {
+        return work;
+    }
+
+    /**
+     * @return When the first samples were read, by {@link System#nanoTime()}, or 0 before then.
+     */
+    public long getFirstSampleNanos() {
+        return firstNanos;
+    }
+
+    /**
+     * @return How far the rate samples arrive at differs from the nominal rate
+     *         as timed by the system clock, in parts per million. A receiver
+     *         sees this error in the symbol rate of every signal. This is only
+     *         meaningful for a source paced in real time.
+     */
+    public double getRateErrorPpm() {
+        final long start = firstNanos;
+        if (start == 0) {
+            return 0;
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final long n = samples.get() - firstSamples;
+
+        return seconds > 0 && n > 0 ? (n / seconds / getSampleRate() - 1) * 1e6 : 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        if (lastReturn != 0) {
+            work.record(System.nanoTime() - lastReturn);
+        }
+
+        final int rc = source.read(buffer, off, len);
+
+        lastReturn = System.nanoTime();
+
+        if (rc > 0) {
+            samples.add(rc);
+
+            if (firstNanos == 0) {
+                firstSamples = rc;
+                firstNanos = lastReturn;
+            }
+        }
+
+        return rc;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,38 @@
+package org.sdsai.airqso;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A modulation and symbol rate, such as PSK31.
+ */
+public interface Mode {
+
+    /**
+     * @return The name shown to users, such as "PSK31".
+     */
+    String getName();
+
+    /**
+     * @return The number of symbols per second.
+     */
+    double getSymbolRate();
+
+    /**
+     * @param out Where big-endian 16 bit PCM is written.
+     * @param hz The carrier frequency.
+     * @param sampleRate The sample rate of out.
+     *
+     * @return A stream that modulates characters written to it.
+     */
+    ModemOutputStream newOutputStream(OutputStream out, int hz, int sampleRate);
+
+    /**
+     * @param in Where big-endian 16 bit PCM is read from.
+     * @param hz The carrier frequency.
+     * @param sampleRate The sample rate of in.
+     *
+     * @return A stream of the characters demodulated from in.
+     */
+    InputStream newInputStream(InputStream in, int hz, int sampleRate);
+}
@@ -0,0 +1,90 @@
+package org.sdsai.airqso;
+
+import org.sdsai.dsp.BpskGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The modes the modem offers, looked up by name.
+ */
+public class ModeRegistry {
+
+    public static final Mode PSK31 = new BpskMode("PSK31", BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    public static final Mode PSK63 = new BpskMode("PSK63", BpskGenerator.PSK31_SYMBOLS_PER_SECOND * 2);
+    public static final Mode PSK125 = new BpskMode("PSK125", BpskGenerator.PSK31_SYMBOLS_PER_SECOND * 4);
+    public static final Mode QPSK31 = new QpskMode("QPSK31", BpskGenerator.PSK31_SYMBOLS_PER_SECOND);
+    public static final Mode QPSK63 = new QpskMode("QPSK63", BpskGenerator.PSK31_SYMBOLS_PER_SECOND * 2);
+    public static final Mode QPSK125 = new QpskMode("QPSK125", BpskGenerator.PSK31_SYMBOLS_PER_SECOND * 4);
+
+    /**
+     * QPSK31 interleaved over about 1.5 seconds, for bands with fading.
+     */
+    public static final Mode QPSK31_INTERLEAVED = new QpskMode(
+        "QPSK31 IL",
+        BpskGenerator.PSK31_SYMBOLS_PER_SECOND,
+        4,
+        4);
+
+    /**
+     * QPSK63 interleaved over about 1.5 seconds, for bands with fading.
+     */
+    public static final Mode QPSK63_INTERLEAVED = new QpskMode(
+        "QPSK63 IL",
+        BpskGenerator.PSK31_SYMBOLS_PER_SECOND * 2,
+        4,
+        8);
+
+    private static final List<Mode> MODES;
+
+    static {
+        final List<Mode> modes = new ArrayList<Mode>();
+        modes.add(PSK31);
+        modes.add(PSK63);
+        modes.add(PSK125);
+        modes.add(QPSK31);
+        modes.add(QPSK63);
+        modes.add(QPSK125);
+        modes.add(QPSK31_INTERLEAVED);
+        modes.add(QPSK63_INTERLEAVED);
+        MODES = Collections.unmodifiableList(modes);
+    }
+
+    /**
+     * @return Every mode, slowest first within each modulation.
+     */
+    public static List<Mode> getModes() {
+        return MODES;
+    }
+
+    /**
+     * @param name A mode name such as "PSK63".
+     *
+     * @return The mode, or null if there is none by that name.
+     */
+    public static Mode getMode(final String name) {
+        for (final Mode mode : MODES) {
+            if (mode.getName().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param symbolRate The number of symbols per second.
+     *
+     * @return The registered BPSK mode at that rate, or a new one if there is none.
+     */
+    public static Mode bpsk(final double symbolRate) {
+        for (final Mode mode : MODES) {
+            if (mode instanceof BpskMode && mode.getSymbolRate() == symbolRate) {
+                return mode;
+            }
+        }
+
+        return new BpskMode("BPSK" + symbolRate, symbolRate);
+    }
+}
@@ -0,0 +1,24 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Modulates bytes written to it as characters, writing big-endian 16 bit PCM to another stream.
+ */
+public abstract class ModemOutputStream extends OutputStream {
+
+    /**
+     * Send idle symbols that let a receiver find the signal and its timing.
+     *
+     * @param symbols The number of idle symbols to send.
+     */
+    public abstract void preamble(int symbols) throws IOException;
+
+    /**
+     * Send the symbols that end a transmission so the receiver decodes everything before them.
+     *
+     * @param symbols The number of closing symbols to send.
+     */
+    public abstract void postamble(int symbols) throws IOException;
+}
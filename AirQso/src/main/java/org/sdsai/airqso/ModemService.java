@@ -0,0 +1,544 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.CsvMetricsWriter;
+import org.sdsai.airqso.util.HistoryOutputStream;
+import org.sdsai.airqso.util.TextQueue;
+
+import android.app.Service;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Binder;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the modem for as long as the app does, rather than for as long as a screen does.
+ *
+ * The service owns the {@link Bpsk} engine, the queue of text to send, and
+ * the text received, so a screen that is stopped and started again, or
+ * recreated, finds the transmitter and receiver as it left them and is shown
+ * everything received while it was away. Screens bind to the service and use
+ * its {@link LocalBinder}.
+ *
+ * The service is started as well as bound so that it outlives a screen that is
+ * only stopped, and is stopped by a screen the user leaves for good. It stops
+ * the modem when it is destroyed. Call the service from the UI thread; what
+ * may take long, such as finding a working audio configuration the first time,
+ * is done on a thread of its own. Starting and stopping the modem waits for
+ * the audio devices, which may be busy being opened, so it is done in the
+ * order asked on a control thread, and what fails is written to the received
+ * text.
+ */
+public class ModemService extends Service {
+
+    /**
+     * The most characters waiting to be transmitted.
+     */
+    private static final int TX_CAPACITY = 64 * 1024;
+
+    /**
+     * The most received characters kept for screens that attach later.
+     */
+    private static final int RX_HISTORY = 32 * 1024;
+
+    /**
+     * The preferences the working audio configurations are kept in.
+     */
+    private static final String AUDIO_PREFERENCES = "audio_config";
+
+    /**
+     * The preferences the user's settings are kept in.
+     */
+    private static final String SETTINGS_PREFERENCES = "settings";
+
+    /**
+     * The setting that writes metrics to {@link #METRICS_FILE}.
+     */
+    private static final String METRICS_LOGGING = "metrics_logging";
+
+    /**
+     * The file under {@link #getFilesDir()} metrics are appended to.
+     */
+    private static final String METRICS_FILE = "metrics.csv";
+
+    /**
+     * How often a line of metrics is written.
+     */
+    private static final long METRICS_PERIOD_MILLIS = 1000;
+
+    /**
+     * Characters the self-test sends, about half a minute in PSK31.
+     */
+    private static final int SELF_TEST_CHARACTERS = 100;
+
+    /**
+     * The longest the self-test waits for its sequence to be received.
+     */
+    private static final long SELF_TEST_TIMEOUT_MILLIS = 90000;
+
+    private final IBinder binder = new LocalBinder();
+
+    private HistoryOutputStream received;
+
+    private TextQueue textQueue;
+
+    private Bpsk bpsk;
+
+    private AudioPool audioPool;
+
+    /**
+     * Transmits and mutes the receiver meanwhile, since both share one speaker and microphone.
+     */
+    private HalfDuplexController duplex;
+
+    /**
+     * If true, transmitting sends queued text in bursts.
+     */
+    private boolean burstMode;
+
+    /**
+     * Written only on the control thread.
+     */
+    private volatile Bpsk.ReceiveThread receiveThread;
+
+    /**
+     * Starts and stops the modem, one request at a time in the order made.
+     */
+    private ExecutorService control;
+
+    /**
+     * Opens audio for the latest {@link #prepare(int, Mode)} request, or null if none is running.
+     */
+    private Thread preparer;
+
+    private int prepareHz;
+
+    /**
+     * The mode to open audio for next, or null if there is no request waiting.
+     */
+    private Mode prepareMode;
+
+    /**
+     * The running self-test, or null.
+     */
+    private Thread selfTest;
+
+    private SharedPreferences settings;
+
+    /**
+     * Writes the engine's metrics while {@link #isMetricsLogging()}.
+     */
+    private CsvMetricsWriter metricsWriter;
+
+    /**
+     * How a screen in this process reaches the service.
+     */
+    public class LocalBinder extends Binder {
+        public ModemService getService() {
+            return ModemService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        /* Opening audio is quick once this device's working configuration is known. */
+        Bpsk.setAudioConfigCache(new AudioConfigCache(getSharedPreferences(AUDIO_PREFERENCES, MODE_PRIVATE)));
+
+        received = new HistoryOutputStream(RX_HISTORY);
+        textQueue = new TextQueue(TX_CAPACITY);
+        bpsk = new Bpsk(received, textQueue);
+        audioPool = new AudioPool();
+        bpsk.setAudioPool(audioPool);
+        duplex = new HalfDuplexController(bpsk, textQueue);
+        burstMode = false;
+        control = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, "ModemControl");
+            }
+        });
+
+        metricsWriter = new CsvMetricsWriter(bpsk.getMetrics(), new File(getFilesDir(), METRICS_FILE), METRICS_PERIOD_MILLIS);
+        settings = getSharedPreferences(SETTINGS_PREFERENCES, MODE_PRIVATE);
+        if (isMetricsLogging()) {
+            metricsWriter.start();
+        }
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, final int flags, final int startId) {
+        /* After the process is killed there is no screen to say what to run, so stay down. */
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (this) {
+            prepareMode = null;
+        }
+
+        metricsWriter.stop();
+        received.detach();
+
+        /* After any start still waiting, so nothing is left running. */
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                duplex.stopTransmit();
+                stopReceiving();
+                audioPool.close();
+            }
+        });
+        control.shutdown();
+
+        super.onDestroy();
+    }
+
+    /**
+     * @return The engine, for its metrics and codec.
+     */
+    public Bpsk getBpsk() {
+        return bpsk;
+    }
+
+    /**
+     * Write the engine's metrics once a second to {@code metrics.csv} under
+     * {@link #getFilesDir()}, or stop. The setting is kept for the next time
+     * the service starts. The file grows until it is deleted.
+     *
+     * @param enabled True to write metrics.
+     */
+    public void setMetricsLogging(final boolean enabled) {
+        settings.edit().putBoolean(METRICS_LOGGING, enabled).commit();
+
+        if (enabled) {
+            metricsWriter.start();
+        }
+        else {
+            metricsWriter.stop();
+        }
+    }
+
+    /**
+     * @return True if metrics are being written.
+     */
+    public boolean isMetricsLogging() {
+        return settings.getBoolean(METRICS_LOGGING, false);
+    }
+
+    /**
+     * @return The queue the transmitter sends from. It lives as long as the service.
+     */
+    public TextQueue getTextQueue() {
+        return textQueue;
+    }
+
+    /**
+     * Show received text on an output, starting with what was received before
+     * this call. This replaces any output already attached.
+     *
+     * @param out The output.
+     */
+    public void attach(final OutputStream out) {
+        received.attach(out);
+    }
+
+    /**
+     * Stop showing received text on the attached output. Text received after this is still kept.
+     */
+    public void detach() {
+        received.detach();
+    }
+
+    /**
+     * Forget the received text kept for outputs attached later.
+     */
+    public void clearReceived() {
+        received.clear();
+    }
+
+    /**
+     * Open the speaker and microphone for a mode ahead of time, so that
+     * starting to transmit or receive in it only starts streaming.
+     *
+     * This returns at once. The first time, finding a configuration the device
+     * accepts may try dozens, so they are opened on a thread of their own. If
+     * requests come faster than they are served, only the latest is.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode.
+     */
+    public synchronized void prepare(final int hz, final Mode mode) {
+        prepareHz = hz;
+        prepareMode = mode;
+
+        if (preparer == null) {
+            preparer = new Thread("AudioPrepare") {
+                @Override
+                public void run() {
+                    prepareAll();
+                }
+            };
+            preparer.start();
+        }
+    }
+
+    /**
+     * Serve {@link #prepare(int, Mode)} requests until none is waiting.
+     */
+    private void prepareAll() {
+        while (true) {
+            final int hz;
+            final Mode mode;
+
+            synchronized (this) {
+                if (prepareMode == null) {
+                    preparer = null;
+                    return;
+                }
+
+                hz = prepareHz;
+                mode = prepareMode;
+                prepareMode = null;
+            }
+
+            try {
+                audioPool.prepare(hz, mode);
+            }
+            catch (final RuntimeException e) {
+                /* Starting will try again and report the failure then. */
+                Log.w("ModemService", "Could not open audio ahead of time.", e);
+            }
+        }
+    }
+
+    /**
+     * Play a known sequence through the speaker into the microphone and
+     * measure the link, as {@link LoopbackTest#runAcoustic(AudioPool, long)} does.
+     *
+     * Transmitting and receiving are stopped, since the test needs the speaker
+     * and microphone. This returns at once. What was measured, or why the test
+     * failed, is written to the received text when the test ends. Nothing is
+     * done if a test is already running.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode to test.
+     */
+    public void startSelfTest(final int hz, final Mode mode) {
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                /* Only this thread starts tests, so none can start in between. */
+                if (isSelfTesting()) {
+                    return;
+                }
+
+                duplex.stopTransmit();
+                stopReceiving();
+
+                final Thread t = new Thread("SelfTest") {
+                    @Override
+                    public void run() {
+                        selfTest(hz, mode);
+                    }
+                };
+
+                synchronized (ModemService.this) {
+                    selfTest = t;
+                }
+                t.start();
+            }
+        });
+    }
+
+    /**
+     * @return True while a self-test is running.
+     */
+    public synchronized boolean isSelfTesting() {
+        return selfTest != null && selfTest.isAlive();
+    }
+
+    private void selfTest(final int hz, final Mode mode) {
+        final String what = "[Self test of " + mode + " at " + hz + " Hz: ";
+        String report;
+
+        try {
+            report = what + new LoopbackTest(hz, mode, SELF_TEST_CHARACTERS).runAcoustic(audioPool, SELF_TEST_TIMEOUT_MILLIS) + "]\n";
+        }
+        catch (final IOException e) {
+            report = what + "failed, " + e.getMessage() + "]\n";
+        }
+        catch (final RuntimeException e) {
+            Log.w("ModemService", "Self test failed.", e);
+            report = what + "failed, " + e.getMessage() + "]\n";
+        }
+
+        note(report);
+    }
+
+    /**
+     * @param text Text to show among the received text.
+     */
+    private void note(final String text) {
+        received.write(text.getBytes(), 0, text.length());
+        received.flush();
+    }
+
+    /**
+     * @param what What the control thread failed to do.
+     * @param e Why.
+     */
+    private void failed(final String what, final RuntimeException e) {
+        Log.e("ModemService", what, e);
+        note("[" + what + ", " + e.getMessage() + "]\n");
+    }
+
+    /**
+     * @param burstMode If true, transmitting sends queued text in bursts and
+     *                  receives in between. This takes effect at the next {@link #startTransmit(int, Mode)}.
+     */
+    public void setBurstMode(final boolean burstMode) {
+        this.burstMode = burstMode;
+    }
+
+    public boolean isBurstMode() {
+        return burstMode;
+    }
+
+    /**
+     * @return What schedules transmitting and mutes the receiver, for its burst hold time.
+     */
+    public HalfDuplexController getHalfDuplexController() {
+        return duplex;
+    }
+
+    /**
+     * Start transmitting, replacing any transmitter already running. The
+     * receiver is muted while keyed up. This returns at once.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode to send in.
+     */
+    public void startTransmit(final int hz, final Mode mode) {
+        final boolean bursts = burstMode;
+
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (bursts) {
+                        duplex.startBursts(hz, mode);
+                    }
+                    else {
+                        duplex.startTransmit(hz, mode);
+                    }
+                }
+                catch (final RuntimeException e) {
+                    failed("Could not transmit", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop transmitting. This returns at once.
+     */
+    public void stopTransmit() {
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                duplex.stopTransmit();
+            }
+        });
+    }
+
+    /**
+     * @return The transmitter keyed up now or null.
+     */
+    public Bpsk.TransmitThread getTransmitThread() {
+        return duplex.getTransmitThread();
+    }
+
+    /**
+     * @return True while transmitting, or in burst mode while bursts are being scheduled.
+     */
+    public boolean isTransmitting() {
+        return duplex.isTransmitting() || duplex.isScheduling();
+    }
+
+    /**
+     * Start receiving, replacing any receiver already running. This returns at once.
+     *
+     * @param hz The carrier frequency.
+     * @param mode The mode to receive.
+     */
+    public void startReceive(final int hz, final Mode mode) {
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                stopReceiving();
+
+                try {
+                    receiveThread = bpsk.startReceive(hz, mode);
+                    duplex.setReceiver(receiveThread);
+                }
+                catch (final RuntimeException e) {
+                    failed("Could not receive", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop receiving. This returns at once.
+     */
+    public void stopReceive() {
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                stopReceiving();
+            }
+        });
+    }
+
+    /**
+     * Called on the control thread.
+     */
+    private void stopReceiving() {
+        if (receiveThread != null) {
+            duplex.setReceiver(null);
+            receiveThread.stopReceive();
+            receiveThread = null;
+        }
+    }
+
+    /**
+     * @return The running receiver or null.
+     */
+    public Bpsk.ReceiveThread getReceiveThread() {
+        final Bpsk.ReceiveThread r = receiveThread;
+
+        return r != null && r.isAlive() ? r : null;
+    }
+
+    /**
+     * @return True while a receiver is running.
+     */
+    public boolean isReceiving() {
+        return getReceiveThread() != null;
+    }
+}
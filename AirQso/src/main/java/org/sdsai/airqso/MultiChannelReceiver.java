@@ -0,0 +1,375 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.CarrierDetector;
+import org.sdsai.airqso.dsp.Fft;
+import org.sdsai.airqso.dsp.Window;
+import org.sdsai.airqso.util.ShortRingBuffer;
+import org.sdsai.dsp.BpskDetector;
+import org.sdsai.dsp.BpskInputStream;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes every PSK signal found in the passband at once.
+ *
+ * This thread reads a {@link PcmSource}, looks for carriers in an averaged FFT
+ * of the audio and starts a decoder for each one. Every decoder runs on its own
+ * thread, fed through its own {@link ShortRingBuffer}, so decoders spread across
+ * the available cores. A decoder that cannot keep up drops samples, which is
+ * counted in {@link #getOverruns()}. A channel whose carrier has been gone for
+ * a while is closed.
+ */
+public class MultiChannelReceiver extends Thread {
+
+    /**
+     * Told when channels open and close.
+     */
+    public interface ChannelListener {
+
+        /**
+         * A carrier was found.
+         *
+         * @param hz The carrier frequency.
+         *
+         * @return Where text decoded on this channel is written.
+         */
+        OutputStream channelOpened(int hz);
+
+        /**
+         * A channel's decoder has stopped. Called on the decoder's thread.
+         *
+         * @param hz The carrier frequency.
+         * @param out The stream returned by {@link #channelOpened(int)}.
+         */
+        void channelClosed(int hz, OutputStream out);
+    }
+
+    /**
+     * Seconds of audio buffered for each decoder.
+     */
+    private static final int CHANNEL_SECONDS = 2;
+
+    /**
+     * The most decoded characters held before they are handed to a channel's stream.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * How much each new spectrum contributes to the running average.
+     */
+    private static final float AVERAGE = 0.3f;
+
+    private final PcmSource source;
+
+    private final double symbolRate;
+
+    private final ChannelListener listener;
+
+    private final int maxChannels;
+
+    private final int sampleRate;
+
+    /**
+     * Channels closer than this share a decoder.
+     */
+    private final double spacingHz;
+
+    /**
+     * Samples without seeing a channel's carrier before it is closed.
+     */
+    private final long holdSamples;
+
+    private final Fft fft;
+
+    private final float[] window;
+
+    private final float[] re;
+
+    private final float[] im;
+
+    private final float[] power;
+
+    private final float[] average;
+
+    private final CarrierDetector carrierDetector;
+
+    private final float[] carriers;
+
+    private final short[] frame;
+
+    /**
+     * Only changed by this thread, while holding its lock.
+     */
+    private final List<Channel> channels;
+
+    /**
+     * Samples collected toward the next transform.
+     */
+    private int fill;
+
+    /**
+     * Samples read so far. Used as the clock so files decode the same at any speed.
+     */
+    private long samplesRead;
+
+    private volatile int channelCount;
+
+    private volatile long retiredOverruns;
+
+    private volatile boolean running;
+
+    /**
+     * @param source Where audio is read from. This is released when the thread ends.
+     * @param symbolRate The number of symbols per second.
+     * @param minHz The lowest carrier frequency decoded.
+     * @param maxHz The highest carrier frequency decoded.
+     * @param thresholdDb How far above the noise floor a carrier must be.
+     * @param maxChannels The most channels decoded at once.
+     * @param listener Told when channels open and close.
+     */
+    public MultiChannelReceiver(
+        final PcmSource source,
+        final double symbolRate,
+        final double minHz,
+        final double maxHz,
+        final double thresholdDb,
+        final int maxChannels,
+        final ChannelListener listener
+    )
+    {
+        super("MultiChannelReceiver");
+
+        this.source = source;
+        this.symbolRate = symbolRate;
+        this.listener = listener;
+        this.maxChannels = maxChannels;
+        this.sampleRate = source.getSampleRate();
+
+        /* A PSK signal is about twice its symbol rate wide. */
+        this.spacingHz = symbolRate * 2;
+        this.holdSamples = sampleRate * 5L;
+
+        /* Resolve a few hertz, which is a fraction of a signal's width. */
+        this.fft = new Fft(Fft.nextPowerOfTwo(sampleRate / 4));
+        this.window = Window.hann(fft.size());
+        this.re = new float[fft.size()];
+        this.im = new float[fft.size()];
+        this.power = new float[fft.size() / 2];
+        this.average = new float[fft.size() / 2];
+        this.carrierDetector = new CarrierDetector(sampleRate, fft.size(), minHz, maxHz, spacingHz, thresholdDb);
+        this.carriers = new float[maxChannels * 2];
+        this.frame = new short[(int) (sampleRate / symbolRate)];
+        this.channels = new ArrayList<Channel>();
+        this.fill = 0;
+        this.samplesRead = 0;
+        this.channelCount = 0;
+        this.retiredOverruns = 0;
+        this.running = false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            source.start();
+            running = true;
+            while (running) {
+                final int rc = source.read(frame, 0, frame.length);
+
+                if (rc == -1) {
+                    break;
+                }
+
+                for (int i = 0; i < channels.size(); ++i) {
+                    channels.get(i).ring.write(frame, 0, rc);
+                }
+
+                for (int i = 0; i < rc; ++i) {
+                    re[fill] = frame[i] * window[fill];
+                    if (++fill == re.length) {
+                        analyze();
+                        fill = 0;
+                    }
+                }
+
+                samplesRead += rc;
+            }
+        }
+        catch (final IOException e) {
+            Log.i("MultiChannelReceiver", e.getMessage());
+        }
+        finally {
+            synchronized (channels) {
+                for (final Channel channel : channels) {
+                    retiredOverruns += channel.ring.getOverruns();
+                    channel.close();
+                }
+                channels.clear();
+            }
+            channelCount = 0;
+            source.release();
+        }
+    }
+
+    /**
+     * Transform the collected samples, then open and close channels to match the carriers found.
+     */
+    private void analyze() {
+        for (int i = 0; i < im.length; ++i) {
+            im[i] = 0;
+        }
+
+        fft.transform(re, im);
+        fft.power(re, im, power);
+
+        for (int i = 0; i < average.length; ++i) {
+            average[i] += AVERAGE * (power[i] - average[i]);
+        }
+
+        final int found = carrierDetector.detect(average, carriers);
+
+        for (int i = 0; i < found; ++i) {
+            final Channel channel = nearest(carriers[i]);
+
+            if (channel != null) {
+                channel.lastSeen = samplesRead;
+            }
+            else if (channels.size() < maxChannels) {
+                open(Math.round(carriers[i]));
+            }
+        }
+
+        for (int i = channels.size() - 1; i >= 0; --i) {
+            final Channel channel = channels.get(i);
+            if (samplesRead - channel.lastSeen > holdSamples) {
+                synchronized (channels) {
+                    channels.remove(i);
+                }
+                retiredOverruns += channel.ring.getOverruns();
+                channel.close();
+            }
+        }
+
+        channelCount = channels.size();
+    }
+
+    /**
+     * @return The channel within {@link #spacingHz} of hz, or null.
+     */
+    private Channel nearest(final float hz) {
+        for (final Channel channel : channels) {
+            if (Math.abs(channel.hz - hz) < spacingHz) {
+                return channel;
+            }
+        }
+
+        return null;
+    }
+
+    private void open(final int hz) {
+        final OutputStream out = listener.channelOpened(hz);
+        final Channel channel = new Channel(hz, out);
+        channel.lastSeen = samplesRead;
+        synchronized (channels) {
+            channels.add(channel);
+        }
+        channel.start();
+    }
+
+    /**
+     * Stop reading and close every channel.
+     */
+    public void stopReceive() {
+        running = false;
+        source.release();
+
+        try {
+            this.join();
+        }
+        catch (final InterruptedException e) {
+            Log.e("MultiChannelReceiver", "Failed to join receive thread.");
+        }
+    }
+
+    /**
+     * @return The number of channels being decoded.
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * @return Samples dropped, over all channels, because a decoder could not keep up.
+     *         If this grows, the device cannot decode this many channels in real time.
+     */
+    public long getOverruns() {
+        long overruns = retiredOverruns;
+
+        /* Channels may be changing under us, so only look at a snapshot. */
+        final Object[] snapshot;
+        synchronized (channels) {
+            snapshot = channels.toArray();
+        }
+        for (final Object channel : snapshot) {
+            overruns += ((Channel) channel).ring.getOverruns();
+        }
+
+        return overruns;
+    }
+
+    /**
+     * A decoder for one carrier.
+     */
+    private class Channel extends Thread {
+        private final int hz;
+        private final OutputStream out;
+        private final ShortRingBuffer ring;
+        private long lastSeen;
+
+        public Channel(final int hz, final OutputStream out) {
+            super("Channel-" + hz);
+            this.hz = hz;
+            this.out = out;
+            this.ring = new ShortRingBuffer(sampleRate * CHANNEL_SECONDS);
+        }
+
+        public void close() {
+            ring.close();
+        }
+
+        @Override
+        public void run() {
+            final BufferedOutputStream batchOut = new BufferedOutputStream(out, BATCH_SIZE);
+            final BpskInputStream bpskInputStream = new BpskInputStream(
+                new PcmInputStream(new RingPcmSource(ring, sampleRate), frame.length, batchOut),
+                new BpskDetector(hz, sampleRate, symbolRate));
+
+            try {
+                final byte[] b = new byte[1];
+                for (;;) {
+                    final int len = bpskInputStream.read(b);
+
+                    if (len > 0) {
+                        batchOut.write(b, 0, len);
+                    }
+                    else if (len == -1) {
+                        break;
+                    }
+                }
+
+                batchOut.flush();
+            }
+            catch (final IOException e) {
+                Log.i("MultiChannelReceiver", e.getMessage());
+            }
+            finally {
+                listener.channelClosed(hz, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.sdsai.airqso;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Presents 16 bit PCM read from a {@link PcmSource} as the big-endian
+ * byte stream that {@link org.sdsai.dsp.BpskInputStream} consumes.
+ *
+ * Frames are converted by a {@link PcmTransfer}, an {@link ArrayPcmTransfer}
+ * unless another is given. No per-sample byte swapping is done in Java and
+ * nothing is allocated after construction.
+ */
+public class PcmInputStream extends InputStream {
+
+    private final PcmSource source;
+
+    private final PcmTransfer transfer;
+
+    /**
+     * The big-endian bytes handed to the reader.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Flushed before every blocking capture read. May be null.
+     */
+    private final Flushable downstream;
+
+    /**
+     * Next byte in {@link #bytes} to hand out.
+     */
+    private int position;
+
+    /**
+     * One past the last valid byte in {@link #bytes}.
+     */
+    private int limit;
+
+    /**
+     * @param source The started source to read from.
+     * @param frameSize The number of samples read from the source at a time.
+     * @param downstream If not null, this is flushed before each blocking read from
+     *                   the source so that everything decoded from the previous
+     *                   frame is delivered as a single batch.
+     */
+    public PcmInputStream(final PcmSource source, final int frameSize, final Flushable downstream) {
+        this(source, new ArrayPcmTransfer(frameSize), downstream);
+    }
+
+    /**
+     * @param source The started source to read from.
+     * @param transfer Converts frames read from source.
+     * @param downstream If not null, this is flushed before each blocking read from source.
+     */
+    public PcmInputStream(final PcmSource source, final PcmTransfer transfer, final Flushable downstream) {
+        this.source = source;
+        this.transfer = transfer;
+        this.bytes = transfer.getBytes();
+        this.downstream = downstream;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * @return The number of bytes that may be read without touching the source.
+     */
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (position == limit) {
+            final int rc = fill();
+
+            /* If rc == -1, just exit. If rc == 0, we received nothing. */
+            if (rc <= 0) {
+                return rc;
+            }
+        }
+
+        final int n = Math.min(len, limit - position);
+        System.arraycopy(bytes, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public int read(final byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        throw new UnsupportedOperationException(
+            "Cannot read single value from audio input stream.");
+    }
+
+    /**
+     * Block on the source for the next frame of samples.
+     *
+     * @return The number of samples read, 0 if none were available or -1 at the end of the stream.
+     */
+    private int fill() throws IOException {
+        if (downstream != null) {
+            downstream.flush();
+        }
+
+        final int rc = transfer.read(source);
+
+        position = 0;
+        limit = rc > 0 ? rc * 2 : 0;
+
+        return rc;
+    }
+}
@@ -0,0 +1,18 @@
+package org.sdsai.airqso;
+
+/**
+ * Shown each buffer of samples as it is read from a {@link TappedPcmSource}.
+ *
+ * This is called on the reading thread, which for live audio is the capture
+ * thread, so implementations must copy what they need and return quickly.
+ */
+public interface PcmListener {
+
+    /**
+     * @param samples The samples read. These must not be changed or kept.
+     * @param off The offset of the first sample.
+     * @param len The number of samples.
+     * @param sampleRate The sample rate of the samples.
+     */
+    void onPcm(short[] samples, int off, int len, int sampleRate);
+}
@@ -0,0 +1,113 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Accepts the big-endian 16 bit byte stream that {@link org.sdsai.dsp.BpskOutputStream}
+ * produces and writes it to a {@link PcmSink} as native-order samples.
+ *
+ * Bytes are staged in the frame of a {@link PcmTransfer} and converted in
+ * bulk, so no per-sample byte swapping is done in Java and nothing is
+ * allocated after construction.
+ */
+public class PcmOutputStream extends OutputStream {
+
+    private final PcmSink sink;
+
+    private final PcmTransfer transfer;
+
+    /**
+     * Big-endian bytes waiting to be converted.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Bytes staged in {@link #bytes}.
+     */
+    private int staged;
+
+    /**
+     * @param sink Where samples are written.
+     * @param frameSize The most samples written to the sink at a time.
+     */
+    public PcmOutputStream(final PcmSink sink, final int frameSize) {
+        this(sink, new ArrayPcmTransfer(frameSize));
+    }
+
+    /**
+     * @param sink Where samples are written.
+     * @param transfer Converts frames written to sink.
+     */
+    public PcmOutputStream(final PcmSink sink, final PcmTransfer transfer) {
+        this.sink = sink;
+        this.transfer = transfer;
+        this.bytes = transfer.getBytes();
+        this.staged = 0;
+    }
+
+    @Override
+    public void write(final int i) throws IOException {
+        throw new UnsupportedOperationException(
+            "Cannot write single byte to audio output stream.");
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        int written = 0;
+        while (written < len) {
+            final int n = Math.min(len - written, bytes.length - staged);
+            System.arraycopy(b, off + written, bytes, staged, n);
+            staged += n;
+            written += n;
+
+            if (staged == bytes.length) {
+                drain();
+            }
+        }
+
+        /* Do not hold whole samples back from the sink. */
+        if (staged > 1) {
+            drain();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Write samples that are already in native order, without converting them to bytes.
+     *
+     * @param samples The samples.
+     * @param off The offset into samples to start at.
+     * @param len The number of samples to write.
+     *
+     * @throws IOException On a write error.
+     */
+    public void write(final short[] samples, final int off, final int len) throws IOException {
+        if (staged > 1) {
+            drain();
+        }
+
+        sink.write(samples, off, len);
+    }
+
+    /**
+     * Convert and write every whole sample staged, keeping a trailing odd byte.
+     */
+    private void drain() throws IOException {
+        final int samples = staged / 2;
+
+        transfer.write(sink, samples);
+
+        if ((staged & 1) == 1) {
+            bytes[0] = bytes[staged - 1];
+            staged = 1;
+        }
+        else {
+            staged = 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+
+/**
+ * A consumer of mono, 16 bit PCM samples in the platform's native order.
+ *
+ * This decouples the modem threads in {@link Bpsk} from
+ * {@link android.media.AudioTrack} so they may also write to files or
+ * to memory.
+ */
+public interface PcmSink {
+
+    /**
+     * @return The sample rate that samples passed to {@link #write(short[], int, int)} are expected in.
+     */
+    int getSampleRate();
+
+    /**
+     * Begin consuming samples.
+     *
+     * @throws IOException If the sink cannot be started.
+     */
+    void start() throws IOException;
+
+    /**
+     * Write all the given samples, blocking until they are accepted.
+     *
+     * @param buffer The samples to write.
+     * @param off The offset into buffer to start at.
+     * @param len The number of samples to write.
+     *
+     * @throws IOException On a write error.
+     */
+    void write(short[] buffer, int off, int len) throws IOException;
+
+    /**
+     * Stop consuming samples. This may be called more than once.
+     */
+    void stop();
+
+    /**
+     * Release all resources held by this sink. This may be called more than once.
+     */
+    void release();
+}
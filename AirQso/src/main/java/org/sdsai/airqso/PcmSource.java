@@ -0,0 +1,47 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+
+/**
+ * A source of mono, 16 bit PCM samples in the platform's native order.
+ *
+ * This decouples the modem threads in {@link Bpsk} from
+ * {@link android.media.AudioRecord} so they may also be driven from files or
+ * from memory.
+ */
+public interface PcmSource {
+
+    /**
+     * @return The sample rate of the samples returned by {@link #read(short[], int, int)}.
+     */
+    int getSampleRate();
+
+    /**
+     * Begin producing samples.
+     *
+     * @throws IOException If the source cannot be started.
+     */
+    void start() throws IOException;
+
+    /**
+     * Read samples, blocking until at least one is available.
+     *
+     * @param buffer The buffer to fill.
+     * @param off The offset into buffer to start at.
+     * @param len The most samples to read.
+     *
+     * @return The number of samples read, 0 if none were available or -1 at the end of the source.
+     * @throws IOException On a read error.
+     */
+    int read(short[] buffer, int off, int len) throws IOException;
+
+    /**
+     * Stop producing samples. This may be called more than once.
+     */
+    void stop();
+
+    /**
+     * Release all resources held by this source. This may be called more than once.
+     */
+    void release();
+}
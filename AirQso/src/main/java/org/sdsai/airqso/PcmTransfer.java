@@ -0,0 +1,46 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+
+/**
+ * Moves one frame of audio between a {@link PcmSource} or {@link PcmSink},
+ * which deal in native-order samples, and the big-endian 16 bit bytes that the
+ * modem streams speak.
+ *
+ * Implementations own their buffers and allocate nothing after construction.
+ * {@link PcmInputStream} and {@link PcmOutputStream} do their conversions
+ * through this interface so the ways of doing it can be measured on their own.
+ */
+public interface PcmTransfer {
+
+    /**
+     * @return The most samples moved at a time.
+     */
+    int getFrameSize();
+
+    /**
+     * @return The big-endian frame filled by {@link #read(PcmSource)} and
+     *         written by {@link #write(PcmSink, int)}. It holds {@link #getFrameSize()} samples.
+     */
+    byte[] getBytes();
+
+    /**
+     * Read up to a frame of samples from source into {@link #getBytes()}.
+     *
+     * @param source The source.
+     *
+     * @return The number of samples read, 0 if none were available or -1 at the end of the source.
+     * @throws IOException On a read error.
+     */
+    int read(PcmSource source) throws IOException;
+
+    /**
+     * Write samples from the start of {@link #getBytes()} to sink.
+     *
+     * @param sink The sink.
+     * @param samples The number of samples to write.
+     *
+     * @throws IOException On a write error.
+     */
+    void write(PcmSink sink, int samples) throws IOException;
+}
@@ -0,0 +1,374 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.ConvolutionalInterleaver;
+import org.sdsai.airqso.dsp.QpskDemodulator;
+import org.sdsai.airqso.dsp.Varicode;
+import org.sdsai.airqso.dsp.ViterbiDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Reads characters sent by a {@link QpskOutputStream} from big-endian 16 bit PCM.
+ *
+ * Characters arrive {@link ViterbiDecoder#DEFAULT_DEPTH} symbols, plus the
+ * interleaver latency, after they were sent.
+ *
+ * When symbols are interleaved the receiver does not know which interleaver
+ * branch a symbol went through, so one decoder runs per branch, each assuming
+ * a different one, and characters are taken from the decoder whose symbols fit
+ * the code best. Idle fits every decoder equally, so the choice is settled by
+ * the first character received. Until then each decoder holds back the few
+ * characters it has decoded, and the chosen decoder's are read once it is
+ * chosen. Later the choice only moves to another decoder between characters.
+ */
+public class QpskInputStream extends InputStream {
+
+    /**
+     * Samples read from the underlying stream at a time.
+     */
+    private static final int FRAME_SIZE = 1024;
+
+    /**
+     * How quickly each decoder's fit is averaged, per symbol.
+     */
+    private static final double FIT_ALPHA = 1.0 / 16;
+
+    /**
+     * How much better another decoder must fit to take over.
+     */
+    private static final double FIT_MARGIN = QpskDemodulator.SCALE / 8.0;
+
+    /**
+     * The most characters a decoder holds back while no decoder has been chosen.
+     */
+    private static final int HELD = 8;
+
+    private final InputStream in;
+
+    private final QpskDemodulator demodulator;
+
+    private final Decoder[] decoders;
+
+    /**
+     * The decoder characters are taken from, or null until one fits better than the rest.
+     */
+    private Decoder decoder;
+
+    /**
+     * Big-endian bytes read from {@link #in}.
+     */
+    private final byte[] bytes;
+
+    /**
+     * A big-endian view over {@link #bytes}.
+     */
+    private final ShortBuffer byteView;
+
+    /**
+     * {@link #bytes} as samples.
+     */
+    private final short[] frame;
+
+    /**
+     * Characters decoded but not yet read.
+     */
+    private final byte[] decoded;
+
+    /**
+     * The character returned by {@link #read()}.
+     */
+    private final byte[] one;
+
+    /**
+     * 1 if the last read from {@link #in} ended half way through a sample, whose first byte is kept at the start of {@link #bytes}.
+     */
+    private int carry;
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * @param in Where big-endian 16 bit PCM is read from.
+     * @param demodulator The demodulator.
+     */
+    public QpskInputStream(final InputStream in, final QpskDemodulator demodulator) {
+        this(in, demodulator, 1, 0);
+    }
+
+    /**
+     * @param in Where big-endian 16 bit PCM is read from.
+     * @param demodulator The demodulator.
+     * @param branches The number of interleaver branches the sender used. 1 if it did not interleave.
+     * @param delay The extra delay of each interleaver branch over the last.
+     */
+    public QpskInputStream(
+        final InputStream in,
+        final QpskDemodulator demodulator,
+        final int branches,
+        final int delay
+    )
+    {
+        this.in = in;
+        this.demodulator = demodulator;
+        this.decoders = new Decoder[branches];
+        for (int i = 0; i < branches; ++i) {
+            decoders[i] = new Decoder(branches > 1 ?
+                new ConvolutionalInterleaver(branches, delay, 4, true, i) :
+                null);
+        }
+        this.decoder = branches > 1 ? null : decoders[0];
+        this.bytes = new byte[FRAME_SIZE * 2];
+        this.byteView = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+        this.frame = new short[FRAME_SIZE];
+
+        /* Symbols are at least half a symbol period apart and a character takes at least three. */
+        this.decoded = new byte[2 * FRAME_SIZE / demodulator.getSamplesPerSymbol() / 3 + 2 + HELD];
+        this.one = new byte[1];
+        this.carry = 0;
+        this.position = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * @return Decoded characters that may be read without touching the underlying stream.
+     */
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int rc;
+        do {
+            rc = read(one, 0, 1);
+        } while (rc == 0);
+
+        return rc < 0 ? -1 : one[0] & 0xff;
+    }
+
+    /**
+     * @return The number of characters read, 0 if the underlying stream returned nothing, or -1 at its end.
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == limit) {
+            final int rc = fill();
+
+            if (rc <= 0) {
+                return rc;
+            }
+        }
+
+        final int n = Math.min(len, limit - position);
+        System.arraycopy(decoded, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    /**
+     * Demodulate one read of the underlying stream.
+     *
+     * @return The number of bytes read, 0 if none were or -1 at the end of the stream.
+     */
+    private int fill() throws IOException {
+        final int rc = in.read(bytes, carry, bytes.length - carry);
+
+        if (rc <= 0) {
+            return rc;
+        }
+
+        final int total = carry + rc;
+        final int samples = total / 2;
+
+        byteView.clear();
+        byteView.get(frame, 0, samples);
+
+        carry = total & 1;
+        if (carry != 0) {
+            bytes[0] = bytes[total - 1];
+        }
+
+        position = 0;
+        limit = 0;
+
+        for (int i = 0; i < samples; ++i) {
+            if (demodulator.add(frame[i])) {
+                symbol(demodulator.getMetrics());
+            }
+        }
+
+        return rc;
+    }
+
+    private void symbol(final int[] metrics) {
+        for (final Decoder d : decoders) {
+            final int c = d.add(metrics);
+
+            if (c < 0) {
+                continue;
+            }
+
+            if (d == decoder) {
+                decoded[limit++] = (byte) c;
+            }
+            else if (decoder == null) {
+                d.hold(c);
+            }
+        }
+
+        if (decoders.length > 1) {
+            choose();
+        }
+    }
+
+    /**
+     * Choose the decoder that fits best, if one does by {@link #FIT_MARGIN}.
+     */
+    private void choose() {
+        Decoder best = decoders[0];
+        double worst = best.fit;
+        for (final Decoder d : decoders) {
+            if (d.fit > best.fit) {
+                best = d;
+            }
+            worst = Math.min(worst, d.fit);
+        }
+
+        double second = Double.NEGATIVE_INFINITY;
+        for (final Decoder d : decoders) {
+            if (d != best) {
+                second = Math.max(second, d.fit);
+            }
+        }
+
+        if (decoder == null) {
+            if (best.fit > second + FIT_MARGIN) {
+                decoder = best;
+                limit = best.release(decoded, limit);
+
+                for (final Decoder d : decoders) {
+                    d.heldCount = 0;
+                }
+            }
+            else if (best.fit - worst < FIT_MARGIN / 2) {
+                /* Every alignment fits alike, as over idle, so nothing held is text. */
+                for (final Decoder d : decoders) {
+                    d.heldCount = 0;
+                }
+            }
+        }
+        else if (best != decoder && best.fit > decoder.fit + FIT_MARGIN && best.varicode.isBetweenCharacters()) {
+            /* Starting on a character boundary, the new decoder's next character is a whole one. */
+            decoder = best;
+        }
+    }
+
+    /**
+     * Deinterleaves and decodes symbols assuming one interleaver alignment.
+     */
+    private static class Decoder {
+
+        /**
+         * Null if symbols were not interleaved.
+         */
+        private final ConvolutionalInterleaver deinterleaver;
+
+        private final ViterbiDecoder viterbi;
+
+        private final Varicode.Decoder varicode;
+
+        /**
+         * Deinterleaved scores.
+         */
+        private final int[] metrics;
+
+        /**
+         * The average of {@link ViterbiDecoder#getLastMetric()}.
+         */
+        private double fit;
+
+        /**
+         * Symbols still to be added before {@link #deinterleaver} holds only received ones.
+         */
+        private int warmup;
+
+        /**
+         * The last characters decoded while no decoder was chosen, oldest first.
+         */
+        private final byte[] held;
+
+        private int heldCount;
+
+        private Decoder(final ConvolutionalInterleaver deinterleaver) {
+            this.deinterleaver = deinterleaver;
+            this.viterbi = new ViterbiDecoder();
+            this.varicode = new Varicode.Decoder();
+            this.metrics = new int[4];
+            this.fit = 0;
+            this.warmup = deinterleaver == null ? 0 : deinterleaver.getLatency();
+            this.held = new byte[HELD];
+            this.heldCount = 0;
+        }
+
+        /**
+         * @return A decoded character or -1.
+         */
+        private int add(final int[] received) {
+            final int[] m;
+            if (deinterleaver == null) {
+                m = received;
+            }
+            else {
+                deinterleaver.push(received, metrics);
+                m = metrics;
+            }
+
+            final int bit = viterbi.add(m);
+            fit += (viterbi.getLastMetric() - fit) * FIT_ALPHA;
+
+            /* Until then the deinterleaver passes on the zeros it started with, which decode as noise. */
+            if (warmup > 0) {
+                --warmup;
+                return -1;
+            }
+
+            return bit < 0 ? -1 : varicode.add(bit);
+        }
+
+        /**
+         * Keep a character, dropping the oldest if {@link #held} is full.
+         */
+        private void hold(final int c) {
+            if (heldCount == held.length) {
+                System.arraycopy(held, 1, held, 0, held.length - 1);
+                --heldCount;
+            }
+
+            held[heldCount++] = (byte) c;
+        }
+
+        /**
+         * Move the held characters to out.
+         *
+         * @return The new limit of out.
+         */
+        private int release(final byte[] out, final int limit) {
+            System.arraycopy(held, 0, out, limit, heldCount);
+            final int n = limit + heldCount;
+            heldCount = 0;
+
+            return n;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.QpskDemodulator;
+import org.sdsai.airqso.dsp.QpskModulator;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * QPSK with varicode protected by a rate 1/2 convolutional code, as in QPSK31.
+ *
+ * Each varicode bit takes one symbol, so a QPSK mode sends text as fast as the
+ * BPSK mode of the same symbol rate but corrects many errors that BPSK cannot.
+ * Coded symbols may also be interleaved, which lets the code ride through fades
+ * at the cost of a fixed delay.
+ */
+public class QpskMode implements Mode {
+
+    private final String name;
+
+    private final double symbolRate;
+
+    /**
+     * The number of interleaver branches, 1 for none.
+     */
+    private final int branches;
+
+    /**
+     * The extra delay of each interleaver branch over the last.
+     */
+    private final int delay;
+
+    /**
+     * @param name The name shown to users.
+     * @param symbolRate The number of symbols per second.
+     */
+    public QpskMode(final String name, final double symbolRate) {
+        this(name, symbolRate, 1, 0);
+    }
+
+    /**
+     * @param name The name shown to users.
+     * @param symbolRate The number of symbols per second.
+     * @param branches The number of interleaver branches, 1 for none.
+     * @param delay The extra delay of each interleaver branch over the last.
+     *              Symbols are delayed by branches * (branches - 1) * delay in all.
+     */
+    public QpskMode(final String name, final double symbolRate, final int branches, final int delay) {
+        this.name = name;
+        this.symbolRate = symbolRate;
+        this.branches = branches;
+        this.delay = delay;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public double getSymbolRate() {
+        return symbolRate;
+    }
+
+    @Override
+    public ModemOutputStream newOutputStream(final OutputStream out, final int hz, final int sampleRate) {
+        return new QpskOutputStream(out, new QpskModulator(hz, sampleRate, symbolRate), branches, delay);
+    }
+
+    @Override
+    public InputStream newInputStream(final InputStream in, final int hz, final int sampleRate) {
+        return new QpskInputStream(in, new QpskDemodulator(hz, sampleRate, symbolRate), branches, delay);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
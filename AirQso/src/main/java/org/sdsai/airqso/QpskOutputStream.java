@@ -0,0 +1,154 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.ConvolutionalEncoder;
+import org.sdsai.airqso.dsp.ConvolutionalInterleaver;
+import org.sdsai.airqso.dsp.QpskModulator;
+import org.sdsai.airqso.dsp.Varicode;
+import org.sdsai.airqso.dsp.ViterbiDecoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Sends characters as convolutionally coded varicode over QPSK.
+ *
+ * Idle is a run of 0 bits, which the code turns into phase reversals. Coded
+ * symbols may be interleaved before they are sent so that a fade spreads out
+ * into errors the code can correct.
+ */
+public class QpskOutputStream extends ModemOutputStream {
+
+    private final OutputStream out;
+
+    /**
+     * {@link #out} if it takes samples, otherwise null.
+     */
+    private final PcmOutputStream pcmOut;
+
+    private final QpskModulator modulator;
+
+    private final ConvolutionalEncoder encoder;
+
+    /**
+     * Null if symbols are sent in order.
+     */
+    private final ConvolutionalInterleaver interleaver;
+
+    /**
+     * The symbol passed through {@link #interleaver}.
+     */
+    private final int[] symbol;
+
+    /**
+     * One symbol of samples.
+     */
+    private final short[] frame;
+
+    /**
+     * {@link #frame} as big-endian bytes.
+     */
+    private final byte[] bytes;
+
+    /**
+     * A big-endian view over {@link #bytes}.
+     */
+    private final ShortBuffer byteView;
+
+    /**
+     * @param out Where big-endian 16 bit PCM is written.
+     * @param modulator The modulator.
+     */
+    public QpskOutputStream(final OutputStream out, final QpskModulator modulator) {
+        this(out, modulator, 1, 0);
+    }
+
+    /**
+     * @param out Where big-endian 16 bit PCM is written.
+     * @param modulator The modulator.
+     * @param branches The number of interleaver branches. 1 sends symbols in order.
+     * @param delay The extra delay of each interleaver branch over the last.
+     */
+    public QpskOutputStream(
+        final OutputStream out,
+        final QpskModulator modulator,
+        final int branches,
+        final int delay
+    )
+    {
+        this.out = out;
+        this.pcmOut = out instanceof PcmOutputStream ? (PcmOutputStream) out : null;
+        this.modulator = modulator;
+        this.encoder = new ConvolutionalEncoder();
+        this.interleaver = branches > 1 ?
+            new ConvolutionalInterleaver(branches, delay, 1, false, 0) :
+            null;
+        this.symbol = new int[1];
+        this.frame = new short[modulator.getMaxSamplesPerSymbol()];
+        this.bytes = new byte[frame.length * 2];
+        this.byteView = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        final int c = b & 0xff;
+        final int code = Varicode.bits(c);
+
+        for (int i = Varicode.length(c) - 1; i >= 0; --i) {
+            send((code >> i) & 1);
+        }
+
+        send(0);
+        send(0);
+    }
+
+    @Override
+    public void preamble(final int symbols) throws IOException {
+        for (int i = 0; i < symbols; ++i) {
+            send(0);
+        }
+    }
+
+    /**
+     * Besides the given symbols, send enough idle to empty the interleaver and for a
+     * {@link ViterbiDecoder} to decide on the last character.
+     */
+    @Override
+    public void postamble(final int symbols) throws IOException {
+        final int latency = interleaver == null ? 0 : interleaver.getLatency();
+
+        preamble(symbols + latency + ViterbiDecoder.DEFAULT_DEPTH);
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void send(final int bit) throws IOException {
+        symbol[0] = encoder.encode(bit);
+
+        if (interleaver != null) {
+            interleaver.push(symbol, symbol);
+        }
+
+        final int n = modulator.symbol(symbol[0], frame, 0);
+
+        if (pcmOut != null) {
+            pcmOut.write(frame, 0, n);
+        }
+        else {
+            byteView.clear();
+            byteView.put(frame, 0, n);
+            out.write(bytes, 0, n * 2);
+        }
+    }
+}
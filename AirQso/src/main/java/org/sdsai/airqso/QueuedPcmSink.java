@@ -0,0 +1,16 @@
+package org.sdsai.airqso;
+
+/**
+ * A {@link PcmSink} that holds written samples until they are played and can
+ * tell how many are still waiting.
+ *
+ * A writer uses this to keep only as much audio queued as it must, since
+ * anything it writes next is heard only after everything queued ahead of it.
+ */
+public interface QueuedPcmSink extends PcmSink {
+
+    /**
+     * @return The number of samples written but not yet played.
+     */
+    int getQueuedSamples();
+}
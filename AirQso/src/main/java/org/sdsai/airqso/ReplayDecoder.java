@@ -0,0 +1,121 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.MetricRegistry;
+import org.sdsai.airqso.metrics.Snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decodes a WAV recording, such as one made by {@link WavRecorder}, through
+ * the same {@link Bpsk.ReceiveThread} pipeline used on the air, as fast as the
+ * CPU allows.
+ *
+ * This runs on a desktop JVM from the {@code AirQsoJvm} module, whose
+ * classpath has {@code sdsai-dsp}, the SDK's types and an
+ * {@code android.util.Log} that writes to standard error in place of the
+ * SDK's, which throws:
+ *
+ * <pre>
+ * gradle :AirQsoJvm:replay -Preplay="recording.wav 1000 PSK31 9"
+ * </pre>
+ *
+ * Decoding the same recording with the squelch at different thresholds, or
+ * off, shows how much DSP time it costs and how much noise it lets through.
+ */
+public class ReplayDecoder {
+
+    private final int hz;
+
+    private final Mode mode;
+
+    private double squelchThresholdDb;
+
+    /**
+     * @param hz The carrier frequency.
+     * @param mode The mode to decode.
+     */
+    public ReplayDecoder(final int hz, final Mode mode) {
+        this.hz = hz;
+        this.mode = mode;
+        this.squelchThresholdDb = SquelchPcmSource.DEFAULT_THRESHOLD_DB;
+    }
+
+    /**
+     * @param thresholdDb The squelch threshold, or NaN to decode everything.
+     * @see Bpsk.ReceiveThread#setSquelchThresholdDb(double)
+     */
+    public void setSquelchThresholdDb(final double thresholdDb) {
+        this.squelchThresholdDb = thresholdDb;
+    }
+
+    /**
+     * @param file The recording.
+     * @param out Where decoded text is written.
+     *
+     * @return The metrics of the receiver once the recording has been decoded.
+     * @throws IOException If the recording cannot be read.
+     */
+    public Snapshot decode(final File file, final OutputStream out) throws IOException {
+        final MetricRegistry metrics = new MetricRegistry();
+        final Bpsk.ReceiveThread receiveThread = new Bpsk.ReceiveThread(hz, mode, out, new WavPcmSource(file));
+
+        receiveThread.setSquelchThresholdDb(squelchThresholdDb);
+        receiveThread.setMetrics(metrics);
+        receiveThread.start();
+
+        try {
+            receiveThread.join();
+        }
+        catch (final InterruptedException e) {
+            receiveThread.stopReceive();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+
+        return metrics.snapshot();
+    }
+
+    /**
+     * Decode a recording to standard output and report the speed to standard error.
+     *
+     * @param args The WAV file, the carrier frequency in hertz, optionally a mode name, PSK31 by default,
+     *             and optionally a squelch threshold in decibels or "off".
+     *
+     * @throws IOException If the recording cannot be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayDecoder file.wav hz [mode [squelch-db|off]]");
+            System.exit(1);
+        }
+
+        final Mode mode = args.length > 2 ? ModeRegistry.getMode(args[2]) : ModeRegistry.PSK31;
+        if (mode == null) {
+            System.err.println("Unknown mode " + args[2] + ".");
+            System.exit(1);
+        }
+
+        final ReplayDecoder decoder = new ReplayDecoder(Integer.parseInt(args[1]), mode);
+        if (args.length > 3) {
+            decoder.setSquelchThresholdDb("off".equals(args[3]) ? Double.NaN : Double.parseDouble(args[3]));
+        }
+
+        final long start = System.nanoTime();
+        final Snapshot metrics = decoder.decode(new File(args[0]), System.out);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.flush();
+
+        final double samples = metrics.get("rx.samples");
+        System.err.println(String.format(
+            "%.0f samples in %.3f s, %.0f samples/s. %.0f characters. %.1f us mean DSP per buffer. %.0f%% squelched.",
+            samples,
+            seconds,
+            samples / seconds,
+            metrics.get("rx.characters"),
+            metrics.get("rx.dsp.mean_us"),
+            samples > 0 ? metrics.get("rx.squelched_samples") * 100 / samples : 0));
+    }
+}
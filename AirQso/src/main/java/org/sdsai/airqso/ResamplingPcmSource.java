@@ -0,0 +1,90 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.PolyphaseResampler;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that converts another source to a different sample rate.
+ */
+public class ResamplingPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    private final PolyphaseResampler resampler;
+
+    /**
+     * Input samples read from the source.
+     */
+    private final short[] input;
+
+    /**
+     * Resampled output not yet returned.
+     */
+    private final short[] output;
+
+    private int outputPosition;
+
+    private int outputLimit;
+
+    /**
+     * @param source The source to read from.
+     * @param sampleRate The sample rate to produce.
+     * @param passbandHz The highest frequency that must come through unharmed.
+     * @param frameSize The most samples read from source at a time.
+     */
+    public ResamplingPcmSource(
+        final PcmSource source,
+        final int sampleRate,
+        final double passbandHz,
+        final int frameSize
+    )
+    {
+        this.source = source;
+        this.resampler = new PolyphaseResampler(source.getSampleRate(), sampleRate, passbandHz);
+        this.input = new short[frameSize];
+        this.output = new short[resampler.maxOutput(frameSize)];
+        this.outputPosition = 0;
+        this.outputLimit = 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return resampler.getOutputRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        if (outputPosition == outputLimit) {
+            final int rc = source.read(input, 0, input.length);
+
+            if (rc <= 0) {
+                return rc;
+            }
+
+            outputPosition = 0;
+            outputLimit = resampler.process(input, 0, rc, output, 0);
+        }
+
+        final int n = Math.min(len, outputLimit - outputPosition);
+        System.arraycopy(output, outputPosition, buffer, off, n);
+        outputPosition += n;
+
+        return n;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,53 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.util.ShortRingBuffer;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that reads samples another thread writes to a {@link ShortRingBuffer}.
+ */
+public class RingPcmSource implements PcmSource {
+
+    private final ShortRingBuffer ring;
+
+    private final int sampleRate;
+
+    /**
+     * @param ring The ring to read from. Releasing this source closes it.
+     * @param sampleRate The sample rate of the samples in the ring.
+     */
+    public RingPcmSource(final ShortRingBuffer ring, final int sampleRate) {
+        this.ring = ring;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        try {
+            return ring.take(buffer, off, len);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.");
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+        ring.close();
+    }
+}
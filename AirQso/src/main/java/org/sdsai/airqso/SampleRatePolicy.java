@@ -0,0 +1,111 @@
+package org.sdsai.airqso;
+
+/**
+ * Chooses the sample rates the modem runs at.
+ *
+ * A PSK signal only needs a sample rate a little over twice its highest
+ * frequency, and the cost of modulating and demodulating grows with the rate.
+ * This orders hardware rates from cheapest to dearest, skipping those too low
+ * for the carrier, and picks the lowest workable rate to demodulate at when
+ * the hardware had to capture at a higher one.
+ */
+public class SampleRatePolicy {
+
+    /**
+     * Rates commonly supported by audio hardware, cheapest first.
+     */
+    public static final int[] RATES = new int[]{8000, 11025, 16000, 22050, 44100, 48000};
+
+    /**
+     * How far above the highest signal frequency the Nyquist frequency is kept,
+     * so that filters have room to roll off.
+     */
+    private static final double MARGIN = 1.25;
+
+    private final int[] rates;
+
+    /**
+     * Use {@link #RATES}.
+     */
+    public SampleRatePolicy() {
+        this(RATES);
+    }
+
+    /**
+     * @param rates The candidate rates, cheapest first.
+     */
+    public SampleRatePolicy(final int[] rates) {
+        this.rates = rates.clone();
+    }
+
+    /**
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     *
+     * @return The highest frequency the signal occupies.
+     */
+    public static double passband(final double hz, final double symbolRate) {
+        return hz + symbolRate * 2;
+    }
+
+    /**
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     *
+     * @return The lowest sample rate that carries the signal.
+     */
+    public static int minimumRate(final double hz, final double symbolRate) {
+        return (int) Math.ceil(2.0 * MARGIN * passband(hz, symbolRate));
+    }
+
+    /**
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     *
+     * @return The candidate rates able to carry the signal, cheapest first.
+     *         If none are high enough, the highest candidate alone.
+     */
+    public int[] hardwareRates(final double hz, final double symbolRate) {
+        final int minimum = minimumRate(hz, symbolRate);
+
+        int count = 0;
+        for (final int rate : rates) {
+            if (rate >= minimum) {
+                ++count;
+            }
+        }
+
+        if (count == 0) {
+            return new int[]{ rates[rates.length - 1] };
+        }
+
+        final int[] workable = new int[count];
+        count = 0;
+        for (final int rate : rates) {
+            if (rate >= minimum) {
+                workable[count++] = rate;
+            }
+        }
+
+        return workable;
+    }
+
+    /**
+     * @param captureRate The rate the hardware is capturing at.
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     *
+     * @return The rate to demodulate at. This is never more than captureRate.
+     */
+    public int processingRate(final int captureRate, final double hz, final double symbolRate) {
+        final int minimum = minimumRate(hz, symbolRate);
+
+        for (final int rate : rates) {
+            if (rate >= minimum && rate <= captureRate) {
+                return rate;
+            }
+        }
+
+        return captureRate;
+    }
+}
@@ -0,0 +1,245 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.Fft;
+import org.sdsai.airqso.dsp.SpectrumFramePool;
+import org.sdsai.airqso.dsp.Window;
+import org.sdsai.airqso.util.ShortRingBuffer;
+
+/**
+ * Computes windowed FFT magnitude frames, in decibels, from captured audio.
+ *
+ * Attach this to a {@link TappedPcmSource}, such as with
+ * {@link Bpsk.ReceiveThread#addPcmListener(PcmListener)}. Captured samples are
+ * copied into a ring and transformed on a low priority thread of their own, so
+ * the capture thread only pays for the copy. Frames are published to a
+ * {@link SpectrumFramePool} for a view to draw.
+ *
+ * If computing frames takes more than the allowed share of the time between
+ * them, frames are skipped so that the spectrum never starves decoding.
+ * All buffers are allocated up front.
+ */
+public class SpectrumAnalyzer implements PcmListener {
+
+    /**
+     * Added to power before taking its log, so silence is finite.
+     */
+    private static final float FLOOR = 1e-9f;
+
+    private final int sampleRate;
+
+    private final Fft fft;
+
+    private final float[] window;
+
+    private final float[] re;
+
+    private final float[] im;
+
+    private final float[] power;
+
+    /**
+     * The last {@link Fft#size()} samples seen.
+     */
+    private final short[] history;
+
+    private final short[] chunk;
+
+    private final ShortRingBuffer ring;
+
+    private final SpectrumFramePool pool;
+
+    /**
+     * Samples between frames.
+     */
+    private final int hop;
+
+    /**
+     * The most nanoseconds of work per frame that stays within the CPU share.
+     */
+    private final long budgetNanos;
+
+    private volatile Thread worker;
+
+    private volatile long framesComputed;
+
+    private volatile long framesSkipped;
+
+    /**
+     * A running average of the nanoseconds spent computing one frame.
+     */
+    private volatile long frameNanos;
+
+    /**
+     * @param sampleRate The sample rate of the audio that will be seen.
+     * @param fftSize The transform size. This must be a power of two.
+     * @param frameRate The most frames to compute per second.
+     * @param maxCpu The most of one core, from 0 to 1, to spend computing frames.
+     */
+    public SpectrumAnalyzer(final int sampleRate, final int fftSize, final double frameRate, final double maxCpu) {
+        this.sampleRate = sampleRate;
+        this.fft = new Fft(fftSize);
+        this.window = Window.hann(fftSize);
+        this.re = new float[fftSize];
+        this.im = new float[fftSize];
+        this.power = new float[fftSize / 2];
+        this.history = new short[fftSize];
+        this.chunk = new short[fftSize];
+        this.ring = new ShortRingBuffer(Math.max(fftSize, sampleRate / 2));
+        this.pool = new SpectrumFramePool(fftSize / 2);
+        this.hop = Math.max(1, (int) (sampleRate / frameRate));
+        this.budgetNanos = (long) (maxCpu * 1e9 * hop / sampleRate);
+        this.worker = null;
+        this.framesComputed = 0;
+        this.framesSkipped = 0;
+        this.frameNanos = 0;
+    }
+
+    /**
+     * @return Where frames are published. Bin i is at i * sampleRate / fftSize hertz.
+     */
+    public SpectrumFramePool getFramePool() {
+        return pool;
+    }
+
+    /**
+     * @return The frequency in hertz of one bin.
+     */
+    public double getHzPerBin() {
+        return (double) sampleRate / fft.size();
+    }
+
+    @Override
+    public void onPcm(final short[] samples, final int off, final int len, final int rate) {
+        if (worker != null) {
+            ring.write(samples, off, len);
+        }
+    }
+
+    /**
+     * Start computing frames.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+
+        final Thread t = new Thread("SpectrumAnalyzer") {
+            @Override
+            public void run() {
+                try {
+                    analyze();
+                }
+                catch (final InterruptedException e) {
+                    /* Asked to stop. */
+                }
+            }
+        };
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    /**
+     * Stop computing frames.
+     */
+    public synchronized void stop() {
+        final Thread t = worker;
+        worker = null;
+
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void analyze() throws InterruptedException {
+        final int mask = history.length - 1;
+        int position = 0;
+        int sinceFrame = 0;
+        int skip = 0;
+        long sequence = 0;
+
+        while (worker == Thread.currentThread()) {
+            final int n = ring.take(chunk, 0, chunk.length);
+            if (n == -1) {
+                break;
+            }
+
+            for (int i = 0; i < n; ++i) {
+                history[position] = chunk[i];
+                position = (position + 1) & mask;
+            }
+
+            sinceFrame += n;
+            if (sinceFrame < hop) {
+                continue;
+            }
+            sinceFrame %= hop;
+
+            if (skip > 0) {
+                --skip;
+                ++framesSkipped;
+                continue;
+            }
+
+            final long start = System.nanoTime();
+
+            for (int i = 0; i < re.length; ++i) {
+                re[i] = history[(position + i) & mask] * window[i];
+                im[i] = 0;
+            }
+
+            fft.transform(re, im);
+            fft.power(re, im, power);
+
+            final float[] frame = pool.writeFrame();
+            for (int i = 0; i < power.length; ++i) {
+                frame[i] = (float) (10.0 * Math.log10(power[i] + FLOOR));
+            }
+            pool.publish(++sequence);
+            ++framesComputed;
+
+            final long cost = System.nanoTime() - start;
+            frameNanos += (cost - frameNanos) / 8;
+
+            /* Skip enough frames that the average cost stays within the budget. */
+            if (budgetNanos > 0 && frameNanos > budgetNanos) {
+                skip = (int) (frameNanos / budgetNanos);
+            }
+        }
+    }
+
+    /**
+     * @return The number of frames published.
+     */
+    public long getFramesComputed() {
+        return framesComputed;
+    }
+
+    /**
+     * @return The number of frames skipped to stay within the CPU share.
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * @return The average nanoseconds spent computing one frame.
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * @return Samples dropped because the analyzer thread fell behind capture.
+     */
+    public long getOverruns() {
+        return ring.getOverruns();
+    }
+}
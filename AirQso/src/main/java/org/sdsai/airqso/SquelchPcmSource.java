@@ -0,0 +1,274 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.SignalPresence;
+import org.sdsai.airqso.metrics.Counter;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that passes audio on only while a signal is present
+ * near the carrier frequency, so that a demodulator spends no time on dead air
+ * and prints no characters decoded from noise.
+ *
+ * Presence is judged by a {@link SignalPresence} every block of a few symbols.
+ * The squelch opens once the signal band has stood the threshold above its
+ * guard bands for {@link #OPEN_BLOCKS} blocks in a row, since on noise alone
+ * a single block now and then does, and closes once it has stayed
+ * {@link #HYSTERESIS_DB} below that for {@link #HANG_SECONDS}. While closed,
+ * reads drain the source and do not return.
+ *
+ * Audio held back while closed is kept for {@link #LEAD_BLOCKS} blocks. On
+ * opening it is returned first, followed by what the source reads next, so
+ * the demodulator hears the start of the signal with nothing missing.
+ */
+public class SquelchPcmSource implements PcmSource {
+
+    /**
+     * The default threshold, in decibels of the signal band over its guard bands.
+     */
+    public static final double DEFAULT_THRESHOLD_DB = 9;
+
+    /**
+     * How far below the threshold the signal must fall to close the squelch.
+     */
+    private static final double HYSTERESIS_DB = 3;
+
+    /**
+     * How long the signal must stay low before the squelch closes.
+     */
+    private static final double HANG_SECONDS = 1;
+
+    /**
+     * Blocks in a row the signal must stand at the threshold to open the squelch.
+     */
+    private static final int OPEN_BLOCKS = 2;
+
+    /**
+     * Blocks of held back audio returned on opening: those that opened it and
+     * the one before, which a signal may have started part way through.
+     */
+    private static final int LEAD_BLOCKS = OPEN_BLOCKS + 1;
+
+    private final PcmSource source;
+
+    private final SignalPresence presence;
+
+    /**
+     * Recent audio, in a ring ending before {@link #historyEnd}. Only used by the reader.
+     */
+    private final short[] history;
+    private int historyEnd;
+
+    /**
+     * Samples at the end of the history the reader has not been given.
+     */
+    private int undelivered;
+
+    /**
+     * Samples of history still to be returned after opening.
+     */
+    private int replay;
+
+    private final int hangBlocks;
+
+    /**
+     * Blocks since the signal was last above the closing level.
+     */
+    private int quietBlocks;
+
+    /**
+     * Blocks in a row the signal has stood at the threshold.
+     */
+    private int loudBlocks;
+
+    private volatile boolean enabled;
+
+    private volatile double thresholdDb;
+
+    private volatile boolean open;
+
+    private final Counter squelchedSamples;
+
+    /**
+     * @param source The source to read from.
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     * @param offsetHz How far from hz a carrier may be and still open the squelch.
+     */
+    public SquelchPcmSource(final PcmSource source, final double hz, final double symbolRate, final double offsetHz) {
+        this.source = source;
+        this.presence = new SignalPresence(source.getSampleRate(), hz, symbolRate, offsetHz);
+        this.history = new short[presence.getBlockSize() * LEAD_BLOCKS];
+        this.historyEnd = 0;
+        this.undelivered = 0;
+        this.replay = 0;
+        this.hangBlocks = (int) Math.ceil(HANG_SECONDS * source.getSampleRate() / presence.getBlockSize());
+        this.quietBlocks = 0;
+        this.loudBlocks = 0;
+        this.enabled = true;
+        this.thresholdDb = DEFAULT_THRESHOLD_DB;
+        this.open = false;
+        this.squelchedSamples = new Counter();
+    }
+
+    /**
+     * @param thresholdDb How far the signal band must stand above its guard bands to open the squelch.
+     */
+    public void setThresholdDb(final double thresholdDb) {
+        this.thresholdDb = thresholdDb;
+    }
+
+    public double getThresholdDb() {
+        return thresholdDb;
+    }
+
+    /**
+     * @param enabled If false, pass all audio on without judging it.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return True while audio is passed on.
+     */
+    public boolean isOpen() {
+        return open || !enabled;
+    }
+
+    /**
+     * @return The signal band's height over its guard bands in the last block, in decibels.
+     */
+    public double getRatioDb() {
+        return presence.getRatioDb();
+    }
+
+    /**
+     * @return The samples held back while closed for too long to be passed on on opening.
+     */
+    public Counter getSquelchedSamples() {
+        return squelchedSamples;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        while (true) {
+            if (replay > 0) {
+                return replay(buffer, off, len);
+            }
+
+            final int rc = source.read(buffer, off, len);
+            if (rc <= 0 || !enabled) {
+                undelivered = 0;
+                return rc;
+            }
+
+            keep(buffer, off, rc);
+
+            final boolean wasOpen = open;
+            if (presence.add(buffer, off, rc)) {
+                decide();
+            }
+
+            if (open && wasOpen) {
+                undelivered = 0;
+                return rc;
+            }
+
+            if (open) {
+                /* Just opened. Start with the audio held back, which ends with what was just read. */
+                replay = Math.min(undelivered, history.length);
+                undelivered = 0;
+            }
+            else {
+                squelchedSamples.add(Math.max(0, undelivered - history.length));
+                undelivered = Math.min(undelivered, history.length);
+            }
+        }
+    }
+
+    /**
+     * Open or close on the latest block.
+     */
+    private void decide() {
+        final double ratio = presence.getRatioDb();
+        final double threshold = thresholdDb;
+
+        if (ratio >= threshold) {
+            if (++loudBlocks >= OPEN_BLOCKS) {
+                open = true;
+            }
+            quietBlocks = 0;
+            return;
+        }
+
+        loudBlocks = 0;
+
+        if (ratio < threshold - HYSTERESIS_DB) {
+            if (open && ++quietBlocks >= hangBlocks) {
+                open = false;
+            }
+        }
+        else {
+            quietBlocks = 0;
+        }
+    }
+
+    /**
+     * Add samples to the history.
+     */
+    private void keep(final short[] buffer, final int off, final int len) {
+        int from = off + Math.max(0, len - history.length);
+        int remaining = Math.min(len, history.length);
+
+        while (remaining > 0) {
+            final int n = Math.min(remaining, history.length - historyEnd);
+            System.arraycopy(buffer, from, history, historyEnd, n);
+            historyEnd = (historyEnd + n) % history.length;
+            from += n;
+            remaining -= n;
+        }
+
+        undelivered += len;
+    }
+
+    /**
+     * Return held back audio, oldest first.
+     */
+    private int replay(final short[] buffer, final int off, final int len) {
+        int start = historyEnd - replay;
+        if (start < 0) {
+            start += history.length;
+        }
+
+        final int n = Math.min(Math.min(len, replay), history.length - start);
+        System.arraycopy(history, start, buffer, off, n);
+        replay -= n;
+
+        return n;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
@@ -0,0 +1,87 @@
+package org.sdsai.airqso;
+
+import java.io.IOException;
+
+/**
+ * A {@link PcmSource} that shows every buffer it reads to a set of {@link PcmListener}s.
+ */
+public class TappedPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    /**
+     * Replaced, never changed, so the reader walks it without locking or an iterator.
+     */
+    private volatile PcmListener[] listeners;
+
+    /**
+     * @param source The source to read from.
+     */
+    public TappedPcmSource(final PcmSource source) {
+        this.source = source;
+        this.listeners = new PcmListener[0];
+    }
+
+    /**
+     * @param listener Shown every buffer read from now on.
+     */
+    public synchronized void addListener(final PcmListener listener) {
+        /* Not Arrays.copyOf, which is API 9. */
+        final PcmListener[] l = new PcmListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, l, 0, listeners.length);
+        l[l.length - 1] = listener;
+        listeners = l;
+    }
+
+    /**
+     * @param listener A listener previously added.
+     */
+    public synchronized void removeListener(final PcmListener listener) {
+        final PcmListener[] l = listeners;
+
+        for (int i = 0; i < l.length; ++i) {
+            if (l[i] == listener) {
+                final PcmListener[] removed = new PcmListener[l.length - 1];
+                System.arraycopy(l, 0, removed, 0, i);
+                System.arraycopy(l, i + 1, removed, i, l.length - i - 1);
+                listeners = removed;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        final int rc = source.read(buffer, off, len);
+
+        if (rc > 0) {
+            final int sampleRate = source.getSampleRate();
+            final PcmListener[] l = listeners;
+            for (int i = 0; i < l.length; ++i) {
+                l[i].onPcm(buffer, off, rc, sampleRate);
+            }
+        }
+
+        return rc;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
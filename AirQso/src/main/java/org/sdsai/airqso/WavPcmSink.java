@@ -0,0 +1,153 @@
+package org.sdsai.airqso;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link PcmSink} that writes a mono, 16 bit PCM WAV file.
+ *
+ * The RIFF sizes in the header are filled in when the sink is released.
+ */
+public class WavPcmSink implements PcmSink {
+
+    /**
+     * How many samples are written to the file at a time.
+     */
+    private static final int WRITE_SAMPLES = 4096;
+
+    private static final int HEADER_SIZE = 44;
+
+    private final FileChannel channel;
+
+    /**
+     * Little-endian bytes to write to the file.
+     */
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * A view of {@link #byteBuffer} as samples.
+     */
+    private final ShortBuffer shortView;
+
+    private final int sampleRate;
+
+    /**
+     * Bytes of sample data written so far.
+     */
+    private long dataBytes;
+
+    private boolean released;
+
+    /**
+     * @param file The file to create or overwrite.
+     * @param sampleRate The sample rate to record in the header.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public WavPcmSink(final File file, final int sampleRate) throws IOException {
+        this.channel = new FileOutputStream(file).getChannel();
+        this.byteBuffer = ByteBuffer.allocate(WRITE_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        this.shortView = byteBuffer.asShortBuffer();
+        this.sampleRate = sampleRate;
+        this.dataBytes = 0;
+        this.released = false;
+
+        try {
+            writeHeader();
+            channel.position(HEADER_SIZE);
+        }
+        catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the header at the start of the file using the current data size.
+     */
+    private void writeHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952);                    /* "RIFF" */
+        header.putInt((int) (36 + dataBytes));
+        header.putInt(0x45564157);                    /* "WAVE" */
+        header.putInt(0x20746d66);                    /* "fmt " */
+        header.putInt(16);
+        header.putShort((short) 1);                   /* PCM */
+        header.putShort((short) 1);                   /* Mono */
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * 2);                /* Byte rate. */
+        header.putShort((short) 2);                   /* Block align. */
+        header.putShort((short) 16);                  /* Bits per sample. */
+        header.putInt(0x61746164);                    /* "data" */
+        header.putInt((int) dataBytes);
+        header.flip();
+
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void write(final short[] buffer, final int off, final int len) throws IOException {
+        int written = 0;
+        while (written < len) {
+            final int n = Math.min(len - written, WRITE_SAMPLES);
+
+            shortView.clear();
+            shortView.put(buffer, off + written, n);
+
+            byteBuffer.clear();
+            byteBuffer.limit(n * 2);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+
+            written += n;
+        }
+
+        dataBytes += len * 2;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+
+        try {
+            writeHeader();
+        }
+        catch (final IOException e) {
+            /* Nothing we can really do. */
+        }
+        finally {
+            try {
+                channel.close();
+            }
+            catch (final IOException e) {
+                /* Nothing we can really do. */
+            }
+        }
+    }
+}
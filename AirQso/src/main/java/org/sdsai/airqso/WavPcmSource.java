@@ -0,0 +1,156 @@
+package org.sdsai.airqso;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link PcmSource} that reads a mono, 16 bit PCM WAV file as fast as it is asked to.
+ */
+public class WavPcmSource implements PcmSource {
+
+    /**
+     * How many samples are read from the file at a time.
+     */
+    private static final int READ_SAMPLES = 4096;
+
+    private final FileChannel channel;
+
+    /**
+     * Little-endian bytes read from the file.
+     */
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * A view of {@link #byteBuffer} as samples.
+     */
+    private final ShortBuffer shortView;
+
+    private final int sampleRate;
+
+    /**
+     * Samples left in the data chunk.
+     */
+    private long samplesRemaining;
+
+    /**
+     * @param file A RIFF WAV file holding mono, 16 bit PCM.
+     *
+     * @throws IOException If the file cannot be read or is not in a supported format.
+     */
+    public WavPcmSource(final File file) throws IOException {
+        this.channel = new FileInputStream(file).getChannel();
+        this.byteBuffer = ByteBuffer.allocate(READ_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        this.shortView = byteBuffer.asShortBuffer();
+
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header);
+            if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+                throw new IOException("Not a RIFF WAVE file: " + file);
+            }
+
+            int rate = -1;
+            final ByteBuffer chunk = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            for (;;) {
+                chunk.clear();
+                chunk.limit(8);
+                readFully(chunk);
+                final int id = chunk.getInt(0);
+                final long size = chunk.getInt(4) & 0xffffffffL;
+
+                if (id == 0x20746d66) {
+                    /* "fmt " */
+                    chunk.clear();
+                    readFully(chunk);
+                    if (chunk.getShort(0) != 1 || chunk.getShort(2) != 1 || chunk.getShort(14) != 16) {
+                        throw new IOException("Only mono 16 bit PCM is supported: " + file);
+                    }
+                    rate = chunk.getInt(4);
+                    channel.position(channel.position() + size - 16 + (size & 1));
+                }
+                else if (id == 0x61746164) {
+                    /* "data" */
+                    if (rate == -1) {
+                        throw new IOException("Data before format chunk: " + file);
+                    }
+                    this.samplesRemaining = size / 2;
+                    break;
+                }
+                else {
+                    channel.position(channel.position() + size + (size & 1));
+                }
+            }
+
+            this.sampleRate = rate;
+        }
+        catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new IOException("Unexpected end of WAV file.");
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(final short[] buffer, final int off, final int len) throws IOException {
+        if (samplesRemaining <= 0) {
+            return -1;
+        }
+
+        final int n = (int) Math.min(Math.min(len, READ_SAMPLES), samplesRemaining);
+
+        byteBuffer.clear();
+        byteBuffer.limit(n * 2);
+        while (byteBuffer.hasRemaining()) {
+            if (channel.read(byteBuffer) == -1) {
+                break;
+            }
+        }
+
+        final int samples = byteBuffer.position() / 2;
+        if (samples == 0) {
+            samplesRemaining = 0;
+            return -1;
+        }
+
+        shortView.clear();
+        shortView.get(buffer, off, samples);
+        samplesRemaining -= samples;
+
+        return samples;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public synchronized void release() {
+        try {
+            channel.close();
+        }
+        catch (final IOException e) {
+            /* Nothing we can really do. */
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.util.ShortRingBuffer;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records audio shown to it as a {@link PcmListener} to a WAV file.
+ *
+ * The listener only copies samples into a {@link ShortRingBuffer}, which
+ * never blocks, and a writer thread of its own moves them to a
+ * {@link WavPcmSink}. Disk stalls therefore never reach the audio thread. If
+ * the writer falls behind by more than the ring holds, samples are dropped and
+ * counted in {@link #getDropped()}.
+ *
+ * Recordings may be decoded again with {@link ReplayDecoder}.
+ */
+public class WavRecorder implements PcmListener {
+
+    /**
+     * Seconds of audio held between the audio thread and the writer.
+     */
+    private static final int BUFFER_SECONDS = 4;
+
+    /**
+     * The most samples written to the file at a time.
+     */
+    private static final int FRAME_SIZE = 4096;
+
+    private final File file;
+
+    private final int sampleRate;
+
+    private final ShortRingBuffer ring;
+
+    private final WavPcmSink sink;
+
+    private final Thread writer;
+
+    /**
+     * @param file The file to create or overwrite.
+     * @param sampleRate The sample rate of the audio that will be shown.
+     *
+     * @throws IOException If the file cannot be created.
+     */
+    public WavRecorder(final File file, final int sampleRate) throws IOException {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.ring = new ShortRingBuffer(sampleRate * BUFFER_SECONDS);
+        this.sink = new WavPcmSink(file, sampleRate);
+        this.writer = new Thread("WavRecorder") {
+            @Override
+            public void run() {
+                final short[] frame = new short[FRAME_SIZE];
+
+                try {
+                    for (;;) {
+                        final int n = ring.take(frame, 0, frame.length);
+                        if (n == -1) {
+                            break;
+                        }
+                        sink.write(frame, 0, n);
+                    }
+                }
+                catch (final InterruptedException e) {
+                    Log.w("WavRecorder", "Interrupted. Recording truncated.");
+                }
+                catch (final IOException e) {
+                    Log.w("WavRecorder", "Failed to write " + WavRecorder.this.file + ": " + e.getMessage());
+                }
+                finally {
+                    sink.release();
+                }
+            }
+        };
+        writer.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Write what has been buffered, finish the file and stop the writer thread.
+     */
+    public void stop() {
+        ring.close();
+
+        try {
+            writer.join();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The file being recorded to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of samples dropped because the writer fell behind.
+     */
+    public long getDropped() {
+        return ring.getOverruns();
+    }
+
+    @Override
+    public void onPcm(final short[] samples, final int off, final int len, final int rate) {
+        if (rate == sampleRate && !ring.isClosed()) {
+            ring.write(samples, off, len);
+        }
+    }
+}
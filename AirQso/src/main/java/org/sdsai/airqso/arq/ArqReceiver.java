@@ -0,0 +1,104 @@
+package org.sdsai.airqso.arq;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The receiving half of selective repeat ARQ.
+ *
+ * Frames that arrive out of order are held until the gaps before them are
+ * filled, and messages are delivered whole and in order. Every data frame
+ * received, even a duplicate, calls for an acknowledgement.
+ */
+public class ArqReceiver {
+
+    /**
+     * Told of each message received.
+     */
+    public interface Listener {
+        void onMessage(byte[] message);
+    }
+
+    private final Listener listener;
+
+    /**
+     * Frames received ahead of {@link #next}, by sequence number.
+     */
+    private final Frame[] held;
+
+    /**
+     * The message being reassembled.
+     */
+    private final ByteArrayOutputStream message;
+
+    /**
+     * The next frame to deliver.
+     */
+    private int next;
+
+    private boolean ackPending;
+
+    public ArqReceiver(final Listener listener) {
+        this.listener = listener;
+        this.held = new Frame[256];
+        this.message = new ByteArrayOutputStream();
+        this.next = 0;
+        this.ackPending = false;
+    }
+
+    /**
+     * @param frame A data frame received.
+     */
+    public void onData(final Frame frame) {
+        final List<byte[]> done = new ArrayList<byte[]>(1);
+
+        synchronized (this) {
+            ackPending = true;
+
+            if (((frame.getSequence() - next) & 0xff) >= ArqSender.MAX_WINDOW) {
+                /* Already delivered. Its acknowledgement was lost. */
+                return;
+            }
+
+            held[frame.getSequence()] = frame;
+
+            while (held[next] != null) {
+                final Frame f = held[next];
+                held[next] = null;
+                next = (next + 1) & 0xff;
+
+                message.write(f.getPayload(), 0, f.getPayload().length);
+                if (f.isLast()) {
+                    done.add(message.toByteArray());
+                    message.reset();
+                }
+            }
+        }
+
+        /* Tell the listener without holding the lock. */
+        for (final byte[] m : done) {
+            listener.onMessage(m);
+        }
+    }
+
+    /**
+     * @return An acknowledgement of everything received, or null if none is due.
+     */
+    public synchronized Frame pollAck() {
+        if (!ackPending) {
+            return null;
+        }
+
+        ackPending = false;
+
+        int mask = 0;
+        for (int i = 0; i < 32; ++i) {
+            if (held[(next + 1 + i) & 0xff] != null) {
+                mask |= 1 << i;
+            }
+        }
+
+        return Frame.ack(next, mask);
+    }
+}
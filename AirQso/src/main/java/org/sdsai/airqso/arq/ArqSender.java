@@ -0,0 +1,328 @@
+package org.sdsai.airqso.arq;
+
+import java.util.LinkedList;
+
+/**
+ * The sending half of selective repeat ARQ.
+ *
+ * Messages are cut into {@link Frame#MAX_PAYLOAD} byte data frames. Up to a
+ * window of frames are sent ahead of acknowledgement, and only frames that are
+ * lost are sent again. A frame is taken as lost when its retransmission timeout
+ * passes, or sooner when {@link #DUPLICATE_THRESHOLD} frames sent after it have
+ * been acknowledged. A link with nothing else to send repeats the oldest frame
+ * overdue by a round trip rather than wait out the timeout. The window grows by about one frame per window delivered
+ * without loss and halves on loss, so it settles where the link's error rate
+ * allows. The timeout follows the measured round trip time.
+ *
+ * This is a state machine with no thread of its own. Time is passed in so that
+ * it runs the same under a simulated clock.
+ */
+public class ArqSender {
+
+    /**
+     * The largest window. Less than half the sequence space, as selective repeat requires.
+     */
+    public static final int MAX_WINDOW = 64;
+
+    /**
+     * Later frames acknowledged before a frame is taken as lost without waiting for its timeout.
+     */
+    private static final int DUPLICATE_THRESHOLD = 2;
+
+    /**
+     * The most the timeout is backed off to, as a multiple of the measured timeout.
+     */
+    private static final int MAX_BACKOFF = 4;
+
+    /**
+     * How quickly the frame error rate estimate follows, per frame.
+     */
+    private static final double ERROR_ALPHA = 1.0 / 16;
+
+    /**
+     * Frames not yet given a sequence number.
+     */
+    private final LinkedList<Frame> pending;
+
+    /**
+     * Frames sent, by sequence number.
+     */
+    private final Slot[] slots;
+
+    private final long initialTimeout;
+
+    /**
+     * The oldest frame not acknowledged.
+     */
+    private int base;
+
+    /**
+     * The sequence number of the next new frame.
+     */
+    private int next;
+
+    private double window;
+
+    /**
+     * Frames sent before this time do not halve the window again when lost.
+     */
+    private long recoverySince;
+
+    private double smoothedRtt;
+
+    private double rttVariance;
+
+    /**
+     * The timeout from the round trip estimate.
+     */
+    private long baseTimeout;
+
+    /**
+     * How many times {@link #baseTimeout} has been doubled since the last acknowledgement.
+     */
+    private int backoff;
+
+    private double frameErrorRate;
+
+    private long framesSent;
+
+    private long retransmissions;
+
+    private long bytesAcknowledged;
+
+    private static class Slot {
+        private Frame frame;
+        private long sentAt;
+        private int transmissions;
+        private boolean acked;
+        private boolean lost;
+    }
+
+    /**
+     * @param initialTimeout The retransmission timeout before any round trip has been measured,
+     *                       in the units of the times passed in.
+     */
+    public ArqSender(final long initialTimeout) {
+        this.pending = new LinkedList<Frame>();
+        this.slots = new Slot[256];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = new Slot();
+        }
+        this.initialTimeout = initialTimeout;
+        this.base = 0;
+        this.next = 0;
+        this.window = 2;
+        this.recoverySince = Long.MIN_VALUE;
+        this.smoothedRtt = -1;
+        this.rttVariance = 0;
+        this.baseTimeout = initialTimeout;
+        this.backoff = 1;
+        this.frameErrorRate = 0;
+    }
+
+    /**
+     * Queue a message to be sent.
+     *
+     * @param message The message. An empty message is sent as a single empty frame.
+     */
+    public synchronized void send(final byte[] message) {
+        int off = 0;
+        do {
+            final int len = Math.min(Frame.MAX_PAYLOAD, message.length - off);
+            pending.add(Frame.data(0, off + len == message.length, message, off, len));
+            off += len;
+        } while (off < message.length);
+    }
+
+    /**
+     * @param now The current time.
+     *
+     * @return The next frame to send now, or null if nothing should be sent.
+     */
+    public synchronized Frame poll(final long now) {
+        final int inFlight = (next - base) & 0xff;
+
+        /* Resend lost frames first, oldest first. */
+        for (int i = 0; i < inFlight; ++i) {
+            final Slot slot = slots[(base + i) & 0xff];
+
+            if (!slot.acked && (slot.lost || now - slot.sentAt >= getTimeout())) {
+                if (!slot.lost) {
+                    /* Back off in case the link is slower than measured. */
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                    lost(slot);
+                }
+
+                slot.lost = false;
+                slot.sentAt = now;
+                slot.transmissions++;
+                retransmissions++;
+                framesSent++;
+                return slot.frame;
+            }
+        }
+
+        if (inFlight < (int) window && !pending.isEmpty()) {
+            final Frame p = pending.removeFirst();
+            final Slot slot = slots[next];
+
+            slot.frame = Frame.data(next, p.isLast(), p.getPayload(), 0, p.getPayload().length);
+            slot.sentAt = now;
+            slot.transmissions = 1;
+            slot.acked = false;
+            slot.lost = false;
+
+            next = (next + 1) & 0xff;
+            framesSent++;
+            return slot.frame;
+        }
+
+        /* The link would otherwise sit idle until a timeout, so send again the
+         * oldest frame that should have been acknowledged by now. */
+        final long rtt = smoothedRtt < 0 ? baseTimeout : (long) (smoothedRtt + 2 * rttVariance);
+        for (int i = 0; i < inFlight; ++i) {
+            final Slot slot = slots[(base + i) & 0xff];
+
+            if (!slot.acked && now - slot.sentAt >= rtt) {
+                slot.sentAt = now;
+                slot.transmissions++;
+                retransmissions++;
+                framesSent++;
+                return slot.frame;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param ack An acknowledgement received.
+     * @param now The current time.
+     */
+    public synchronized void onAck(final Frame ack, final long now) {
+        final int inFlight = (next - base) & 0xff;
+        final int cumulative = (ack.getSequence() - base) & 0xff;
+
+        if (cumulative > inFlight) {
+            /* Old or damaged beyond what the checksum caught. */
+            return;
+        }
+
+        long newestAcked = Long.MIN_VALUE;
+
+        for (int i = 0; i < inFlight; ++i) {
+            final int sequence = (base + i) & 0xff;
+            final int beyond = (sequence - ack.getSequence() - 1) & 0xff;
+            final boolean received = i < cumulative || (beyond < 32 && (ack.getMask() >>> beyond & 1) != 0);
+            final Slot slot = slots[sequence];
+
+            if (received && !slot.acked) {
+                slot.acked = true;
+                backoff = 1;
+                bytesAcknowledged += slot.frame.getPayload().length;
+
+                /* Only frames sent once give an unambiguous round trip. */
+                if (slot.transmissions == 1) {
+                    measure(now - slot.sentAt);
+                    frameErrorRate += (0 - frameErrorRate) * ERROR_ALPHA;
+                    window = Math.min(MAX_WINDOW, window + 1.0 / window);
+                }
+
+                newestAcked = Math.max(newestAcked, slot.sentAt);
+            }
+        }
+
+        /* Frames sent before several that have arrived were probably lost. */
+        for (int i = 0; i < inFlight; ++i) {
+            final Slot slot = slots[(base + i) & 0xff];
+
+            if (slot.acked || slot.lost || slot.sentAt >= newestAcked) {
+                continue;
+            }
+
+            int later = 0;
+            for (int j = i + 1; j < inFlight; ++j) {
+                final Slot s = slots[(base + j) & 0xff];
+                if (s.acked && s.sentAt > slot.sentAt) {
+                    ++later;
+                }
+            }
+
+            if (later >= DUPLICATE_THRESHOLD) {
+                lost(slot);
+            }
+        }
+
+        while (base != next && slots[base].acked) {
+            slots[base].frame = null;
+            base = (base + 1) & 0xff;
+        }
+    }
+
+    private void lost(final Slot slot) {
+        slot.lost = true;
+        frameErrorRate += (1 - frameErrorRate) * ERROR_ALPHA;
+
+        /* Halve once per loss event, not once per frame lost in it. */
+        if (slot.sentAt >= recoverySince) {
+            window = Math.max(1, window / 2);
+            recoverySince = slot.sentAt + 1;
+        }
+    }
+
+    private void measure(final long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2.0;
+        }
+        else {
+            rttVariance += (Math.abs(smoothedRtt - rtt) - rttVariance) / 4;
+            smoothedRtt += (rtt - smoothedRtt) / 8;
+        }
+
+        baseTimeout = (long) (smoothedRtt + 4 * rttVariance);
+    }
+
+    /**
+     * @return True if every message queued has been acknowledged.
+     */
+    public synchronized boolean isIdle() {
+        return pending.isEmpty() && base == next;
+    }
+
+    /**
+     * @return The number of frames that may be sent ahead of acknowledgement.
+     */
+    public synchronized int getWindow() {
+        return (int) window;
+    }
+
+    /**
+     * @return The current retransmission timeout.
+     */
+    public synchronized long getTimeout() {
+        return baseTimeout * backoff;
+    }
+
+    /**
+     * @return The recent fraction of frames lost, from 0 to 1.
+     */
+    public synchronized double getFrameErrorRate() {
+        return frameErrorRate;
+    }
+
+    public synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    public synchronized long getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * @return Payload bytes the other end has acknowledged.
+     */
+    public synchronized long getBytesAcknowledged() {
+        return bytesAcknowledged;
+    }
+}
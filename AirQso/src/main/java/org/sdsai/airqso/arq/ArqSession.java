@@ -0,0 +1,166 @@
+package org.sdsai.airqso.arq;
+
+import org.sdsai.airqso.util.TextQueue;
+
+import android.util.Log;
+
+
+/**
+ * Reliable message transfer over a pair of modem streams.
+ *
+ * Frames are queued on the {@link TextQueue} a {@link org.sdsai.airqso.Bpsk.TransmitThread}
+ * sends from, and text from a {@link org.sdsai.airqso.Bpsk.ReceiveThread} is written to
+ * {@link #getInput()}. The other end runs a session of its own, and each
+ * session both sends its messages and acknowledges the other's.
+ *
+ * A frame is only queued once the transmitter has sent everything before it,
+ * so that a retransmission or acknowledgement never waits behind a backlog.
+ * The session must be the only producer on its queue.
+ */
+public class ArqSession implements FrameCodec.Listener {
+
+    /**
+     * How often the session checks whether to send a frame.
+     */
+    private static final long PUMP_MILLIS = 50;
+
+    private final TextQueue out;
+
+    private final ArqSender sender;
+
+    private final ArqReceiver receiver;
+
+    private final FrameCodec.Parser input;
+
+    /**
+     * Reused to encode frames.
+     */
+    private final StringBuilder text;
+
+    private volatile Thread pump;
+
+    /**
+     * The time passed to the last {@link #pump(long)}, which acknowledgements are timed by.
+     */
+    private volatile long time;
+
+    /**
+     * @param out The queue the transmitter sends from.
+     * @param listener Told of each message received.
+     * @param initialTimeoutMillis The retransmission timeout to start with. This should
+     *                             allow for sending a full frame each way at the mode's speed.
+     */
+    public ArqSession(final TextQueue out, final ArqReceiver.Listener listener, final long initialTimeoutMillis) {
+        this.out = out;
+        this.sender = new ArqSender(initialTimeoutMillis);
+        this.receiver = new ArqReceiver(listener);
+        this.input = new FrameCodec.Parser(this);
+        this.text = new StringBuilder();
+    }
+
+    /**
+     * @return Where received text is written. Frames found in it are acted on.
+     */
+    public FrameCodec.Parser getInput() {
+        return input;
+    }
+
+    /**
+     * Queue a message to be sent reliably.
+     *
+     * @param message The message.
+     */
+    public void send(final byte[] message) {
+        sender.send(message);
+    }
+
+    /**
+     * @return The sending half, for its statistics.
+     */
+    public ArqSender getSender() {
+        return sender;
+    }
+
+    @Override
+    public void onFrame(final Frame frame) {
+        if (frame.getType() == Frame.DATA) {
+            receiver.onData(frame);
+        }
+        else {
+            sender.onAck(frame, time);
+        }
+    }
+
+    /**
+     * Queue the next frame if the transmitter is ready for it. Acknowledgements go first.
+     *
+     * @param now The current time in milliseconds.
+     *
+     * @return True if a frame was queued.
+     */
+    public boolean pump(final long now) {
+        time = now;
+
+        if (out.size() > 0) {
+            return false;
+        }
+
+        Frame frame = receiver.pollAck();
+        if (frame == null) {
+            frame = sender.poll(now);
+        }
+
+        if (frame == null) {
+            return false;
+        }
+
+        text.setLength(0);
+        FrameCodec.encode(frame, text);
+
+        if (out.offer(text, 0, text.length()) < text.length()) {
+            Log.w("ArqSession", "Transmit queue full. Frame truncated.");
+        }
+
+        return true;
+    }
+
+    /**
+     * Start a thread that calls {@link #pump(long)} with the system clock.
+     */
+    public synchronized void start() {
+        if (pump != null) {
+            return;
+        }
+
+        pump = new Thread("ArqSession") {
+            @Override
+            public void run() {
+                while (pump == this) {
+                    pump(now());
+
+                    try {
+                        Thread.sleep(PUMP_MILLIS);
+                    }
+                    catch (final InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    public synchronized void stop() {
+        final Thread t = pump;
+        pump = null;
+
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,158 @@
+package org.sdsai.airqso.arq;
+
+import org.sdsai.airqso.util.TextQueue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs two {@link ArqSession}s against each other over a simulated link that
+ * loses and damages characters, on a simulated clock.
+ *
+ * Each direction carries a fixed number of characters per second, standing in
+ * for a modem, so a transfer that would take minutes on the air takes
+ * milliseconds here. Results report goodput, the rate at which message bytes
+ * arrive, alongside the raw character rate.
+ */
+public class ArqSimulator {
+
+    /**
+     * The simulation time step.
+     */
+    private static final long STEP_MILLIS = 10;
+
+    private final double charsPerSecond;
+
+    private final double dropRate;
+
+    private final double damageRate;
+
+    private final Random random;
+
+    /**
+     * The outcome of a simulated transfer.
+     */
+    public static class Result {
+        public boolean delivered;
+        public double seconds;
+        public long charactersSent;
+        public long framesSent;
+        public long retransmissions;
+        public int finalWindow;
+        public double frameErrorRate;
+
+        /**
+         * @return Message bytes delivered per second.
+         */
+        public double getGoodput(final int messageLength) {
+            return delivered ? messageLength / seconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "delivered=" + delivered +
+                " seconds=" + seconds +
+                " charactersSent=" + charactersSent +
+                " framesSent=" + framesSent +
+                " retransmissions=" + retransmissions +
+                " finalWindow=" + finalWindow +
+                " frameErrorRate=" + frameErrorRate;
+        }
+    }
+
+    /**
+     * @param charsPerSecond Characters each direction carries per second.
+     * @param dropRate The chance that a character is lost.
+     * @param damageRate The chance that a character is received as another.
+     * @param seed Seeds the loss, so that runs repeat exactly.
+     */
+    public ArqSimulator(final double charsPerSecond, final double dropRate, final double damageRate, final long seed) {
+        this.charsPerSecond = charsPerSecond;
+        this.dropRate = dropRate;
+        this.damageRate = damageRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Send a message from one session to the other.
+     *
+     * @param message The message.
+     * @param maxSeconds Simulated seconds to give up after.
+     *
+     * @return What happened.
+     */
+    public Result transfer(final byte[] message, final double maxSeconds) {
+        final byte[][] received = new byte[1][];
+
+        /* Give the first frame ample time each way before it is sent again. */
+        final long initialTimeout = (long) (4000 * (Frame.MAX_PAYLOAD * 2 + 8) / charsPerSecond);
+
+        final TextQueue toB = new TextQueue(4096);
+        final TextQueue toA = new TextQueue(4096);
+        final ArqSession a = new ArqSession(toB, new ArqReceiver.Listener() {
+            @Override
+            public void onMessage(final byte[] m) {
+            }
+        }, initialTimeout);
+        final ArqSession b = new ArqSession(toA, new ArqReceiver.Listener() {
+            @Override
+            public void onMessage(final byte[] m) {
+                received[0] = m;
+            }
+        }, initialTimeout);
+
+        a.send(message);
+
+        final Result result = new Result();
+        final double[] credit = new double[2];
+        long now = 0;
+
+        while (received[0] == null && now < maxSeconds * 1000) {
+            a.pump(now);
+            b.pump(now);
+            result.charactersSent += carry(toB, b, credit, 0);
+            result.charactersSent += carry(toA, a, credit, 1);
+            now += STEP_MILLIS;
+        }
+
+        result.delivered = received[0] != null && Arrays.equals(received[0], message);
+        result.seconds = now / 1000.0;
+        result.framesSent = a.getSender().getFramesSent();
+        result.retransmissions = a.getSender().getRetransmissions();
+        result.finalWindow = a.getSender().getWindow();
+        result.frameErrorRate = a.getSender().getFrameErrorRate();
+
+        return result;
+    }
+
+    /**
+     * Move one time step's worth of characters across the link.
+     *
+     * @return The number of characters taken from the queue.
+     */
+    private int carry(final TextQueue queue, final ArqSession to, final double[] credit, final int direction) {
+        credit[direction] += charsPerSecond * STEP_MILLIS / 1000.0;
+
+        int n = 0;
+        while (credit[direction] >= 1) {
+            final int c = queue.poll();
+            if (c < 0) {
+                /* An idle link does not save up time to send later. */
+                credit[direction] = 0;
+                break;
+            }
+
+            credit[direction] -= 1;
+            ++n;
+
+            final double r = random.nextDouble();
+            if (r < dropRate) {
+                continue;
+            }
+
+            to.getInput().write(r < dropRate + damageRate ? ' ' + random.nextInt(95) : c);
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,36 @@
+package org.sdsai.airqso.arq;
+
+/**
+ * The CRC-16-CCITT checksum, polynomial 0x1021 starting from 0xFFFF.
+ */
+public class Crc16 {
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; ++i) {
+            int crc = i << 8;
+            for (int k = 0; k < 8; ++k) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[i] = crc & 0xffff;
+        }
+    }
+
+    /**
+     * @param b The bytes to check.
+     * @param off The first byte.
+     * @param len The number of bytes.
+     *
+     * @return The checksum, from 0 to 0xFFFF.
+     */
+    public static int compute(final byte[] b, final int off, final int len) {
+        int crc = 0xffff;
+
+        for (int i = off; i < off + len; ++i) {
+            crc = ((crc << 8) ^ TABLE[((crc >> 8) ^ b[i]) & 0xff]) & 0xffff;
+        }
+
+        return crc;
+    }
+}
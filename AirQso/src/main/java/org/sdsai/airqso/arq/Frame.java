@@ -0,0 +1,160 @@
+package org.sdsai.airqso.arq;
+
+/**
+ * A unit of the reliable transport: a block of data or an acknowledgement of blocks received.
+ *
+ * On the wire a frame is a type byte, a sequence number, the body and a
+ * {@link Crc16} of everything before it. A data frame's body is its payload. An
+ * acknowledgement's body is a 32 bit mask of frames received beyond the sequence
+ * number, which is the next frame expected.
+ */
+public class Frame {
+
+    public static final int DATA = 0;
+
+    public static final int ACK = 1;
+
+    /**
+     * Set on the type byte of the last data frame of a message.
+     */
+    private static final int LAST = 0x80;
+
+    /**
+     * The most payload bytes a data frame carries.
+     */
+    public static final int MAX_PAYLOAD = 32;
+
+    private final int type;
+
+    private final int sequence;
+
+    private final boolean last;
+
+    private final byte[] payload;
+
+    private final int mask;
+
+    private Frame(final int type, final int sequence, final boolean last, final byte[] payload, final int mask) {
+        this.type = type;
+        this.sequence = sequence & 0xff;
+        this.last = last;
+        this.payload = payload;
+        this.mask = mask;
+    }
+
+    /**
+     * @param sequence The frame's sequence number, modulo 256.
+     * @param last True if this frame ends a message.
+     * @param payload The data. At most {@link #MAX_PAYLOAD} bytes are kept.
+     * @param off The first byte of data.
+     * @param len The number of bytes of data.
+     */
+    public static Frame data(
+        final int sequence,
+        final boolean last,
+        final byte[] payload,
+        final int off,
+        final int len
+    )
+    {
+        final byte[] p = new byte[Math.min(len, MAX_PAYLOAD)];
+        System.arraycopy(payload, off, p, 0, p.length);
+
+        return new Frame(DATA, sequence, last, p, 0);
+    }
+
+    /**
+     * @param next Every frame before this sequence number has been received.
+     * @param mask Bit i is set if frame next + 1 + i has been received.
+     */
+    public static Frame ack(final int next, final int mask) {
+        return new Frame(ACK, next, false, new byte[0], mask);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return For data, this frame's sequence number. For an acknowledgement, the next frame expected.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return True if this data frame ends a message.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return For an acknowledgement, bit i is set if frame {@link #getSequence()} + 1 + i has been received.
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * @return This frame as bytes, checksum included.
+     */
+    public byte[] toBytes() {
+        final int bodyLength = type == DATA ? payload.length : 4;
+        final byte[] b = new byte[2 + bodyLength + 2];
+
+        b[0] = (byte) (type | (last ? LAST : 0));
+        b[1] = (byte) sequence;
+
+        if (type == DATA) {
+            System.arraycopy(payload, 0, b, 2, payload.length);
+        }
+        else {
+            b[2] = (byte) (mask >>> 24);
+            b[3] = (byte) (mask >>> 16);
+            b[4] = (byte) (mask >>> 8);
+            b[5] = (byte) mask;
+        }
+
+        final int crc = Crc16.compute(b, 0, b.length - 2);
+        b[b.length - 2] = (byte) (crc >> 8);
+        b[b.length - 1] = (byte) crc;
+
+        return b;
+    }
+
+    /**
+     * @param b The bytes of a frame.
+     * @param len The number of bytes.
+     *
+     * @return The frame, or null if it is damaged.
+     */
+    public static Frame fromBytes(final byte[] b, final int len) {
+        if (len < 4) {
+            return null;
+        }
+
+        final int crc = (b[len - 2] & 0xff) << 8 | (b[len - 1] & 0xff);
+        if (crc != Crc16.compute(b, 0, len - 2)) {
+            return null;
+        }
+
+        final int type = b[0] & 0xff & ~LAST;
+        final int sequence = b[1] & 0xff;
+
+        if (type == DATA && len - 4 <= MAX_PAYLOAD) {
+            return data(sequence, (b[0] & LAST) != 0, b, 2, len - 4);
+        }
+
+        if (type == ACK && len == 8) {
+            final int mask = (b[2] & 0xff) << 24 | (b[3] & 0xff) << 16 | (b[4] & 0xff) << 8 | (b[5] & 0xff);
+            return ack(sequence, mask);
+        }
+
+        return null;
+    }
+}
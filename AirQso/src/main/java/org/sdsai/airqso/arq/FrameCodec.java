@@ -0,0 +1,168 @@
+package org.sdsai.airqso.arq;
+
+import org.sdsai.airqso.dsp.Varicode;
+
+import java.io.OutputStream;
+
+/**
+ * Writes frames as lines of text that survive the varicode link and finds them again in received text.
+ *
+ * Frame bytes are sent in base 32 using the 32 printable characters with the
+ * shortest varicodes, so binary data costs as little airtime as text. Each
+ * frame starts with {@link #START} and ends with a line feed. Received text
+ * between frames, or a frame damaged on the air, is skipped.
+ */
+public class FrameCodec {
+
+    /**
+     * Marks the start of a frame. It is not one of the base 32 digits.
+     */
+    public static final char START = '<';
+
+    public static final char END = '\n';
+
+    /**
+     * The longest frame, in bytes.
+     */
+    private static final int MAX_BYTES = Frame.MAX_PAYLOAD + 4;
+
+    /**
+     * The base 32 digits, cheapest first.
+     */
+    private static final char[] DIGITS = new char[32];
+
+    /**
+     * Digit values by character, or -1.
+     */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+
+        /* Pick printable characters in order of varicode length. */
+        int n = 0;
+        for (int length = 1; n < DIGITS.length; ++length) {
+            for (char c = ' '; c < 127 && n < DIGITS.length; ++c) {
+                if (c != START && Varicode.length(c) == length) {
+                    VALUES[c] = (byte) n;
+                    DIGITS[n++] = c;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param frame A frame.
+     * @param out Receives the frame's text, from {@link #START} to {@link #END}.
+     */
+    public static void encode(final Frame frame, final StringBuilder out) {
+        final byte[] b = frame.toBytes();
+
+        out.append(START);
+
+        int bits = 0;
+        int count = 0;
+        for (final byte x : b) {
+            bits = bits << 8 | (x & 0xff);
+            count += 8;
+            while (count >= 5) {
+                count -= 5;
+                out.append(DIGITS[(bits >> count) & 0x1f]);
+            }
+        }
+
+        if (count > 0) {
+            out.append(DIGITS[(bits << (5 - count)) & 0x1f]);
+        }
+
+        out.append(END);
+    }
+
+    /**
+     * Told of each undamaged frame found.
+     */
+    public interface Listener {
+        void onFrame(Frame frame);
+    }
+
+    /**
+     * Finds frames in text written to it, such as the output of a receiver.
+     */
+    public static class Parser extends OutputStream {
+
+        private final Listener listener;
+
+        private final byte[] bytes;
+
+        /**
+         * Bytes decoded in the current frame, or -1 between frames.
+         */
+        private int length;
+
+        private int bits;
+
+        private int count;
+
+        /**
+         * @param listener Told of each undamaged frame.
+         */
+        public Parser(final Listener listener) {
+            this.listener = listener;
+            this.bytes = new byte[MAX_BYTES];
+            this.length = -1;
+        }
+
+        @Override
+        public void write(final int b) {
+            final int c = b & 0xff;
+
+            if (c == START) {
+                length = 0;
+                bits = 0;
+                count = 0;
+                return;
+            }
+
+            if (length < 0) {
+                return;
+            }
+
+            if (c == END) {
+                final Frame frame = Frame.fromBytes(bytes, length);
+                length = -1;
+
+                if (frame != null) {
+                    listener.onFrame(frame);
+                }
+                return;
+            }
+
+            final int v = c < VALUES.length ? VALUES[c] : -1;
+            if (v < 0) {
+                /* Not a digit, so this frame was damaged. */
+                length = -1;
+                return;
+            }
+
+            bits = bits << 5 | v;
+            count += 5;
+            if (count >= 8) {
+                count -= 8;
+
+                if (length == bytes.length) {
+                    length = -1;
+                    return;
+                }
+
+                bytes[length++] = (byte) (bits >> count);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            for (int i = off; i < off + len; ++i) {
+                write(b[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.sdsai.airqso.compress;
+
+import org.sdsai.airqso.ModemOutputStream;
+import org.sdsai.airqso.util.TextQueue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Replaces common QSO phrases with control characters.
+ *
+ * Control characters are rarely typed and most have 10 bit varicodes, so one
+ * stands in for a phrase such as "QTH " that would take three times as long to
+ * send. The result is still plain varicode text, so a character damaged on the
+ * air spoils only itself and the receiver can join at any point. A typed
+ * control character is sent after {@link #ESCAPE}.
+ *
+ * Text is held back only while it may be the start of a phrase and is sent
+ * whenever the transmitter would otherwise idle, so typing is not delayed.
+ */
+public class DictionaryCodec implements TextCodec {
+
+    /**
+     * Sent before a character that would otherwise be read as a phrase.
+     */
+    private static final char ESCAPE = 0x10;
+
+    /**
+     * The phrases, each sent as the character at the same index of {@link #CODES}.
+     */
+    private static final String[] PHRASES = new String[]{
+        "CQ CQ ", " de ", "73", "599", "RST ", "QTH ", "QSL", "QSO",
+        "My name is ", "name ", "How copy? ", "thanks ", "Thanks ",
+        "for the ", "the ", "and ", "here ", "your ", "Your ", "ing",
+        "with ", "watts ", "antenna ", "weather ", "good ", "BTU",
+    };
+
+    /**
+     * The control characters with 10 bit varicodes, leaving out NUL, {@link #ESCAPE},
+     * and the characters that format text.
+     */
+    private static final char[] CODES = new char[]{
+        0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x0b, 0x0c, 0x0e, 0x0f,
+        0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18, 0x19, 0x1a,
+        0x1b, 0x1c, 0x1d, 0x1e, 0x1f,
+    };
+
+    /**
+     * Phrase index by character, or -1.
+     */
+    private static final int[] PHRASE_OF = new int[256];
+
+    private static final int MAX_PHRASE;
+
+    static {
+        java.util.Arrays.fill(PHRASE_OF, -1);
+
+        int max = 0;
+        for (int i = 0; i < PHRASES.length; ++i) {
+            PHRASE_OF[CODES[i]] = i;
+            max = Math.max(max, PHRASES[i].length());
+        }
+
+        MAX_PHRASE = max;
+    }
+
+    @Override
+    public String getName() {
+        return "QSO phrases";
+    }
+
+    @Override
+    public ModemOutputStream compress(final ModemOutputStream out) {
+        return new Compressor(out);
+    }
+
+    @Override
+    public OutputStream decompress(final OutputStream out) {
+        return new Decompressor(out);
+    }
+
+    /**
+     * @return True if some phrase is longer than text and starts with it.
+     */
+    private static boolean mayGrow(final CharSequence text) {
+        for (final String phrase : PHRASES) {
+            if (phrase.length() > text.length() && startsWith(phrase, text, text.length())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The index of the longest phrase text starts with, or -1.
+     */
+    private static int longestPhrase(final CharSequence text) {
+        int best = -1;
+
+        for (int i = 0; i < PHRASES.length; ++i) {
+            final String phrase = PHRASES[i];
+
+            if (phrase.length() <= text.length() &&
+                startsWith(text, phrase, phrase.length()) &&
+                (best < 0 || phrase.length() > PHRASES[best].length()))
+            {
+                best = i;
+            }
+        }
+
+        return best;
+    }
+
+    private static boolean startsWith(final CharSequence s, final CharSequence prefix, final int length) {
+        for (int i = 0; i < length; ++i) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static class Compressor extends ModemOutputStream {
+
+        private final ModemOutputStream out;
+
+        /**
+         * Text that may be the start of a phrase.
+         */
+        private final StringBuilder held;
+
+        private Compressor(final ModemOutputStream out) {
+            this.out = out;
+            this.held = new StringBuilder(MAX_PHRASE);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            final char c = (char) (b & 0xff);
+
+            /* Erase held text here rather than send it only to erase it again. */
+            if (c == TextQueue.BACKSPACE && held.length() > 0) {
+                held.setLength(held.length() - 1);
+                return;
+            }
+
+            held.append(c);
+
+            while (held.length() > 0 && !mayGrow(held)) {
+                sendOne();
+            }
+        }
+
+        @Override
+        public void preamble(final int symbols) throws IOException {
+            drain();
+            out.preamble(symbols);
+        }
+
+        @Override
+        public void postamble(final int symbols) throws IOException {
+            drain();
+            out.postamble(symbols);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            out.close();
+        }
+
+        private void drain() throws IOException {
+            while (held.length() > 0) {
+                sendOne();
+            }
+        }
+
+        /**
+         * Send the longest phrase starting the held text, or else its first character.
+         */
+        private void sendOne() throws IOException {
+            final int phrase = longestPhrase(held);
+
+            if (phrase >= 0) {
+                out.write(CODES[phrase]);
+                held.delete(0, PHRASES[phrase].length());
+                return;
+            }
+
+            final char c = held.charAt(0);
+            held.deleteCharAt(0);
+
+            if (c == ESCAPE || PHRASE_OF[c] >= 0) {
+                out.write(ESCAPE);
+            }
+            out.write(c);
+        }
+    }
+
+    private static class Decompressor extends OutputStream {
+
+        private final OutputStream out;
+
+        private final byte[][] phrases;
+
+        /**
+         * True if the last character was {@link #ESCAPE}.
+         */
+        private boolean escaped;
+
+        private Decompressor(final OutputStream out) {
+            this.out = out;
+            this.phrases = new byte[PHRASES.length][];
+            for (int i = 0; i < PHRASES.length; ++i) {
+                final String phrase = PHRASES[i];
+                phrases[i] = new byte[phrase.length()];
+                for (int k = 0; k < phrase.length(); ++k) {
+                    phrases[i][k] = (byte) phrase.charAt(k);
+                }
+            }
+            this.escaped = false;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            final int c = b & 0xff;
+
+            if (escaped) {
+                escaped = false;
+                out.write(c);
+            }
+            else if (c == ESCAPE) {
+                escaped = true;
+            }
+            else if (PHRASE_OF[c] >= 0) {
+                out.write(phrases[PHRASE_OF[c]]);
+            }
+            else {
+                out.write(c);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.sdsai.airqso.compress;
+
+import org.sdsai.airqso.ModemOutputStream;
+
+import java.io.OutputStream;
+
+/**
+ * Shortens text before it is modulated and restores it after it is demodulated.
+ *
+ * Both ends of a contact must use the same codec.
+ */
+public interface TextCodec {
+
+    /**
+     * @return The name shown to users.
+     */
+    String getName();
+
+    /**
+     * @param out The modulator.
+     *
+     * @return A stream that compresses text written to it into out. Idle and
+     *         the end of a transmission send any text held back first.
+     */
+    ModemOutputStream compress(ModemOutputStream out);
+
+    /**
+     * @param out Where restored text is written.
+     *
+     * @return A stream that restores text written to it as soon as each character is decoded.
+     */
+    OutputStream decompress(OutputStream out);
+}
@@ -0,0 +1,72 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * A second order IIR filter section in direct form I.
+ */
+public class Biquad {
+
+    private final float b0;
+    private final float b1;
+    private final float b2;
+    private final float a1;
+    private final float a2;
+
+    private float x1;
+    private float x2;
+    private float y1;
+    private float y2;
+
+    /**
+     * Coefficients are normalized so that a0 is 1.
+     */
+    public Biquad(final double b0, final double b1, final double b2, final double a1, final double a2) {
+        this.b0 = (float) b0;
+        this.b1 = (float) b1;
+        this.b2 = (float) b2;
+        this.a1 = (float) a1;
+        this.a2 = (float) a2;
+    }
+
+    /**
+     * @param sampleRate The sample rate.
+     * @param cutoffHz The -3 dB frequency.
+     * @param q The quality factor. 0.7071 gives a Butterworth response.
+     *
+     * @return A low pass section made with the bilinear transform.
+     */
+    public static Biquad lowPass(final double sampleRate, final double cutoffHz, final double q) {
+        final double w = 2.0 * Math.PI * cutoffHz / sampleRate;
+        final double alpha = Math.sin(w) / (2.0 * q);
+        final double cos = Math.cos(w);
+        final double a0 = 1.0 + alpha;
+
+        return new Biquad(
+            (1.0 - cos) / 2.0 / a0,
+            (1.0 - cos) / a0,
+            (1.0 - cos) / 2.0 / a0,
+            -2.0 * cos / a0,
+            (1.0 - alpha) / a0);
+    }
+
+    /**
+     * @param x The next input sample.
+     *
+     * @return The next output sample.
+     */
+    public float process(final float x) {
+        final float y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+        x2 = x1;
+        x1 = x;
+        y2 = y1;
+        y1 = y;
+
+        return y;
+    }
+
+    /**
+     * Forget all past input.
+     */
+    public void reset() {
+        x1 = x2 = y1 = y2 = 0;
+    }
+}
@@ -0,0 +1,157 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Generates BPSK audio one symbol at a time from waveforms computed once.
+ *
+ * A 1 bit keeps the carrier phase and a 0 bit reverses it, the carrier passing
+ * through zero amplitude on a raised cosine over the symbol as in PSK31. The
+ * carrier repeats exactly every {@code sampleRate / gcd(hz, sampleRate)}
+ * samples, so one period of it is tabulated in both polarities and a steady
+ * symbol is copied out of the table. A reversal is the same table scaled by a
+ * tabulated envelope. No trigonometric functions are called per sample.
+ */
+public class BpskModulator {
+
+    /**
+     * Peak sample amplitude.
+     */
+    private static final double AMPLITUDE = 0.5 * Short.MAX_VALUE;
+
+    /**
+     * The envelope tables are fixed point with this many fraction bits.
+     */
+    private static final int ENVELOPE_BITS = 15;
+
+    /**
+     * One period of the carrier.
+     */
+    private final short[] carrier;
+
+    /**
+     * One period of the inverted carrier.
+     */
+    private final short[] inverted;
+
+    /**
+     * The reversal envelope for symbols of {@link #shortLength} samples.
+     */
+    private final int[] shortEnvelope;
+
+    /**
+     * The reversal envelope for symbols of one sample more than {@link #shortLength}.
+     */
+    private final int[] longEnvelope;
+
+    private final int shortLength;
+
+    private final double samplesPerSymbol;
+
+    /**
+     * Fractional samples owed to the next symbol so the symbol rate stays exact.
+     */
+    private double clock;
+
+    /**
+     * The index into the carrier tables of the next sample.
+     */
+    private int position;
+
+    /**
+     * True while the carrier is inverted.
+     */
+    private boolean reversed;
+
+    /**
+     * @param hz The carrier frequency.
+     * @param sampleRate The sample rate.
+     * @param symbolRate The number of symbols per second.
+     */
+    public BpskModulator(final int hz, final int sampleRate, final double symbolRate) {
+        final int period = sampleRate / gcd(hz, sampleRate);
+
+        this.carrier = new short[period];
+        this.inverted = new short[period];
+        for (int k = 0; k < period; ++k) {
+            final long s = Math.round(AMPLITUDE * Math.cos(2.0 * Math.PI * k * hz / sampleRate));
+            carrier[k] = (short) s;
+            inverted[k] = (short) -s;
+        }
+
+        this.samplesPerSymbol = sampleRate / symbolRate;
+        this.shortLength = (int) samplesPerSymbol;
+        this.shortEnvelope = envelope(shortLength);
+        this.longEnvelope = envelope(shortLength + 1);
+        this.clock = 0;
+        this.position = 0;
+        this.reversed = false;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+
+        return Math.max(a, 1);
+    }
+
+    /**
+     * @return The amplitude over a reversal of n samples, falling from 1 to -1.
+     */
+    private static int[] envelope(final int n) {
+        final int[] e = new int[n];
+        for (int k = 0; k < n; ++k) {
+            e[k] = (int) Math.round(((1 << ENVELOPE_BITS) - 1) * Math.cos(Math.PI * (k + 1) / n));
+        }
+
+        return e;
+    }
+
+    /**
+     * @return The most samples {@link #symbol(int, short[], int)} produces.
+     */
+    public int getMaxSamplesPerSymbol() {
+        return (int) Math.ceil(samplesPerSymbol);
+    }
+
+    /**
+     * @param bit 1 to keep the carrier phase, 0 to reverse it.
+     * @param out Receives the samples. It must have room for {@link #getMaxSamplesPerSymbol()}.
+     * @param off Where to store the first sample.
+     *
+     * @return The number of samples stored.
+     */
+    public int symbol(final int bit, final short[] out, final int off) {
+        clock += samplesPerSymbol;
+        final int n = (int) clock;
+        clock -= n;
+
+        final short[] table = reversed ? inverted : carrier;
+        final int period = table.length;
+
+        if (bit != 0) {
+            int done = 0;
+            while (done < n) {
+                final int run = Math.min(n - done, period - position);
+                System.arraycopy(table, position, out, off + done, run);
+                done += run;
+                position = position + run == period ? 0 : position + run;
+            }
+        }
+        else {
+            final int[] envelope = n == shortLength ? shortEnvelope : longEnvelope;
+            int p = position;
+            for (int k = 0; k < n; ++k) {
+                out[off + k] = (short) ((table[p] * envelope[k]) >> ENVELOPE_BITS);
+                if (++p == period) {
+                    p = 0;
+                }
+            }
+            position = p;
+            reversed = !reversed;
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,117 @@
+package org.sdsai.airqso.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Finds narrow-band signals in a power spectrum.
+ *
+ * The noise floor is taken as the median bin in the search range. Runs of bins
+ * above the floor by the threshold are merged when they are closer than the
+ * signal bandwidth, since a BPSK idle has a null at its carrier frequency, and
+ * each merged run is reported at its power-weighted centre.
+ */
+public class CarrierDetector {
+
+    private final double hzPerBin;
+
+    private final int lowBin;
+
+    private final int highBin;
+
+    private final int bandwidthBins;
+
+    private final float threshold;
+
+    /**
+     * Scratch space for finding the median.
+     */
+    private final float[] sorted;
+
+    /**
+     * @param sampleRate The sample rate of the transformed signal.
+     * @param fftSize The transform size the spectra come from.
+     * @param minHz The lowest frequency searched.
+     * @param maxHz The highest frequency searched.
+     * @param bandwidthHz The width of one signal.
+     * @param thresholdDb How far above the noise floor a signal must be.
+     */
+    public CarrierDetector(
+        final int sampleRate,
+        final int fftSize,
+        final double minHz,
+        final double maxHz,
+        final double bandwidthHz,
+        final double thresholdDb
+    )
+    {
+        this.hzPerBin = (double) sampleRate / fftSize;
+        this.lowBin = Math.max(1, (int) (minHz / hzPerBin));
+        this.highBin = Math.min(fftSize / 2 - 1, (int) Math.ceil(maxHz / hzPerBin));
+        this.bandwidthBins = Math.max(1, (int) Math.round(bandwidthHz / hzPerBin));
+        this.threshold = (float) Math.pow(10.0, thresholdDb / 10.0);
+        this.sorted = new float[Math.max(0, highBin - lowBin + 1)];
+    }
+
+    /**
+     * @return The frequency in hertz of one bin.
+     */
+    public double getHzPerBin() {
+        return hzPerBin;
+    }
+
+    /**
+     * @param power A power spectrum of fftSize / 2 bins.
+     *
+     * @return The median power in the search range.
+     */
+    public float noiseFloor(final float[] power) {
+        System.arraycopy(power, lowBin, sorted, 0, sorted.length);
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * @param power A power spectrum of fftSize / 2 bins.
+     * @param carriers Receives the frequency in hertz of each signal found, lowest first.
+     *
+     * @return The number of signals stored in carriers.
+     */
+    public int detect(final float[] power, final float[] carriers) {
+        final float level = noiseFloor(power) * threshold;
+
+        int found = 0;
+        int runStart = -1;
+        int lastAbove = -1;
+        double weight = 0;
+        double moment = 0;
+
+        for (int bin = lowBin; bin <= highBin; ++bin) {
+            if (power[bin] > level) {
+                if (runStart != -1 && bin - lastAbove > bandwidthBins) {
+                    /* Too far from the previous run to be the same signal. */
+                    if (found < carriers.length) {
+                        carriers[found++] = (float) (moment / weight * hzPerBin);
+                    }
+                    runStart = -1;
+                }
+
+                if (runStart == -1) {
+                    runStart = bin;
+                    weight = 0;
+                    moment = 0;
+                }
+
+                weight += power[bin];
+                moment += power[bin] * (double) bin;
+                lastAbove = bin;
+            }
+        }
+
+        if (runStart != -1 && found < carriers.length) {
+            carriers[found++] = (float) (moment / weight * hzPerBin);
+        }
+
+        return found;
+    }
+}
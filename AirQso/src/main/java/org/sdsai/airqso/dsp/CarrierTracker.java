@@ -0,0 +1,261 @@
+package org.sdsai.airqso.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the true frequency of a BPSK carrier near a nominal frequency.
+ *
+ * Squaring a BPSK signal removes its phase modulation and leaves a line at
+ * twice the carrier frequency. This collects the squared signal, finds that
+ * line in an FFT within the search range, refines it by parabolic
+ * interpolation and follows it with a first order loop once locked. Lock
+ * needs a line above the threshold in the same place several times running.
+ */
+public class CarrierTracker {
+
+    /**
+     * How much of the distance to each new estimate a locked tracker moves.
+     */
+    private static final double LOOP_GAIN = 0.5;
+
+    /**
+     * Consecutive good estimates needed to declare lock.
+     */
+    private static final int ACQUIRE = 3;
+
+    /**
+     * How far apart consecutive estimates may be and still be of the same
+     * carrier, in hertz. The strongest noise peak in the search range is often
+     * above the threshold, but it moves about from one estimate to the next.
+     */
+    private static final double AGREE_HZ = 2;
+
+    /**
+     * Consecutive bad estimates needed to lose lock.
+     */
+    private static final int RELEASE = 3;
+
+    private final int sampleRate;
+
+    private final double nominalHz;
+
+    private final Fft fft;
+
+    private final float[] window;
+
+    private final float[] re;
+
+    private final float[] im;
+
+    private final float[] power;
+
+    /**
+     * Scratch space for finding the median.
+     */
+    private final float[] sorted;
+
+    private final int lowBin;
+
+    private final int highBin;
+
+    /**
+     * The expected bin of twice the nominal frequency, after any aliasing.
+     */
+    private final double nominalBin;
+
+    /**
+     * -1 if twice the nominal frequency aliases, which reverses the direction of offsets.
+     */
+    private final int direction;
+
+    private final float threshold;
+
+    private int fill;
+
+    private int good;
+
+    private int bad;
+
+    /**
+     * The offset of the last estimate above the threshold.
+     */
+    private double lastHz;
+
+    private volatile double offsetHz;
+
+    private volatile boolean locked;
+
+    private volatile double snrDb;
+
+    /**
+     * @param sampleRate The sample rate.
+     * @param nominalHz The carrier frequency expected.
+     * @param searchHz How far from nominalHz to look for the carrier.
+     * @param thresholdDb How far above the noise the squared carrier must be to lock.
+     */
+    public CarrierTracker(
+        final int sampleRate,
+        final double nominalHz,
+        final double searchHz,
+        final double thresholdDb
+    )
+    {
+        this.sampleRate = sampleRate;
+        this.nominalHz = nominalHz;
+
+        /* About one second of signal, which resolves the carrier to about half a hertz. */
+        this.fft = new Fft(Fft.nextPowerOfTwo(sampleRate));
+        this.window = Window.hann(fft.size());
+        this.re = new float[fft.size()];
+        this.im = new float[fft.size()];
+        this.power = new float[fft.size() / 2];
+
+        final double hzPerBin = (double) sampleRate / fft.size();
+        double doubled = (2.0 * nominalHz) % sampleRate;
+        int dir = 1;
+        if (doubled > sampleRate / 2.0) {
+            doubled = sampleRate - doubled;
+            dir = -1;
+        }
+
+        this.direction = dir;
+        this.nominalBin = doubled / hzPerBin;
+        this.lowBin = Math.max(1, (int) Math.floor((doubled - 2.0 * searchHz) / hzPerBin));
+        this.highBin = Math.min(power.length - 2, (int) Math.ceil((doubled + 2.0 * searchHz) / hzPerBin));
+        this.sorted = new float[Math.max(1, highBin - lowBin + 1)];
+        this.threshold = (float) Math.pow(10.0, thresholdDb / 10.0);
+
+        this.fill = 0;
+        this.good = 0;
+        this.bad = 0;
+        this.offsetHz = 0;
+        this.locked = false;
+        this.snrDb = 0;
+    }
+
+    /**
+     * Collect samples. Each time a transform's worth has been collected, the estimate is updated.
+     *
+     * @param samples The samples.
+     * @param off The offset of the first sample.
+     * @param len The number of samples.
+     */
+    public void add(final short[] samples, final int off, final int len) {
+        for (int i = off; i < off + len; ++i) {
+            final float x = samples[i] / 32768f;
+            re[fill] = x * x * window[fill];
+            if (++fill == re.length) {
+                estimate();
+                fill = 0;
+            }
+        }
+    }
+
+    private void estimate() {
+        for (int i = 0; i < im.length; ++i) {
+            im[i] = 0;
+        }
+
+        fft.transform(re, im);
+        fft.power(re, im, power);
+
+        int peak = lowBin;
+        for (int bin = lowBin; bin <= highBin; ++bin) {
+            if (power[bin] > power[peak]) {
+                peak = bin;
+            }
+        }
+
+        System.arraycopy(power, lowBin, sorted, 0, sorted.length);
+        Arrays.sort(sorted);
+        final float noise = sorted[sorted.length / 2];
+
+        snrDb = noise > 0 ? 10.0 * Math.log10(power[peak] / noise) : 0;
+
+        if (noise == 0 || power[peak] <= noise * threshold) {
+            good = 0;
+            miss();
+            return;
+        }
+
+        /* Parabolic interpolation on the log power of the peak and its neighbours. */
+        final double a = Math.log(power[peak - 1] + 1e-30);
+        final double b = Math.log(power[peak] + 1e-30);
+        final double c = Math.log(power[peak + 1] + 1e-30);
+        final double d = a - 2.0 * b + c;
+        final double shift = d == 0 ? 0 : 0.5 * (a - c) / d;
+
+        final double hzPerBin = (double) sampleRate / fft.size();
+        final double measured = direction * (peak + shift - nominalBin) * hzPerBin / 2.0;
+
+        final boolean agrees = good == 0 || Math.abs(measured - lastHz) <= AGREE_HZ;
+        lastHz = measured;
+
+        if (!agrees) {
+            /* This may be the start of a new carrier, or noise. */
+            good = 1;
+            miss();
+            return;
+        }
+
+        if (locked) {
+            offsetHz += LOOP_GAIN * (measured - offsetHz);
+        }
+        else {
+            offsetHz = measured;
+        }
+
+        bad = 0;
+        if (++good >= ACQUIRE) {
+            locked = true;
+        }
+    }
+
+    /**
+     * Count an estimate that did not find the carrier.
+     */
+    private void miss() {
+        if (++bad >= RELEASE) {
+            locked = false;
+        }
+    }
+
+    /**
+     * @return How far above the nominal frequency the carrier is, in hertz.
+     */
+    public double getOffset() {
+        return offsetHz;
+    }
+
+    /**
+     * @return The estimated carrier frequency in hertz.
+     */
+    public double getFrequency() {
+        return nominalHz + offsetHz;
+    }
+
+    /**
+     * @return True while the carrier is being followed.
+     */
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * @return The squared carrier's height above the noise in the last estimate, in decibels.
+     */
+    public double getSnrDb() {
+        return snrDb;
+    }
+
+    /**
+     * Forget the current estimate and search again from the nominal frequency.
+     */
+    public void reset() {
+        fill = 0;
+        good = 0;
+        bad = 0;
+        offsetHz = 0;
+        locked = false;
+    }
+}
@@ -0,0 +1,77 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * The rate 1/2, constraint length 5 convolutional code used by QPSK31.
+ *
+ * Each input bit produces a two bit symbol. An input of all 0 bits produces symbol 0.
+ */
+public class ConvolutionalEncoder {
+
+    /**
+     * The number of input bits each symbol depends on.
+     */
+    public static final int CONSTRAINT_LENGTH = 5;
+
+    /**
+     * The number of encoder states.
+     */
+    public static final int STATES = 1 << (CONSTRAINT_LENGTH - 1);
+
+    /**
+     * The generator of the high bit of each symbol.
+     */
+    public static final int POLY_HIGH = 0x19;
+
+    /**
+     * The generator of the low bit of each symbol.
+     */
+    public static final int POLY_LOW = 0x17;
+
+    /**
+     * Symbols by register contents, the newest bit in the least significant position.
+     */
+    private static final int[] SYMBOLS = new int[STATES * 2];
+
+    static {
+        for (int r = 0; r < SYMBOLS.length; ++r) {
+            SYMBOLS[r] = (Integer.bitCount(r & POLY_HIGH) & 1) << 1 | (Integer.bitCount(r & POLY_LOW) & 1);
+        }
+    }
+
+    /**
+     * The last {@link #CONSTRAINT_LENGTH} - 1 input bits.
+     */
+    private int state;
+
+    public ConvolutionalEncoder() {
+        this.state = 0;
+    }
+
+    /**
+     * @param state An encoder state.
+     * @param bit The next input bit.
+     *
+     * @return The symbol sent when bit is encoded in state.
+     */
+    public static int symbol(final int state, final int bit) {
+        return SYMBOLS[state << 1 | bit];
+    }
+
+    /**
+     * @param bit The next input bit.
+     *
+     * @return The symbol to send, from 0 to 3.
+     */
+    public int encode(final int bit) {
+        final int r = state << 1 | (bit & 1);
+        state = r & (STATES - 1);
+        return SYMBOLS[r];
+    }
+
+    /**
+     * Return to the all zero state.
+     */
+    public void reset() {
+        state = 0;
+    }
+}
@@ -0,0 +1,121 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * A convolutional interleaver, or the deinterleaver that undoes it.
+ *
+ * Values are dealt in turn to a number of branches, each a delay line one step
+ * longer than the last, so a burst of errors on the air is spread out over
+ * many symbols by the time it reaches the decoder. Unlike a block interleaver
+ * there is no block to fill, so the added latency is fixed at
+ * {@link #getLatency()} values.
+ *
+ * Each value is a fixed number of ints wide so that soft decisions can be deinterleaved whole.
+ */
+public class ConvolutionalInterleaver {
+
+    private final int branches;
+
+    private final int width;
+
+    /**
+     * The delay lines of all branches, back to back.
+     */
+    private final int[] cells;
+
+    /**
+     * Where each branch's delay line starts in {@link #cells}.
+     */
+    private final int[] starts;
+
+    /**
+     * The length of each branch's delay line, in values.
+     */
+    private final int[] lengths;
+
+    /**
+     * The next value to read from each branch's delay line.
+     */
+    private final int[] positions;
+
+    private final int latency;
+
+    /**
+     * The branch the next value goes through.
+     */
+    private int branch;
+
+    /**
+     * @param branches The number of branches.
+     * @param delay The extra delay of each branch over the last, in trips around all branches.
+     * @param width The number of ints in each value.
+     * @param deinterleave If true, undo an interleaver made with the same branches and delay.
+     * @param firstBranch The branch the first value goes through. A deinterleaver
+     *                    must start on the branch matching the interleaver's.
+     */
+    public ConvolutionalInterleaver(
+        final int branches,
+        final int delay,
+        final int width,
+        final boolean deinterleave,
+        final int firstBranch
+    )
+    {
+        this.branches = branches;
+        this.width = width;
+        this.starts = new int[branches];
+        this.lengths = new int[branches];
+        this.positions = new int[branches];
+        this.latency = branches * (branches - 1) * delay;
+        this.branch = firstBranch;
+
+        int total = 0;
+        for (int j = 0; j < branches; ++j) {
+            starts[j] = total * width;
+            lengths[j] = (deinterleave ? branches - 1 - j : j) * delay;
+            total += lengths[j];
+        }
+
+        this.cells = new int[total * width];
+    }
+
+    /**
+     * @return The number of branches.
+     */
+    public int getBranches() {
+        return branches;
+    }
+
+    /**
+     * @return The number of values an interleaver and deinterleaver together delay a value by.
+     */
+    public int getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param in The next value. Only the first {@link #width} ints are read.
+     * @param out Receives the value leaving. This may be the same array as in.
+     */
+    public void push(final int[] in, final int[] out) {
+        final int length = lengths[branch];
+
+        if (length == 0) {
+            if (out != in) {
+                System.arraycopy(in, 0, out, 0, width);
+            }
+        }
+        else {
+            final int cell = starts[branch] + positions[branch] * width;
+
+            for (int k = 0; k < width; ++k) {
+                final int v = in[k];
+                out[k] = cells[cell + k];
+                cells[cell + k] = v;
+            }
+
+            positions[branch] = positions[branch] + 1 == length ? 0 : positions[branch] + 1;
+        }
+
+        branch = branch + 1 == branches ? 0 : branch + 1;
+    }
+}
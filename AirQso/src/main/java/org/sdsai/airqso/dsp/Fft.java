@@ -0,0 +1,115 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * An in-place, radix-2 complex FFT of a fixed size.
+ *
+ * Twiddle factors and the bit-reversal permutation are computed once in the
+ * constructor, so {@link #transform(float[], float[])} neither allocates nor
+ * calls trigonometric functions.
+ */
+public class Fft {
+
+    private final int size;
+
+    private final int[] reverse;
+
+    private final float[] cos;
+
+    private final float[] sin;
+
+    /**
+     * @param size The transform size. This must be a power of two.
+     */
+    public Fft(final int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+
+        this.size = size;
+        this.reverse = new int[size];
+        this.cos = new float[size / 2];
+        this.sin = new float[size / 2];
+
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; ++i) {
+            reverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        for (int i = 0; i < size / 2; ++i) {
+            final double a = -2.0 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(a);
+            sin[i] = (float) Math.sin(a);
+        }
+    }
+
+    /**
+     * @return The transform size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Compute the forward transform in place.
+     *
+     * @param re The real parts. At least {@link #size()} long.
+     * @param im The imaginary parts. At least {@link #size()} long.
+     */
+    public void transform(final float[] re, final float[] im) {
+        for (int i = 0; i < size; ++i) {
+            final int j = reverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int half = 1, step = size / 2; half < size; half <<= 1, step >>= 1) {
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0, t = 0; k < half; ++k, t += step) {
+                    final int a = start + k;
+                    final int b = a + half;
+                    final float wr = cos[t];
+                    final float wi = sin[t];
+                    final float xr = re[b] * wr - im[b] * wi;
+                    final float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    /**
+     * Store the squared magnitude of the first half of a transformed signal.
+     *
+     * @param re The real parts.
+     * @param im The imaginary parts.
+     * @param power Receives {@link #size()} / 2 values.
+     */
+    public void power(final float[] re, final float[] im, final float[] power) {
+        for (int i = 0; i < size / 2; ++i) {
+            power[i] = re[i] * re[i] + im[i] * im[i];
+        }
+    }
+
+    /**
+     * @param n A positive number.
+     *
+     * @return The smallest power of two that is not less than n.
+     */
+    public static int nextPowerOfTwo(final int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,82 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Moves a narrow-band signal near a centre frequency by a given offset, so that
+ * a signal at centre + offset comes out at the centre.
+ *
+ * The input is mixed down to complex baseband at centre + offset, low pass
+ * filtered, and mixed back up at the centre. The filter also removes
+ * everything outside of the signal's bandwidth.
+ */
+public class FrequencyShifter {
+
+    private final double centreHz;
+
+    private final Oscillator down;
+
+    private final Oscillator up;
+
+    /* Two sections make a fourth order Butterworth filter for each of I and Q. */
+    private final Biquad i1;
+    private final Biquad i2;
+    private final Biquad q1;
+    private final Biquad q2;
+
+    private double offsetHz;
+
+    /**
+     * @param sampleRate The sample rate.
+     * @param centreHz The frequency signals are moved to.
+     * @param bandwidthHz The width of the signal kept.
+     */
+    public FrequencyShifter(final int sampleRate, final double centreHz, final double bandwidthHz) {
+        final double cutoff = bandwidthHz / 2.0;
+
+        this.centreHz = centreHz;
+        this.down = new Oscillator(sampleRate, centreHz);
+        this.up = new Oscillator(sampleRate, centreHz);
+        this.i1 = Biquad.lowPass(sampleRate, cutoff, 0.5412);
+        this.i2 = Biquad.lowPass(sampleRate, cutoff, 1.3066);
+        this.q1 = Biquad.lowPass(sampleRate, cutoff, 0.5412);
+        this.q2 = Biquad.lowPass(sampleRate, cutoff, 1.3066);
+        this.offsetHz = 0;
+    }
+
+    /**
+     * @param offsetHz How far above the centre the signal to move is.
+     */
+    public void setOffset(final double offsetHz) {
+        this.offsetHz = offsetHz;
+        down.setFrequency(centreHz + offsetHz);
+    }
+
+    /**
+     * @return How far above the centre the signal being moved is.
+     */
+    public double getOffset() {
+        return offsetHz;
+    }
+
+    /**
+     * Shift samples in place.
+     *
+     * @param samples The samples.
+     * @param off The offset of the first sample.
+     * @param len The number of samples.
+     */
+    public void process(final short[] samples, final int off, final int len) {
+        for (int n = off; n < off + len; ++n) {
+            final float x = samples[n];
+            final float i = i2.process(i1.process((float) (x * down.cos())));
+            final float q = q2.process(q1.process((float) (-x * down.sin())));
+
+            /* The mix down halves the amplitude, so double it on the way back up. */
+            final double y = 2.0 * (i * up.cos() - q * up.sin());
+
+            samples[n] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(y)));
+
+            down.next();
+            up.next();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * A complex oscillator that advances by rotation instead of calling trigonometric functions per sample.
+ */
+public class Oscillator {
+
+    /**
+     * Samples between corrections of the rounding drift in amplitude.
+     */
+    private static final int NORMALIZE = 1024;
+
+    private final double sampleRate;
+
+    private double cos;
+    private double sin;
+    private double stepCos;
+    private double stepSin;
+    private int count;
+
+    /**
+     * @param sampleRate The sample rate.
+     * @param hz The initial frequency.
+     */
+    public Oscillator(final double sampleRate, final double hz) {
+        this.sampleRate = sampleRate;
+        this.cos = 1;
+        this.sin = 0;
+        this.count = 0;
+        setFrequency(hz);
+    }
+
+    /**
+     * Change frequency without a phase jump.
+     *
+     * @param hz The new frequency.
+     */
+    public void setFrequency(final double hz) {
+        final double w = 2.0 * Math.PI * hz / sampleRate;
+        stepCos = Math.cos(w);
+        stepSin = Math.sin(w);
+    }
+
+    /**
+     * @return The cosine of the current phase.
+     */
+    public double cos() {
+        return cos;
+    }
+
+    /**
+     * @return The sine of the current phase.
+     */
+    public double sin() {
+        return sin;
+    }
+
+    /**
+     * Advance one sample.
+     */
+    public void next() {
+        final double c = cos * stepCos - sin * stepSin;
+        sin = cos * stepSin + sin * stepCos;
+        cos = c;
+
+        if (++count == NORMALIZE) {
+            count = 0;
+            final double g = 1.0 / Math.sqrt(cos * cos + sin * sin);
+            cos *= g;
+            sin *= g;
+        }
+    }
+}
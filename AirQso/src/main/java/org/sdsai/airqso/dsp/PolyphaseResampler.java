@@ -0,0 +1,162 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Changes the sample rate of a stream by a rational factor with a polyphase FIR filter.
+ *
+ * The rate is multiplied by L / M, where L and M are the output and input rates
+ * divided by their greatest common divisor. Only the filter phases needed for
+ * each output sample are computed, so decimating 44100 Hz to 8000 Hz costs one
+ * short dot product per output sample. All tables are built in the constructor.
+ */
+public class PolyphaseResampler {
+
+    private final int inputRate;
+
+    private final int outputRate;
+
+    /**
+     * The interpolation factor.
+     */
+    private final int up;
+
+    /**
+     * The decimation factor.
+     */
+    private final int down;
+
+    /**
+     * Taps per phase.
+     */
+    private final int taps;
+
+    /**
+     * Filter coefficients by phase, ordered oldest input first.
+     */
+    private final float[][] phases;
+
+    /**
+     * The last {@link #taps} inputs, stored twice so a window of them is always contiguous.
+     */
+    private final float[] history;
+
+    /**
+     * Where the next input is stored in {@link #history}.
+     */
+    private int position;
+
+    /**
+     * The phase of the next output relative to the newest input.
+     */
+    private int phase;
+
+    /**
+     * @param inputRate The rate of samples passed to {@link #process(short[], int, int, short[], int)}.
+     * @param outputRate The rate of samples produced.
+     * @param passbandHz The highest frequency that must come through unharmed. It should be
+     *                   below half of the lower of the two rates.
+     */
+    public PolyphaseResampler(final int inputRate, final int outputRate, final double passbandHz) {
+        final int gcd = gcd(inputRate, outputRate);
+
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+
+        /* Pass everything up to passbandHz and stop everything that would alias into it. */
+        final double nyquist = Math.min(inputRate, outputRate) / 2.0;
+        final double stopHz = 2.0 * nyquist - passbandHz;
+        final double cutoffHz = (passbandHz + Math.min(stopHz, nyquist * 1.5)) / 2.0;
+        final double transitionHz = Math.max(stopHz - passbandHz, nyquist * 0.05);
+
+        /* A Blackman window needs about 5.5 / (transition / rate) taps at the input rate. */
+        this.taps = Math.max(4, (int) Math.ceil(5.5 * inputRate / transitionHz));
+        this.phases = new float[up][taps];
+        this.history = new float[taps * 2];
+        this.position = 0;
+        this.phase = 0;
+
+        /* Design the prototype at the interpolated rate, then split it into phases. */
+        final int length = taps * up;
+        final double fc = cutoffHz / ((double) inputRate * up);
+        final double centre = (length - 1) / 2.0;
+        for (int n = 0; n < length; ++n) {
+            final double t = n - centre;
+            final double sinc = t == 0 ? 2.0 * fc : Math.sin(2.0 * Math.PI * fc * t) / (Math.PI * t);
+            final double w = 0.42
+                - 0.5 * Math.cos(2.0 * Math.PI * n / (length - 1))
+                + 0.08 * Math.cos(4.0 * Math.PI * n / (length - 1));
+
+            /* Scale by up to make up for the zeros interpolation inserts. */
+            final double h = sinc * w * up;
+
+            final int p = n % up;
+            final int k = n / up;
+            phases[p][taps - 1 - k] = (float) h;
+        }
+    }
+
+    private static int gcd(final int a, final int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * @return The rate of samples passed in.
+     */
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    /**
+     * @return The rate of samples produced.
+     */
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * @param inputs A number of input samples.
+     *
+     * @return The most output samples that many inputs can produce.
+     */
+    public int maxOutput(final int inputs) {
+        return (int) (((long) inputs * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Resample a block of input.
+     *
+     * @param in The input samples.
+     * @param inOff The offset of the first input.
+     * @param inLen The number of inputs.
+     * @param out Receives output. It must have room for {@link #maxOutput(int)} samples.
+     * @param outOff Where to store the first output.
+     *
+     * @return The number of outputs stored.
+     */
+    public int process(final short[] in, final int inOff, final int inLen, final short[] out, final int outOff) {
+        int produced = 0;
+
+        for (int i = inOff; i < inOff + inLen; ++i) {
+            history[position] = in[i];
+            history[position + taps] = in[i];
+            position = position + 1 == taps ? 0 : position + 1;
+
+            /* The oldest input is now at position and the newest at position + taps - 1. */
+            while (phase < up) {
+                final float[] h = phases[phase];
+                float y = 0;
+                for (int k = 0; k < taps; ++k) {
+                    y += h[k] * history[position + k];
+                }
+
+                out[outOff + produced++] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(y)));
+                phase += down;
+            }
+
+            phase -= up;
+        }
+
+        return produced;
+    }
+}
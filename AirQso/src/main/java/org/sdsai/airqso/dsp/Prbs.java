@@ -0,0 +1,46 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * The PRBS-15 pseudo-random bit sequence, x^15 + x^14 + 1, as used by bit error rate testers.
+ *
+ * A receiver synchronizes by loading 15 received bits with {@link #load(int)}
+ * and then predicts every following bit with {@link #next()}.
+ */
+public class Prbs {
+
+    /**
+     * The number of bits of state.
+     */
+    public static final int BITS = 15;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    private int state;
+
+    /**
+     * Start from the all ones state.
+     */
+    public Prbs() {
+        this.state = MASK;
+    }
+
+    /**
+     * @return The next bit of the sequence.
+     */
+    public int next() {
+        final int bit = ((state >> 14) ^ (state >> 13)) & 1;
+        state = ((state << 1) | bit) & MASK;
+
+        return bit;
+    }
+
+    /**
+     * Shift a received bit into the state, so that after {@link #BITS} bits
+     * {@link #next()} predicts the bit that follows them.
+     *
+     * @param bit The received bit.
+     */
+    public void load(final int bit) {
+        state = ((state << 1) | (bit & 1)) & MASK;
+    }
+}
@@ -0,0 +1,209 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Recovers soft decisions on differentially encoded QPSK symbols, as made by a {@link QpskModulator}.
+ *
+ * The signal is mixed to baseband and summed over one symbol. Symbol timing
+ * comes from where in the symbol period that sum is strongest on average, which
+ * is where the sum lines up with a whole symbol. The phase turn between
+ * consecutive symbols is scored against each of the four possible turns.
+ */
+public class QpskDemodulator {
+
+    /**
+     * How quickly the timing estimate follows, per symbol.
+     */
+    private static final float TIMING_ALPHA = 1f / 16;
+
+    /**
+     * How quickly the signal level estimate follows, per symbol.
+     */
+    private static final float LEVEL_ALPHA = 1f / 32;
+
+    /**
+     * The largest magnitude of a score.
+     */
+    public static final int SCALE = 64;
+
+    private final Oscillator carrier;
+
+    /**
+     * Whole samples per symbol.
+     */
+    private final int length;
+
+    /**
+     * The last {@link #length} baseband samples.
+     */
+    private final float[] ringI;
+    private final float[] ringQ;
+
+    /**
+     * Average symbol energy at each sample offset into the symbol period.
+     */
+    private final float[] energy;
+
+    /**
+     * Scores for symbols 0 to 3 of the last symbol found.
+     */
+    private final int[] metrics;
+
+    private double sumI;
+    private double sumQ;
+
+    /**
+     * Offset of the newest sample into the symbol period.
+     */
+    private int position;
+
+    /**
+     * The offset symbols are taken at.
+     */
+    private int samplePosition;
+
+    /**
+     * Samples since the last symbol.
+     */
+    private int since;
+
+    /**
+     * The last symbol's baseband sum.
+     */
+    private double lastI;
+    private double lastQ;
+
+    /**
+     * Average magnitude of the product of consecutive symbols.
+     */
+    private double level;
+
+    /**
+     * @param hz The carrier frequency.
+     * @param sampleRate The sample rate.
+     * @param symbolRate The number of symbols per second.
+     */
+    public QpskDemodulator(final int hz, final int sampleRate, final double symbolRate) {
+        this.carrier = new Oscillator(sampleRate, hz);
+        this.length = Math.max(1, (int) Math.round(sampleRate / symbolRate));
+        this.ringI = new float[length];
+        this.ringQ = new float[length];
+        this.energy = new float[length];
+        this.metrics = new int[4];
+        this.sumI = 0;
+        this.sumQ = 0;
+        this.position = 0;
+        this.samplePosition = 0;
+        this.since = 0;
+        this.lastI = 0;
+        this.lastQ = 0;
+        this.level = 0;
+    }
+
+    /**
+     * @return Samples per symbol.
+     */
+    public int getSamplesPerSymbol() {
+        return length;
+    }
+
+    /**
+     * @param sample The next sample.
+     *
+     * @return True if a symbol was found. Its scores are in {@link #getMetrics()}.
+     */
+    public boolean add(final short sample) {
+        final float bi = (float) (sample * carrier.cos());
+        final float bq = (float) (-sample * carrier.sin());
+        carrier.next();
+
+        if (++position == length) {
+            position = 0;
+        }
+
+        sumI += bi - ringI[position];
+        sumQ += bq - ringQ[position];
+        ringI[position] = bi;
+        ringQ[position] = bq;
+
+        energy[position] += ((float) (sumI * sumI + sumQ * sumQ) - energy[position]) * TIMING_ALPHA;
+
+        ++since;
+        if (position != samplePosition || since < length / 2) {
+            return false;
+        }
+
+        since = 0;
+        score();
+
+        /*
+         * Choosing the next offset only now keeps it within a small step of one
+         * symbol away. Had it been chosen at the start of the period instead, a
+         * step back past the start, as from 0 to length - 1, would skip a symbol.
+         */
+        chooseSamplePosition();
+        return true;
+    }
+
+    /**
+     * @return Scores from -{@link #SCALE} to {@link #SCALE} for how well the last symbol
+     *         found matches each of the symbols 0 to 3. This array is reused.
+     */
+    public int[] getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Called once per symbol to follow the timing and to stop rounding errors building up in the sums.
+     */
+    private void chooseSamplePosition() {
+        int best = 0;
+        double si = 0;
+        double sq = 0;
+        for (int k = 0; k < length; ++k) {
+            if (energy[k] > energy[best]) {
+                best = k;
+            }
+            si += ringI[k];
+            sq += ringQ[k];
+        }
+
+        /* Move toward the best offset a little at a time so that noise during a fade does not make the timing jump. */
+        int step = best - samplePosition;
+        if (step > length / 2) {
+            step -= length;
+        }
+        else if (step < -length / 2) {
+            step += length;
+        }
+
+        final int maxStep = Math.max(1, length / 16);
+        step = Math.max(-maxStep, Math.min(maxStep, step));
+        samplePosition = (samplePosition + step + length) % length;
+
+        sumI = si;
+        sumQ = sq;
+    }
+
+    private void score() {
+        /* The turn from the last symbol to this one. */
+        final double di = sumI * lastI + sumQ * lastQ;
+        final double dq = sumQ * lastI - sumI * lastQ;
+
+        lastI = sumI;
+        lastQ = sumQ;
+
+        final double magnitude = Math.sqrt(di * di + dq * dq);
+        level += (magnitude - level) * LEVEL_ALPHA;
+
+        final double g = level > 0 ? SCALE / level : 0;
+
+        metrics[0] = clamp(-di * g);
+        metrics[1] = clamp(dq * g);
+        metrics[2] = clamp(-dq * g);
+        metrics[3] = clamp(di * g);
+    }
+
+    private static int clamp(final double x) {
+        return (int) Math.max(-SCALE, Math.min(SCALE, x));
+    }
+}
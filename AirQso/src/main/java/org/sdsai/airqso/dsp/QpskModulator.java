@@ -0,0 +1,92 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Generates differentially encoded QPSK audio one symbol at a time.
+ *
+ * Each symbol turns the carrier phase by 180, +90, -90 or 0 degrees for symbols
+ * 0 to 3. Over the symbol the carrier moves from the old phase to the new one
+ * with a raised cosine, so a 180 degree turn passes through zero amplitude the
+ * way a PSK31 phase reversal does, and no turn leaves a steady carrier.
+ */
+public class QpskModulator {
+
+    /**
+     * Peak sample amplitude.
+     */
+    private static final double AMPLITUDE = 0.5 * Short.MAX_VALUE;
+
+    /**
+     * The in-phase turn of each symbol.
+     */
+    private static final double[] TURN_COS = new double[]{ -1, 0, 0, 1 };
+
+    /**
+     * The quadrature turn of each symbol.
+     */
+    private static final double[] TURN_SIN = new double[]{ 0, 1, -1, 0 };
+
+    private final Oscillator carrier;
+
+    private final double samplesPerSymbol;
+
+    /**
+     * Fractional samples owed to the next symbol so the symbol rate stays exact.
+     */
+    private double clock;
+
+    /**
+     * The baseband phase at the end of the last symbol.
+     */
+    private double i;
+    private double q;
+
+    /**
+     * @param hz The carrier frequency.
+     * @param sampleRate The sample rate.
+     * @param symbolRate The number of symbols per second.
+     */
+    public QpskModulator(final int hz, final int sampleRate, final double symbolRate) {
+        this.carrier = new Oscillator(sampleRate, hz);
+        this.samplesPerSymbol = sampleRate / symbolRate;
+        this.clock = 0;
+        this.i = 1;
+        this.q = 0;
+    }
+
+    /**
+     * @return The most samples {@link #symbol(int, short[], int)} produces.
+     */
+    public int getMaxSamplesPerSymbol() {
+        return (int) Math.ceil(samplesPerSymbol);
+    }
+
+    /**
+     * @param symbol The symbol to send, from 0 to 3.
+     * @param out Receives the samples. It must have room for {@link #getMaxSamplesPerSymbol()}.
+     * @param off Where to store the first sample.
+     *
+     * @return The number of samples stored.
+     */
+    public int symbol(final int symbol, final short[] out, final int off) {
+        clock += samplesPerSymbol;
+        final int n = (int) clock;
+        clock -= n;
+
+        final double ni = i * TURN_COS[symbol] - q * TURN_SIN[symbol];
+        final double nq = i * TURN_SIN[symbol] + q * TURN_COS[symbol];
+
+        for (int k = 0; k < n; ++k) {
+            final double w = 0.5 - 0.5 * Math.cos(Math.PI * (k + 1) / n);
+            final double bi = i + (ni - i) * w;
+            final double bq = q + (nq - q) * w;
+
+            out[off + k] = (short) Math.round(AMPLITUDE * (bi * carrier.cos() - bq * carrier.sin()));
+            carrier.next();
+        }
+
+        i = ni;
+        q = nq;
+
+        return n;
+    }
+}
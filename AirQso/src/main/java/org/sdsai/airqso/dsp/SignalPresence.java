@@ -0,0 +1,144 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Decides whether a signal is present near a carrier frequency by how far the
+ * band around the carrier stands above the bands beside it.
+ *
+ * Samples are taken a block at a time and transformed. The mean power per bin
+ * within the signal band is compared with the mean power per bin in a guard
+ * band of the same width on either side, a little beyond the signal's
+ * sidebands. The quieter guard band is used, so that a neighbouring station
+ * on one side does not hide a signal. On noise alone the ratio is near 0 dB.
+ */
+public class SignalPresence {
+
+    /**
+     * Symbol periods per block, which sets the frequency resolution to a quarter of the symbol rate.
+     */
+    private static final int SYMBOLS_PER_BLOCK = 4;
+
+    /**
+     * Symbol rates between the edge of the signal band and the guard bands,
+     * to keep the signal's sidebands out of them.
+     */
+    private static final double GUARD_GAP_SYMBOLS = 2;
+
+    private final Fft fft;
+
+    private final float[] window;
+
+    private final float[] re;
+
+    private final float[] im;
+
+    private final float[] power;
+
+    private final int signalLow;
+    private final int signalHigh;
+    private final int lowerGuardLow;
+    private final int lowerGuardHigh;
+    private final int upperGuardLow;
+    private final int upperGuardHigh;
+
+    private int fill;
+
+    private volatile double ratioDb;
+
+    /**
+     * @param sampleRate The sample rate.
+     * @param hz The carrier frequency.
+     * @param symbolRate The number of symbols per second.
+     * @param offsetHz How far from hz a carrier may be and still count, such as an AFC search range.
+     */
+    public SignalPresence(final int sampleRate, final double hz, final double symbolRate, final double offsetHz) {
+        this.fft = new Fft(Fft.nextPowerOfTwo((int) (sampleRate / symbolRate * SYMBOLS_PER_BLOCK)));
+        this.window = Window.hann(fft.size());
+        this.re = new float[fft.size()];
+        this.im = new float[fft.size()];
+        this.power = new float[fft.size() / 2];
+        this.fill = 0;
+        this.ratioDb = 0;
+
+        final double hzPerBin = (double) sampleRate / fft.size();
+        final double halfWidth = symbolRate + offsetHz;
+        final double gap = symbolRate * GUARD_GAP_SYMBOLS;
+        final int top = power.length - 1;
+
+        this.signalLow = clamp((int) Math.floor((hz - halfWidth) / hzPerBin), top);
+        this.signalHigh = clamp((int) Math.ceil((hz + halfWidth) / hzPerBin), top);
+        this.lowerGuardLow = clamp((int) Math.floor((hz - halfWidth * 3 - gap) / hzPerBin), top);
+        this.lowerGuardHigh = clamp((int) Math.ceil((hz - halfWidth - gap) / hzPerBin), top);
+        this.upperGuardLow = clamp((int) Math.floor((hz + halfWidth + gap) / hzPerBin), top);
+        this.upperGuardHigh = clamp((int) Math.ceil((hz + halfWidth * 3 + gap) / hzPerBin), top);
+    }
+
+    private static int clamp(final int bin, final int top) {
+        return Math.max(1, Math.min(bin, top));
+    }
+
+    /**
+     * @return The number of samples each decision is made from.
+     */
+    public int getBlockSize() {
+        return fft.size();
+    }
+
+    /**
+     * @param samples Samples to add.
+     * @param off The offset of the first sample.
+     * @param len The number of samples.
+     *
+     * @return True if this completed at least one block, so {@link #getRatioDb()} has changed.
+     */
+    public boolean add(final short[] samples, final int off, final int len) {
+        boolean done = false;
+
+        for (int i = off; i < off + len; ++i) {
+            re[fill] = samples[i] * window[fill];
+            if (++fill == re.length) {
+                estimate();
+                fill = 0;
+                done = true;
+            }
+        }
+
+        return done;
+    }
+
+    /**
+     * @return How far the signal band stood above the quieter guard band in the last block, in decibels.
+     */
+    public double getRatioDb() {
+        return ratioDb;
+    }
+
+    private void estimate() {
+        for (int i = 0; i < im.length; ++i) {
+            im[i] = 0;
+        }
+
+        fft.transform(re, im);
+        fft.power(re, im, power);
+
+        final double signal = mean(signalLow, signalHigh);
+        final double lower = mean(lowerGuardLow, lowerGuardHigh);
+        final double upper = mean(upperGuardLow, upperGuardHigh);
+
+        /* A guard band squeezed to nothing at the edge of the spectrum is not used. */
+        final double noise =
+            lowerGuardHigh <= lowerGuardLow ? upper :
+            upperGuardHigh <= upperGuardLow ? lower :
+            Math.min(lower, upper);
+
+        ratioDb = noise > 0 && signal > 0 ? 10.0 * Math.log10(signal / noise) : 0;
+    }
+
+    private double mean(final int low, final int high) {
+        double sum = 0;
+        for (int bin = low; bin <= high; ++bin) {
+            sum += power[bin];
+        }
+
+        return sum / (high - low + 1);
+    }
+}
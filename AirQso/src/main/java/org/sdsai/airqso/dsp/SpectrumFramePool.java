@@ -0,0 +1,91 @@
+package org.sdsai.airqso.dsp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed, triple-buffered pool of spectrum frames passed from one writer to one reader.
+ *
+ * The writer always has a frame to fill and the reader always has the most
+ * recently published frame to draw, without either waiting on the other and
+ * without allocating.
+ */
+public class SpectrumFramePool {
+
+    /**
+     * Set in {@link #middle} when it holds a frame the reader has not seen.
+     */
+    private static final int FRESH = 4;
+
+    private final float[][] frames;
+
+    private final long[] sequences;
+
+    /**
+     * The index of the frame between the writer and the reader, plus {@link #FRESH}.
+     */
+    private final AtomicInteger middle;
+
+    /**
+     * The index of the frame being written. Only used by the writer.
+     */
+    private int back;
+
+    /**
+     * The index of the frame being read. Only used by the reader.
+     */
+    private int front;
+
+    /**
+     * @param bins The number of values in each frame.
+     */
+    public SpectrumFramePool(final int bins) {
+        this.frames = new float[3][bins];
+        this.sequences = new long[3];
+        this.back = 0;
+        this.middle = new AtomicInteger(1);
+        this.front = 2;
+    }
+
+    /**
+     * @return The number of values in each frame.
+     */
+    public int getBins() {
+        return frames[0].length;
+    }
+
+    /**
+     * @return The frame the writer should fill next. Called only by the writer.
+     */
+    public float[] writeFrame() {
+        return frames[back];
+    }
+
+    /**
+     * Publish the frame returned by {@link #writeFrame()}. Called only by the writer.
+     *
+     * @param sequence A number identifying this frame, which increases with each frame.
+     */
+    public void publish(final long sequence) {
+        sequences[back] = sequence;
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /**
+     * @return The most recently published frame. Called only by the reader.
+     */
+    public float[] readFrame() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & 3;
+        }
+
+        return frames[front];
+    }
+
+    /**
+     * @return The sequence number of the frame last returned by {@link #readFrame()}, or 0 if none
+     *         has been published. Called only by the reader.
+     */
+    public long readSequence() {
+        return sequences[front];
+    }
+}
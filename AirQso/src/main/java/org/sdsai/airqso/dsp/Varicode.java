@@ -0,0 +1,162 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * The PSK31 varicode alphabet.
+ *
+ * Each character is a run of bits starting and ending with 1 that never holds two
+ * 0 bits in a row, so two 0 bits mark the gap between characters. Common
+ * characters have the shortest codes.
+ */
+public class Varicode {
+
+    /**
+     * Codes for characters 0 to 127, written most significant bit first.
+     */
+    private static final String[] CODES = new String[]{
+        "1010101011", "1011011011", "1011101101", "1101110111",
+        "1011101011", "1101011111", "1011101111", "1011111101",
+        "1011111111", "11101111",   "11101",      "1101101111",
+        "1011011101", "11111",      "1101110101", "1110101011",
+        "1011110111", "1011110101", "1110101101", "1110101111",
+        "1101011011", "1101101011", "1101101101", "1101010111",
+        "1101111011", "1101111101", "1110110111", "1101010101",
+        "1101011101", "1110111011", "1011111011", "1101111111",
+        "1",          "111111111",  "101011111",  "111110101",
+        "111011011",  "1011010101", "1010111011", "101111111",
+        "11111011",   "11110111",   "101101111",  "111011111",
+        "1110101",    "110101",     "1010111",    "110101111",
+        "10110111",   "10111101",   "11101101",   "11111111",
+        "101110111",  "101011011",  "101101011",  "110101101",
+        "110101011",  "110110111",  "11110101",   "110111101",
+        "111101101",  "1010101",    "111010111",  "1010101111",
+        "1010111101", "1111101",    "11101011",   "10101101",
+        "10110101",   "1110111",    "11011011",   "11111101",
+        "101010101",  "1111111",    "111111101",  "101111101",
+        "11010111",   "10111011",   "11011101",   "10101011",
+        "11010101",   "111011101",  "10101111",   "1101111",
+        "1101101",    "101010111",  "110110101",  "101011101",
+        "101110101",  "101111011",  "1010101101", "111110111",
+        "111101111",  "111111011",  "1010111111", "101101101",
+        "1011011111", "1011",       "1011111",    "101111",
+        "101101",     "11",         "111101",     "1011011",
+        "101011",     "1101",       "111101011",  "10111111",
+        "11011",      "111011",     "1111",       "111",
+        "111111",     "110111111",  "10101",      "10111",
+        "101",        "110111",     "1111011",    "1101011",
+        "11011111",   "1011101",    "111010101",  "1010110111",
+        "110111011",  "1010110101", "1011010111", "1110110101",
+    };
+
+    /**
+     * The longest code, in bits.
+     */
+    public static final int MAX_BITS = 10;
+
+    /**
+     * Code bits by character, least significant bit sent last.
+     */
+    private static final int[] ENCODE = new int[CODES.length];
+
+    /**
+     * Code lengths by character.
+     */
+    private static final int[] LENGTH = new int[CODES.length];
+
+    /**
+     * Characters by code with a leading 1 bit added to mark the length, or -1.
+     */
+    private static final short[] DECODE = new short[2 << MAX_BITS];
+
+    static {
+        java.util.Arrays.fill(DECODE, (short) -1);
+
+        for (int c = 0; c < CODES.length; ++c) {
+            final int bits = Integer.parseInt(CODES[c], 2);
+            ENCODE[c] = bits;
+            LENGTH[c] = CODES[c].length();
+            DECODE[(1 << LENGTH[c]) | bits] = (short) c;
+        }
+    }
+
+    /**
+     * @param c A character. Characters outside of 7 bit ASCII are sent as '?'.
+     *
+     * @return The code bits of c, sent most significant bit first.
+     */
+    public static int bits(final int c) {
+        return ENCODE[c >= 0 && c < ENCODE.length ? c : '?'];
+    }
+
+    /**
+     * @param c A character. Characters outside of 7 bit ASCII are sent as '?'.
+     *
+     * @return The number of bits in the code for c, not counting the two 0 bits that follow it.
+     */
+    public static int length(final int c) {
+        return LENGTH[c >= 0 && c < LENGTH.length ? c : '?'];
+    }
+
+    /**
+     * Turns received bits back into characters.
+     */
+    public static class Decoder {
+
+        /**
+         * The bits of the current code with a leading 1, or 0 while between codes.
+         */
+        private int code;
+
+        /**
+         * True if the previous bit was a 0.
+         */
+        private boolean zero;
+
+        public Decoder() {
+            this.code = 0;
+            this.zero = false;
+        }
+
+        /**
+         * @param bit The next bit received.
+         *
+         * @return The character ended by this bit, or -1.
+         */
+        public int add(final int bit) {
+            if (bit != 0) {
+                if (code == 0) {
+                    code = 1;
+                }
+                else if (zero) {
+                    code = code << 1;
+                }
+
+                code = (code << 1) | 1;
+                zero = false;
+
+                /* Too long to be a character. Wait for the next gap. */
+                if (code >= DECODE.length) {
+                    code = 0;
+                }
+
+                return -1;
+            }
+
+            if (!zero) {
+                zero = true;
+                return -1;
+            }
+
+            /* Two zeros end a character. */
+            final int c = code == 0 ? -1 : DECODE[code];
+            code = 0;
+            return c;
+        }
+
+        /**
+         * @return True if the last bits received were the two zeros that separate characters.
+         */
+        public boolean isBetweenCharacters() {
+            return code == 0 && zero;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Decodes symbols from a {@link ConvolutionalEncoder} with soft decisions.
+ *
+ * Each bit comes out {@link #getDepth()} - 1 symbols after the symbol that carried
+ * it. The trellis is read from tables built in the constructor and decoding
+ * allocates nothing.
+ */
+public class ViterbiDecoder {
+
+    /**
+     * A traceback depth of about five constraint lengths.
+     */
+    public static final int DEFAULT_DEPTH = 5 * ConvolutionalEncoder.CONSTRAINT_LENGTH;
+
+    private static final int STATES = ConvolutionalEncoder.STATES;
+
+    /**
+     * The symbol sent on the branch into each state from its predecessor with a 0 high bit.
+     */
+    private final int[] symbol0;
+
+    /**
+     * The symbol sent on the branch into each state from its predecessor with a 1 high bit.
+     */
+    private final int[] symbol1;
+
+    private int[] metrics;
+
+    private int[] nextMetrics;
+
+    /**
+     * For each step kept, a bit per state telling which predecessor survived.
+     */
+    private final int[] decisions;
+
+    private final int depth;
+
+    /**
+     * Where the next step's decisions are stored in {@link #decisions}.
+     */
+    private int step;
+
+    /**
+     * Steps decoded since the last reset, up to {@link #depth}.
+     */
+    private int filled;
+
+    /**
+     * How much the best path metric grew with the last symbol.
+     */
+    private int lastMetric;
+
+    /**
+     * @param depth The number of symbols to look at before deciding on a bit.
+     */
+    public ViterbiDecoder(final int depth) {
+        this.depth = depth;
+        this.symbol0 = new int[STATES];
+        this.symbol1 = new int[STATES];
+        this.metrics = new int[STATES];
+        this.nextMetrics = new int[STATES];
+        this.decisions = new int[depth];
+
+        for (int s = 0; s < STATES; ++s) {
+            final int bit = s & 1;
+            symbol0[s] = ConvolutionalEncoder.symbol(s >> 1, bit);
+            symbol1[s] = ConvolutionalEncoder.symbol((s >> 1) | (STATES >> 1), bit);
+        }
+
+        reset();
+    }
+
+    public ViterbiDecoder() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * @return The number of symbols looked at before deciding on a bit.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Forget everything received and assume the encoder is in its all zero state.
+     */
+    public void reset() {
+        java.util.Arrays.fill(metrics, Integer.MIN_VALUE / 2);
+        metrics[0] = 0;
+        step = 0;
+        filled = 0;
+        lastMetric = 0;
+    }
+
+    /**
+     * @return How well the last symbol added fits the most likely path, on the
+     *         scale of the branch metrics. Symbols that were not sent with this
+     *         code, or were deinterleaved out of order, fit poorly.
+     */
+    public int getLastMetric() {
+        return lastMetric;
+    }
+
+    /**
+     * @param branch How well the received symbol matches each of the four symbols. Larger is better.
+     *
+     * @return The bit carried {@link #getDepth()} - 1 symbols before this one,
+     *         or -1 until {@link #getDepth()} symbols have been added.
+     */
+    public int add(final int[] branch) {
+        int best = 0;
+        int bestMetric = Integer.MIN_VALUE;
+        int survivors = 0;
+
+        for (int s = 0; s < STATES; ++s) {
+            final int p = s >> 1;
+            final int m0 = metrics[p] + branch[symbol0[s]];
+            final int m1 = metrics[p | (STATES >> 1)] + branch[symbol1[s]];
+
+            final int m;
+            if (m1 > m0) {
+                m = m1;
+                survivors |= 1 << s;
+            }
+            else {
+                m = m0;
+            }
+
+            nextMetrics[s] = m;
+            if (m > bestMetric) {
+                bestMetric = m;
+                best = s;
+            }
+        }
+
+        lastMetric = bestMetric;
+
+        /* Keep metrics from growing without bound. */
+        for (int s = 0; s < STATES; ++s) {
+            nextMetrics[s] -= bestMetric;
+        }
+
+        final int[] t = metrics;
+        metrics = nextMetrics;
+        nextMetrics = t;
+
+        decisions[step] = survivors;
+        step = step + 1 == depth ? 0 : step + 1;
+
+        if (filled < depth) {
+            ++filled;
+            if (filled < depth) {
+                return -1;
+            }
+        }
+
+        /* Trace back from the best state to the oldest step kept. */
+        int s = best;
+        int i = step;
+        for (int n = 1; n < depth; ++n) {
+            i = i == 0 ? depth - 1 : i - 1;
+            s = (s >> 1) | (((decisions[i] >> s) & 1) * (STATES >> 1));
+        }
+
+        return s & 1;
+    }
+}
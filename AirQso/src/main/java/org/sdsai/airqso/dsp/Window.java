@@ -0,0 +1,24 @@
+package org.sdsai.airqso.dsp;
+
+/**
+ * Precomputed window functions.
+ */
+public final class Window {
+
+    private Window() {
+    }
+
+    /**
+     * @param size The number of coefficients.
+     *
+     * @return The coefficients of a Hann window.
+     */
+    public static float[] hann(final int size) {
+        final float[] w = new float[size];
+        for (int i = 0; i < size; ++i) {
+            w[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / (size - 1)));
+        }
+
+        return w;
+    }
+}
@@ -0,0 +1,39 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+
+/**
+ * A running total written by a single thread and read by any.
+ *
+ * This is a volatile field and not an atomic, so adding costs one ordinary
+ * store. Two threads must not add to the same counter.
+ */
+public class Counter implements Metric {
+
+    private volatile long count;
+
+    public Counter() {
+        this.count = 0;
+    }
+
+    /**
+     * Called only by the owning thread.
+     *
+     * @param n The amount to add.
+     */
+    public void add(final long n) {
+        count += n;
+    }
+
+    /**
+     * @return The total.
+     */
+    public long get() {
+        return count;
+    }
+
+    @Override
+    public void read(final String name, final Map<String, Double> values, final int reader) {
+        values.put(name, (double) count);
+    }
+}
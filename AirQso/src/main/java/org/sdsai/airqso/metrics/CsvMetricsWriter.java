@@ -0,0 +1,133 @@
+package org.sdsai.airqso.metrics;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends a snapshot of a {@link MetricRegistry} to a CSV file at a fixed period.
+ *
+ * The first column is the wall clock time in milliseconds. A header line is
+ * written first and again whenever the set of metrics changes, as when a
+ * thread is started. On a device, a file under
+ * {@link android.content.Context#getFilesDir()} needs no permissions.
+ *
+ * The writer reads through a {@link MetricRegistry.Reader} of its own, so
+ * means, maxima and rates cover exactly one period and other readers of the
+ * registry do not disturb them.
+ */
+public class CsvMetricsWriter {
+
+    private final MetricRegistry registry;
+
+    private final File file;
+
+    private final long periodMillis;
+
+    private volatile Thread writer;
+
+    /**
+     * @param registry The metrics to write.
+     * @param file The file to append to.
+     * @param periodMillis How often to write a line.
+     */
+    public CsvMetricsWriter(final MetricRegistry registry, final File file, final long periodMillis) {
+        this.registry = registry;
+        this.file = file;
+        this.periodMillis = periodMillis;
+        this.writer = null;
+    }
+
+    /**
+     * Start a thread that writes a line every period.
+     *
+     * @throws IllegalStateException If the registry has no reader free.
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+
+        final MetricRegistry.Reader reader = registry.newReader();
+
+        writer = new Thread("CsvMetricsWriter") {
+            @Override
+            public void run() {
+                final List<String> columns = new ArrayList<String>();
+
+                try {
+                    while (writer == this) {
+                        write(reader.snapshot(), columns);
+                        Thread.sleep(periodMillis);
+                    }
+                }
+                catch (final IOException e) {
+                    Log.w("CsvMetricsWriter", "Failed to write " + file + ": " + e.getMessage());
+                }
+                catch (final InterruptedException e) {
+                    /* Stopped. */
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    public synchronized void stop() {
+        final Thread t = writer;
+        writer = null;
+
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * @param snapshot The values to write.
+     * @param columns The names in the last header written. Updated if a new header is written.
+     */
+    private void write(final Snapshot snapshot, final List<String> columns) throws IOException {
+        final Map<String, Double> values = snapshot.getValues();
+        final StringBuilder line = new StringBuilder();
+
+        /* Nothing is running yet. */
+        if (values.isEmpty()) {
+            return;
+        }
+
+        if (!columns.equals(new ArrayList<String>(values.keySet()))) {
+            columns.clear();
+            columns.addAll(values.keySet());
+
+            line.append("time_ms");
+            for (final String column : columns) {
+                line.append(',').append(column);
+            }
+            line.append('\n');
+        }
+
+        line.append(snapshot.getMillis());
+        for (final Double value : values.values()) {
+            line.append(',').append(value);
+        }
+        line.append('\n');
+
+        final Writer out = new FileWriter(file, true);
+        try {
+            out.write(line.toString());
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+
+/**
+ * A value computed only when a {@link Snapshot} is taken, so it costs nothing on the path being measured.
+ */
+public abstract class Gauge implements Metric {
+
+    /**
+     * @return The current value. Called on the thread taking the snapshot.
+     */
+    public abstract double get();
+
+    @Override
+    public void read(final String name, final Map<String, Double> values, final int reader) {
+        values.put(name, get());
+    }
+}
@@ -0,0 +1,22 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+
+/**
+ * Something a {@link MetricRegistry} reads when it takes a {@link Snapshot}.
+ */
+public interface Metric {
+
+    /**
+     * Store this metric's current values.
+     *
+     * @param name The name the metric is registered under. Metrics with more
+     *             than one value store them under this name plus a suffix.
+     * @param values Where to store the values.
+     * @param reader Which {@link MetricRegistry.Reader} is taking the snapshot,
+     *               from 0 to {@link MetricRegistry#MAX_READERS} - 1. Metrics
+     *               that report a change since the previous snapshot keep
+     *               what they last reported for each reader apart.
+     */
+    void read(String name, Map<String, Double> values, int reader);
+}
@@ -0,0 +1,148 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named metrics for the modem threads.
+ *
+ * Metrics are updated by the threads that own them without locks or
+ * allocation, and read all at once by {@link #snapshot()}. Registering a
+ * name again replaces the old metric, so a restarted thread takes over the
+ * names its predecessor used.
+ *
+ * Metrics are registered a few at a time when threads start, so each change
+ * copies the map under a lock and a snapshot reads whichever copy is current
+ * without one.
+ *
+ * Some metrics report what changed since the previous snapshot, so each
+ * thread that reads periodically takes its own {@link Reader} and does not
+ * shorten another's interval. {@link #snapshot()} is for the occasional read.
+ */
+public class MetricRegistry {
+
+    /**
+     * How many readers, counting the one behind {@link #snapshot()}, may be open at once.
+     */
+    public static final int MAX_READERS = 4;
+
+    /**
+     * Never changed once published. Replaced while holding the registry's lock.
+     */
+    private volatile TreeMap<String, Metric> metrics;
+
+    /**
+     * Which reader numbers are in use. Number 0 is {@link #snapshot()}'s.
+     */
+    private final boolean[] readers;
+
+    public MetricRegistry() {
+        this.metrics = new TreeMap<String, Metric>();
+        this.readers = new boolean[MAX_READERS];
+        this.readers[0] = true;
+    }
+
+    /**
+     * @param name The name to read the metric under.
+     * @param metric The metric.
+     *
+     * @return metric.
+     */
+    public synchronized <T extends Metric> T register(final String name, final T metric) {
+        final TreeMap<String, Metric> copy = new TreeMap<String, Metric>(metrics);
+        copy.put(name, metric);
+        metrics = copy;
+
+        return metric;
+    }
+
+    /**
+     * @param name The name of a metric to stop reading.
+     */
+    public synchronized void remove(final String name) {
+        if (metrics.containsKey(name)) {
+            final TreeMap<String, Metric> copy = new TreeMap<String, Metric>(metrics);
+            copy.remove(name);
+            metrics = copy;
+        }
+    }
+
+    /**
+     * Take a reader of its own for a thread that snapshots periodically.
+     *
+     * @return A reader. Close it when done so another may use its number.
+     *
+     * @throws IllegalStateException If {@link #MAX_READERS} are already open.
+     */
+    public synchronized Reader newReader() {
+        for (int i = 1; i < MAX_READERS; ++i) {
+            if (!readers[i]) {
+                readers[i] = true;
+                return new Reader(i);
+            }
+        }
+
+        throw new IllegalStateException("All " + MAX_READERS + " metric readers are in use.");
+    }
+
+    /**
+     * @return The current value of every metric. Changes are since the previous call of this method.
+     */
+    public Snapshot snapshot() {
+        return snapshot(0);
+    }
+
+    private Snapshot snapshot(final int reader) {
+        final TreeMap<String, Double> values = new TreeMap<String, Double>();
+
+        for (final Map.Entry<String, Metric> e : metrics.entrySet()) {
+            e.getValue().read(e.getKey(), values, reader);
+        }
+
+        return new Snapshot(System.nanoTime(), System.currentTimeMillis(), values);
+    }
+
+    private synchronized void release(final int reader) {
+        readers[reader] = false;
+    }
+
+    /**
+     * Snapshots whose changes are since this reader's previous snapshot, whoever else reads.
+     *
+     * A reader's first snapshot may report changes since the previous reader of the same number.
+     */
+    public class Reader {
+
+        private final int reader;
+
+        private volatile boolean closed;
+
+        private Reader(final int reader) {
+            this.reader = reader;
+            this.closed = false;
+        }
+
+        /**
+         * @return The current value of every metric.
+         *
+         * @throws IllegalStateException If this reader is closed.
+         */
+        public Snapshot snapshot() {
+            if (closed) {
+                throw new IllegalStateException("Metric reader " + reader + " is closed.");
+            }
+
+            return MetricRegistry.this.snapshot(reader);
+        }
+
+        /**
+         * Give up this reader's number.
+         */
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(reader);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+
+/**
+ * How fast a {@link Counter} grew per second since the reader's previous snapshot.
+ */
+public class Rate implements Metric {
+
+    private final Counter counter;
+
+    /**
+     * The count and time at each reader's previous snapshot. Only used by the snapshot threads.
+     */
+    private final long[] lastCount;
+    private final long[] lastNanos;
+
+    /**
+     * @param counter The counter to follow.
+     */
+    public Rate(final Counter counter) {
+        this.counter = counter;
+        this.lastCount = new long[MetricRegistry.MAX_READERS];
+        this.lastNanos = new long[MetricRegistry.MAX_READERS];
+
+        final long count = counter.get();
+        final long nanos = System.nanoTime();
+        for (int i = 0; i < MetricRegistry.MAX_READERS; ++i) {
+            lastCount[i] = count;
+            lastNanos[i] = nanos;
+        }
+    }
+
+    @Override
+    public synchronized void read(final String name, final Map<String, Double> values, final int reader) {
+        final long count = counter.get();
+        final long nanos = System.nanoTime();
+
+        values.put(name, nanos > lastNanos[reader] ? (count - lastCount[reader]) * 1e9 / (nanos - lastNanos[reader]) : 0);
+
+        lastCount[reader] = count;
+        lastNanos[reader] = nanos;
+    }
+}
@@ -0,0 +1,66 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * The values of every metric in a {@link MetricRegistry} at one moment.
+ */
+public class Snapshot {
+
+    private final long nanos;
+
+    private final long millis;
+
+    private final SortedMap<String, Double> values;
+
+    Snapshot(final long nanos, final long millis, final SortedMap<String, Double> values) {
+        this.nanos = nanos;
+        this.millis = millis;
+        this.values = Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * @return When this was taken, by {@link System#nanoTime()}.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return When this was taken, by {@link System#currentTimeMillis()}.
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return Every value by name, in name order.
+     */
+    public SortedMap<String, Double> getValues() {
+        return values;
+    }
+
+    /**
+     * @param name A value's name.
+     *
+     * @return The value or NaN if there is none by that name.
+     */
+    public double get(final String name) {
+        final Double v = values.get(name);
+
+        return v == null ? Double.NaN : v;
+    }
+
+    /**
+     * @param previous An earlier snapshot.
+     * @param name The name of a count, such as a {@link Counter}.
+     *
+     * @return How fast the count grew per second between previous and this, or NaN if it cannot be told.
+     */
+    public double rate(final Snapshot previous, final String name) {
+        final double seconds = (nanos - previous.nanos) / 1e9;
+
+        return seconds > 0 ? (get(name) - previous.get(name)) / seconds : Double.NaN;
+    }
+}
@@ -0,0 +1,84 @@
+package org.sdsai.airqso.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations of repeated work, such as processing one buffer, written by a single thread and read by any.
+ *
+ * A snapshot reads {@code name.count}, {@code name.mean_us} and {@code name.max_us}.
+ * The mean and maximum cover the time since the same reader's previous
+ * snapshot, so they show how the work is going now rather than since it
+ * started, and a second reader does not shorten the first one's interval.
+ * The fields are read without a lock and may disagree by one duration.
+ */
+public class Timer implements Metric {
+
+    private volatile long count;
+
+    private volatile long totalNanos;
+
+    /**
+     * The longest duration since each reader's previous snapshot.
+     */
+    private final AtomicLongArray maxNanos;
+
+    /**
+     * {@link #count} and {@link #totalNanos} at each reader's previous snapshot. Only used by the snapshot threads.
+     */
+    private final long[] lastCount;
+    private final long[] lastTotalNanos;
+
+    public Timer() {
+        this.count = 0;
+        this.totalNanos = 0;
+        this.maxNanos = new AtomicLongArray(MetricRegistry.MAX_READERS);
+        this.lastCount = new long[MetricRegistry.MAX_READERS];
+        this.lastTotalNanos = new long[MetricRegistry.MAX_READERS];
+    }
+
+    /**
+     * Called only by the owning thread.
+     *
+     * @param nanos How long the work took.
+     */
+    public void record(final long nanos) {
+        count++;
+        totalNanos += nanos;
+        for (int i = 0; i < MetricRegistry.MAX_READERS; ++i) {
+            if (nanos > maxNanos.get(i)) {
+                maxNanos.set(i, nanos);
+            }
+        }
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of all durations recorded, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public synchronized void read(final String name, final Map<String, Double> values, final int reader) {
+        final long c = count;
+        final long t = totalNanos;
+        final long n = c - lastCount[reader];
+
+        values.put(name + ".count", (double) c);
+        values.put(name + ".mean_us", n > 0 ? (t - lastTotalNanos[reader]) / 1000.0 / n : 0);
+        values.put(name + ".max_us", maxNanos.get(reader) / 1000.0);
+
+        /* Racing the owner here only loses a maximum, never a count. */
+        maxNanos.set(reader, 0);
+        lastCount[reader] = c;
+        lastTotalNanos[reader] = t;
+    }
+}
@@ -6,56 +6,144 @@ import android.widget.EditText;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InterruptedIOException;
 
 /**
+ * Turns edits to an {@link EditText} into a stream of characters to transmit.
+ *
+ * Edits are queued on a {@link TextQueue} so the UI thread never blocks, no matter how
+ * much text is pasted at once. Deleting or replacing text retracts it if it has
+ * not been read yet and otherwise queues backspaces.
  */
 public class EditTextInputStream
-    extends PipedInputStream
+    extends InputStream
     implements TextWatcher
 {
-    private PipedOutputStream pipedOutputStream;
+    /**
+     * The most characters waiting to be transmitted.
+     */
+    private static final int CAPACITY = 64 * 1024;
+
+    private final EditText editText;
+
+    private final TextQueue textQueue;
+
+    /**
+     * The text from the start of the current edit to the end, captured before the edit.
+     */
+    private String oldTail;
+
+    /**
+     * True while this object is changing the text itself.
+     */
+    private boolean ignoreChanges;
 
     public EditTextInputStream(final EditText editText)
     {
+        this(editText, new TextQueue(CAPACITY));
+    }
+
+    /**
+     * @param editText The text to watch.
+     * @param textQueue The queue to deliver edits on, which may outlive the view.
+     */
+    public EditTextInputStream(final EditText editText, final TextQueue textQueue)
+    {
+        this.editText = editText;
+        this.textQueue = textQueue;
+        this.oldTail = "";
+        this.ignoreChanges = false;
+
+        editText.addTextChangedListener(this);
+    }
+
+    /**
+     * @return The queue the edits are delivered on.
+     */
+    public TextQueue getTextQueue() {
+        return textQueue;
+    }
+
+    /**
+     * Clear the {@link EditText} without erasing anything already queued or sent.
+     */
+    public void clearText() {
+        ignoreChanges = true;
         try {
-            pipedOutputStream = new PipedOutputStream(this);
-            editText.addTextChangedListener(this);
+            editText.setText("");
         }
-        catch (final IOException e) {
-            throw new RuntimeException(e.getMessage(), e);
+        finally {
+            ignoreChanges = false;
         }
     }
 
     @Override
-    public void onTextChanged(
+    public int read() throws IOException {
+        try {
+            final char c = textQueue.take();
+            return c < 256 ? c : '?';
+        }
+        catch (final InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        b[off] = (byte) read();
+
+        return 1 + textQueue.drainTo(b, off + 1, len - 1);
+    }
+
+    @Override
+    public int available() {
+        return textQueue.size();
+    }
+
+    @Override
+    public void beforeTextChanged(
             final CharSequence charSequence,
             final int start,
-            final int before,
-            final int count
+            final int count,
+            final int after
     )
     {
-        if (count > 0) {
-            try {
-                pipedOutputStream.write(
-                        charSequence.subSequence(start, start + count).toString().getBytes());
-            }
-            catch (final IOException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
+        if (!ignoreChanges) {
+            oldTail = charSequence.subSequence(start, charSequence.length()).toString();
         }
     }
 
     @Override
-    public void beforeTextChanged(
+    public void onTextChanged(
             final CharSequence charSequence,
             final int start,
-            final int count,
-            final int after
+            final int before,
+            final int count
     )
     {
+        if (ignoreChanges) {
+            return;
+        }
+
+        /* Everything after the edit point has to be erased and sent again, except
+         * for whatever the edit left as it was. For plain typing at the end of the
+         * text that is nothing, and for a deletion at the end it is a backspace. */
+        final int end = charSequence.length();
+
+        int same = 0;
+        while (same < oldTail.length() && start + same < end
+            && oldTail.charAt(same) == charSequence.charAt(start + same))
+        {
+            ++same;
+        }
 
+        textQueue.backspace(oldTail.length() - same);
+        textQueue.offer(charSequence, start + same, end);
+        oldTail = "";
     }
 
     @Override
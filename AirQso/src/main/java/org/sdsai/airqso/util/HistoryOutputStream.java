@@ -0,0 +1,152 @@
+package org.sdsai.airqso.util;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Keeps the most recent text written to it and passes writes on to an output
+ * that may come and go.
+ *
+ * A receiver can write here for as long as it runs while a screen attaches to
+ * read it, goes away, and attaches again. Each output attached is first given
+ * the text kept so far, so nothing received while no output was attached is lost.
+ *
+ * Text is kept as written, backspaces included, and erased by the output that shows it.
+ */
+public class HistoryOutputStream extends OutputStream {
+
+    /**
+     * The kept text, oldest first, in a ring of {@link #count} bytes ending before {@link #end}. Guarded by this.
+     */
+    private final byte[] history;
+
+    private int end;
+
+    private int count;
+
+    /**
+     * Where writes are passed on to, or null. Guarded by this.
+     */
+    private OutputStream out;
+
+    /**
+     * @param capacity The most characters to keep.
+     */
+    public HistoryOutputStream(final int capacity) {
+        this.history = new byte[capacity];
+        this.end = 0;
+        this.count = 0;
+        this.out = null;
+    }
+
+    /**
+     * Write the kept text to an output and pass on everything written after it.
+     * Any output already attached is detached.
+     *
+     * @param out The output.
+     */
+    public synchronized void attach(final OutputStream out) {
+        this.out = out;
+
+        final int start = end - count;
+        if (start >= 0) {
+            pass(history, start, count);
+        }
+        else {
+            pass(history, start + history.length, -start);
+            pass(history, 0, end);
+        }
+    }
+
+    /**
+     * Stop passing writes on. Text is still kept.
+     */
+    public synchronized void detach() {
+        out = null;
+    }
+
+    /**
+     * Forget the kept text.
+     */
+    public synchronized void clear() {
+        end = 0;
+        count = 0;
+    }
+
+    /**
+     * @return The number of characters kept.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void write(final int b) {
+        history[end] = (byte) b;
+        end = (end + 1) % history.length;
+        count = Math.min(count + 1, history.length);
+
+        if (out != null) {
+            try {
+                out.write(b);
+            }
+            catch (final IOException e) {
+                detachOnError(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) {
+        /* Only the last capacity bytes can be kept. */
+        final int keep = Math.min(len, history.length);
+        int from = off + len - keep;
+        int remaining = keep;
+        while (remaining > 0) {
+            final int n = Math.min(remaining, history.length - end);
+            System.arraycopy(b, from, history, end, n);
+            end = (end + n) % history.length;
+            from += n;
+            remaining -= n;
+        }
+        count = Math.min(count + keep, history.length);
+
+        pass(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            }
+            catch (final IOException e) {
+                detachOnError(e);
+            }
+        }
+    }
+
+    /**
+     * Write to the attached output, if any. Called while holding this object's lock.
+     */
+    private void pass(final byte[] b, final int off, final int len) {
+        if (out != null && len > 0) {
+            try {
+                out.write(b, off, len);
+            }
+            catch (final IOException e) {
+                detachOnError(e);
+            }
+        }
+    }
+
+    /**
+     * A broken output must not stop the writer, which is usually a receiver. Called while holding this object's lock.
+     */
+    private void detachOnError(final IOException e) {
+        Log.e("HistoryOutputStream", "Output failed. Detaching it.", e);
+        out = null;
+    }
+}
@@ -0,0 +1,249 @@
+package org.sdsai.airqso.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring of {@code short} samples for exactly one writing
+ * thread and exactly one reading thread.
+ *
+ * The writer never blocks. Samples that do not fit are dropped and counted
+ * as overruns. The reader may block until samples arrive. Each time it finds
+ * the ring empty, an underrun is counted.
+ */
+public class ShortRingBuffer {
+
+    private final short[] buffer;
+
+    private final int mask;
+
+    /**
+     * Total samples ever read. Only the reader advances this.
+     */
+    private final AtomicLong head;
+
+    /**
+     * Total samples ever written. Only the writer advances this.
+     */
+    private final AtomicLong tail;
+
+    /**
+     * Samples dropped because the ring was full.
+     */
+    private final AtomicLong overruns;
+
+    /**
+     * Times the reader found the ring empty.
+     */
+    private final AtomicLong underruns;
+
+    /**
+     * The reader, if it is parked waiting for samples.
+     */
+    private volatile Thread waiter;
+
+    private volatile boolean closed;
+
+    /**
+     * @param capacity The minimum number of samples held. This is rounded up to a power of two.
+     */
+    public ShortRingBuffer(final int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        this.buffer = new short[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong(0);
+        this.tail = new AtomicLong(0);
+        this.overruns = new AtomicLong(0);
+        this.underruns = new AtomicLong(0);
+        this.waiter = null;
+        this.closed = false;
+    }
+
+    /**
+     * Write as many samples as fit without blocking. Called only by the writing thread.
+     *
+     * @param b The samples.
+     * @param off The offset into b.
+     * @param len The number of samples offered.
+     *
+     * @return The number of samples written. The rest are counted as overruns.
+     */
+    public int write(final short[] b, final int off, final int len) {
+        final long t = tail.get();
+        final int free = buffer.length - (int) (t - head.get());
+        final int n = Math.min(len, free);
+
+        if (n > 0) {
+            final int index = (int) (t & mask);
+            final int first = Math.min(n, buffer.length - index);
+            System.arraycopy(b, off, buffer, index, first);
+            System.arraycopy(b, off + first, buffer, 0, n - first);
+            /*
+             * A full volatile store. The reader stores waiter and then reads
+             * tail; the writer stores tail and then reads waiter. Without the
+             * store-load fence each can miss the other's store and the reader
+             * parks with samples in the ring.
+             */
+            tail.set(t + n);
+        }
+
+        if (n < len) {
+            overruns.addAndGet(len - n);
+        }
+
+        final Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+
+        return n;
+    }
+
+    /**
+     * Read whatever samples are available without blocking. Called only by the reading thread.
+     *
+     * @param b The buffer to fill.
+     * @param off The offset into b.
+     * @param len The most samples to read.
+     *
+     * @return The number of samples read, 0 if none are available or -1 if the ring is closed and empty.
+     */
+    public int poll(final short[] b, final int off, final int len) {
+        final long h = head.get();
+        final int available = (int) (tail.get() - h);
+
+        if (available == 0) {
+            return closed && tail.get() == h ? -1 : 0;
+        }
+
+        final int n = Math.min(len, available);
+        final int index = (int) (h & mask);
+        final int first = Math.min(n, buffer.length - index);
+        System.arraycopy(buffer, index, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        head.set(h + n);
+
+        return n;
+    }
+
+    /**
+     * Read at least one sample, waiting up to the timeout for one to arrive.
+     * Called only by the reading thread.
+     *
+     * @param b The buffer to fill.
+     * @param off The offset into b.
+     * @param len The most samples to read.
+     * @param timeout How long to wait.
+     * @param unit The unit of timeout.
+     *
+     * @return The number of samples read, 0 on timeout or -1 if the ring is closed and empty.
+     * @throws InterruptedException If the reading thread is interrupted while waiting.
+     */
+    public int poll(final short[] b, final int off, final int len, final long timeout, final TimeUnit unit)
+        throws InterruptedException
+    {
+        int n = poll(b, off, len);
+        if (n != 0) {
+            return n;
+        }
+
+        underruns.incrementAndGet();
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            for (;;) {
+                n = poll(b, off, len);
+                if (n != 0) {
+                    return n;
+                }
+
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+
+                LockSupport.parkNanos(remaining);
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Read at least one sample, waiting as long as it takes for one to arrive.
+     * Called only by the reading thread.
+     *
+     * @param b The buffer to fill.
+     * @param off The offset into b.
+     * @param len The most samples to read.
+     *
+     * @return The number of samples read or -1 if the ring is closed and empty.
+     * @throws InterruptedException If the reading thread is interrupted while waiting.
+     */
+    public int take(final short[] b, final int off, final int len) throws InterruptedException {
+        int n;
+        do {
+            n = poll(b, off, len, Long.MAX_VALUE / 2, TimeUnit.NANOSECONDS);
+        } while (n == 0);
+
+        return n;
+    }
+
+    /**
+     * Mark the ring as closed and wake the reader. Samples already written may still be read.
+     */
+    public void close() {
+        closed = true;
+
+        final Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * @return True if {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return The number of samples that may be read right now.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return The most samples this ring holds.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return The total number of samples dropped because the ring was full.
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * @return The total number of times the reader found the ring empty.
+     */
+    public long getUnderruns() {
+        return underruns.get();
+    }
+}
@@ -0,0 +1,360 @@
+package org.sdsai.airqso.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue of characters handed from one producing thread,
+ * typically the UI thread, to one consuming thread, typically the transmitter.
+ *
+ * The producer never blocks. Besides appending, it may {@link #retract()} the
+ * most recently offered character if the consumer has not taken it yet, which
+ * is how edits to unsent text are handled. {@link #backspace(int)} builds on
+ * this and falls back to queueing a backspace character for text already sent.
+ *
+ * The read and write positions are packed into a single {@link AtomicLong} so
+ * that a take and a retract of the same character can never both succeed.
+ */
+public class TextQueue {
+
+    /**
+     * The character queued to erase text that has already been taken.
+     */
+    public static final char BACKSPACE = '\b';
+
+    private final char[] buffer;
+
+    private final int mask;
+
+    /**
+     * The high 32 bits count characters taken, the low 32 bits count characters offered.
+     */
+    private final AtomicLong state;
+
+    /**
+     * The consumer, if it is parked waiting for text.
+     */
+    private volatile Thread waiter;
+
+    /* Counters written only by the producer. */
+    private volatile long offered;
+    private volatile long dropped;
+    private volatile long retracted;
+    private volatile long backspaces;
+    private volatile int maxDepth;
+    private volatile long pendingSince;
+
+    /* Counters written only by the consumer. */
+    private volatile long taken;
+
+    /**
+     * @param capacity The minimum number of characters held. This is rounded up to a power of two.
+     */
+    public TextQueue(final int capacity) {
+        int size = 2;
+        while (size <= capacity) {
+            size <<= 1;
+        }
+
+        this.buffer = new char[size];
+        this.mask = size - 1;
+        this.state = new AtomicLong(0);
+        this.waiter = null;
+    }
+
+    private static int head(final long s) {
+        return (int) (s >>> 32);
+    }
+
+    private static int tail(final long s) {
+        return (int) s;
+    }
+
+    private static long pack(final int head, final int tail) {
+        return ((long) head << 32) | (tail & 0xffffffffL);
+    }
+
+    /**
+     * Append a character. Called only by the producing thread.
+     *
+     * @param c The character.
+     *
+     * @return False if the queue was full and the character was dropped.
+     */
+    public boolean offer(final char c) {
+        for (;;) {
+            final long s = state.get();
+            final int head = head(s);
+            final int tail = tail(s);
+            final int depth = tail - head;
+
+            /* One slot is kept free so the consumer may copy out the slot it claimed. */
+            if (depth >= buffer.length - 1) {
+                dropped++;
+                return false;
+            }
+
+            buffer[tail & mask] = c;
+
+            /* Stamped first, so a consumer that takes the character also sees when it was offered. */
+            if (depth == 0) {
+                pendingSince = System.nanoTime();
+            }
+
+            if (state.compareAndSet(s, pack(head, tail + 1))) {
+                offered++;
+                if (depth + 1 > maxDepth) {
+                    maxDepth = depth + 1;
+                }
+                wake();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Append characters. Called only by the producing thread.
+     *
+     * @param s The characters.
+     * @param start The index of the first character in s to append.
+     * @param end One past the index of the last character in s to append.
+     *
+     * @return The number of characters appended before the queue filled.
+     */
+    public int offer(final CharSequence s, final int start, final int end) {
+        for (int i = start; i < end; ++i) {
+            if (!offer(s.charAt(i))) {
+                return i - start;
+            }
+        }
+
+        return end - start;
+    }
+
+    /**
+     * Remove the most recently offered character if it has not been taken. Called only by the producing thread.
+     *
+     * @return True if a character was removed.
+     */
+    public boolean retract() {
+        return retract(false);
+    }
+
+    /**
+     * @param keepBackspace If true, a {@link #BACKSPACE} at the end of the queue is not removed.
+     *
+     * @return True if a character was removed.
+     */
+    private boolean retract(final boolean keepBackspace) {
+        for (;;) {
+            final long s = state.get();
+            final int head = head(s);
+            final int tail = tail(s);
+
+            if (tail == head) {
+                return false;
+            }
+
+            /* Only the producer writes the slots, so it may look at the last one it wrote. */
+            if (keepBackspace && buffer[(tail - 1) & mask] == BACKSPACE) {
+                return false;
+            }
+
+            if (state.compareAndSet(s, pack(head, tail - 1))) {
+                retracted++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Erase the last n characters offered. Characters not yet taken are retracted,
+     * the rest are erased by queueing {@link #BACKSPACE}. Called only by the producing thread.
+     *
+     * @param n The number of characters to erase.
+     */
+    public void backspace(final int n) {
+        for (int i = 0; i < n; ++i) {
+            /* Retracting a queued backspace would restore text instead of erasing more. */
+            if (!retract(true)) {
+                if (offer(BACKSPACE)) {
+                    backspaces++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the next character without waiting. Called only by the consuming thread.
+     *
+     * @return The character or -1 if the queue is empty.
+     */
+    public int poll() {
+        for (;;) {
+            final long s = state.get();
+            final int head = head(s);
+            final int tail = tail(s);
+
+            if (tail == head) {
+                return -1;
+            }
+
+            /* Claim the slot first so a concurrent retract cannot also have it. */
+            if (state.compareAndSet(s, pack(head + 1, tail))) {
+                taken++;
+                return buffer[head & mask];
+            }
+        }
+    }
+
+    /**
+     * Take the next character, waiting up to the given timeout. Called only by the consuming thread.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of timeout.
+     *
+     * @return The character or -1 on timeout.
+     * @throws InterruptedException If the consuming thread is interrupted while waiting.
+     */
+    public int poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        int c = poll();
+        if (c != -1) {
+            return c;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            for (;;) {
+                c = poll();
+                if (c != -1) {
+                    return c;
+                }
+
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return -1;
+                }
+
+                LockSupport.parkNanos(remaining);
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        finally {
+            waiter = null;
+        }
+    }
+
+    /**
+     * Take the next character, waiting as long as it takes. Called only by the consuming thread.
+     *
+     * @return The character.
+     * @throws InterruptedException If the consuming thread is interrupted while waiting.
+     */
+    public char take() throws InterruptedException {
+        int c;
+        do {
+            c = poll(Long.MAX_VALUE / 2, TimeUnit.NANOSECONDS);
+        } while (c == -1);
+
+        return (char) c;
+    }
+
+    /**
+     * Take up to len characters without waiting, converting them to single bytes.
+     * Characters outside of ISO-8859-1 become '?'. Called only by the consuming thread.
+     *
+     * @param b The buffer to fill.
+     * @param off The offset into b.
+     * @param len The most characters to take.
+     *
+     * @return The number of bytes stored in b.
+     */
+    public int drainTo(final byte[] b, final int off, final int len) {
+        int n = 0;
+        while (n < len) {
+            final int c = poll();
+            if (c == -1) {
+                break;
+            }
+            b[off + n++] = (byte) (c < 256 ? c : '?');
+        }
+
+        return n;
+    }
+
+    private void wake() {
+        final Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * @return The number of characters waiting to be taken.
+     */
+    public int size() {
+        final long s = state.get();
+        return tail(s) - head(s);
+    }
+
+    /**
+     * @return The most characters this queue holds.
+     */
+    public int capacity() {
+        return buffer.length - 1;
+    }
+
+    /**
+     * @return The deepest the queue has been.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} at which the queue last went from empty to holding a character.
+     */
+    public long getPendingSince() {
+        return pendingSince;
+    }
+
+    /**
+     * @return The total number of characters accepted by {@link #offer(char)}, including backspaces.
+     */
+    public long getOffered() {
+        return offered;
+    }
+
+    /**
+     * @return The total number of characters taken by the consumer.
+     */
+    public long getTaken() {
+        return taken;
+    }
+
+    /**
+     * @return The total number of characters dropped because the queue was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return The total number of characters removed by {@link #retract()} before being taken.
+     */
+    public long getRetracted() {
+        return retracted;
+    }
+
+    /**
+     * @return The total number of {@link #BACKSPACE} characters queued by {@link #backspace(int)}.
+     */
+    public long getBackspaces() {
+        return backspaces;
+    }
+}
@@ -0,0 +1,224 @@
+package org.sdsai.airqso.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.widget.TextView;
+
+import java.io.OutputStream;
+
+/**
+ * Appends text written from any thread to a {@link TextView}.
+ *
+ * Writes are gathered and handed to the UI thread at most once per display
+ * frame, or sooner once enough characters are waiting, so a receiver writing
+ * one character at a time does not post one message per character. The view
+ * keeps only the most recent lines so that hours of monitoring do not slow
+ * layout down.
+ *
+ * Bytes are taken as ISO-8859-1 characters. A backspace erases the last character shown.
+ */
+public class TextViewOutputStream extends OutputStream {
+
+    /**
+     * About one display frame.
+     */
+    private static final long FRAME_MILLIS = 16;
+
+    private final TextView textView;
+
+    private final Handler handler;
+
+    /**
+     * Characters waiting that cause an immediate flush.
+     */
+    private final int flushChars;
+
+    /**
+     * The most lines kept in the view.
+     */
+    private final int maxLines;
+
+    /**
+     * The most characters kept in the view, for text with few line breaks.
+     */
+    private final int maxChars;
+
+    /**
+     * Text not yet shown. Guarded by this.
+     */
+    private final StringBuilder pending;
+
+    /**
+     * Text being shown by the UI thread. Only used on the UI thread.
+     */
+    private final StringBuilder showing;
+
+    /**
+     * True while a flush is posted. Guarded by this.
+     */
+    private boolean scheduled;
+
+    /**
+     * True while a flush is posted to run right away. Guarded by this.
+     */
+    private boolean urgent;
+
+    /**
+     * Line breaks in the view. Only used on the UI thread.
+     */
+    private int lines;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (TextViewOutputStream.this) {
+                showing.setLength(0);
+                showing.append(pending);
+                pending.setLength(0);
+                scheduled = false;
+                urgent = false;
+            }
+
+            show(showing);
+        }
+    };
+
+    /**
+     * @param textView The view to append to. Its text is replaced with an editable buffer.
+     * @param flushChars Flush without waiting for the next frame once this many characters are waiting.
+     * @param maxLines The most lines to keep in the view.
+     * @param maxChars The most characters to keep in the view.
+     */
+    public TextViewOutputStream(
+        final TextView textView,
+        final int flushChars,
+        final int maxLines,
+        final int maxChars
+    )
+    {
+        this.textView = textView;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.flushChars = flushChars;
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        this.pending = new StringBuilder();
+        this.showing = new StringBuilder();
+        this.scheduled = false;
+        this.urgent = false;
+        this.lines = 0;
+
+        textView.setText("", TextView.BufferType.EDITABLE);
+    }
+
+    @Override
+    public void write(final int b) {
+        synchronized (this) {
+            pending.append((char) (b & 0xff));
+            schedule();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        synchronized (this) {
+            for (int i = off; i < off + len; ++i) {
+                pending.append((char) (b[i] & 0xff));
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Erase the view and anything waiting to be shown. Call this on the UI thread.
+     */
+    public void clear() {
+        synchronized (this) {
+            pending.setLength(0);
+        }
+
+        textView.getEditableText().clear();
+        lines = 0;
+    }
+
+    /**
+     * Post a flush if one is not already coming soon enough. Call this while holding this object's lock.
+     */
+    private void schedule() {
+        /* If the UI thread is stalled, drop the oldest text rather than grow without bound. */
+        if (pending.length() > maxChars) {
+            pending.delete(0, pending.length() - maxChars);
+        }
+
+        if (!scheduled) {
+            scheduled = true;
+            handler.postDelayed(flush, FRAME_MILLIS);
+        }
+        else if (!urgent && pending.length() >= flushChars) {
+            urgent = true;
+            handler.removeCallbacks(flush);
+            handler.post(flush);
+        }
+    }
+
+    /**
+     * Append text to the view and trim old lines. Called on the UI thread.
+     */
+    private void show(final CharSequence text) {
+        final Editable editable = textView.getEditableText();
+
+        int start = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (c == '\n') {
+                ++lines;
+            }
+            else if (c == TextQueue.BACKSPACE) {
+                editable.append(text, start, i);
+                start = i + 1;
+
+                final int length = editable.length();
+                if (length > 0) {
+                    if (editable.charAt(length - 1) == '\n') {
+                        --lines;
+                    }
+                    editable.delete(length - 1, length);
+                }
+            }
+        }
+        editable.append(text, start, text.length());
+
+        trim(editable);
+    }
+
+    /**
+     * Remove the oldest text beyond {@link #maxLines} and {@link #maxChars}.
+     */
+    private void trim(final Editable editable) {
+        int end = 0;
+
+        if (lines > maxLines) {
+            int remove = lines - maxLines;
+            while (remove > 0 && end < editable.length()) {
+                if (editable.charAt(end++) == '\n') {
+                    --remove;
+                    --lines;
+                }
+            }
+        }
+
+        if (editable.length() - end > maxChars) {
+            final int newEnd = editable.length() - maxChars;
+            for (int i = end; i < newEnd; ++i) {
+                if (editable.charAt(i) == '\n') {
+                    --lines;
+                }
+            }
+            end = newEnd;
+        }
+
+        if (end > 0) {
+            editable.delete(0, end);
+        }
+    }
+}
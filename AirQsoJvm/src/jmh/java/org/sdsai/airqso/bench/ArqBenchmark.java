@@ -0,0 +1,90 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.arq.ArqSimulator;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * ARQ goodput: message bytes delivered per simulated second over
+ * {@link ArqSimulator}'s link, as characters are lost at each rate.
+ *
+ * Each operation sends a message once per link seed. The score is how fast
+ * that simulates; goodput and retransmissions are the same every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ArqBenchmark {
+
+    /**
+     * About PSK31's speed with the characters frames are written in.
+     */
+    private static final double CHARS_PER_SECOND = 4;
+
+    private static final int MESSAGE_LENGTH = 1000;
+
+    private static final double MAX_SECONDS = 24 * 60 * 60;
+
+    /**
+     * Links tried at each loss rate, averaged over.
+     */
+    private static final int SEEDS = 8;
+
+    @Param({"0", "0.002", "0.005", "0.01", "0.02", "0.05"})
+    public double dropRate;
+
+    private byte[] message;
+
+    /**
+     * Reported beside the score, as the mean over {@link #SEEDS} transfers.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Goodput {
+
+        /**
+         * Message bytes delivered per simulated second, 0 for a transfer that gave up.
+         */
+        public double bytesPerSecond;
+
+        /**
+         * Frames sent again per transfer.
+         */
+        public double retransmissions;
+    }
+
+    @Setup
+    public void setup() {
+        message = new byte[MESSAGE_LENGTH];
+        new Random(1).nextBytes(message);
+    }
+
+    @Benchmark
+    public void transfer(final Goodput goodput) {
+        double bytesPerSecond = 0;
+        double retransmissions = 0;
+
+        for (long seed = 1; seed <= SEEDS; ++seed) {
+            final ArqSimulator.Result result = new ArqSimulator(CHARS_PER_SECOND, dropRate, 0, seed).transfer(message, MAX_SECONDS);
+
+            bytesPerSecond += result.getGoodput(MESSAGE_LENGTH);
+            retransmissions += result.retransmissions;
+        }
+
+        goodput.bytesPerSecond = bytesPerSecond / SEEDS;
+        goodput.retransmissions = retransmissions / SEEDS;
+    }
+}
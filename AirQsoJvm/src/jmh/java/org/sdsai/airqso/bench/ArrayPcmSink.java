@@ -0,0 +1,80 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.PcmSink;
+
+import java.util.Arrays;
+
+/**
+ * Keeps everything written to it, or only counts it.
+ */
+class ArrayPcmSink implements PcmSink {
+
+    private final int sampleRate;
+
+    private final boolean keep;
+
+    private short[] samples;
+
+    private long count;
+
+    /**
+     * A sink that keeps what is written.
+     */
+    ArrayPcmSink(final int sampleRate) {
+        this(sampleRate, true);
+    }
+
+    /**
+     * @param keep If false, only count what is written.
+     */
+    ArrayPcmSink(final int sampleRate, final boolean keep) {
+        this.sampleRate = sampleRate;
+        this.keep = keep;
+        this.samples = new short[keep ? sampleRate : 0];
+        this.count = 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void write(final short[] buffer, final int off, final int len) {
+        if (keep) {
+            if (count + len > samples.length) {
+                samples = Arrays.copyOf(samples, (int) Math.max(samples.length * 2, count + len));
+            }
+
+            System.arraycopy(buffer, off, samples, (int) count, len);
+        }
+
+        count += len;
+    }
+
+    /**
+     * @return The number of samples written.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The samples kept.
+     */
+    short[] toArray() {
+        return Arrays.copyOf(samples, (int) count);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+    }
+}
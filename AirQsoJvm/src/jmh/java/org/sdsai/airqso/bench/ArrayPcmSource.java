@@ -0,0 +1,58 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.PcmSource;
+
+/**
+ * Plays samples held in memory, then ends, until it is rewound.
+ */
+class ArrayPcmSource implements PcmSource {
+
+    private final short[] samples;
+
+    private final int sampleRate;
+
+    private int position;
+
+    ArrayPcmSource(final short[] samples, final int sampleRate) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.position = 0;
+    }
+
+    /**
+     * Start again from the first sample.
+     */
+    void rewind() {
+        position = 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(final short[] b, final int off, final int len) {
+        if (position == samples.length) {
+            return -1;
+        }
+
+        final int n = Math.min(len, samples.length - position);
+        System.arraycopy(samples, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+    }
+}
@@ -0,0 +1,146 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.ModemOutputStream;
+import org.sdsai.airqso.compress.DictionaryCodec;
+import org.sdsai.airqso.compress.TextCodec;
+import org.sdsai.airqso.dsp.Varicode;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Varicode bits sent per character of typical QSO text, in qso.txt, with and
+ * without {@link DictionaryCodec}, and how long compressing and decompressing take.
+ *
+ * Bits are varicode bits with the two 0 bits after each character, before any
+ * forward error correction the mode adds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CodecBenchmark {
+
+    @Param({"none", "dictionary"})
+    public String codec;
+
+    private TextCodec c;
+
+    private byte[] text;
+
+    /**
+     * text as it is sent.
+     */
+    private byte[] air;
+
+    /**
+     * Reported beside the score. The same every iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bits {
+
+        /**
+         * Bits sent per character of text.
+         */
+        public double bitsPerCharacter;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        c = "dictionary".equals(codec) ? new DictionaryCodec() : null;
+        text = corpus();
+
+        final Air sent = new Air();
+        compress(sent);
+        air = sent.characters.toByteArray();
+    }
+
+    @Benchmark
+    public void compress(final Counters counters, final Bits bits) throws IOException {
+        final Air sent = new Air();
+        compress(sent);
+
+        counters.characters += text.length;
+        bits.bitsPerCharacter = (double) sent.bits / text.length;
+    }
+
+    @Benchmark
+    public void decompress(final Counters counters) throws IOException {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream(text.length);
+        final OutputStream in = c == null ? received : c.decompress(received);
+
+        in.write(air);
+        in.flush();
+
+        counters.characters += received.size();
+    }
+
+    private void compress(final Air sent) throws IOException {
+        final ModemOutputStream out = c == null ? sent : c.compress(sent);
+
+        out.write(text);
+
+        /* Sends any text held back in case a phrase follows. */
+        out.postamble(1);
+    }
+
+    private static byte[] corpus() throws IOException {
+        final InputStream in = CodecBenchmark.class.getResourceAsStream("qso.txt");
+        if (in == null) {
+            throw new IOException("qso.txt is missing.");
+        }
+
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] b = new byte[4096];
+            int rc;
+            while ((rc = in.read(b)) != -1) {
+                out.write(b, 0, rc);
+            }
+
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Keeps the characters that would be sent and counts their varicode bits.
+     */
+    private static class Air extends ModemOutputStream {
+
+        private final ByteArrayOutputStream characters = new ByteArrayOutputStream();
+
+        private long bits;
+
+        @Override
+        public void write(final int b) {
+            characters.write(b);
+            bits += Varicode.length(b & 0xff) + 2;
+        }
+
+        @Override
+        public void preamble(final int symbols) {
+        }
+
+        @Override
+        public void postamble(final int symbols) {
+        }
+    }
+}
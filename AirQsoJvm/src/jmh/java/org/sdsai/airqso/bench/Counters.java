@@ -0,0 +1,31 @@
+package org.sdsai.airqso.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reported by JMH beside each score as a rate per second.
+ */
+@AuxCounters
+@State(Scope.Thread)
+public class Counters {
+
+    /**
+     * PCM samples produced or consumed.
+     */
+    public long samples;
+
+    /**
+     * Characters modulated or decoded.
+     */
+    public long characters;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        samples = 0;
+        characters = 0;
+    }
+}
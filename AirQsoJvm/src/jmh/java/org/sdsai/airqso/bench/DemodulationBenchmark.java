@@ -0,0 +1,71 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.Mode;
+import org.sdsai.airqso.ModeRegistry;
+import org.sdsai.airqso.PcmInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * PCM to characters: how fast each mode demodulates, at the rates devices capture at.
+ *
+ * Each operation decodes one whole transmission, including making its demodulator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DemodulationBenchmark {
+
+    @Param({"PSK31", "PSK63", "PSK125", "QPSK31", "QPSK63", "QPSK125", "QPSK31 IL", "QPSK63 IL"})
+    public String mode;
+
+    @Param({"8000", "11025", "22050", "44100"})
+    public int sampleRate;
+
+    private Mode m;
+
+    private ArrayPcmSource source;
+
+    private int samples;
+
+    private final byte[] decoded = new byte[64];
+
+    @Setup
+    public void setup() throws IOException {
+        m = ModeRegistry.getMode(mode);
+
+        final short[] signal = Signals.modulate(m, sampleRate);
+        source = new ArrayPcmSource(signal, sampleRate);
+        samples = signal.length;
+    }
+
+    @Benchmark
+    public void demodulate(final Counters counters) throws IOException {
+        source.rewind();
+
+        final InputStream in = m.newInputStream(
+            new PcmInputStream(source, (int) (sampleRate / m.getSymbolRate()), null),
+            Signals.HZ,
+            sampleRate);
+
+        int rc;
+        while ((rc = in.read(decoded)) != -1) {
+            counters.characters += rc;
+        }
+
+        counters.samples += samples;
+    }
+}
@@ -0,0 +1,44 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.LoopbackTest;
+import org.sdsai.airqso.ModeRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * End to end: a transmit thread and a receive thread joined in memory, with
+ * every stage they run, from the text queue to decoded text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LoopbackBenchmark {
+
+    @Param({"PSK31", "QPSK31", "QPSK63"})
+    public String mode;
+
+    @Param({"8000", "44100"})
+    public int sampleRate;
+
+    @Benchmark
+    public LoopbackTest.Result loopback(final Counters counters) throws IOException {
+        final LoopbackTest.Result result =
+            new LoopbackTest(Signals.HZ, ModeRegistry.getMode(mode), 50).runLoopback(sampleRate, 60000);
+
+        counters.samples += result.getSamplesSent();
+        counters.characters += 50;
+
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.MeteredPcmSource;
+import org.sdsai.airqso.PcmSource;
+import org.sdsai.airqso.metrics.Counter;
+import org.sdsai.airqso.metrics.MetricRegistry;
+import org.sdsai.airqso.metrics.Snapshot;
+import org.sdsai.airqso.metrics.Timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * What the metrics cost the threads that update them: one frame read with and
+ * without a {@link MeteredPcmSource}, each update on its own, and a snapshot
+ * of about as many metrics as a receive thread registers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MetricsBenchmark {
+
+    /**
+     * About one PSK31 symbol at 8000 Hz, and one at 44100 Hz.
+     */
+    @Param({"256", "1411"})
+    public int frameSize;
+
+    private ArrayPcmSource source;
+
+    private MeteredPcmSource metered;
+
+    private short[] frame;
+
+    private Counter counter;
+
+    private Timer timer;
+
+    private MetricRegistry registry;
+
+    @Setup
+    public void setup() {
+        final short[] samples = new short[44100];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) (Math.sin(i * 0.1) * 8000);
+        }
+
+        source = new ArrayPcmSource(samples, 44100);
+        metered = new MeteredPcmSource(source);
+        frame = new short[frameSize];
+        counter = new Counter();
+        timer = new Timer();
+
+        registry = new MetricRegistry();
+        for (int i = 0; i < 12; ++i) {
+            registry.register("counter" + i, new Counter()).add(i);
+            registry.register("timer" + i, new Timer()).record(i);
+        }
+    }
+
+    @Benchmark
+    public int plainRead(final Counters counters) throws IOException {
+        return read(source, counters);
+    }
+
+    @Benchmark
+    public int meteredRead(final Counters counters) throws IOException {
+        return read(metered, counters);
+    }
+
+    @Benchmark
+    public Counter counterAdd() {
+        counter.add(frameSize);
+        return counter;
+    }
+
+    @Benchmark
+    public Timer timerRecord() {
+        timer.record(System.nanoTime() & 0xffff);
+        return timer;
+    }
+
+    @Benchmark
+    public Snapshot snapshot() {
+        return registry.snapshot();
+    }
+
+    private int read(final PcmSource from, final Counters counters) throws IOException {
+        int rc = from.read(frame, 0, frame.length);
+        if (rc == -1) {
+            source.rewind();
+            rc = from.read(frame, 0, frame.length);
+        }
+
+        counters.samples += rc;
+        return rc;
+    }
+}
@@ -0,0 +1,81 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.BpskMode;
+import org.sdsai.airqso.Mode;
+import org.sdsai.airqso.ModeRegistry;
+import org.sdsai.airqso.ModemOutputStream;
+import org.sdsai.airqso.PcmOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Characters to PCM: how fast each mode modulates text.
+ *
+ * The BPSK modes modulate with sdsai's generator, as the app does. The same
+ * modes named with " tables" modulate with {@link org.sdsai.airqso.dsp.BpskModulator}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ModulationBenchmark {
+
+    @Param({
+        "PSK31", "PSK63", "PSK125",
+        "PSK31 tables", "PSK63 tables", "PSK125 tables",
+        "QPSK31", "QPSK63", "QPSK125"
+    })
+    public String mode;
+
+    @Param({"8000", "11025", "22050", "44100"})
+    public int sampleRate;
+
+    private ArrayPcmSink sink;
+
+    private ModemOutputStream modulator;
+
+    private byte[] text;
+
+    @Setup
+    public void setup() throws IOException {
+        sink = new ArrayPcmSink(sampleRate, false);
+        modulator = mode(mode).newOutputStream(
+            new PcmOutputStream(sink, Signals.FRAME_SIZE),
+            Signals.HZ,
+            sampleRate);
+        text = Signals.TEXT.getBytes("US-ASCII");
+    }
+
+    /**
+     * @return The registered mode by name, or a BPSK mode that modulates with tables if name ends in " tables".
+     */
+    private static Mode mode(final String name) {
+        if (name.endsWith(" tables")) {
+            final Mode m = ModeRegistry.getMode(name.substring(0, name.length() - " tables".length()));
+            return new BpskMode(name, m.getSymbolRate(), true);
+        }
+
+        return ModeRegistry.getMode(name);
+    }
+
+    @Benchmark
+    public void modulate(final Counters counters) throws IOException {
+        final long before = sink.getCount();
+
+        modulator.write(text);
+
+        counters.samples += sink.getCount() - before;
+        counters.characters += text.length;
+    }
+}
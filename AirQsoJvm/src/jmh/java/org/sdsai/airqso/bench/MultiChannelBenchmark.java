@@ -0,0 +1,155 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.ModeRegistry;
+import org.sdsai.airqso.MultiChannelReceiver;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * How many PSK31 channels {@link MultiChannelReceiver} decodes in real time.
+ *
+ * Each operation decodes a band holding channels signals, fed at speed times
+ * real time as a capture device would. The receiver keeps up when overruns
+ * stays at 0; the real-time capacity for a channel count is the highest speed
+ * that does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MultiChannelBenchmark {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    /**
+     * Idle symbols before each text, long enough for the carrier to be found and a decoder started.
+     */
+    private static final int PREAMBLE = 96;
+
+    /**
+     * Carriers far enough apart to never share a decoder.
+     */
+    private static final int FIRST_HZ = 500;
+    private static final int SPACING_HZ = 300;
+
+    @Param({"1", "2", "4", "8"})
+    public int channels;
+
+    @Param({"4", "16", "64"})
+    public double speed;
+
+    private ArrayPcmSource band;
+
+    private int samples;
+
+    /**
+     * Reported beside the score as a total over each iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Capacity {
+
+        /**
+         * Samples dropped because a decoder could not keep up.
+         */
+        public long overruns;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            overruns = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        final short[][] signals = new short[channels][];
+        for (int i = 0; i < channels; ++i) {
+            signals[i] = Signals.modulate(ModeRegistry.PSK31, FIRST_HZ + i * SPACING_HZ, SAMPLE_RATE, "cq de k1abc k\n", PREAMBLE);
+        }
+
+        final short[] noisy = Signals.addNoise(Signals.mix(signals), signals[0], SAMPLE_RATE, 10, 2500, 7);
+
+        band = new ArrayPcmSource(noisy, SAMPLE_RATE);
+        samples = noisy.length;
+    }
+
+    @Benchmark
+    public void receive(final Counters counters, final Capacity capacity) throws InterruptedException {
+        band.rewind();
+
+        final Listener listener = new Listener();
+        final MultiChannelReceiver receiver = new MultiChannelReceiver(
+            new PacedPcmSource(band, speed),
+            ModeRegistry.PSK31.getSymbolRate(),
+            300,
+            3000,
+            6,
+            channels,
+            listener);
+
+        receiver.start();
+        receiver.join();
+        listener.awaitClosed();
+
+        counters.samples += samples;
+        counters.characters += listener.characters;
+        capacity.overruns += receiver.getOverruns();
+    }
+
+    /**
+     * Counts what every channel decodes and waits for them all to close.
+     */
+    private static class Listener implements MultiChannelReceiver.ChannelListener {
+
+        private int open;
+
+        private long characters;
+
+        @Override
+        public synchronized OutputStream channelOpened(final int hz) {
+            ++open;
+
+            return new OutputStream() {
+                @Override
+                public void write(final int b) {
+                    count(1);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    count(len);
+                }
+            };
+        }
+
+        @Override
+        public synchronized void channelClosed(final int hz, final OutputStream out) {
+            --open;
+            notifyAll();
+        }
+
+        private synchronized void count(final int n) {
+            characters += n;
+        }
+
+        synchronized void awaitClosed() throws InterruptedException {
+            while (open > 0) {
+                wait();
+            }
+        }
+    }
+}
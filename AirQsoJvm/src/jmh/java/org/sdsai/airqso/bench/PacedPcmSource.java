@@ -0,0 +1,72 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.PcmSource;
+
+import java.io.IOException;
+
+/**
+ * Hands out another source's samples no faster than a multiple of real time, as a capture device would.
+ */
+class PacedPcmSource implements PcmSource {
+
+    private final PcmSource source;
+
+    /**
+     * How many times faster than real time samples are handed out.
+     */
+    private final double speed;
+
+    private long started;
+
+    private long position;
+
+    PacedPcmSource(final PcmSource source, final double speed) {
+        this.source = source;
+        this.speed = speed;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+        started = System.nanoTime();
+        position = 0;
+    }
+
+    @Override
+    public int read(final short[] b, final int off, final int len) throws IOException {
+        final int n = source.read(b, off, len);
+
+        if (n > 0) {
+            position += n;
+
+            final long due = started + (long) (position * 1e9 / source.getSampleRate() / speed);
+            final long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted.");
+                }
+            }
+        }
+
+        return n;
+    }
+
+    @Override
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void release() {
+        source.release();
+    }
+}
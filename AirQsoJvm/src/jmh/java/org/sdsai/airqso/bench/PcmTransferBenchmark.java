@@ -0,0 +1,92 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.ArrayPcmTransfer;
+import org.sdsai.airqso.PcmTransfer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+/**
+ * Native samples to the big-endian bytes the modem streams read, by
+ * {@link ArrayPcmTransfer} and by the per-sample swapping loop it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PcmTransferBenchmark {
+
+    /**
+     * About one PSK31 symbol at 8000 Hz, and one at 44100 Hz.
+     */
+    @Param({"256", "1411"})
+    public int frameSize;
+
+    private ArrayPcmSource source;
+
+    private PcmTransfer array;
+
+    private short[] frame;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        final short[] samples = new short[44100];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) (Math.sin(i * 0.1) * 8000);
+        }
+
+        source = new ArrayPcmSource(samples, 44100);
+        array = new ArrayPcmTransfer(frameSize);
+        frame = new short[frameSize];
+        bytes = new byte[frameSize * 2];
+    }
+
+    @Benchmark
+    public int array(final Counters counters) throws IOException {
+        return read(array, counters);
+    }
+
+    /**
+     * Swap each sample into the byte frame in Java, as the receive thread once did.
+     */
+    @Benchmark
+    public byte[] swapLoop(final Counters counters) {
+        int rc = source.read(frame, 0, frame.length);
+        if (rc == -1) {
+            source.rewind();
+            rc = source.read(frame, 0, frame.length);
+        }
+
+        for (int i = 0; i < rc; ++i) {
+            final short s = frame[i];
+            bytes[i * 2] = (byte) (s >> 8);
+            bytes[i * 2 + 1] = (byte) s;
+        }
+
+        counters.samples += rc;
+        return bytes;
+    }
+
+    private int read(final PcmTransfer transfer, final Counters counters) throws IOException {
+        int rc = transfer.read(source);
+        if (rc == -1) {
+            source.rewind();
+            rc = transfer.read(source);
+        }
+
+        counters.samples += rc;
+        return rc;
+    }
+}
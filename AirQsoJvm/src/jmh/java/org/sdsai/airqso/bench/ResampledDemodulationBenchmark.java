@@ -0,0 +1,85 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.Mode;
+import org.sdsai.airqso.ModeRegistry;
+import org.sdsai.airqso.PcmInputStream;
+import org.sdsai.airqso.ResamplingPcmSource;
+import org.sdsai.airqso.SampleRatePolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * PCM to characters as {@link org.sdsai.airqso.Bpsk.ReceiveThread} does it on
+ * hardware that only captures at a high rate: decimated through
+ * {@link ResamplingPcmSource} to the processing rate, then demodulated.
+ *
+ * Compare with {@link DemodulationBenchmark} at 44100 Hz, which demodulates at
+ * the capture rate. Samples are counted at the capture rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResampledDemodulationBenchmark {
+
+    @Param({"PSK31", "PSK63", "PSK125", "QPSK31", "QPSK63", "QPSK125"})
+    public String mode;
+
+    @Param({"44100", "48000"})
+    public int captureRate;
+
+    private Mode m;
+
+    private ArrayPcmSource source;
+
+    private int processingRate;
+
+    private int samples;
+
+    private final byte[] decoded = new byte[64];
+
+    @Setup
+    public void setup() throws IOException {
+        m = ModeRegistry.getMode(mode);
+        processingRate = new SampleRatePolicy().processingRate(captureRate, Signals.HZ, m.getSymbolRate());
+
+        final short[] signal = Signals.modulate(m, captureRate);
+        source = new ArrayPcmSource(signal, captureRate);
+        samples = signal.length;
+    }
+
+    @Benchmark
+    public void demodulate(final Counters counters) throws IOException {
+        source.rewind();
+
+        final ResamplingPcmSource resampled = new ResamplingPcmSource(
+            source,
+            processingRate,
+            SampleRatePolicy.passband(Signals.HZ, m.getSymbolRate()),
+            (int) (captureRate / m.getSymbolRate()));
+
+        final InputStream in = m.newInputStream(
+            new PcmInputStream(resampled, (int) (processingRate / m.getSymbolRate()), null),
+            Signals.HZ,
+            processingRate);
+
+        int rc;
+        while ((rc = in.read(decoded)) != -1) {
+            counters.characters += rc;
+        }
+
+        counters.samples += samples;
+    }
+}
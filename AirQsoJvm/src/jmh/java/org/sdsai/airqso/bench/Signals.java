@@ -0,0 +1,107 @@
+package org.sdsai.airqso.bench;
+
+import org.sdsai.airqso.Mode;
+import org.sdsai.airqso.ModemOutputStream;
+import org.sdsai.airqso.PcmOutputStream;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Signals the benchmarks work on.
+ */
+final class Signals {
+
+    /**
+     * The carrier frequency.
+     */
+    static final int HZ = 1000;
+
+    /**
+     * Samples moved between the modem streams and PCM at a time, as {@link org.sdsai.airqso.Bpsk} does.
+     */
+    static final int FRAME_SIZE = 1024;
+
+    /**
+     * A typical over.
+     */
+    static final String TEXT = "cq cq de k1abc k1abc pse k\nname is bob qth boston rig 5w 73\n";
+
+    private Signals() {
+    }
+
+    /**
+     * @return TEXT modulated in mode at sampleRate, with a preamble and postamble.
+     */
+    static short[] modulate(final Mode mode, final int sampleRate) throws IOException {
+        return modulate(mode, HZ, sampleRate, TEXT, 32);
+    }
+
+    /**
+     * @return text modulated in mode on a carrier of hz at sampleRate, after preamble idle symbols.
+     */
+    static short[] modulate(final Mode mode, final int hz, final int sampleRate, final String text, final int preamble)
+        throws IOException
+    {
+        final ArrayPcmSink sink = new ArrayPcmSink(sampleRate);
+        final ModemOutputStream out = mode.newOutputStream(new PcmOutputStream(sink, FRAME_SIZE), hz, sampleRate);
+
+        out.preamble(preamble);
+        out.write(text.getBytes("US-ASCII"));
+        out.postamble(20);
+        out.flush();
+
+        return sink.toArray();
+    }
+
+    /**
+     * @return The sum of the signals, each starting at the start, clipped at full scale.
+     */
+    static short[] mix(final short[]... signals) {
+        int length = 0;
+        for (final short[] s : signals) {
+            length = Math.max(length, s.length);
+        }
+
+        final short[] mixed = new short[length];
+        for (int i = 0; i < length; ++i) {
+            double sum = 0;
+            for (final short[] s : signals) {
+                if (i < s.length) {
+                    sum += s[i];
+                }
+            }
+            mixed[i] = clip(sum);
+        }
+
+        return mixed;
+    }
+
+    /**
+     * @return samples with white noise added, snrDb below signal's power over a bandwidth of hz.
+     */
+    static short[] addNoise(final short[] samples, final short[] signal, final int sampleRate, final double snrDb,
+        final double hz, final long seed)
+    {
+        double power = 0;
+        for (final short s : signal) {
+            power += (double) s * s;
+        }
+        power /= signal.length;
+
+        /* Noise power spread over the whole band to sampleRate / 2. */
+        final double rms = Math.sqrt(power / Math.pow(10, snrDb / 10) * (sampleRate / 2.0) / hz);
+
+        final Random random = new Random(seed);
+        final short[] noisy = new short[samples.length];
+        for (int i = 0; i < samples.length; ++i) {
+            noisy[i] = clip(samples[i] + random.nextGaussian() * rms);
+        }
+
+        return noisy;
+    }
+
+    private static short clip(final double sample) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+    }
+}
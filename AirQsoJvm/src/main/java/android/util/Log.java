@@ -0,0 +1,49 @@
+package android.util;
+
+/**
+ * Stands in for the SDK's Log, whose methods all throw off-device, by writing to standard error.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(final String tag, final String msg) {
+        return println('V', tag, msg, null);
+    }
+
+    public static int d(final String tag, final String msg) {
+        return println('D', tag, msg, null);
+    }
+
+    public static int i(final String tag, final String msg) {
+        return println('I', tag, msg, null);
+    }
+
+    public static int w(final String tag, final String msg) {
+        return println('W', tag, msg, null);
+    }
+
+    public static int w(final String tag, final String msg, final Throwable tr) {
+        return println('W', tag, msg, tr);
+    }
+
+    public static int e(final String tag, final String msg) {
+        return println('E', tag, msg, null);
+    }
+
+    public static int e(final String tag, final String msg, final Throwable tr) {
+        return println('E', tag, msg, tr);
+    }
+
+    private static int println(final char priority, final String tag, final String msg, final Throwable tr) {
+        final String line = priority + "/" + tag + ": " + msg;
+        System.err.println(line);
+
+        if (tr != null) {
+            tr.printStackTrace();
+        }
+
+        return line.length();
+    }
+}
@@ -0,0 +1,118 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AfcPcmSourceTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static final double SYMBOL_RATE = 31.25;
+
+    /**
+     * PSK31 from this project's own modulator, so the tracker is tested without sdsai-dsp.
+     */
+    private static final Mode PSK31 = new BpskMode("PSK31", SYMBOL_RATE, true);
+
+    @Test
+    public void movesAnOffsetCarrierOntoTheNominalFrequency() throws IOException {
+        for (final double offset : new double[] { -40, -12, 12, 40 }) {
+            final short[] in = Signals.modulate(PSK31, (int) (Signals.HZ + offset), SAMPLE_RATE, "", 320);
+            final AfcPcmSource afc = afc(in);
+            final short[] out = readAll(afc);
+
+            assertTrue(offset + " Hz off", afc.isLocked());
+            assertEquals(offset, afc.getFrequencyOffset(), 0.5);
+
+            /* Once locked, the signal is centred on the nominal frequency. */
+            final short[] tail = Arrays.copyOfRange(out, out.length / 2, out.length);
+            assertEquals(offset + " Hz off", Signals.HZ, centre(tail, Signals.HZ - 100, Signals.HZ + 100), 1.0);
+        }
+    }
+
+    @Test
+    public void leavesACarrierWithNoOffsetWhereItIs() throws IOException {
+        final short[] in = Signals.modulate(PSK31, Signals.HZ, SAMPLE_RATE, "", 320);
+        final AfcPcmSource afc = afc(in);
+        final short[] out = readAll(afc);
+
+        assertTrue(afc.isLocked());
+        assertEquals(0, afc.getFrequencyOffset(), 0.5);
+        assertEquals(Signals.HZ, centre(Arrays.copyOfRange(out, out.length / 2, out.length), Signals.HZ - 100, Signals.HZ + 100), 1.0);
+    }
+
+    @Test
+    public void doesNotLockOnNoise() throws IOException {
+        final AfcPcmSource afc = afc(Signals.addNoise(new short[SAMPLE_RATE * 10], 2000, 3));
+        readAll(afc);
+
+        assertFalse(afc.isLocked());
+        assertEquals(0, afc.getFrequencyOffset(), 0);
+    }
+
+    /**
+     * Modes the tracker cannot follow turn it off, which must leave their samples alone.
+     */
+    @Test
+    public void passesSamplesThroughWhenDisabled() throws IOException {
+        final short[] in = Signals.addNoise(
+            Signals.modulate(ModeRegistry.QPSK31, Signals.HZ + 20, SAMPLE_RATE, "cq de k1abc"),
+            300,
+            4);
+
+        final AfcPcmSource afc = afc(in);
+        afc.setEnabled(false);
+
+        assertArrayEquals(in, readAll(afc));
+        assertFalse(afc.isLocked());
+        assertEquals(0, afc.getFrequencyOffset(), 0);
+    }
+
+    private static AfcPcmSource afc(final short[] samples) {
+        return new AfcPcmSource(new Signals.ArraySource(samples, SAMPLE_RATE, 0), Signals.HZ, SYMBOL_RATE, 50, 10);
+    }
+
+    private static short[] readAll(final PcmSource source) throws IOException {
+        final Signals.ArraySink sink = new Signals.ArraySink(source.getSampleRate());
+        final short[] frame = new short[256];
+
+        source.start();
+        int rc;
+        while ((rc = source.read(frame, 0, frame.length)) != -1) {
+            sink.write(frame, 0, rc);
+        }
+
+        return sink.toArray();
+    }
+
+    /**
+     * @return The power weighted mean frequency of samples between lowHz and highHz, found by a DFT at 0.5 Hz steps.
+     */
+    private static double centre(final short[] samples, final double lowHz, final double highHz) {
+        double sum = 0;
+        double weights = 0;
+
+        for (double hz = lowHz; hz <= highHz; hz += 0.5) {
+            double re = 0;
+            double im = 0;
+            for (int n = 0; n < samples.length; ++n) {
+                final double a = 2 * Math.PI * hz * n / SAMPLE_RATE;
+                re += samples[n] * Math.cos(a);
+                im += samples[n] * Math.sin(a);
+            }
+
+            final double power = re * re + im * im;
+            sum += hz * power;
+            weights += power;
+        }
+
+        return sum / weights;
+    }
+}
@@ -0,0 +1,67 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what an in-memory {@link AudioConfigCache} remembers, and that a
+ * scan for a working configuration skips the rates it knows do not open.
+ */
+public class AudioConfigCacheTest {
+
+    private static final int[] RATES = { 8000, 11025, 22050, 44100 };
+
+    @Test
+    public void remembersWhatWorked() {
+        final AudioConfigCache cache = new AudioConfigCache();
+        cache.put(AudioConfigCache.RECORD, new AudioConfigCache.Config(11025, 1, 2, 16, 4096));
+
+        final AudioConfigCache.Config config = cache.get(AudioConfigCache.RECORD, 11025);
+        assertEquals(11025, config.getRate());
+        assertEquals(1, config.getSource());
+        assertEquals(2, config.getEncoding());
+        assertEquals(16, config.getChannel());
+        assertEquals(4096, config.getMinBufferSize());
+
+        assertNull(cache.get(AudioConfigCache.PLAY, 11025));
+        assertNull(cache.get(AudioConfigCache.RECORD, 8000));
+    }
+
+    @Test
+    public void unsupportedRatesHaveNoConfig() {
+        final AudioConfigCache cache = new AudioConfigCache();
+        cache.putUnsupported(AudioConfigCache.PLAY, 8000);
+
+        assertTrue(cache.isUnsupported(AudioConfigCache.PLAY, 8000));
+        assertFalse(cache.isUnsupported(AudioConfigCache.RECORD, 8000));
+        assertNull(cache.get(AudioConfigCache.PLAY, 8000));
+
+        cache.remove(AudioConfigCache.PLAY, 8000);
+        assertFalse(cache.isUnsupported(AudioConfigCache.PLAY, 8000));
+    }
+
+    @Test
+    public void scansSkipUnsupportedRates() {
+        final AudioConfigCache cache = new AudioConfigCache();
+        cache.putUnsupported(AudioConfigCache.RECORD, 8000);
+        cache.putUnsupported(AudioConfigCache.RECORD, 22050);
+
+        assertArrayEquals(new int[] { 11025, 44100 }, Bpsk.scanRates(cache, AudioConfigCache.RECORD, RATES));
+        assertArrayEquals(RATES, Bpsk.scanRates(cache, AudioConfigCache.PLAY, RATES));
+    }
+
+    @Test
+    public void scansTryEverythingWhenNothingIsKnownToWork() {
+        final AudioConfigCache cache = new AudioConfigCache();
+        for (final int rate : RATES) {
+            cache.putUnsupported(AudioConfigCache.PLAY, rate);
+        }
+
+        assertArrayEquals(RATES, Bpsk.scanRates(cache, AudioConfigCache.PLAY, RATES));
+    }
+}
@@ -0,0 +1,94 @@
+package org.sdsai.airqso;
+
+import org.sdsai.dsp.BpskDetector;
+import org.sdsai.dsp.BpskGenerator;
+import org.sdsai.dsp.BpskInputStream;
+import org.sdsai.dsp.BpskOutputStream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends text through the table modulator and decodes it with the sdsai
+ * detector, the receiver it has to satisfy, beside text sent by the sdsai
+ * generator it replaced.
+ */
+public class BpskTableOutputStreamTest {
+
+    private static final Mode[] MODES = { ModeRegistry.PSK31, ModeRegistry.PSK63, ModeRegistry.PSK125 };
+
+    /**
+     * The same modes sent through {@link BpskTableOutputStream}.
+     */
+    private static final Mode[] TABLE_MODES = {
+        new BpskMode("PSK31", ModeRegistry.PSK31.getSymbolRate(), true),
+        new BpskMode("PSK63", ModeRegistry.PSK63.getSymbolRate(), true),
+        new BpskMode("PSK125", ModeRegistry.PSK125.getSymbolRate(), true),
+    };
+
+    private static final int[] RATES = { 8000, 11025, 16000, 22050, 44100, 48000 };
+
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog 0123456789\n";
+
+    @Test
+    public void tableSignalDecodes() throws IOException {
+        for (final Mode mode : TABLE_MODES) {
+            for (final int rate : RATES) {
+                final String decoded = decode(mode, rate, bytes(Signals.modulate(mode, Signals.HZ, rate, TEXT)));
+
+                assertTrue(mode.getName() + " at " + rate + " Hz: " + decoded, decoded.contains(TEXT));
+            }
+        }
+    }
+
+    @Test
+    public void generatorSignalDecodes() throws IOException {
+        for (final Mode mode : MODES) {
+            for (final int rate : RATES) {
+                final ByteArrayOutputStream signal = new ByteArrayOutputStream();
+                final BpskOutputStream out =
+                    new BpskOutputStream(signal, new BpskGenerator(Signals.HZ, rate, mode.getSymbolRate()));
+
+                out.preamble(32);
+                out.write(TEXT.getBytes("US-ASCII"));
+                out.postamble(32);
+                out.flush();
+
+                final String decoded = decode(mode, rate, signal.toByteArray());
+
+                assertTrue(mode.getName() + " at " + rate + " Hz: " + decoded, decoded.contains(TEXT));
+            }
+        }
+    }
+
+    /**
+     * @return What the sdsai detector makes of big-endian PCM.
+     */
+    private static String decode(final Mode mode, final int rate, final byte[] signal) throws IOException {
+        final InputStream in = new BpskInputStream(
+            new ByteArrayInputStream(signal),
+            new BpskDetector(Signals.HZ, rate, mode.getSymbolRate()));
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+
+        for (int c = in.read(); c != -1; c = in.read()) {
+            decoded.write(c);
+        }
+
+        return decoded.toString("US-ASCII");
+    }
+
+    private static byte[] bytes(final short[] samples) {
+        final ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.BIG_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+
+        return bytes.array();
+    }
+}
@@ -0,0 +1,105 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the audio buffer sizes: the device buffers asked for by
+ * {@link Bpsk#findAudioRecord(double, int[])} and {@link Bpsk#findAudioPlay(double, int[])},
+ * and the capture buffer of a {@link BufferedPcmSource}.
+ */
+public class BufferSizingTest {
+
+    private static final int SYMBOLS = 10;
+
+    @Test
+    public void deviceBuffersHoldTenSymbols() {
+        for (final Mode mode : ModeRegistry.getModes()) {
+            for (final int rate : SampleRatePolicy.RATES) {
+                final double samples = rate / mode.getSymbolRate() * SYMBOLS;
+                final int bytes = Bpsk.bufferSize(0, rate, mode.getSymbolRate());
+                final String what = mode.getName() + " at " + rate + " Hz: " + bytes;
+
+                assertTrue(what, bytes >= samples * 2);
+                assertTrue(what, bytes < samples * 2 + 4);
+                assertEquals(what, 0, bytes % 2);
+            }
+        }
+    }
+
+    @Test
+    public void deviceMinimumIsKept() {
+        assertEquals(1 << 20, Bpsk.bufferSize(1 << 20, 48000, ModeRegistry.PSK31.getSymbolRate()));
+    }
+
+    @Test
+    public void captureBufferRidesOutAStall() throws IOException, InterruptedException {
+        final short[] samples = ramp(8000);
+        final BufferedPcmSource source = new BufferedPcmSource(new Signals.ArraySource(samples, 8000, 0), 256, 8192);
+
+        /* Capture all of it before reading any. */
+        source.start();
+        awaitBuffered(source, samples.length);
+
+        assertArrayEquals(samples, readAll(source, samples.length));
+        assertEquals(0, source.getOverruns());
+        source.release();
+    }
+
+    @Test
+    public void captureBufferCountsWhatItDrops() throws IOException, InterruptedException {
+        final short[] samples = ramp(20000);
+        final BufferedPcmSource source = new BufferedPcmSource(new Signals.ArraySource(samples, 8000, 0), 256, 8192);
+
+        source.start();
+        awaitBuffered(source, 8192);
+        Thread.sleep(100);
+
+        final int buffered = source.getBuffered();
+        final short[] read = readAll(source, buffered);
+
+        assertEquals(samples.length, buffered + source.getOverruns());
+        assertEquals(8192, buffered);
+
+        /* The oldest samples are kept and the newest dropped. */
+        for (int i = 0; i < read.length; ++i) {
+            assertEquals(samples[i], read[i]);
+        }
+        source.release();
+    }
+
+    private static short[] ramp(final int n) {
+        final short[] samples = new short[n];
+        for (int i = 0; i < n; ++i) {
+            samples[i] = (short) i;
+        }
+
+        return samples;
+    }
+
+    private static void awaitBuffered(final BufferedPcmSource source, final int n) throws InterruptedException {
+        for (int i = 0; i < 1000 && source.getBuffered() < n; ++i) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static short[] readAll(final PcmSource source, final int n) throws IOException {
+        final short[] out = new short[n];
+        int got = 0;
+        while (got < n) {
+            final int rc = source.read(out, got, n - got);
+            if (rc == -1) {
+                break;
+            }
+            got += rc;
+        }
+
+        assertEquals(n, got);
+        return out;
+    }
+}
@@ -0,0 +1,121 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a muted {@link GatedPcmSource} holds its reader while draining
+ * the source, and that unmuting hands the reader fresh audio within one read.
+ */
+public class GatedPcmSourceTest {
+
+    private static final int RATE = 8000;
+
+    private static final int FRAME_SIZE = 256;
+
+    @Test
+    public void openGatePassesAudioThrough() throws IOException {
+        final short[] samples = ramp(10000);
+        final GatedPcmSource gate = new GatedPcmSource(new Signals.ArraySource(samples, RATE, 0));
+
+        assertArrayEquals(samples, readAll(gate, samples.length));
+        assertEquals(0, gate.getMutedSamples().get());
+        assertEquals(-1, gate.read(new short[FRAME_SIZE], 0, FRAME_SIZE));
+    }
+
+    @Test(timeout = 10000)
+    public void mutedReadBlocksUntilUnmuted() throws Exception {
+        final Signals.ArraySource source = new Signals.ArraySource(ramp(RATE * 10), RATE, 1);
+        final GatedPcmSource gate = new GatedPcmSource(source);
+        final short[] buffer = new short[FRAME_SIZE];
+        final AtomicInteger read = new AtomicInteger(0);
+
+        gate.setMuted(true);
+        source.start();
+
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    read.set(gate.read(buffer, 0, buffer.length));
+                }
+                catch (final IOException e) {
+                    read.set(-2);
+                }
+            }
+        };
+        reader.start();
+
+        Thread.sleep(300);
+
+        /* Held, while the source is read at its own pace and thrown away. */
+        assertTrue(reader.isAlive());
+        assertTrue(gate.isMuted());
+        final long muted = gate.getMutedSamples().get();
+        assertTrue("Muted samples " + muted, muted > RATE / 10);
+
+        gate.setMuted(false);
+        reader.join(1000);
+
+        assertFalse(reader.isAlive());
+        assertTrue(read.get() > 0);
+
+        /* What is returned follows what was thrown away, with nothing stale in between. */
+        assertEquals((short) gate.getMutedSamples().get(), buffer[0]);
+
+        /* Within about one read of the source. */
+        final long resume = gate.getLastResumeNanos();
+        assertTrue("Resumed in " + resume / 1000000 + " ms", resume > 0 && resume < 100000000L);
+
+        source.release();
+    }
+
+    @Test(timeout = 10000)
+    public void mutedReadEndsWithTheSource() throws IOException {
+        final GatedPcmSource gate = new GatedPcmSource(new Signals.ArraySource(ramp(5000), RATE, 0));
+        gate.setMuted(true);
+
+        assertEquals(-1, gate.read(new short[FRAME_SIZE], 0, FRAME_SIZE));
+        assertEquals(5000, gate.getMutedSamples().get());
+    }
+
+    @Test
+    public void unmutingWhenOpenChangesNothing() throws IOException {
+        final GatedPcmSource gate = new GatedPcmSource(new Signals.ArraySource(ramp(1000), RATE, 0));
+        gate.setMuted(false);
+
+        readAll(gate, 1000);
+        assertEquals(0, gate.getLastResumeNanos());
+    }
+
+    private static short[] ramp(final int n) {
+        final short[] samples = new short[n];
+        for (int i = 0; i < n; ++i) {
+            samples[i] = (short) i;
+        }
+
+        return samples;
+    }
+
+    private static short[] readAll(final PcmSource source, final int n) throws IOException {
+        final short[] out = new short[n];
+        int got = 0;
+        while (got < n) {
+            final int rc = source.read(out, got, Math.min(FRAME_SIZE, n - got));
+            if (rc == -1) {
+                break;
+            }
+            got += rc;
+        }
+
+        assertEquals(n, got);
+        return out;
+    }
+}
@@ -0,0 +1,317 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.MetricRegistry;
+import org.sdsai.airqso.util.TextQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link HalfDuplexController} against a receiver listening in real
+ * time and transmitters writing to memory at the pace of a sound device:
+ * the receiver is muted exactly while keyed up, and bursts key up once text
+ * has waited the hold time and send everything typed meanwhile together.
+ */
+public class HalfDuplexControllerTest {
+
+    private static final int RATE = 8000;
+
+    private static final Mode MODE = ModeRegistry.QPSK63;
+
+    private static final long HOLD_MILLIS = 300;
+
+    /**
+     * Allowance for threads being scheduled late, on top of how often bursts are scheduled.
+     */
+    private static final long SLACK_MILLIS = 150;
+
+    private TextQueue queue;
+
+    private SinkBpsk bpsk;
+
+    private HalfDuplexController duplex;
+
+    private MetricRegistry metrics;
+
+    private Bpsk.ReceiveThread receiver;
+
+    @Before
+    public void setUp() {
+        queue = new TextQueue(1024);
+        bpsk = new SinkBpsk(queue);
+        duplex = new HalfDuplexController(bpsk, queue);
+        metrics = new MetricRegistry();
+
+        receiver = new Bpsk.ReceiveThread(
+            Signals.HZ,
+            MODE,
+            new ByteArrayOutputStream(),
+            new Signals.ArraySource(Signals.silence(RATE, 60), RATE, 1));
+        receiver.setMetrics(metrics);
+        receiver.start();
+    }
+
+    @After
+    public void tearDown() {
+        duplex.stopTransmit();
+        receiver.stopReceive();
+    }
+
+    @Test(timeout = 10000)
+    public void receiverIsMutedWhileKeyed() throws InterruptedException {
+        duplex.setReceiver(receiver);
+        assertFalse(receiver.isMuted());
+
+        duplex.startTransmit(Signals.HZ, MODE);
+        assertTrue(duplex.isTransmitting());
+        assertTrue(receiver.isMuted());
+
+        /* The receiver keeps draining the microphone, but decodes none of it. */
+        final double before = mutedSamples();
+        Thread.sleep(300);
+        assertTrue(mutedSamples() > before + RATE / 10);
+
+        duplex.stopTransmit();
+        assertFalse(duplex.isTransmitting());
+        assertFalse(receiver.isMuted());
+
+        /* Unmuted, the receiver has audio again within about a read. */
+        Thread.sleep(200);
+        final double after = mutedSamples();
+        Thread.sleep(200);
+        assertEquals(after, mutedSamples(), 0);
+        assertTrue(metrics.snapshot().get("rx.resume_ms") < 100);
+    }
+
+    @Test(timeout = 10000)
+    public void receiverAttachedWhileKeyedIsMuted() {
+        duplex.startTransmit(Signals.HZ, MODE);
+        duplex.setReceiver(receiver);
+        assertTrue(receiver.isMuted());
+
+        duplex.stopTransmit();
+        assertFalse(receiver.isMuted());
+    }
+
+    @Test(timeout = 20000)
+    public void burstKeysUpAfterTheHoldTime() throws Exception {
+        duplex.setReceiver(receiver);
+        duplex.setHoldMillis(HOLD_MILLIS);
+        duplex.startBursts(Signals.HZ, MODE);
+
+        /* Nothing to send, so nothing keyed. */
+        Thread.sleep(200);
+        assertTrue(duplex.isScheduling());
+        assertFalse(duplex.isTransmitting());
+        assertFalse(receiver.isMuted());
+
+        final long offered = System.nanoTime();
+        offer("cq cq ");
+        Thread.sleep(HOLD_MILLIS / 2);
+        offer("de k\n");
+
+        final long keyed = bpsk.awaitBurst(0);
+        final long waited = (keyed - offered) / 1000000;
+        assertTrue("Keyed up after " + waited + " ms", waited >= HOLD_MILLIS);
+        assertTrue("Keyed up after " + waited + " ms", waited < HOLD_MILLIS + SLACK_MILLIS);
+        assertTrue(receiver.isMuted());
+
+        /* The burst ends once the queue has emptied, and the receiver listens again. */
+        awaitKeyDown();
+        assertFalse(receiver.isMuted());
+        assertTrue(duplex.isScheduling());
+
+        /* Everything typed during the hold went out in that one burst. */
+        assertEquals(1, bpsk.getBursts());
+        assertEquals("cq cq de k\n", Signals.receive(MODE, Signals.HZ, new Signals.ArraySource(bpsk.getSink(0).toArray(), RATE, 0)));
+    }
+
+    @Test(timeout = 20000)
+    public void textAfterABurstWaitsForTheNext() throws Exception {
+        duplex.setReceiver(receiver);
+        duplex.setHoldMillis(HOLD_MILLIS);
+        duplex.startBursts(Signals.HZ, MODE);
+
+        offer("one\n");
+        bpsk.awaitBurst(0);
+        awaitKeyDown();
+
+        final long offered = System.nanoTime();
+        offer("two\n");
+        final long waited = (bpsk.awaitBurst(1) - offered) / 1000000;
+
+        assertTrue("Keyed up after " + waited + " ms", waited >= HOLD_MILLIS);
+        assertTrue("Keyed up after " + waited + " ms", waited < HOLD_MILLIS + SLACK_MILLIS);
+        awaitKeyDown();
+
+        assertEquals(2, bpsk.getBursts());
+        assertEquals("two\n", Signals.receive(MODE, Signals.HZ, new Signals.ArraySource(bpsk.getSink(1).toArray(), RATE, 0)));
+    }
+
+    @Test(timeout = 10000)
+    public void stoppingEndsABurstAndUnmutes() throws Exception {
+        duplex.setReceiver(receiver);
+        duplex.setHoldMillis(0);
+        duplex.startBursts(Signals.HZ, MODE);
+
+        offer("a long message that takes a while to send\n");
+        bpsk.awaitBurst(0);
+        assertTrue(receiver.isMuted());
+
+        duplex.stopTransmit();
+        assertFalse(duplex.isScheduling());
+        assertFalse(duplex.isTransmitting());
+        assertFalse(receiver.isMuted());
+    }
+
+    private void offer(final String text) {
+        assertEquals(text.length(), queue.offer(text, 0, text.length()));
+    }
+
+    private void awaitKeyDown() throws InterruptedException {
+        while (duplex.isTransmitting() || receiver.isMuted()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private double mutedSamples() {
+        return metrics.snapshot().get("rx.muted_samples");
+    }
+
+    /**
+     * Transmits to memory, as fast as a sound device would play, and notes when each burst keys up.
+     */
+    private static class SinkBpsk extends Bpsk {
+
+        private final TextQueue in;
+
+        private final List<PacedSink> sinks = new ArrayList<PacedSink>();
+
+        private final List<Long> keyed = new ArrayList<Long>();
+
+        SinkBpsk(final TextQueue in) {
+            super(new ByteArrayOutputStream(), in);
+            this.in = in;
+        }
+
+        @Override
+        public TransmitThread startTransmit(final int hz, final Mode mode) {
+            return startTransmit(hz, mode, new PacedSink(RATE));
+        }
+
+        @Override
+        public TransmitThread startBurst(final int hz, final Mode mode) {
+            final PacedSink sink = new PacedSink(RATE);
+            final TransmitThread t = new TransmitThread(hz, mode, in, sink);
+
+            synchronized (this) {
+                sinks.add(sink);
+                keyed.add(System.nanoTime());
+                notifyAll();
+            }
+
+            t.setBurst(true);
+            t.start();
+
+            return t;
+        }
+
+        /**
+         * @return When burst i keyed up.
+         */
+        synchronized long awaitBurst(final int i) throws InterruptedException {
+            while (keyed.size() <= i) {
+                wait();
+            }
+
+            return keyed.get(i);
+        }
+
+        synchronized int getBursts() {
+            return keyed.size();
+        }
+
+        synchronized PacedSink getSink(final int i) {
+            return sinks.get(i);
+        }
+    }
+
+    /**
+     * Keeps what is written, taking as long to accept it as it would take to
+     * play. Like a sound device, it fails writes once released.
+     */
+    private static class PacedSink implements PcmSink {
+
+        private final Signals.ArraySink samples;
+
+        private long started;
+
+        private long written;
+
+        private volatile boolean released;
+
+        PacedSink(final int sampleRate) {
+            this.samples = new Signals.ArraySink(sampleRate);
+        }
+
+        @Override
+        public int getSampleRate() {
+            return samples.getSampleRate();
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void write(final short[] buffer, final int off, final int len) throws IOException {
+            if (released) {
+                throw new IOException("Released.");
+            }
+
+            if (started == 0) {
+                started = System.nanoTime();
+            }
+
+            samples.write(buffer, off, len);
+            written += len;
+
+            final long wait = started + written * 1000000000L / getSampleRate() - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted.");
+                }
+            }
+        }
+
+        /**
+         * @return The samples written so far.
+         */
+        short[] toArray() {
+            return samples.toArray();
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+}
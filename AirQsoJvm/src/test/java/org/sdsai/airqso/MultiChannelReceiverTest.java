@@ -0,0 +1,120 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes several PSK31 signals sent at once.
+ *
+ * Decoding uses sdsai-dsp's {@link org.sdsai.dsp.BpskInputStream}, so these
+ * tests need the real library on the class path.
+ */
+public class MultiChannelReceiverTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static final int[] CARRIERS = { 600, 1000, 1400 };
+
+    private static final String[] TEXTS = {
+        "cq cq de k1abc k\n",
+        "w2xyz de n3qrp 599\n",
+        "tnx fer qso 73\n",
+    };
+
+    /**
+     * Idle symbols before each text, long enough for the carrier to be found and a decoder started.
+     */
+    private static final int PREAMBLE = 96;
+
+    /**
+     * Audio is fed this many times faster than real time. Keeping up at this
+     * speed without an overrun means keeping up in real time.
+     */
+    private static final double SPEED = 4;
+
+    @Test(timeout = 60000)
+    public void decodesEachCarrier() throws Exception {
+        final short[][] signals = new short[CARRIERS.length][];
+        for (int i = 0; i < CARRIERS.length; ++i) {
+            signals[i] = Signals.modulate(ModeRegistry.PSK31, CARRIERS[i], SAMPLE_RATE, TEXTS[i], PREAMBLE);
+        }
+
+        final short[] mixed = Signals.mix(signals);
+        final short[] noisy = Signals.addNoise(mixed, Signals.noiseRms(signals[0], SAMPLE_RATE, 10, 2500), 7);
+
+        final Channels channels = new Channels();
+        final MultiChannelReceiver receiver = new MultiChannelReceiver(
+            new Signals.ArraySource(noisy, SAMPLE_RATE, SPEED),
+            ModeRegistry.PSK31.getSymbolRate(),
+            300,
+            3000,
+            10,
+            8,
+            channels);
+
+        receiver.start();
+        receiver.join();
+        channels.awaitClosed();
+
+        assertEquals("Channels opened " + channels.text.keySet(), CARRIERS.length, channels.text.size());
+
+        for (int i = 0; i < CARRIERS.length; ++i) {
+            final String text = channels.near(CARRIERS[i]);
+            assertNotNull("No channel near " + CARRIERS[i] + " Hz", text);
+            assertTrue(CARRIERS[i] + " Hz decoded \"" + text + "\"", text.contains(TEXTS[i]));
+        }
+
+        assertEquals("Overruns", 0, receiver.getOverruns());
+    }
+
+    /**
+     * Collects what each channel decodes.
+     */
+    private static class Channels implements MultiChannelReceiver.ChannelListener {
+
+        private final Map<Integer, ByteArrayOutputStream> text = new HashMap<Integer, ByteArrayOutputStream>();
+
+        private int open;
+
+        @Override
+        public synchronized OutputStream channelOpened(final int hz) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            text.put(hz, out);
+            ++open;
+            return out;
+        }
+
+        @Override
+        public synchronized void channelClosed(final int hz, final OutputStream out) {
+            --open;
+            notifyAll();
+        }
+
+        synchronized void awaitClosed() throws InterruptedException {
+            while (open > 0) {
+                wait();
+            }
+        }
+
+        /**
+         * @return The text of the channel within a signal's width of hz, or null.
+         */
+        synchronized String near(final int hz) {
+            for (final Map.Entry<Integer, ByteArrayOutputStream> e : text.entrySet()) {
+                if (Math.abs(e.getKey() - hz) < ModeRegistry.PSK31.getSymbolRate() * 2) {
+                    return new String(e.getValue().toByteArray());
+                }
+            }
+
+            return null;
+        }
+    }
+}
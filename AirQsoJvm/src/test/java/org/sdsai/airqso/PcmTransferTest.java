@@ -0,0 +1,146 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link ArrayPcmTransfer} turns samples into big-endian bytes and
+ * back, and replays WAV files through it.
+ */
+public class PcmTransferTest {
+
+    private static final int RATE = 8000;
+
+    private static final int FRAME_SIZE = 250;
+
+    @Test
+    public void readsBigEndianBytes() throws IOException {
+        final short[] samples = random(10007, 1);
+
+        assertArrayEquals(bigEndian(samples), readAll(new ArraySource(samples), new ArrayPcmTransfer(FRAME_SIZE)));
+        assertArrayEquals(bigEndian(samples), readAll(new PcmInputStream(new ArraySource(samples), FRAME_SIZE, null)));
+    }
+
+    @Test
+    public void writesSplitAcrossSamplesArriveWhole() throws IOException {
+        final short[] samples = random(1001, 3);
+        final byte[] bytes = bigEndian(samples);
+        final Signals.ArraySink sink = new Signals.ArraySink(RATE);
+        final PcmOutputStream out = new PcmOutputStream(sink, new ArrayPcmTransfer(FRAME_SIZE));
+
+        /* Odd lengths leave half a sample over each time. */
+        for (int off = 0; off < bytes.length; off += 333) {
+            out.write(bytes, off, Math.min(333, bytes.length - off));
+        }
+
+        assertArrayEquals(samples, sink.toArray());
+    }
+
+    @Test
+    public void wavReplaysSampleForSample() throws IOException {
+        final short[] samples = random(20000, 4);
+        final File file = Signals.wav(samples, RATE);
+
+        final WavPcmSource source = new WavPcmSource(file);
+        assertEquals(RATE, source.getSampleRate());
+        assertArrayEquals(bigEndian(samples), readAll(source, new ArrayPcmTransfer(FRAME_SIZE)));
+        source.release();
+    }
+
+    @Test
+    public void wavReplayDecodes() throws IOException {
+        final String text = "the quick brown fox jumps over the lazy dog 0123456789\n";
+
+        for (final Mode mode : new Mode[] { ModeRegistry.QPSK31, ModeRegistry.QPSK63_INTERLEAVED }) {
+            final File file = Signals.wav(Signals.modulate(mode, Signals.HZ, RATE, text), RATE);
+
+            assertEquals(mode.getName(), text, Signals.receive(mode, Signals.HZ, new WavPcmSource(file)));
+        }
+    }
+
+    private static byte[] readAll(final PcmSource source, final PcmTransfer transfer) throws IOException {
+        return readAll(new PcmInputStream(source, transfer, null));
+    }
+
+    private static byte[] readAll(final PcmInputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] b = new byte[777];
+
+        for (int rc = in.read(b); rc != -1; rc = in.read(b)) {
+            out.write(b, 0, rc);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static short[] random(final int n, final long seed) {
+        final Random random = new Random(seed);
+        final short[] samples = new short[n];
+        for (int i = 0; i < n; ++i) {
+            samples[i] = (short) random.nextInt();
+        }
+
+        return samples;
+    }
+
+    private static byte[] bigEndian(final short[] samples) {
+        final ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.BIG_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+
+        return bytes.array();
+    }
+
+    /**
+     * Samples from an array, at whatever lengths are asked for.
+     */
+    private static class ArraySource implements PcmSource {
+
+        private final short[] samples;
+
+        private int position;
+
+        private ArraySource(final short[] samples) {
+            this.samples = samples;
+            this.position = 0;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return RATE;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(final short[] buffer, final int off, final int len) {
+            if (position == samples.length) {
+                return -1;
+            }
+
+            final int n = Math.min(len, samples.length - position);
+            System.arraycopy(samples, position, buffer, off, n);
+            position += n;
+
+            return n;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
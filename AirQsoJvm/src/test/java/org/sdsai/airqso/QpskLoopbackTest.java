@@ -0,0 +1,263 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends a pseudo-random sequence through a QPSK transmitter and receiver
+ * with {@link LoopbackTest} and counts the bit errors, and checks that the
+ * interleaved modes decode text exactly however the signal starts and make
+ * fewer errors than the plain modes through fades. It also runs the
+ * self-test through a WAV file and checks everything it measures.
+ */
+public class QpskLoopbackTest {
+
+    private static final Mode[] MODES = {
+        ModeRegistry.QPSK31,
+        ModeRegistry.QPSK63,
+        ModeRegistry.QPSK125,
+        ModeRegistry.QPSK31_INTERLEAVED,
+        ModeRegistry.QPSK63_INTERLEAVED
+    };
+
+    private static final Mode[] INTERLEAVED = { ModeRegistry.QPSK31_INTERLEAVED, ModeRegistry.QPSK63_INTERLEAVED };
+
+    /**
+     * The same rates without interleaving, in the order of {@link #INTERLEAVED}.
+     */
+    private static final Mode[] PLAIN = { ModeRegistry.QPSK31, ModeRegistry.QPSK63 };
+
+    private static final String TEXT = "a quick brown fox jumps over the lazy dog 0123456789\n";
+
+    /**
+     * Start offsets tried in each symbol period.
+     */
+    private static final int OFFSETS = 8;
+
+    private static final int[] RATES = { 8000, 11025, 22050 };
+
+    private static final int CHARACTERS = 200;
+
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Noise that clips now and then, about 20 dB below the signal across the whole band.
+     */
+    private static final double NOISE_RMS = 8000;
+
+    /**
+     * Bits the checker may spend finding the sequence.
+     */
+    private static final int SYNC_BITS = 20;
+
+    /**
+     * Fades of this many seconds, out of every {@link #FADE_PERIOD}, are
+     * longer than the decoder rides through but within the interleavers' span.
+     */
+    private static final double FADE_SECONDS = 0.8;
+    private static final double FADE_PERIOD = 2;
+
+    /**
+     * Noise under the fades, in decibels below the signal over {@link #FADE_BANDWIDTH}.
+     */
+    private static final double FADE_SNR_DB = 10;
+    private static final double FADE_BANDWIDTH = 2500;
+
+    @Test
+    public void cleanChannelHasNoErrors() throws IOException {
+        for (final Mode mode : MODES) {
+            for (final int rate : RATES) {
+                check(mode.getName() + " at " + rate + " Hz", new LoopbackTest(Signals.HZ, mode, CHARACTERS).runLoopback(rate, TIMEOUT_MILLIS));
+            }
+        }
+    }
+
+    @Test
+    public void noisyChannelHasNoErrors() throws IOException {
+        for (final Mode mode : MODES) {
+            for (final int rate : RATES) {
+                check(mode.getName() + " at " + rate + " Hz with noise", noisy(mode, rate, NOISE_RMS, rate));
+            }
+        }
+    }
+
+    /**
+     * Every measurement of a file run: the link is clean, so nothing is lost or
+     * in error, and the file is decoded without waiting on a capture thread.
+     */
+    @Test
+    public void fileRunMeasuresTheLink() throws IOException {
+        final File file = File.createTempFile("loopback", ".wav");
+        file.deleteOnExit();
+
+        final LoopbackTest.Result result =
+            new LoopbackTest(Signals.HZ, ModeRegistry.QPSK31, CHARACTERS).runFile(file, TIMEOUT_MILLIS);
+
+        check("File run", result);
+        assertEquals(result.toString(), 0, result.getBitErrorRate(), 0);
+        assertTrue(result.toString(), result.getSnrDb() > 20);
+        assertTrue(result.toString(), result.getLatencyNanos() >= 0);
+        assertTrue(result.toString(), result.getLatencyNanos() < TIMEOUT_MILLIS * 1000000L);
+
+        /* A 44 byte header, then 16 bit samples. */
+        assertEquals(result.toString(), (file.length() - 44) / 2, result.getSamplesSent());
+
+        assertEquals(result.toString(), 0, result.getOverruns());
+        assertEquals(result.toString(), 0, result.getUnderruns());
+    }
+
+    /**
+     * Nothing may be read before the text, as it was while the decoders' alignments were still being told apart.
+     */
+    @Test
+    public void interleavedModesDecodeExactTextFromAnyStart() throws IOException {
+        for (final Mode mode : INTERLEAVED) {
+            for (final int rate : RATES) {
+                final short[] signal = Signals.modulate(mode, Signals.HZ, rate, TEXT);
+                final int length = (int) Math.round(rate / mode.getSymbolRate());
+
+                for (int lead = 0; lead < length; lead += length / OFFSETS) {
+                    final short[] samples = Signals.concat(new short[lead], signal);
+
+                    assertEquals(
+                        mode.getName() + " at " + rate + " Hz starting " + lead + " samples in",
+                        TEXT,
+                        Signals.receive(mode, Signals.HZ, new Signals.ArraySource(samples, rate, 0)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Through fades and noise the interleaved modes must make fewer character errors than the plain ones.
+     */
+    @Test
+    public void interleavingLowersErrorsInFades() throws IOException {
+        final String text = TEXT + TEXT + TEXT + TEXT;
+        final int rate = 8000;
+
+        for (int i = 0; i < INTERLEAVED.length; ++i) {
+            for (long seed = 1; seed <= 3; ++seed) {
+                final double interleaved = fadedCharacterErrors(INTERLEAVED[i], rate, text, seed);
+                final double plain = fadedCharacterErrors(PLAIN[i], rate, text, seed);
+                final String what = INTERLEAVED[i].getName() + " " + interleaved + ", " + PLAIN[i].getName() + " " + plain;
+
+                assertTrue(what, plain > 0);
+                assertTrue(what, interleaved < plain / 2);
+            }
+        }
+    }
+
+    /**
+     * @return The character error rate of text sent through fades and noise.
+     */
+    private static double fadedCharacterErrors(final Mode mode, final int rate, final String text, final long seed)
+        throws IOException
+    {
+        final short[] signal = Signals.modulate(mode, Signals.HZ, rate, text);
+        final double rms = Signals.noiseRms(signal, rate, FADE_SNR_DB, FADE_BANDWIDTH);
+        final short[] faded = Signals.fade(signal, rate, FADE_PERIOD, FADE_SECONDS, seed * 0.37 * FADE_PERIOD % FADE_PERIOD);
+        final String decoded = Signals.receive(mode, Signals.HZ, new Signals.ArraySource(Signals.addNoise(faded, rms, seed), rate, 0));
+
+        return (double) editDistance(text, decoded) / text.length();
+    }
+
+    /**
+     * @return The fewest insertions, deletions and substitutions that turn a into b.
+     */
+    private static int editDistance(final String a, final String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+
+        for (int j = 0; j <= b.length(); ++j) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); ++i) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); ++j) {
+                final int substitute = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+            }
+
+            final int[] t = previous;
+            previous = current;
+            current = t;
+        }
+
+        return previous[b.length()];
+    }
+
+    private static void check(final String what, final LoopbackTest.Result result) {
+        assertTrue(what + ": " + result, result.getBits() >= CHARACTERS * 4 - SYNC_BITS);
+        assertEquals(what + ": " + result, 0, result.getBitErrors());
+        assertEquals(what + ": " + result, 0, result.getResyncs());
+    }
+
+    static LoopbackTest.Result noisy(final Mode mode, final int rate, final double noiseRms, final long seed) throws IOException {
+        final LoopbackPcm loopback = new LoopbackPcm(rate, 4096);
+        return new LoopbackTest(Signals.HZ, mode, CHARACTERS)
+            .run(new NoisyPcmSink(loopback.getSink(), noiseRms, seed), loopback.getSource(), TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Adds white Gaussian noise to everything written.
+     */
+    static class NoisyPcmSink implements PcmSink {
+
+        private final PcmSink sink;
+
+        private final double rms;
+
+        private final Random random;
+
+        private short[] noisy;
+
+        NoisyPcmSink(final PcmSink sink, final double rms, final long seed) {
+            this.sink = sink;
+            this.rms = rms;
+            this.random = new Random(seed);
+            this.noisy = new short[0];
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sink.getSampleRate();
+        }
+
+        @Override
+        public void start() throws IOException {
+            sink.start();
+        }
+
+        @Override
+        public void write(final short[] buffer, final int off, final int len) throws IOException {
+            if (noisy.length < len) {
+                noisy = new short[len];
+            }
+
+            for (int i = 0; i < len; ++i) {
+                final double x = buffer[off + i] + random.nextGaussian() * rms;
+                noisy[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(x)));
+            }
+
+            sink.write(noisy, 0, len);
+        }
+
+        @Override
+        public void stop() {
+            sink.stop();
+        }
+
+        @Override
+        public void release() {
+            sink.release();
+        }
+    }
+}
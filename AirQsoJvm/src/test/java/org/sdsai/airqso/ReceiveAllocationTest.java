@@ -0,0 +1,125 @@
+package org.sdsai.airqso;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts what {@link Bpsk.ReceiveThread}'s whole chain, from samples to decoded
+ * text, allocates once it is running. The samples come from memory rather than
+ * a file, since the JDK's own file reads may allocate now and then.
+ *
+ * The PSK31 case decodes through sdsai-dsp's {@link org.sdsai.dsp.BpskInputStream},
+ * so it needs the real library on the class path.
+ */
+public class ReceiveAllocationTest {
+
+    private static final String TEXT =
+        "the quick brown fox jumps over the lazy dog 0123456789 " +
+        "the quick brown fox jumps over the lazy dog 0123456789 " +
+        "the quick brown fox jumps over the lazy dog 0123456789\n";
+
+    /**
+     * Characters decoded before counting starts, by which time every buffer has been made.
+     */
+    private static final int WARMUP_CHARACTERS = 40;
+
+    @Test
+    public void noAllocationAtTheProcessingRate() throws IOException {
+        assertSteadyStateAllocates(ModeRegistry.QPSK31, 8000);
+    }
+
+    @Test
+    public void noAllocationWhileResampling() throws IOException {
+        assertSteadyStateAllocates(ModeRegistry.QPSK31, 44100);
+    }
+
+    @Test(timeout = 60000)
+    public void noAllocationDecodingPsk31() throws IOException {
+        assertSteadyStateAllocates(ModeRegistry.PSK31, 8000);
+    }
+
+    private void assertSteadyStateAllocates(final Mode mode, final int sampleRate) throws IOException {
+        final com.sun.management.ThreadMXBean threads = threadMXBean();
+
+        final short[] samples = Signals.modulate(mode, Signals.HZ, sampleRate, TEXT);
+
+        final AllocationProbe probe = new AllocationProbe(threads);
+
+        /* Run on this thread, which is the thread the probe is written from. */
+        new Bpsk.ReceiveThread(Signals.HZ, mode, probe, new Signals.ArraySource(samples, sampleRate, 0)).run();
+
+        assertEquals("[Receive started]\n" + TEXT, probe.text.toString());
+        assertTrue(probe.startBytes >= 0);
+        assertEquals("Bytes allocated after warming up", 0, probe.endBytes - probe.startBytes);
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        return threads;
+    }
+
+    /**
+     * Notes the writing thread's allocated bytes once warmed up and at every write after.
+     */
+    private static class AllocationProbe extends OutputStream {
+        private final com.sun.management.ThreadMXBean threads;
+
+        /**
+         * Sized up front so keeping the text allocates nothing.
+         */
+        private final StringBuilder text = new StringBuilder(TEXT.length() * 2);
+
+        private boolean started = false;
+
+        private long startBytes = -1;
+
+        private long endBytes = -1;
+
+        private AllocationProbe(final com.sun.management.ThreadMXBean threads) {
+            this.threads = threads;
+        }
+
+        @Override
+        public void write(final int b) {
+            text.append((char) b);
+            sample();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            for (int i = off; i < off + len; ++i) {
+                text.append((char) b[i]);
+            }
+            sample();
+        }
+
+        private void sample() {
+            final long id = Thread.currentThread().getId();
+
+            if (!started) {
+                if (text.length() >= WARMUP_CHARACTERS + "[Receive started]\n".length()) {
+                    started = true;
+                    startBytes = threads.getThreadAllocatedBytes(id);
+                    endBytes = startBytes;
+                }
+            }
+            else {
+                endBytes = threads.getThreadAllocatedBytes(id);
+            }
+        }
+    }
+}
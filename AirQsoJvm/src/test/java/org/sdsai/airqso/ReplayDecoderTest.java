@@ -0,0 +1,153 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.metrics.Snapshot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes generated recordings through {@link ReplayDecoder}, as one made on
+ * the air would be, with the squelch off and at its default threshold, and
+ * reports the share of samples squelched, the characters printed from noise
+ * and the DSP time taken.
+ */
+public class ReplayDecoderTest {
+
+    private static final int RATE = 8000;
+
+    private static final Mode MODE = ModeRegistry.QPSK31;
+
+    private static final double NOISE_RMS = 1000;
+
+    private static final String TEXT = "cq cq cq de airqso airqso k\n";
+
+    /**
+     * What the receiver writes before anything it decodes.
+     */
+    private static final String STARTED = "[Receive started]\n";
+
+    @Test
+    public void noiseIsSquelched() throws IOException {
+        for (long seed = 1; seed <= 3; ++seed) {
+            final File file = Signals.wav(Signals.addNoise(new short[RATE * 30], NOISE_RMS, seed), RATE);
+            final Decoded off = decode(file, Double.NaN);
+            final Decoded on = decode(file, SquelchPcmSource.DEFAULT_THRESHOLD_DB);
+            final String what = "Seed " + seed + ": off " + off + ", on " + on;
+
+            System.err.println("Noise. " + what);
+
+            assertTrue(what, on.squelched() > 0.95);
+            assertTrue(what, on.characters() <= 2);
+            assertTrue(what, on.characters() < off.characters());
+        }
+    }
+
+    /**
+     * Five seconds of noise, text at the SNR given in 2500 Hz, then noise to make thirty seconds.
+     */
+    @Test
+    public void signalIsDecodedThroughTheSquelch() throws IOException {
+        final short[] signal = Signals.modulate(MODE, Signals.HZ, RATE, TEXT);
+
+        for (final double snrDb : new double[] { 20, 10, 0 }) {
+            final short[] scaled = scale(signal, NOISE_RMS / Signals.noiseRms(signal, RATE, snrDb, 2500));
+            final short[] in = Signals.concat(
+                Signals.silence(RATE, 5),
+                scaled,
+                new short[Math.max(0, RATE * 25 - scaled.length)]);
+            final File file = Signals.wav(Signals.addNoise(in, NOISE_RMS, (long) snrDb), RATE);
+            final Decoded off = decode(file, Double.NaN);
+            final Decoded on = decode(file, SquelchPcmSource.DEFAULT_THRESHOLD_DB);
+            final String what = snrDb + " dB: off " + off + ", on " + on;
+
+            System.err.println("Signal at " + what);
+
+            assertTrue(what, on.text.contains(TEXT.trim()));
+
+            /* About the noise either side of the transmission, less what the hang time lets through. */
+            final double noise = 1 - (double) (scaled.length + RATE) / in.length;
+            assertTrue(what, on.squelched() > noise / 2);
+            assertTrue(what, on.squelched() <= noise);
+        }
+    }
+
+    private static Decoded decode(final File file, final double squelchThresholdDb) throws IOException {
+        final ReplayDecoder decoder = new ReplayDecoder(Signals.HZ, MODE);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        decoder.setSquelchThresholdDb(squelchThresholdDb);
+
+        final long start = System.nanoTime();
+        final Snapshot metrics = decoder.decode(file, out);
+
+        final long nanos = System.nanoTime() - start;
+        final String text = out.toString("US-ASCII");
+
+        assertTrue(text, text.startsWith(STARTED));
+
+        return new Decoded(text.substring(STARTED.length()), metrics, nanos);
+    }
+
+    private static short[] scale(final short[] samples, final double gain) {
+        final short[] scaled = new short[samples.length];
+
+        for (int i = 0; i < samples.length; ++i) {
+            scaled[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(samples[i] * gain)));
+        }
+
+        return scaled;
+    }
+
+    private static class Decoded {
+
+        private final String text;
+
+        private final Snapshot metrics;
+
+        private final long nanos;
+
+        Decoded(final String text, final Snapshot metrics, final long nanos) {
+            this.text = text;
+            this.metrics = metrics;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The characters decoded.
+         */
+        int characters() {
+            return text.length();
+        }
+
+        /**
+         * @return The share of samples the demodulator was spared.
+         */
+        double squelched() {
+            final double squelched = metrics.get("rx.squelched_samples");
+
+            return Double.isNaN(squelched) ? 0 : squelched / metrics.get("rx.samples");
+        }
+
+        /**
+         * @return The time spent in the receive chain, in milliseconds.
+         */
+        double dspMillis() {
+            return metrics.get("rx.dsp.count") * metrics.get("rx.dsp.mean_us") / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%d characters, %.0f%% squelched, %.1f ms DSP of %.0f ms",
+                characters(),
+                squelched() * 100,
+                dspMillis(),
+                nanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.sdsai.airqso;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResamplingPcmSourceTest {
+
+    private static final String TEXT = "cq cq de k1abc k1abc pse k\n";
+
+    @Test
+    public void readsAtTheOutputRate() throws IOException {
+        final short[] in = Signals.tone(1000, 44100, 2, 10000);
+        final ResamplingPcmSource source = new ResamplingPcmSource(
+            new Signals.ArraySource(in, 44100, 0),
+            8000,
+            1100,
+            1411);
+
+        assertEquals(8000, source.getSampleRate());
+
+        /* Read in pieces that do not line up with the frames read from the source. */
+        final short[] frame = new short[100];
+        int total = 0;
+        int rc;
+        source.start();
+        while ((rc = source.read(frame, 0, frame.length)) != -1) {
+            total += rc;
+        }
+
+        assertEquals(16000, total, 1);
+    }
+
+    /**
+     * Audio captured at a hardware rate above what the mode needs is demodulated at 8000 Hz.
+     */
+    @Test
+    public void decodesAtAReducedProcessingRate() throws IOException {
+        for (final Mode mode : new Mode[] { ModeRegistry.QPSK31, ModeRegistry.QPSK63 }) {
+            for (final int captureRate : new int[] { 16000, 22050, 44100, 48000 }) {
+                final short[] signal = Signals.modulate(mode, Signals.HZ, captureRate, TEXT);
+                final short[] noisy = Signals.addNoise(signal, Signals.noiseRms(signal, captureRate, 10, 2500), captureRate);
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final Bpsk.ReceiveThread receive = new Bpsk.ReceiveThread(
+                    Signals.HZ,
+                    mode,
+                    out,
+                    new WavPcmSource(Signals.wav(noisy, captureRate)));
+
+                final String what = mode.getName() + " captured at " + captureRate + " Hz";
+                assertEquals(what, captureRate, receive.getSampleRate());
+                assertEquals(what, 8000, receive.getProcessingRate());
+
+                receive.run();
+
+                assertEquals(what, "[Receive started]\n" + TEXT, out.toString("US-ASCII"));
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.compress.TextCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test signals: modulated text, noise, tones, and WAV files of them.
+ */
+public final class Signals {
+
+    /**
+     * The carrier frequency tests use unless they say otherwise.
+     */
+    public static final int HZ = 1000;
+
+    /**
+     * Samples moved between the modem streams and PCM at a time, as {@link Bpsk} does.
+     */
+    private static final int FRAME_SIZE = 1024;
+
+    private Signals() {
+    }
+
+    /**
+     * @return text sent in mode at sampleRate, with a preamble and postamble, at about a quarter of full scale.
+     */
+    public static short[] modulate(final Mode mode, final int hz, final int sampleRate, final String text)
+        throws IOException
+    {
+        return modulate(mode, hz, sampleRate, text, 32);
+    }
+
+    /**
+     * @param preamble Idle symbols sent before the text.
+     *
+     * @return text sent in mode at sampleRate, with a preamble and postamble, at about a quarter of full scale.
+     */
+    public static short[] modulate(final Mode mode, final int hz, final int sampleRate, final String text, final int preamble)
+        throws IOException
+    {
+        return modulate(mode, hz, sampleRate, text, preamble, null);
+    }
+
+    /**
+     * @param preamble Idle symbols sent before the text.
+     * @param codec How to compress the text, or null to send it as it is.
+     *
+     * @return text sent in mode at sampleRate, with a preamble and postamble, at about a quarter of full scale.
+     */
+    public static short[] modulate(
+        final Mode mode,
+        final int hz,
+        final int sampleRate,
+        final String text,
+        final int preamble,
+        final TextCodec codec
+    )
+        throws IOException
+    {
+        final ArraySink sink = new ArraySink(sampleRate);
+        final ModemOutputStream modulator = mode.newOutputStream(new PcmOutputStream(sink, FRAME_SIZE), hz, sampleRate);
+        final ModemOutputStream out = codec == null ? modulator : codec.compress(modulator);
+
+        out.preamble(preamble);
+        out.write(text.getBytes("US-ASCII"));
+        out.postamble(32);
+        out.flush();
+
+        final short[] samples = sink.toArray();
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] /= 4;
+        }
+
+        return samples;
+    }
+
+    /**
+     * Run a {@link Bpsk.ReceiveThread} on source to the end, on this thread.
+     *
+     * @return The text decoded.
+     */
+    public static String receive(final Mode mode, final int hz, final PcmSource source) throws IOException {
+        return receive(mode, hz, source, null);
+    }
+
+    /**
+     * Run a {@link Bpsk.ReceiveThread} on source to the end, on this thread.
+     *
+     * @param codec How the text was compressed, or null if it was not.
+     *
+     * @return The text decoded.
+     */
+    public static String receive(final Mode mode, final int hz, final PcmSource source, final TextCodec codec)
+        throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Bpsk.ReceiveThread receiveThread = new Bpsk.ReceiveThread(hz, mode, out, source);
+
+        receiveThread.setCodec(codec);
+        receiveThread.run();
+
+        return out.toString("US-ASCII").replace("[Receive started]\n", "");
+    }
+
+    /**
+     * @return seconds of silence.
+     */
+    public static short[] silence(final int sampleRate, final double seconds) {
+        return new short[(int) (sampleRate * seconds)];
+    }
+
+    /**
+     * @return A tone at hz of the given peak amplitude.
+     */
+    public static short[] tone(final double hz, final int sampleRate, final double seconds, final double amplitude) {
+        final short[] samples = new short[(int) (sampleRate * seconds)];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / sampleRate));
+        }
+
+        return samples;
+    }
+
+    /**
+     * Add white Gaussian noise, clipping at full scale.
+     *
+     * @param rms The noise's RMS amplitude.
+     */
+    public static short[] addNoise(final short[] samples, final double rms, final long seed) {
+        final Random random = new Random(seed);
+        final short[] noisy = new short[samples.length];
+
+        for (int i = 0; i < samples.length; ++i) {
+            noisy[i] = clip(samples[i] + random.nextGaussian() * rms);
+        }
+
+        return noisy;
+    }
+
+    /**
+     * Fade samples out and back in, smoothly, for seconds out of every period.
+     *
+     * @param offset Seconds into the first period the signal starts.
+     *
+     * @return The faded samples.
+     */
+    public static short[] fade(
+        final short[] samples,
+        final int sampleRate,
+        final double period,
+        final double seconds,
+        final double offset
+    )
+    {
+        final int p = (int) (period * sampleRate);
+        final int length = (int) (seconds * sampleRate);
+        final int start = (int) (offset * sampleRate);
+        final short[] faded = new short[samples.length];
+
+        for (int i = 0; i < samples.length; ++i) {
+            final int k = (i + start) % p;
+            final double gain = k < length ? 0.5 + 0.5 * Math.cos(2 * Math.PI * k / length) : 1;
+            faded[i] = clip(samples[i] * gain);
+        }
+
+        return faded;
+    }
+
+    /**
+     * @return The RMS amplitude of noise that gives snrDb over bandwidth hz, for a signal of samples.
+     */
+    public static double noiseRms(final short[] samples, final int sampleRate, final double snrDb, final double bandwidth) {
+        double power = 0;
+        for (final short s : samples) {
+            power += (double) s * s;
+        }
+        power /= samples.length;
+
+        /* Noise power spread over the whole band to sampleRate / 2. */
+        return Math.sqrt(power / Math.pow(10, snrDb / 10) * (sampleRate / 2.0) / bandwidth);
+    }
+
+    /**
+     * @return The sum of the signals, each starting at the start, clipped at full scale.
+     */
+    public static short[] mix(final short[]... signals) {
+        int length = 0;
+        for (final short[] s : signals) {
+            length = Math.max(length, s.length);
+        }
+
+        final short[] mixed = new short[length];
+        for (int i = 0; i < length; ++i) {
+            double sum = 0;
+            for (final short[] s : signals) {
+                if (i < s.length) {
+                    sum += s[i];
+                }
+            }
+            mixed[i] = clip(sum);
+        }
+
+        return mixed;
+    }
+
+    /**
+     * @return The signals one after another.
+     */
+    public static short[] concat(final short[]... signals) {
+        int length = 0;
+        for (final short[] s : signals) {
+            length += s.length;
+        }
+
+        final short[] joined = new short[length];
+        int at = 0;
+        for (final short[] s : signals) {
+            System.arraycopy(s, 0, joined, at, s.length);
+            at += s.length;
+        }
+
+        return joined;
+    }
+
+    /**
+     * Write samples to a new WAV file that is deleted when the JVM exits.
+     */
+    public static File wav(final short[] samples, final int sampleRate) throws IOException {
+        final File file = File.createTempFile("airqso", ".wav");
+        file.deleteOnExit();
+
+        final WavPcmSink sink = new WavPcmSink(file, sampleRate);
+        sink.start();
+        sink.write(samples, 0, samples.length);
+        sink.release();
+
+        return file;
+    }
+
+    private static short clip(final double sample) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+    }
+
+    /**
+     * Reads samples from an array, optionally no faster than a multiple of real time.
+     */
+    public static class ArraySource implements PcmSource {
+        private final short[] samples;
+
+        private final int sampleRate;
+
+        /**
+         * How many times faster than real time samples are handed out, or 0 for as fast as they are read.
+         */
+        private final double speed;
+
+        private int position;
+
+        private long started;
+
+        private volatile boolean released;
+
+        public ArraySource(final short[] samples, final int sampleRate, final double speed) {
+            this.samples = samples;
+            this.sampleRate = sampleRate;
+            this.speed = speed;
+            this.position = 0;
+            this.released = false;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void start() {
+            started = System.nanoTime();
+        }
+
+        @Override
+        public int read(final short[] buffer, final int off, final int len) throws IOException {
+            if (released || position == samples.length) {
+                return -1;
+            }
+
+            final int n = Math.min(len, samples.length - position);
+
+            if (speed > 0) {
+                final long due = started + (long) ((position + n) * 1e9 / sampleRate / speed);
+                final long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    }
+                    catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted.");
+                    }
+                }
+            }
+
+            System.arraycopy(samples, position, buffer, off, n);
+            position += n;
+
+            return n;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    /**
+     * Keeps everything written to it.
+     */
+    public static class ArraySink implements PcmSink {
+        private final int sampleRate;
+
+        private short[] samples;
+
+        private int count;
+
+        public ArraySink(final int sampleRate) {
+            this.sampleRate = sampleRate;
+            this.samples = new short[sampleRate];
+            this.count = 0;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public synchronized void write(final short[] buffer, final int off, final int len) {
+            if (count + len > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + len));
+            }
+
+            System.arraycopy(buffer, off, samples, count, len);
+            count += len;
+        }
+
+        /**
+         * @return The samples written so far.
+         */
+        public synchronized short[] toArray() {
+            return Arrays.copyOf(samples, count);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
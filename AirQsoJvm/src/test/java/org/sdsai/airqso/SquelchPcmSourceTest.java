@@ -0,0 +1,190 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.dsp.SignalPresence;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks when a {@link SquelchPcmSource} opens and closes: never on noise,
+ * on a carrier soon enough that the audio it holds back still reaches back to
+ * the carrier's start, and only after the carrier has stayed below the closing
+ * level, the hysteresis below the threshold, for the hang time.
+ */
+public class SquelchPcmSourceTest {
+
+    private static final int RATE = 8000;
+
+    private static final Mode MODE = ModeRegistry.QPSK31;
+
+    private static final int FRAME_SIZE = 256;
+
+    private static final double NOISE_RMS = 1000;
+
+    /**
+     * Blocks of audio the squelch judges at a time and holds back, as in {@link SquelchPcmSource}.
+     */
+    private static final int BLOCK = new SignalPresence(RATE, Signals.HZ, MODE.getSymbolRate(), 0).getBlockSize();
+
+    private static final int LEAD_BLOCKS = 3;
+
+    private static final double HYSTERESIS_DB = 3;
+
+    private static final int HANG = RATE;
+
+    private static final String TEXT = "cq cq cq de airqso airqso k\n";
+
+    @Test
+    public void staysClosedOnNoise() throws IOException {
+        for (long seed = 1; seed <= 4; ++seed) {
+            final short[] noise = Signals.addNoise(new short[RATE * 20], NOISE_RMS, seed);
+            final SquelchPcmSource squelch = squelch(noise);
+
+            assertEquals("Seed " + seed, 0, readAll(squelch).length);
+            assertFalse(squelch.isOpen());
+
+            /* All but what is held back in case a signal starts. */
+            assertEquals(noise.length - LEAD_BLOCKS * BLOCK, squelch.getSquelchedSamples().get());
+        }
+    }
+
+    @Test
+    public void staysClosedOnACarrierOutsideTheBand() throws IOException {
+        final short[] in = Signals.addNoise(Signals.tone(Signals.HZ + 300, RATE, 10, 8000), NOISE_RMS, 5);
+
+        assertEquals(0, readAll(squelch(in)).length);
+    }
+
+    @Test
+    public void opensWithinTheLeadOnACarrier() throws IOException {
+        for (final double lead : new double[] { 1, 1.3, 2.7, 3.05 }) {
+            final short[] noise = Signals.silence(RATE, lead);
+            final short[] in = Signals.addNoise(
+                Signals.concat(noise, Signals.modulate(MODE, Signals.HZ, RATE, TEXT)),
+                NOISE_RMS,
+                (long) (lead * 100));
+            final SquelchPcmSource squelch = squelch(in);
+            final short[] out = readAll(squelch);
+            final int from = find(in, out);
+            final String what = lead + " s of noise first, returned from " + from;
+
+            /* Opened on the carrier, not on the noise before it, and soon enough that none of it is lost. */
+            assertTrue(what, from <= noise.length);
+            assertTrue(what, from >= noise.length - LEAD_BLOCKS * BLOCK);
+
+            /* Everything after that is passed on, in order. */
+            assertTrue(what, Arrays.equals(Arrays.copyOfRange(in, from, from + out.length), out));
+            final String decoded = Signals.receive(MODE, Signals.HZ, new Signals.ArraySource(out, RATE, 0));
+            assertTrue(what + ": " + decoded, decoded.endsWith(TEXT));
+        }
+    }
+
+    @Test
+    public void closesAfterTheHangTime() throws IOException {
+        final short[] signal = Signals.modulate(MODE, Signals.HZ, RATE, TEXT);
+        final short[] in = Signals.addNoise(
+            Signals.concat(Signals.silence(RATE, 1), signal, Signals.silence(RATE, 5)),
+            NOISE_RMS,
+            6);
+        final SquelchPcmSource squelch = squelch(in);
+        final short[] out = readAll(squelch);
+
+        assertFalse(squelch.isOpen());
+
+        /* Held open for the hang time after the carrier ends, and a block or two to notice it had. */
+        final int after = find(in, out) + out.length - RATE - signal.length;
+        assertTrue("Open " + after + " samples after the carrier", after >= HANG - BLOCK);
+        assertTrue("Open " + after + " samples after the carrier", after <= HANG + LEAD_BLOCKS * BLOCK);
+    }
+
+    /**
+     * A carrier that fades to between the closing and opening levels holds the
+     * squelch open. Faded to well below the closing level, it lets it close.
+     */
+    @Test
+    public void closesWithHysteresis() throws IOException {
+        final short[] weak = Signals.tone(Signals.HZ, RATE, 5, 300);
+        final double ratio = meanRatioDb(Signals.addNoise(weak, NOISE_RMS, 7));
+        final short[] fade = Signals.addNoise(Signals.concat(Signals.tone(Signals.HZ, RATE, 2, 8000), weak), NOISE_RMS, 8);
+
+        /* Half the hysteresis below the threshold, and so above the closing level. */
+        final SquelchPcmSource held = squelch(fade);
+        held.setThresholdDb(ratio + HYSTERESIS_DB / 2);
+        final short[] out = readAll(held);
+
+        assertTrue("Ratio " + ratio + " dB", held.isOpen());
+        assertEquals(fade.length, out.length, LEAD_BLOCKS * BLOCK + FRAME_SIZE);
+
+        /* Well below the closing level, allowing for the few decibels the ratio wanders from block to block. */
+        final SquelchPcmSource closed = squelch(fade);
+        closed.setThresholdDb(ratio + HYSTERESIS_DB + 6);
+        final int length = readAll(closed).length;
+
+        assertFalse("Ratio " + ratio + " dB", closed.isOpen());
+        assertTrue("Open for " + length + " samples", length < fade.length - RATE);
+    }
+
+    @Test
+    public void disabledPassesEverything() throws IOException {
+        final short[] noise = Signals.addNoise(new short[RATE * 2], NOISE_RMS, 10);
+        final SquelchPcmSource squelch = squelch(noise);
+        squelch.setEnabled(false);
+
+        assertTrue(squelch.isOpen());
+        assertTrue(Arrays.equals(noise, readAll(squelch)));
+        assertEquals(0, squelch.getSquelchedSamples().get());
+    }
+
+    private static SquelchPcmSource squelch(final short[] samples) {
+        return new SquelchPcmSource(new Signals.ArraySource(samples, RATE, 0), Signals.HZ, MODE.getSymbolRate(), 0);
+    }
+
+    /**
+     * @return The mean of the ratios the squelch judges the samples by, block by block.
+     */
+    private static double meanRatioDb(final short[] samples) {
+        final SignalPresence presence = new SignalPresence(RATE, Signals.HZ, MODE.getSymbolRate(), 0);
+        double sum = 0;
+        int n = 0;
+
+        for (int off = 0; off + BLOCK <= samples.length; off += BLOCK) {
+            assertTrue(presence.add(samples, off, BLOCK));
+            sum += presence.getRatioDb();
+            ++n;
+        }
+
+        return sum / n;
+    }
+
+    private static short[] readAll(final PcmSource source) throws IOException {
+        final Signals.ArraySink out = new Signals.ArraySink(RATE);
+        final short[] frame = new short[FRAME_SIZE];
+
+        for (int rc = source.read(frame, 0, frame.length); rc != -1; rc = source.read(frame, 0, frame.length)) {
+            out.write(frame, 0, rc);
+        }
+
+        return out.toArray();
+    }
+
+    /**
+     * @return Where in samples what was read starts.
+     */
+    private static int find(final short[] samples, final short[] read) {
+        assertTrue(read.length > 64);
+
+        for (int i = 0; i + 64 <= samples.length; ++i) {
+            if (Arrays.equals(Arrays.copyOfRange(samples, i, i + 64), Arrays.copyOfRange(read, 0, 64))) {
+                return i;
+            }
+        }
+
+        throw new AssertionError("Not read from the samples.");
+    }
+}
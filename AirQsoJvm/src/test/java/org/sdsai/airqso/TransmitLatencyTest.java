@@ -0,0 +1,283 @@
+package org.sdsai.airqso;
+
+import org.sdsai.airqso.util.TextQueue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures keypress to air latency: the time from a character being queued,
+ * after idling, to a simulated sound device starting to play it.
+ */
+public class TransmitLatencyTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static final Mode MODE = ModeRegistry.QPSK31;
+
+    private static final long SYMBOL_NANOS = (long) (1e9 / MODE.getSymbolRate());
+
+    /**
+     * Ten symbols, as {@link Bpsk#findAudioPlay(double)} asks for.
+     */
+    private static final int DEVICE_BUFFER = (int) (SAMPLE_RATE / MODE.getSymbolRate() * 10);
+
+    private static final int TRIALS = 6;
+
+    /**
+     * Allowance for the test's and the transmitter's threads being scheduled late.
+     */
+    private static final long SLACK_NANOS = 30000000L;
+
+    @Test(timeout = 30000)
+    public void characterIsHeardWithinTheLeadAndASymbol() throws Exception {
+        final Device device = new Device(SAMPLE_RATE, DEVICE_BUFFER);
+        final long[] latencies = measure(device, device);
+
+        for (final long latency : latencies) {
+            assertTrue("Keypress to air " + latency / 1000000 + " ms", latency < 40000000L + SYMBOL_NANOS + SLACK_NANOS);
+        }
+
+        assertEquals("Device underruns", 0, device.underruns);
+    }
+
+    @Test(timeout = 30000)
+    public void reportedLatencyIsTheLatencyToAir() throws Exception {
+        final Device device = new Device(SAMPLE_RATE, DEVICE_BUFFER);
+        final TextQueue queue = new TextQueue(16);
+        final Bpsk.TransmitThread transmit = new Bpsk.TransmitThread(Signals.HZ, MODE, queue, device);
+        transmit.start();
+
+        try {
+            for (int i = 0; i < TRIALS; ++i) {
+                final long latency = trial(device, queue);
+                assertEquals(latency / 1e6, transmit.getLastLatencyNanos() / 1e6, 10.0);
+            }
+        }
+        finally {
+            transmit.stopTransmit();
+        }
+    }
+
+    /**
+     * Without being told how much is queued, the transmitter keeps the device
+     * buffer full and a character waits behind all of it.
+     */
+    @Test(timeout = 30000)
+    public void aFullDeviceBufferIsHeardFirst() throws Exception {
+        final Device device = new Device(SAMPLE_RATE, DEVICE_BUFFER);
+        final long[] latencies = measure(device, new PlainSink(device));
+
+        for (final long latency : latencies) {
+            assertTrue("Keypress to air " + latency / 1000000 + " ms", latency > 8 * SYMBOL_NANOS);
+        }
+    }
+
+    private static long[] measure(final Device device, final PcmSink sink) throws Exception {
+        final TextQueue queue = new TextQueue(16);
+        final Bpsk.TransmitThread transmit = new Bpsk.TransmitThread(Signals.HZ, MODE, queue, sink);
+        final long[] latencies = new long[TRIALS];
+
+        transmit.start();
+        try {
+            for (int i = 0; i < TRIALS; ++i) {
+                latencies[i] = trial(device, queue);
+            }
+        }
+        finally {
+            transmit.stopTransmit();
+        }
+
+        return latencies;
+    }
+
+    /**
+     * Idle for a while, then queue a character and wait for it to reach the device.
+     *
+     * @return Nanoseconds from queueing the character to the device starting to play it.
+     */
+    private static long trial(final Device device, final TextQueue queue) throws InterruptedException {
+        /* Idle for a time that is not a whole number of symbols, so trials land at different points in a symbol. */
+        Thread.sleep(300 + (long) (Math.random() * SYMBOL_NANOS / 1000000));
+
+        device.watch(queue, queue.getTaken() + 1);
+        final long offered = System.nanoTime();
+        queue.offer('e');
+
+        return device.awaitAir() - offered;
+    }
+
+    /**
+     * A sound device that plays samples at its sample rate from a buffer of fixed size.
+     */
+    private static class Device implements QueuedPcmSink {
+
+        private final int sampleRate;
+
+        private final int capacity;
+
+        private long written;
+
+        /**
+         * Samples played, which trails {@link #written} by whatever is queued.
+         */
+        private double played;
+
+        private long updated;
+
+        private boolean playing;
+
+        private boolean released;
+
+        private int underruns;
+
+        private TextQueue watched;
+
+        private long watchedTaken;
+
+        /**
+         * When the watched character starts to play, or 0 until it is written.
+         */
+        private long air;
+
+        Device(final int sampleRate, final int capacity) {
+            this.sampleRate = sampleRate;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Play up to now. Once playing, running out of samples is an underrun.
+         */
+        private void advance() {
+            final long now = System.nanoTime();
+
+            if (playing) {
+                played += (now - updated) * (double) sampleRate / 1e9;
+                if (played > written) {
+                    played = written;
+                    playing = false;
+                    ++underruns;
+                }
+            }
+
+            updated = now;
+        }
+
+        /**
+         * Note when the first samples written after queue has had taken characters start playing.
+         */
+        synchronized void watch(final TextQueue queue, final long taken) {
+            this.watched = queue;
+            this.watchedTaken = taken;
+            this.air = 0;
+        }
+
+        synchronized long awaitAir() throws InterruptedException {
+            while (air == 0) {
+                wait();
+            }
+
+            return air;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public synchronized int getQueuedSamples() {
+            advance();
+            return (int) (written - (long) played);
+        }
+
+        @Override
+        public void write(final short[] buffer, final int off, final int len) throws IOException {
+            int done = 0;
+            while (done < len) {
+                final long full;
+
+                synchronized (this) {
+                    if (released) {
+                        throw new IOException("Released.");
+                    }
+
+                    advance();
+
+                    if (watched != null && watched.getTaken() >= watchedTaken) {
+                        air = updated + (long) ((written - played) * 1e9 / sampleRate);
+                        watched = null;
+                        notifyAll();
+                    }
+
+                    final int n = (int) Math.min(len - done, capacity - (written - (long) played));
+                    if (n > 0) {
+                        written += n;
+                        done += n;
+                        playing = true;
+                        continue;
+                    }
+
+                    full = (long) ((written - played - capacity + 1) * 1e9 / sampleRate);
+                }
+
+                LockSupport.parkNanos(Math.max(full, 100000L));
+            }
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public synchronized void release() {
+            released = true;
+        }
+    }
+
+    /**
+     * Hides that the device can tell how much it holds.
+     */
+    private static class PlainSink implements PcmSink {
+
+        private final PcmSink sink;
+
+        PlainSink(final PcmSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sink.getSampleRate();
+        }
+
+        @Override
+        public void start() throws IOException {
+            sink.start();
+        }
+
+        @Override
+        public void write(final short[] buffer, final int off, final int len) throws IOException {
+            sink.write(buffer, off, len);
+        }
+
+        @Override
+        public void stop() {
+            sink.stop();
+        }
+
+        @Override
+        public void release() {
+            sink.release();
+        }
+    }
+}
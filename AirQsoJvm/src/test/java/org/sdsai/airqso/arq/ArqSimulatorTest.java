@@ -0,0 +1,159 @@
+package org.sdsai.airqso.arq;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends messages over {@link ArqSimulator}'s lossy link.
+ */
+public class ArqSimulatorTest {
+
+    /**
+     * About PSK31's speed with the characters frames are written in.
+     */
+    private static final double CHARS_PER_SECOND = 4;
+
+    private static final int MESSAGE_LENGTH = 1000;
+
+    private static final double MAX_SECONDS = 24 * 60 * 60;
+
+    @Test
+    public void cleanLinkSendsEachFrameOnce() {
+        final ArqSimulator.Result result = new ArqSimulator(CHARS_PER_SECOND, 0, 0, 1).transfer(message(1), MAX_SECONDS);
+
+        assertTrue(result.toString(), result.delivered);
+        assertEquals(result.toString(), 0, result.retransmissions);
+        assertEquals(result.toString(), (MESSAGE_LENGTH + Frame.MAX_PAYLOAD - 1) / Frame.MAX_PAYLOAD, result.framesSent);
+    }
+
+    @Test
+    public void deliversUnderCharacterLoss() {
+        for (final double drop : new double[] { 0.002, 0.01, 0.02 }) {
+            for (long seed = 1; seed <= 4; ++seed) {
+                final ArqSimulator.Result result =
+                    new ArqSimulator(CHARS_PER_SECOND, drop, 0, seed).transfer(message(seed), MAX_SECONDS);
+                final String what = "drop " + drop + " seed " + seed + ": " + result;
+
+                assertTrue(what, result.delivered);
+                assertTrue(what, result.retransmissions > 0);
+            }
+        }
+    }
+
+    @Test
+    public void deliversUnderCharacterDamage() {
+        for (long seed = 1; seed <= 4; ++seed) {
+            final ArqSimulator.Result result =
+                new ArqSimulator(CHARS_PER_SECOND, 0.005, 0.005, seed).transfer(message(seed), MAX_SECONDS);
+
+            assertTrue(result.toString(), result.delivered);
+        }
+    }
+
+    @Test
+    public void lossShrinksTheWindow() {
+        final ArqSimulator.Result clean = new ArqSimulator(CHARS_PER_SECOND, 0, 0, 1).transfer(message(1), MAX_SECONDS);
+        final ArqSimulator.Result lossy = new ArqSimulator(CHARS_PER_SECOND, 0.02, 0, 1).transfer(message(1), MAX_SECONDS);
+
+        assertTrue(clean + " / " + lossy, lossy.finalWindow < clean.finalWindow);
+        assertTrue(clean + " / " + lossy, lossy.getGoodput(MESSAGE_LENGTH) < clean.getGoodput(MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void framesSurviveTheirText() {
+        final byte[] payload = message(2);
+        final Frame data = Frame.data(200, true, payload, 7, Frame.MAX_PAYLOAD);
+        final Frame ack = Frame.ack(17, 0x80000001);
+
+        final Frame d = parse(data).get(0);
+        assertEquals(Frame.DATA, d.getType());
+        assertEquals(200, d.getSequence());
+        assertTrue(d.isLast());
+        assertArrayEquals(Arrays.copyOfRange(payload, 7, 7 + Frame.MAX_PAYLOAD), d.getPayload());
+
+        final Frame a = parse(ack).get(0);
+        assertEquals(Frame.ACK, a.getType());
+        assertEquals(17, a.getSequence());
+        assertEquals(0x80000001, a.getMask());
+    }
+
+    @Test
+    public void damagedFramesAreDropped() {
+        final Random random = new Random(3);
+        final String digits = digits(random);
+        final StringBuilder text = new StringBuilder();
+        FrameCodec.encode(Frame.data(3, false, message(3), 0, Frame.MAX_PAYLOAD), text);
+
+        for (int i = 0; i < 100; ++i) {
+            final StringBuilder damaged = new StringBuilder(text);
+            final int at = 1 + random.nextInt(damaged.length() - 2);
+            final int digit = digits.indexOf(damaged.charAt(at));
+
+            /* Another digit, so only the CRC can tell. */
+            damaged.setCharAt(at, digits.charAt((digit + 1 + random.nextInt(digits.length() - 1)) % digits.length()));
+
+            assertTrue(damaged.toString(), parse(damaged).isEmpty());
+        }
+    }
+
+    /**
+     * @return The characters frames are written in, found by writing random frames.
+     */
+    private static String digits(final Random random) {
+        final StringBuilder text = new StringBuilder();
+        final byte[] payload = new byte[Frame.MAX_PAYLOAD];
+        for (int i = 0; i < 100; ++i) {
+            random.nextBytes(payload);
+            FrameCodec.encode(Frame.data(i, false, payload, 0, payload.length), text);
+        }
+
+        final StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (c != FrameCodec.START && c != FrameCodec.END && digits.indexOf(String.valueOf(c)) < 0) {
+                digits.append(c);
+            }
+        }
+
+        assertEquals(32, digits.length());
+        return digits.toString();
+    }
+
+    private static byte[] message(final long seed) {
+        final byte[] message = new byte[MESSAGE_LENGTH];
+        new Random(seed).nextBytes(message);
+
+        return message;
+    }
+
+    private static List<Frame> parse(final Frame frame) {
+        final StringBuilder text = new StringBuilder();
+        FrameCodec.encode(frame, text);
+
+        return parse(text);
+    }
+
+    private static List<Frame> parse(final CharSequence text) {
+        final List<Frame> frames = new ArrayList<Frame>();
+        final FrameCodec.Parser parser = new FrameCodec.Parser(new FrameCodec.Listener() {
+            @Override
+            public void onFrame(final Frame frame) {
+                frames.add(frame);
+            }
+        });
+
+        for (int i = 0; i < text.length(); ++i) {
+            parser.write(text.charAt(i));
+        }
+
+        return frames;
+    }
+}
@@ -0,0 +1,163 @@
+package org.sdsai.airqso.compress;
+
+import org.sdsai.airqso.ModeRegistry;
+import org.sdsai.airqso.ModemOutputStream;
+import org.sdsai.airqso.Signals;
+import org.sdsai.airqso.util.TextQueue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DictionaryCodecTest {
+
+    private static final String QSO =
+        "CQ CQ de W1AW W1AW\n" +
+        "W1AW de K2ABC thanks for the call. Your RST 599 599. My name is Bob and my QTH is Albany.\n" +
+        "How copy? K2ABC de W1AW QSL 73\n";
+
+    private final DictionaryCodec codec = new DictionaryCodec();
+
+    @Test
+    public void phrasesRoundTripShorter() throws IOException {
+        final Capture air = new Capture();
+        send(QSO, air);
+
+        assertEquals(QSO, receive(air.toByteArray()));
+        assertTrue(air.size() + " of " + QSO.length(), air.size() < QSO.length() * 3 / 4);
+    }
+
+    @Test
+    public void typedControlCharactersRoundTrip() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (char c = 1; c < ' '; ++c) {
+            /* A backspace is an edit, not text. */
+            if (c != TextQueue.BACKSPACE) {
+                text.append('a').append(c);
+            }
+        }
+
+        final Capture air = new Capture();
+        send(text.toString(), air);
+
+        assertEquals(text.toString(), receive(air.toByteArray()));
+    }
+
+    @Test
+    public void randomTextRoundTrips() throws IOException {
+        final Random random = new Random(1);
+        final String alphabet = "QTHSLOCde 7359RBUing\u0010\u0001\n";
+
+        for (int i = 0; i < 200; ++i) {
+            final StringBuilder text = new StringBuilder();
+            for (int k = random.nextInt(40); k > 0; --k) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            final Capture air = new Capture();
+            send(text.toString(), air);
+
+            assertEquals(text.toString(), receive(air.toByteArray()));
+        }
+    }
+
+    @Test
+    public void heldTextIsSentBeforeIdle() throws IOException {
+        final Capture air = new Capture();
+        final ModemOutputStream out = codec.compress(air);
+
+        /* The start of "QTH " is held in case the rest follows. */
+        write(out, "QT");
+        assertEquals(0, air.size());
+
+        out.preamble(1);
+        assertEquals("QT", receive(air.toByteArray()));
+        assertEquals(1, air.idle);
+    }
+
+    @Test
+    public void backspaceErasesHeldText() throws IOException {
+        final Capture air = new Capture();
+        final ModemOutputStream out = codec.compress(air);
+
+        write(out, "QT");
+        out.write(TextQueue.BACKSPACE);
+        write(out, "SL");
+        out.flush();
+
+        assertEquals("QSL", receive(air.toByteArray()));
+        assertEquals(1, air.size());
+    }
+
+    @Test
+    public void receiveThreadDecompresses() throws IOException {
+        final int rate = 8000;
+        final String text = "W1AW de K2ABC QSL 73 ";
+        final short[] signal = Signals.modulate(ModeRegistry.QPSK31, Signals.HZ, rate, text, 32, codec);
+
+        assertEquals(
+            text,
+            Signals.receive(ModeRegistry.QPSK31, Signals.HZ, new Signals.ArraySource(signal, rate, 0), codec));
+    }
+
+    private void send(final String text, final ModemOutputStream air) throws IOException {
+        final ModemOutputStream out = codec.compress(air);
+        write(out, text);
+        out.postamble(1);
+    }
+
+    private String receive(final byte[] air) throws IOException {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final OutputStream in = codec.decompress(received);
+
+        in.write(air);
+        in.flush();
+
+        return received.toString("ISO-8859-1");
+    }
+
+    private static void write(final OutputStream out, final String text) throws IOException {
+        for (int i = 0; i < text.length(); ++i) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Keeps the characters that would be sent.
+     */
+    private static class Capture extends ModemOutputStream {
+
+        private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+        private int idle;
+
+        @Override
+        public void write(final int b) {
+            sent.write(b);
+        }
+
+        @Override
+        public void preamble(final int symbols) {
+            idle += symbols;
+        }
+
+        @Override
+        public void postamble(final int symbols) {
+            idle += symbols;
+        }
+
+        private byte[] toByteArray() {
+            return sent.toByteArray();
+        }
+
+        private int size() {
+            return sent.size();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.sdsai.airqso.dsp;
+
+import org.sdsai.airqso.Signals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CarrierTrackerTest {
+
+    private static final double SYMBOL_RATE = 31.25;
+
+    private static final double SEARCH_HZ = 50;
+
+    private static final double THRESHOLD_DB = 10;
+
+    @Test
+    public void findsOffsetCarriers() {
+        for (final int sampleRate : new int[] { 8000, 11025 }) {
+            for (final double offset : new double[] { -45, -20, -5, 0, 5, 20, 45 }) {
+                final CarrierTracker tracker = track(sampleRate, 1000, bpsk(1000 + offset, 0, sampleRate, 6, 10, 1));
+
+                assertTrue(sampleRate + " Hz, " + offset + " Hz off", tracker.isLocked());
+                assertEquals(sampleRate + " Hz, " + offset + " Hz off", offset, tracker.getOffset(), 0.5);
+            }
+        }
+    }
+
+    /**
+     * Twice 2500 Hz is above the Nyquist frequency at 8000 Hz, so the squared carrier aliases.
+     */
+    @Test
+    public void findsOffsetCarriersWhoseSquareAliases() {
+        for (final double offset : new double[] { -30, 30 }) {
+            final CarrierTracker tracker = track(8000, 2500, bpsk(2500 + offset, 0, 8000, 4, 10, 2));
+
+            assertTrue(tracker.isLocked());
+            assertEquals(offset, tracker.getOffset(), 0.5);
+        }
+    }
+
+    @Test
+    public void followsDrift() {
+        final double drift = 0.5;
+        final double seconds = 12;
+        final CarrierTracker tracker = track(8000, 1000, bpsk(980, drift, 8000, seconds, 10, 3));
+
+        assertTrue(tracker.isLocked());
+        assertEquals(-20 + drift * seconds, tracker.getOffset(), 1.5);
+    }
+
+    @Test
+    public void locksAtLowSnr() {
+        final CarrierTracker tracker = track(8000, 1000, bpsk(1025, 0, 8000, 6, 3, 4));
+
+        assertTrue(tracker.isLocked());
+        assertEquals(25, tracker.getOffset(), 1.0);
+    }
+
+    @Test
+    public void doesNotLockOnNoise() {
+        final short[] noise = Signals.addNoise(new short[8000 * 8], 2000, 5);
+
+        assertFalse(track(8000, 1000, noise).isLocked());
+    }
+
+    @Test
+    public void losesLockWhenTheCarrierGoes() {
+        final short[] signal = Signals.concat(
+            bpsk(1010, 0, 8000, 4, 10, 6),
+            Signals.addNoise(new short[8000 * 5], 500, 7));
+
+        assertFalse(track(8000, 1000, signal).isLocked());
+    }
+
+    @Test
+    public void resetForgetsTheCarrier() {
+        final CarrierTracker tracker = track(8000, 1000, bpsk(1020, 0, 8000, 4, 10, 8));
+        assertTrue(tracker.isLocked());
+
+        tracker.reset();
+
+        assertFalse(tracker.isLocked());
+        assertEquals(0, tracker.getOffset(), 0);
+    }
+
+    private static CarrierTracker track(final int sampleRate, final double hz, final short[] samples) {
+        final CarrierTracker tracker = new CarrierTracker(sampleRate, hz, SEARCH_HZ, THRESHOLD_DB);
+
+        /* In pieces of an odd size, as a sound device might deliver them. */
+        for (int i = 0; i < samples.length; i += 333) {
+            tracker.add(samples, i, Math.min(333, samples.length - i));
+        }
+
+        return tracker;
+    }
+
+    /**
+     * BPSK31 with random data, reversals shaped as in PSK31, in white noise.
+     *
+     * @param hz The carrier frequency at the start.
+     * @param drift How fast the carrier frequency rises, in hertz per second.
+     * @param snrDb The signal to noise ratio in a 3 kHz bandwidth.
+     */
+    static short[] bpsk(
+        final double hz,
+        final double drift,
+        final int sampleRate,
+        final double seconds,
+        final double snrDb,
+        final long seed
+    )
+    {
+        final Random random = new Random(seed);
+        final short[] samples = new short[(int) (sampleRate * seconds)];
+        final double samplesPerSymbol = sampleRate / SYMBOL_RATE;
+
+        double phase = 0;
+        double sign = 1;
+        boolean reversing = false;
+        int symbol = -1;
+
+        for (int n = 0; n < samples.length; ++n) {
+            final int s = (int) (n / samplesPerSymbol);
+            if (s != symbol) {
+                if (reversing) {
+                    sign = -sign;
+                }
+                reversing = random.nextBoolean();
+                symbol = s;
+            }
+
+            final double t = n / samplesPerSymbol - s;
+            final double amplitude = reversing ? sign * Math.cos(Math.PI * t) : sign;
+
+            samples[n] = (short) Math.round(8000 * amplitude * Math.sin(phase));
+            phase += 2 * Math.PI * (hz + drift * n / sampleRate) / sampleRate;
+        }
+
+        return Signals.addNoise(samples, Signals.noiseRms(samples, sampleRate, snrDb, 3000), seed);
+    }
+}
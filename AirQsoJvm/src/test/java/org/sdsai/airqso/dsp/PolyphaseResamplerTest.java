@@ -0,0 +1,143 @@
+package org.sdsai.airqso.dsp;
+
+import org.sdsai.airqso.Signals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolyphaseResamplerTest {
+
+    /**
+     * The passband used by a 1000 Hz PSK31 signal, as {@link org.sdsai.airqso.SampleRatePolicy#passband(double, double)} gives it.
+     */
+    private static final double PASSBAND_HZ = 1062.5;
+
+    private static final int[][] CONVERSIONS = {
+        { 11025, 8000 },
+        { 16000, 8000 },
+        { 22050, 8000 },
+        { 44100, 8000 },
+        { 48000, 8000 },
+        { 44100, 11025 },
+        { 8000, 11025 },
+    };
+
+    private static final double AMPLITUDE = 10000;
+
+    @Test
+    public void keepsTheFrequencyAndAmplitudeOfATone() {
+        for (final int[] c : CONVERSIONS) {
+            for (final double hz : new double[] { 300, 1000 }) {
+                final short[] out = resample(c[0], c[1], Signals.tone(hz, c[0], 2, AMPLITUDE));
+                final short[] settled = Arrays.copyOfRange(out, c[1] / 2, out.length - c[1] / 4);
+                final String what = c[0] + " Hz to " + c[1] + " Hz, " + hz + " Hz tone";
+
+                assertEquals(what, hz, frequency(settled, c[1]), 0.1);
+                assertEquals(what, AMPLITUDE, rms(settled) * Math.sqrt(2), AMPLITUDE * 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void producesOutputAtTheOutputRate() {
+        for (final int[] c : CONVERSIONS) {
+            final short[] out = resample(c[0], c[1], new short[c[0] * 3]);
+
+            assertEquals(c[0] + " Hz to " + c[1] + " Hz", c[1] * 3, out.length, 1);
+        }
+    }
+
+    /**
+     * Tones above the output's Nyquist frequency that would fold back onto the
+     * passband must be removed first.
+     */
+    @Test
+    public void rejectsTonesThatWouldAliasIntoThePassband() {
+        final int[][] cases = {
+            { 44100, 8000, 7000 },
+            { 44100, 8000, 7500 },
+            { 44100, 8000, 9000 },
+            { 44100, 8000, 15000 },
+            { 44100, 8000, 17000 },
+            { 48000, 8000, 23000 },
+            { 22050, 8000, 7200 },
+            { 22050, 8000, 9000 },
+        };
+
+        for (final int[] c : cases) {
+            final short[] out = resample(c[0], c[1], Signals.tone(c[2], c[0], 2, AMPLITUDE));
+            final short[] settled = Arrays.copyOfRange(out, c[1] / 2, out.length - c[1] / 4);
+            final double db = 20 * Math.log10(Math.max(rms(settled), 1e-3) * Math.sqrt(2) / AMPLITUDE);
+
+            assertTrue(c[0] + " Hz to " + c[1] + " Hz, " + c[2] + " Hz tone came through at " + db + " dB", db < -60);
+        }
+    }
+
+    @Test
+    public void blockSizeDoesNotChangeTheOutput() {
+        final Random random = new Random(1);
+        final short[] in = Signals.addNoise(Signals.tone(1000, 44100, 1, AMPLITUDE), 2000, 2);
+
+        final short[] whole = resample(44100, 8000, in);
+
+        final PolyphaseResampler resampler = new PolyphaseResampler(44100, 8000, PASSBAND_HZ);
+        final short[] out = new short[whole.length + 16];
+        int produced = 0;
+        for (int i = 0; i < in.length; ) {
+            final int n = Math.min(1 + random.nextInt(2000), in.length - i);
+            final int rc = resampler.process(in, i, n, out, produced);
+
+            assertTrue(rc <= resampler.maxOutput(n));
+            produced += rc;
+            i += n;
+        }
+
+        assertArrayEquals(whole, Arrays.copyOf(out, produced));
+    }
+
+    private static short[] resample(final int from, final int to, final short[] in) {
+        final PolyphaseResampler resampler = new PolyphaseResampler(from, to, PASSBAND_HZ);
+        final short[] out = new short[resampler.maxOutput(in.length)];
+
+        return Arrays.copyOf(out, resampler.process(in, 0, in.length, out, 0));
+    }
+
+    private static double rms(final short[] samples) {
+        double sum = 0;
+        for (final short s : samples) {
+            sum += (double) s * s;
+        }
+
+        return Math.sqrt(sum / samples.length);
+    }
+
+    /**
+     * @return The frequency of a tone, from the time between its first and last rising zero crossings.
+     */
+    private static double frequency(final short[] samples, final int sampleRate) {
+        double first = -1;
+        double last = -1;
+        int crossings = 0;
+
+        for (int i = 1; i < samples.length; ++i) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                final double at = i - 1 + (double) -samples[i - 1] / (samples[i] - samples[i - 1]);
+                if (first < 0) {
+                    first = at;
+                }
+                else {
+                    ++crossings;
+                }
+                last = at;
+            }
+        }
+
+        return crossings * (double) sampleRate / (last - first);
+    }
+}
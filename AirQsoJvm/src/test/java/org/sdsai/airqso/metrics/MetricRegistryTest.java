@@ -0,0 +1,142 @@
+package org.sdsai.airqso.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricRegistryTest {
+
+    @Test
+    public void snapshotsReadEveryMetricInOrder() {
+        final MetricRegistry registry = new MetricRegistry();
+        registry.register("b", new Counter()).add(2);
+        registry.register("a", new Counter()).add(1);
+
+        final List<String> names = new ArrayList<String>(registry.snapshot().getValues().keySet());
+
+        assertEquals(2, names.size());
+        assertEquals("a", names.get(0));
+        assertEquals(1.0, registry.snapshot().get("a"), 0);
+        assertEquals(2.0, registry.snapshot().get("b"), 0);
+    }
+
+    @Test
+    public void registeringAgainReplaces() {
+        final MetricRegistry registry = new MetricRegistry();
+        registry.register("a", new Counter()).add(1);
+        registry.register("a", new Counter()).add(5);
+
+        assertEquals(5.0, registry.snapshot().get("a"), 0);
+    }
+
+    @Test
+    public void removedMetricsAreNotRead() {
+        final MetricRegistry registry = new MetricRegistry();
+        registry.register("a", new Counter());
+        registry.remove("a");
+        registry.remove("never registered");
+
+        assertFalse(registry.snapshot().getValues().containsKey("a"));
+    }
+
+    @Test
+    public void readersKeepTheirOwnIntervals() {
+        final MetricRegistry registry = new MetricRegistry();
+        final Timer timer = registry.register("t", new Timer());
+        final Counter counter = new Counter();
+        registry.register("r", new Rate(counter));
+        final MetricRegistry.Reader first = registry.newReader();
+        final MetricRegistry.Reader second = registry.newReader();
+
+        timer.record(9000);
+        timer.record(1000);
+        counter.add(100);
+        first.snapshot();
+        timer.record(3000);
+
+        /* The first reader's snapshot does not shorten the second's interval. */
+        final Snapshot s = second.snapshot();
+        assertEquals(3.0, s.get("t.count"), 0);
+        assertEquals(13.0 / 3, s.get("t.mean_us"), 1e-9);
+        assertEquals(9.0, s.get("t.max_us"), 0);
+        assertTrue(s.get("r") > 0);
+
+        final Snapshot f = first.snapshot();
+        assertEquals(3.0, f.get("t.mean_us"), 1e-9);
+        assertEquals(3.0, f.get("t.max_us"), 0);
+        assertEquals(0.0, f.get("r"), 0);
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void readersAreLimitedAndReused() {
+        final MetricRegistry registry = new MetricRegistry();
+        final List<MetricRegistry.Reader> readers = new ArrayList<MetricRegistry.Reader>();
+
+        for (int i = 1; i < MetricRegistry.MAX_READERS; ++i) {
+            readers.add(registry.newReader());
+        }
+
+        try {
+            registry.newReader();
+            fail("Expected no reader free.");
+        }
+        catch (final IllegalStateException e) {
+            /* Expected. */
+        }
+
+        readers.get(0).close();
+        registry.newReader().close();
+
+        try {
+            readers.get(0).snapshot();
+            fail("Expected a closed reader to refuse.");
+        }
+        catch (final IllegalStateException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void snapshotsRunWhileMetricsAreRegistered() throws InterruptedException {
+        final MetricRegistry registry = new MetricRegistry();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; ++i) {
+                        registry.register("m" + (i % 50), new Counter());
+                        registry.remove("m" + ((i + 25) % 50));
+                    }
+                }
+                catch (final Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+
+        writer.start();
+        try {
+            while (writer.isAlive()) {
+                registry.snapshot();
+            }
+        }
+        finally {
+            writer.join();
+        }
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,103 @@
+package org.sdsai.airqso.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ShortRingBufferTest {
+
+    @Test
+    public void wrapsAround() {
+        final ShortRingBuffer ring = new ShortRingBuffer(6);
+        final short[] out = new short[8];
+
+        assertEquals(8, ring.capacity());
+        assertEquals(5, ring.write(new short[] { 1, 2, 3, 4, 5 }, 0, 5));
+        assertEquals(3, ring.poll(out, 0, 3));
+        assertEquals(6, ring.write(new short[] { 6, 7, 8, 9, 10, 11 }, 0, 6));
+        assertEquals(8, ring.size());
+        assertEquals(8, ring.poll(out, 0, 8));
+
+        for (int i = 0; i < 8; ++i) {
+            assertEquals(i + 4, out[i]);
+        }
+    }
+
+    @Test
+    public void countsOverrunsAndUnderruns() throws InterruptedException {
+        final ShortRingBuffer ring = new ShortRingBuffer(4);
+        final short[] out = new short[4];
+
+        assertEquals(4, ring.write(new short[6], 0, 6));
+        assertEquals(2, ring.getOverruns());
+        assertEquals(4, ring.poll(out, 0, 4, 1, TimeUnit.MILLISECONDS));
+        assertEquals(0, ring.getUnderruns());
+        assertEquals(0, ring.poll(out, 0, 4, 1, TimeUnit.MILLISECONDS));
+        assertEquals(1, ring.getUnderruns());
+    }
+
+    @Test
+    public void closeEndsTheReaderAfterTheLastSample() throws InterruptedException {
+        final ShortRingBuffer ring = new ShortRingBuffer(4);
+        final short[] out = new short[4];
+
+        ring.write(new short[] { 1 }, 0, 1);
+        ring.close();
+
+        assertEquals(1, ring.take(out, 0, 4));
+        assertEquals(-1, ring.take(out, 0, 4));
+    }
+
+    /**
+     * The writer offers one sample at a time so the reader keeps finding the
+     * ring empty and parking. A missed wake up leaves take() parked for good,
+     * which the join timeout catches.
+     */
+    @Test(timeout = 60000)
+    public void readerIsAlwaysWoken() throws InterruptedException {
+        final int total = 2000000;
+        final ShortRingBuffer ring = new ShortRingBuffer(1024);
+        final long[] received = new long[2];
+
+        final Thread reader = new Thread("reader") {
+            @Override
+            public void run() {
+                final short[] b = new short[64];
+                try {
+                    int n;
+                    while ((n = ring.take(b, 0, b.length)) > 0) {
+                        for (int i = 0; i < n; ++i) {
+                            if (b[i] != (short) received[0]++) {
+                                received[1]++;
+                            }
+                        }
+                    }
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        reader.start();
+
+        final short[] one = new short[1];
+        for (int i = 0; i < total; ) {
+            one[0] = (short) i;
+            if (ring.write(one, 0, 1) == 1) {
+                ++i;
+            }
+            else {
+                Thread.yield();
+            }
+        }
+        ring.close();
+
+        reader.join(30000);
+        assertFalse("Reader never woke", reader.isAlive());
+        assertEquals(total, received[0]);
+        assertEquals(0, received[1]);
+    }
+}